@@ -0,0 +1,78 @@
+/**
+ * @file BookSearchBenchmark.java
+ * @brief Benchmark delle ricerche per titolo e autore nei repository dei libri.
+ */
+package com.mycompany.gestionebiblioteca.benchmark;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.repository.BookRepository;
+import com.mycompany.gestionebiblioteca.repository.ColumnarBookRepository;
+import com.mycompany.gestionebiblioteca.repository.ConcurrentBookRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryBookRepository;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author Giovanni
+ */
+/**
+ * @class BookSearchBenchmark
+ * @brief Misura findByTitleContaining e findByAuthorContaining al variare di
+ * dimensione del catalogo, lunghezza della parola chiave e implementazione.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BookSearchBenchmark {
+
+    @Param({"1000", "100000", "500000"})
+    private int catalogue;
+
+    @Param({"st", "storia", "giardino segreto"})
+    private String keyword;
+
+    @Param({"inMemory", "concurrent", "columnar"})
+    private String implementation;
+
+    private BookRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("concurrent".equals(implementation)) {
+            repository = new ConcurrentBookRepository();
+        } else if ("columnar".equals(implementation)) {
+            repository = new ColumnarBookRepository();
+        } else {
+            repository = new InMemoryBookRepository();
+        }
+        for (Book book : new DataGenerator(42L).books(catalogue)) {
+            repository.save(book);
+        }
+    }
+
+    @Benchmark
+    public List<Book> findByTitleContaining() {
+        return repository.findByTitleContaining(keyword);
+    }
+
+    @Benchmark
+    public List<Book> findByAuthorContaining() {
+        return repository.findByAuthorContaining(keyword);
+    }
+}
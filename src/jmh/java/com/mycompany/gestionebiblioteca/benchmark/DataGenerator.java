@@ -0,0 +1,217 @@
+/**
+ * @file DataGenerator.java
+ * @brief Generatore di dati sintetici realistici per benchmark e prove di carico.
+ */
+package com.mycompany.gestionebiblioteca.benchmark;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import com.mycompany.gestionebiblioteca.model.User;
+import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.SnapshotFormat;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class DataGenerator
+ * @brief Produce libri, utenti e prestiti plausibili e li scrive nei file dell'applicazione.
+ *
+ * I dati rispettano le regole dei servizi (ISBN di 13 cifre, matricole di 10
+ * cifre, email istituzionali, al massimo 3 prestiti attivi per utente) e
+ * dipendono solo dal seed, quindi ogni esecuzione produce gli stessi file.
+ *
+ * Uso da riga di comando:
+ * <pre>
+ * DataGenerator cartella libri utenti prestiti [text|binary]
+ * </pre>
+ */
+public class DataGenerator {
+
+    private static final String[] TITLE_WORDS = {
+        "storia", "nome", "rosa", "città", "notte", "mare", "tempo", "guerra", "pace", "viaggio",
+        "giardino", "principe", "luna", "segreto", "isola", "memorie", "sistemi", "algoritmi",
+        "programmazione", "analisi", "introduzione", "manuale", "teoria", "fondamenti", "basi",
+        "dati", "reti", "calcolo", "fisica", "chimica", "diritto", "economia", "filosofia"
+    };
+
+    private static final String[] FIRST_NAMES = {
+        "Mario", "Luca", "Giulia", "Anna", "Marco", "Francesca", "Paolo", "Chiara", "Andrea",
+        "Sara", "Giovanni", "Valeria", "Davide", "Carmine", "Elena", "Alessandro", "Martina"
+    };
+
+    private static final String[] LAST_NAMES = {
+        "Rossi", "Russo", "Ferrari", "Esposito", "Bianchi", "Romano", "Colombo", "Ricci",
+        "Marino", "Greco", "Bruno", "Gallo", "Conti", "De Luca", "Mancini", "Costa", "Giordano",
+        "Rizzo", "Lombardi", "Moretti", "Lupo", "Mellone", "Barbieri", "Fontana", "Santoro"
+    };
+
+    /**
+     * @brief Data di riferimento dei prestiti generati.
+     */
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 1);
+
+    private final Random random;
+
+    /**
+     * @brief Costruttore.
+     * @param seed Seed del generatore pseudo-casuale.
+     */
+    public DataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @brief Restituisce l'ISBN di indice i (13 cifre, prefisso 978).
+     * @param i Indice del libro.
+     * @return L'ISBN.
+     */
+    public static String isbn(int i) {
+        return String.format("978%010d", i);
+    }
+
+    /**
+     * @brief Restituisce la matricola di indice i (10 cifre, prefisso 0612).
+     * @param i Indice dell'utente.
+     * @return La matricola.
+     */
+    public static String matricola(int i) {
+        return String.format("0612%06d", i);
+    }
+
+    /**
+     * @brief Genera un catalogo di libri.
+     * @param count Numero di libri.
+     * @return I libri generati.
+     */
+    public List<Book> books(int count) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int words = 2 + random.nextInt(4);
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                String word = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+                if (w > 0) {
+                    title.append(' ');
+                }
+                title.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            }
+            List<String> authors = new ArrayList<>();
+            int authorCount = 1 + (random.nextInt(10) == 0 ? 1 + random.nextInt(2) : 0);
+            for (int a = 0; a < authorCount; a++) {
+                authors.add(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                        + LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+            }
+            int copies = 1 + random.nextInt(5);
+            books.add(new Book(isbn(i), title.toString(), authors, 1950 + random.nextInt(75), copies, copies));
+        }
+        return books;
+    }
+
+    /**
+     * @brief Genera gli utenti.
+     * @param count Numero di utenti.
+     * @return Gli utenti generati.
+     */
+    public List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String email = firstName.toLowerCase().charAt(0) + "." + lastName.toLowerCase().replace(" ", "")
+                    + i + "@studenti.unisa.it";
+            users.add(new User(matricola(i), firstName, lastName, email));
+        }
+        return users;
+    }
+
+    /**
+     * @brief Genera lo storico dei prestiti.
+     *
+     * Circa un prestito su dieci è ancora attivo, con al massimo 3 prestiti
+     * attivi per utente; le copie disponibili dei libri vengono aggiornate di conseguenza.
+     *
+     * @param count Numero di prestiti.
+     * @param users Utenti esistenti.
+     * @param books Libri esistenti (le copie disponibili vengono decrementate).
+     * @return I prestiti generati.
+     */
+    public List<Loan> loans(int count, List<User> users, List<Book> books) {
+        List<Loan> loans = new ArrayList<>(count);
+        int[] activePerUser = new int[users.size()];
+        Set<LoanId> ids = new HashSet<>();
+        while (loans.size() < count) {
+            int u = random.nextInt(users.size());
+            Book book = books.get(random.nextInt(books.size()));
+            LocalDate loanDate = TODAY.minusDays(random.nextInt(3 * 365));
+            LoanId id = new LoanId(users.get(u).getMatricola(), book.getIsbn(), loanDate);
+            if (!ids.add(id)) {
+                continue;
+            }
+            LocalDate dueDate = loanDate.plusDays(30);
+            boolean active = random.nextInt(10) == 0 && activePerUser[u] < 3 && book.getAvailableCopies() > 0;
+            LocalDate returnDate = null;
+            if (active) {
+                activePerUser[u]++;
+                book.setAvailableCopies(book.getAvailableCopies() - 1);
+            } else {
+                returnDate = loanDate.plusDays(1 + random.nextInt(40));
+            }
+            loans.add(new Loan(users.get(u).getMatricola(), book.getIsbn(), loanDate, dueDate, returnDate));
+        }
+        return loans;
+    }
+
+    /**
+     * @brief Scrive books.txt, users.txt e loans.txt nella cartella indicata.
+     *
+     * @param directory Cartella di destinazione.
+     * @param bookCount Numero di libri.
+     * @param userCount Numero di utenti.
+     * @param loanCount Numero di prestiti.
+     * @param format Formato dei file.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public void writeAll(Path directory, int bookCount, int userCount, int loanCount, SnapshotFormat format)
+            throws IOException {
+        List<Book> books = books(bookCount);
+        List<User> users = users(userCount);
+        List<Loan> loans = loans(loanCount, users, books);
+        FileManager fileManager = new FileManager(format);
+        fileManager.saveBooks(directory.resolve("books.txt"), books);
+        fileManager.saveUsers(directory.resolve("users.txt"), users);
+        fileManager.saveLoans(directory.resolve("loans.txt"), loans);
+    }
+
+    /**
+     * @brief Punto di ingresso da riga di comando.
+     *
+     * @param args Cartella, numero di libri, utenti e prestiti, formato opzionale.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Uso: DataGenerator cartella libri utenti prestiti [text|binary]");
+            System.exit(2);
+            return;
+        }
+        SnapshotFormat format = args.length > 4
+                ? SnapshotFormat.valueOf(args[4].toUpperCase(Locale.ROOT)) : SnapshotFormat.TEXT;
+        new DataGenerator(42L).writeAll(Paths.get(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]), format);
+        System.out.println("Dati generati in " + args[0] + " " + Arrays.toString(Arrays.copyOfRange(args, 1, 4)));
+    }
+}
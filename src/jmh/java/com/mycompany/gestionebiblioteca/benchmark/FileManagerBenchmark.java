@@ -0,0 +1,115 @@
+/**
+ * @file FileManagerBenchmark.java
+ * @brief Benchmark di caricamento e salvataggio dei file di dati.
+ */
+package com.mycompany.gestionebiblioteca.benchmark;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
+import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.SnapshotFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class FileManagerBenchmark
+ * @brief Misura load* e save* di FileManager per dimensione del file e formato.
+ *
+ * Ogni file contiene "rows" record; i file vengono generati una sola volta
+ * per combinazione di parametri in una cartella temporanea.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileManagerBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"TEXT", "BINARY"})
+    private SnapshotFormat format;
+
+    private Path directory;
+    private FileManager fileManager;
+    private List<Book> books;
+    private List<User> users;
+    private List<Loan> loans;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("biblioteca-bench");
+        DataGenerator generator = new DataGenerator(42L);
+        books = generator.books(rows);
+        users = generator.users(rows);
+        loans = generator.loans(rows, users, books);
+        fileManager = new FileManager(format);
+        fileManager.saveBooks(directory.resolve("books.txt"), books);
+        fileManager.saveUsers(directory.resolve("users.txt"), users);
+        fileManager.saveLoans(directory.resolve("loans.txt"), loans);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public List<Book> loadBooks() throws IOException {
+        return fileManager.loadBooks(directory.resolve("books.txt"));
+    }
+
+    @Benchmark
+    public List<User> loadUsers() throws IOException {
+        return fileManager.loadUsers(directory.resolve("users.txt"));
+    }
+
+    @Benchmark
+    public List<Loan> loadLoans() throws IOException {
+        return fileManager.loadLoans(directory.resolve("loans.txt"));
+    }
+
+    @Benchmark
+    public void saveBooks() throws IOException {
+        fileManager.saveBooks(directory.resolve("books-out.txt"), books);
+    }
+
+    @Benchmark
+    public void saveUsers() throws IOException {
+        fileManager.saveUsers(directory.resolve("users-out.txt"), users);
+    }
+
+    @Benchmark
+    public void saveLoans() throws IOException {
+        fileManager.saveLoans(directory.resolve("loans-out.txt"), loans);
+    }
+}
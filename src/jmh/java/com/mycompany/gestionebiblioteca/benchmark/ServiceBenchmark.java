@@ -0,0 +1,117 @@
+/**
+ * @file ServiceBenchmark.java
+ * @brief Benchmark delle operazioni dei servizi su prestiti e utenti.
+ */
+package com.mycompany.gestionebiblioteca.benchmark;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
+import com.mycompany.gestionebiblioteca.repository.BookRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryBookRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryLoanRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryUserRepository;
+import com.mycompany.gestionebiblioteca.repository.LoanRepository;
+import com.mycompany.gestionebiblioteca.repository.UserRepository;
+import com.mycompany.gestionebiblioteca.service.LoanService;
+import com.mycompany.gestionebiblioteca.service.UserService;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @class ServiceBenchmark
+ * @brief Misura registerLoan + registerReturn e addUser su archivi già popolati.
+ *
+ * Il ciclo prestito/restituzione lascia invariato il numero di copie
+ * disponibili, quindi lo stato resta stabile per tutta la misura (lo storico
+ * dei prestiti cresce come in uso reale).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private UserRepository userRepository;
+    private LoanService loanService;
+    private UserService userService;
+    private List<String> borrowers;
+    private List<String> isbns;
+    private int nextLoan;
+    private int nextUser;
+    private LocalDate loanDate;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        DataGenerator generator = new DataGenerator(42L);
+        List<Book> books = generator.books(size);
+        List<User> users = generator.users(size);
+        List<Loan> loans = generator.loans(size, users, books);
+
+        BookRepository bookRepository = new InMemoryBookRepository();
+        LoanRepository loanRepository = new InMemoryLoanRepository();
+        userRepository = new InMemoryUserRepository();
+        books.forEach(bookRepository::save);
+        users.forEach(userRepository::save);
+        loans.forEach(loanRepository::save);
+
+        // solo utenti senza prestiti in corso e libri con copie: il ciclo non fallisce mai
+        borrowers = new ArrayList<>();
+        for (User user : users) {
+            if (loanRepository.findActiveLoansByUser(user.getMatricola()).isEmpty()) {
+                borrowers.add(user.getMatricola());
+            }
+        }
+        isbns = new ArrayList<>();
+        for (Book book : books) {
+            if (book.getAvailableCopies() > 0) {
+                isbns.add(book.getIsbn());
+            }
+        }
+
+        loanService = new LoanService(loanRepository, bookRepository, userRepository);
+        userService = new UserService(userRepository, loanService);
+        nextLoan = 0;
+        nextUser = size;
+        loanDate = LocalDate.now();
+    }
+
+    @Benchmark
+    public Loan registerLoanAndReturn() {
+        int i = nextLoan++;
+        String matricola = borrowers.get(i % borrowers.size());
+        String isbn = isbns.get(i % isbns.size());
+        Loan loan = loanService.registerLoan(matricola, isbn, loanDate, loanDate.plusDays(30));
+        return loanService.registerReturn(loan, loanDate);
+    }
+
+    @Benchmark
+    public User addUser() {
+        int i = nextUser++;
+        return userService.addUser(DataGenerator.matricola(i), "Nome", "Cognome",
+                "utente" + i + "@studenti.unisa.it");
+    }
+}
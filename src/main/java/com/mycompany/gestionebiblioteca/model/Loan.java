@@ -51,6 +51,15 @@ public class Loan {
      */
     private LocalDate returnDate;
 
+    /**
+     * @brief Identificativo del prestito, calcolato al primo utilizzo.
+     *
+     * Matricola, ISBN e data di inizio sono immutabili, quindi la chiave non
+     * cambia. LoanId è immutabile: due thread che la calcolano insieme
+     * ottengono oggetti uguali e la pubblicazione senza lock è sicura.
+     */
+    private LoanId id;
+
     /**
      * @brief Costruttore completo per la creazione di un prestito.
      *
@@ -104,6 +113,19 @@ public class Loan {
      */
     public LocalDate getReturnDate() { return returnDate; }
 
+    /**
+     * @brief Restituisce l'identificativo del prestito (utente, libro e data di inizio).
+     * @return La chiave del prestito.
+     */
+    public LoanId getId() {
+        LoanId current = id;
+        if (current == null) {
+            current = new LoanId(userMatricola, bookIsbn, loanDate);
+            id = current;
+        }
+        return current;
+    }
+
     //SETTER
 
     /**
@@ -0,0 +1,212 @@
+/**
+ * @file LoanId.java
+ * @brief Chiave primaria composta di un prestito.
+ */
+package com.mycompany.gestionebiblioteca.model;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+/**
+ * @class LoanId
+ * @brief Identificativo di un prestito: utente, libro e data di inizio.
+ *
+ * Sostituisce la chiave sintetica "MATRICOLA:ISBN:YYYY-MM-DD" costruita
+ * concatenando stringhe a ogni operazione. Matricola (10 cifre) e ISBN
+ * (13 cifre) vengono memorizzati come numeri (NumericCode) e la data come giorno epoch,
+ * quindi la chiave occupa pochi byte e l'hash viene calcolato una volta sola.
+ * Una matricola o un ISBN non numerici (o di lunghezza diversa) vengono
+ * conservati come testo, così la chiave resta corretta per qualunque valore.
+ *
+ * La forma testuale (toString, parse) è quella storica "MATRICOLA:ISBN:YYYY-MM-DD",
+ * usata nel journal e nello storico dei prestiti.
+ *
+ * La classe è immutabile.
+ */
+public final class LoanId implements Comparable<LoanId> {
+
+    /**
+     * @brief Separatore dei campi nella forma testuale.
+     */
+    private static final char SEPARATOR = ':';
+
+    /**
+     * @brief Matricola in forma numerica (-1 se è conservata come testo).
+     */
+    private final long matricola;
+
+    /**
+     * @brief Matricola in forma testuale (null se è numerica).
+     */
+    private final String matricolaText;
+
+    /**
+     * @brief ISBN in forma numerica (-1 se è conservato come testo).
+     */
+    private final long isbn;
+
+    /**
+     * @brief ISBN in forma testuale (null se è numerico).
+     */
+    private final String isbnText;
+
+    /**
+     * @brief Data di inizio del prestito come giorno epoch.
+     */
+    private final long loanEpochDay;
+
+    /**
+     * @brief Hash calcolato alla costruzione.
+     */
+    private final int hash;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param userMatricola Matricola dell'utente.
+     * @param bookIsbn ISBN del libro.
+     * @param loanDate Data di inizio del prestito.
+     * @throws IllegalArgumentException Se uno dei parametri è null.
+     */
+    public LoanId(String userMatricola, String bookIsbn, LocalDate loanDate) {
+        if (userMatricola == null || bookIsbn == null || loanDate == null) {
+            throw new IllegalArgumentException("matricola, isbn e data non devono essere null");
+        }
+        this.matricola = NumericCode.encode(userMatricola, NumericCode.MATRICOLA_DIGITS);
+        this.matricolaText = matricola < 0 ? userMatricola : null;
+        this.isbn = NumericCode.encode(bookIsbn, NumericCode.ISBN_DIGITS);
+        this.isbnText = isbn < 0 ? bookIsbn : null;
+        this.loanEpochDay = loanDate.toEpochDay();
+
+        int h = Long.hashCode(matricola);
+        h = 31 * h + Objects.hashCode(matricolaText);
+        h = 31 * h + Long.hashCode(isbn);
+        h = 31 * h + Objects.hashCode(isbnText);
+        this.hash = 31 * h + Long.hashCode(loanEpochDay);
+    }
+
+    /**
+     * @brief Restituisce l'identificativo di un prestito.
+     *
+     * @param loan Il prestito.
+     * @return La sua chiave.
+     * @throws IllegalArgumentException Se loan è null.
+     */
+    public static LoanId of(Loan loan) {
+        if (loan == null) {
+            throw new IllegalArgumentException("loan non deve essere null");
+        }
+        return loan.getId();
+    }
+
+    /**
+     * @brief Ricostruisce un identificativo dalla forma testuale "MATRICOLA:ISBN:YYYY-MM-DD".
+     *
+     * @param text La forma testuale.
+     * @return L'identificativo.
+     * @throws IllegalArgumentException Se il testo non è nel formato previsto.
+     */
+    public static LoanId parse(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("text non deve essere null");
+        }
+        int first = text.indexOf(SEPARATOR);
+        int last = text.lastIndexOf(SEPARATOR);
+        if (first < 0 || first == last) {
+            throw new IllegalArgumentException("Identificativo di prestito non valido: " + text);
+        }
+        try {
+            return new LoanId(text.substring(0, first), text.substring(first + 1, last),
+                    LocalDate.parse(text.substring(last + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Identificativo di prestito non valido: " + text, e);
+        }
+    }
+
+    /**
+     * @brief Restituisce la matricola dell'utente.
+     *
+     * @return La matricola.
+     */
+    public String getUserMatricola() {
+        return matricolaText != null ? matricolaText : NumericCode.decode(matricola, NumericCode.MATRICOLA_DIGITS);
+    }
+
+    /**
+     * @brief Restituisce l'ISBN del libro.
+     *
+     * @return L'ISBN.
+     */
+    public String getBookIsbn() {
+        return isbnText != null ? isbnText : NumericCode.decode(isbn, NumericCode.ISBN_DIGITS);
+    }
+
+    /**
+     * @brief Restituisce la data di inizio del prestito.
+     *
+     * @return La data.
+     */
+    public LocalDate getLoanDate() {
+        return LocalDate.ofEpochDay(loanEpochDay);
+    }
+
+    /**
+     * @brief Ordina per matricola, ISBN e data (come la forma testuale).
+     *
+     * @param other L'altro identificativo.
+     * @return Il risultato del confronto.
+     */
+    @Override
+    public int compareTo(LoanId other) {
+        int result = matricolaText == null && other.matricolaText == null
+                ? Long.compare(matricola, other.matricola)
+                : getUserMatricola().compareTo(other.getUserMatricola());
+        if (result != 0) {
+            return result;
+        }
+        result = isbnText == null && other.isbnText == null
+                ? Long.compare(isbn, other.isbn)
+                : getBookIsbn().compareTo(other.getBookIsbn());
+        if (result != 0) {
+            return result;
+        }
+        return Long.compare(loanEpochDay, other.loanEpochDay);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LoanId)) {
+            return false;
+        }
+        LoanId other = (LoanId) o;
+        return hash == other.hash
+                && matricola == other.matricola
+                && isbn == other.isbn
+                && loanEpochDay == other.loanEpochDay
+                && Objects.equals(matricolaText, other.matricolaText)
+                && Objects.equals(isbnText, other.isbnText);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @brief Restituisce la forma testuale "MATRICOLA:ISBN:YYYY-MM-DD".
+     *
+     * @return La forma testuale.
+     */
+    @Override
+    public String toString() {
+        return getUserMatricola() + SEPARATOR + getBookIsbn() + SEPARATOR + getLoanDate();
+    }
+}
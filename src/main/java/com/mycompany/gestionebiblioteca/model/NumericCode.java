@@ -0,0 +1,75 @@
+/**
+ * @file NumericCode.java
+ * @brief Codifica numerica dei codici a cifre fisse (matricola, ISBN).
+ */
+package com.mycompany.gestionebiblioteca.model;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+/**
+ * @class NumericCode
+ * @brief Converte un codice di sole cifre, di lunghezza fissa, in un long e viceversa.
+ *
+ * Le matricole hanno sempre 10 cifre e gli ISBN 13 (vedi la validazione in
+ * UserService e BookService): a lunghezza fissa la conversione è biunivoca,
+ * zeri iniziali compresi, e un long occupa molta meno memoria di una String.
+ * I codici che non rispettano il formato non vengono convertiti (-1) e vanno
+ * trattati come testo dal chiamante.
+ */
+public final class NumericCode {
+
+    /**
+     * @brief Numero di cifre di una matricola.
+     */
+    public static final int MATRICOLA_DIGITS = 10;
+
+    /**
+     * @brief Numero di cifre di un ISBN.
+     */
+    public static final int ISBN_DIGITS = 13;
+
+    private NumericCode() {
+    }
+
+    /**
+     * @brief Converte un codice in numero.
+     *
+     * @param code Il codice (può essere null).
+     * @param digits Numero di cifre atteso (al massimo 18).
+     * @return Il valore numerico (non negativo), oppure -1 se il codice non è
+     * composto da esattamente digits cifre.
+     */
+    public static long encode(String code, int digits) {
+        if (code == null || code.length() != digits) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = 0; i < digits; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * @brief Riporta un valore numerico al codice, con gli zeri iniziali.
+     *
+     * @param value Il valore restituito da encode().
+     * @param digits Numero di cifre del codice.
+     * @return Il codice come stringa.
+     */
+    public static String decode(long value, int digits) {
+        String text = Long.toString(value);
+        StringBuilder padded = new StringBuilder(digits);
+        for (int i = text.length(); i < digits; i++) {
+            padded.append('0');
+        }
+        return padded.append(text).toString();
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * @file AtomicFileWriter.java
+ * @brief Sostituzione atomica e sicura ai crash dei file di persistenza.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class AtomicFileWriter
+ * @brief Scrive un file passando da un temporaneo, così il file non è mai visibile a metà.
+ *
+ * Il contenuto viene scritto su un file temporaneo accanto al definitivo
+ * ("nome.tmp"), sincronizzato su disco (fsync) e poi spostato sul definitivo
+ * con un rename atomico. Un crash durante la scrittura lascia intatto il file
+ * precedente; un lettore vede sempre o il vecchio o il nuovo contenuto.
+ *
+ * Facoltativamente viene mantenuta una rotazione di copie di backup
+ * ("nome.bak1" è la versione precedente, "nome.bak2" quella ancora prima, ...).
+ * La copia più recente è un hard link al vecchio file, quindi non costa una
+ * copia dei dati; se il filesystem non supporta i link il file viene copiato.
+ */
+public final class AtomicFileWriter {
+
+    /**
+     * @brief Suffisso del file temporaneo.
+     */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * @brief Prefisso del suffisso delle copie di backup (seguito dalla generazione).
+     */
+    static final String BACKUP_SUFFIX = ".bak";
+
+    /**
+     * @interface Content
+     * @brief Scrive il contenuto del file sul percorso indicato.
+     */
+    public interface Content {
+
+        /**
+         * @brief Scrive il contenuto.
+         *
+         * @param file Il file temporaneo da scrivere.
+         * @throws IOException In caso di errori di scrittura.
+         */
+        void writeTo(Path file) throws IOException;
+    }
+
+    private AtomicFileWriter() {
+    }
+
+    /**
+     * @brief Sostituisce atomicamente il contenuto di un file.
+     *
+     * Se la scrittura fallisce il temporaneo viene cancellato e il file
+     * definitivo resta com'era.
+     *
+     * @param target File da scrivere.
+     * @param content Contenuto da scrivere.
+     * @param backupGenerations Numero di versioni precedenti da conservare (0 = nessun backup).
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static void write(Path target, Content content, int backupGenerations) throws IOException {
+        if (target == null) {
+            throw new IllegalArgumentException("target non deve essere null");
+        }
+        if (content == null) {
+            throw new IllegalArgumentException("content non deve essere null");
+        }
+        if (backupGenerations < 0) {
+            throw new IllegalArgumentException("backupGenerations non deve essere negativo");
+        }
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path temp = tempFileFor(target);
+        try {
+            content.writeTo(temp);
+            force(temp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        replace(temp, target, backupGenerations);
+    }
+
+    /**
+     * @brief Sostituisce un file con un altro già scritto e sincronizzato, ruotando i backup.
+     *
+     * Usato anche da chi prepara il nuovo contenuto per conto proprio (es. i
+     * temporanei di una transazione): il backup è sempre quello del file
+     * definitivo, mai quello del temporaneo.
+     *
+     * @param source Il file con il nuovo contenuto (già sincronizzato su disco).
+     * @param target Il file da sostituire.
+     * @param backupGenerations Numero di versioni precedenti da conservare (0 = nessun backup).
+     * @throws IOException In caso di errori.
+     */
+    public static void replace(Path source, Path target, int backupGenerations) throws IOException {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("source e target non devono essere null");
+        }
+        if (backupGenerations < 0) {
+            throw new IllegalArgumentException("backupGenerations non deve essere negativo");
+        }
+        if (backupGenerations > 0) {
+            rotateBackups(target, backupGenerations);
+        }
+        moveAtomically(source, target);
+        forceDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * @brief Restituisce il file temporaneo usato per scrivere un file.
+     *
+     * @param target Il file definitivo.
+     * @return Il temporaneo, nella stessa cartella (il rename resta atomico).
+     */
+    static Path tempFileFor(Path target) {
+        return target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * @brief Restituisce la copia di backup di una certa generazione.
+     *
+     * @param target Il file definitivo.
+     * @param generation La generazione (1 = versione precedente).
+     * @return Il percorso del backup.
+     */
+    public static Path backupFileFor(Path target, int generation) {
+        return target.resolveSibling(target.getFileName() + BACKUP_SUFFIX + generation);
+    }
+
+    /**
+     * @brief Fa scorrere i backup di una generazione e salva il file corrente come ".bak1".
+     *
+     * @param target Il file definitivo.
+     * @param generations Numero di generazioni da conservare.
+     * @throws IOException In caso di errori.
+     */
+    private static void rotateBackups(Path target, int generations) throws IOException {
+        if (!Files.exists(target)) {
+            return;
+        }
+        Files.deleteIfExists(backupFileFor(target, generations));
+        for (int generation = generations - 1; generation >= 1; generation--) {
+            Path backup = backupFileFor(target, generation);
+            if (Files.exists(backup)) {
+                Files.move(backup, backupFileFor(target, generation + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path latest = backupFileFor(target, 1);
+        Files.deleteIfExists(latest);
+        try {
+            // il rename successivo sostituisce il nome, non il contenuto: il link conserva la versione vecchia
+            Files.createLink(latest, target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(target, latest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @brief Sposta un file sostituendo la destinazione con un rename atomico.
+     *
+     * Se il filesystem non supporta il rename atomico si ripiega su uno spostamento normale.
+     *
+     * @param source File da spostare.
+     * @param target Destinazione.
+     * @throws IOException In caso di errori.
+     */
+    public static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @brief Forza su disco il contenuto di un file (fsync).
+     *
+     * @param file Il file da sincronizzare.
+     * @throws IOException In caso di errori.
+     */
+    public static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @brief Forza su disco la cartella, così il rename sopravvive a un crash.
+     *
+     * Non tutti i sistemi permettono di aprire una cartella: in quel caso non fa nulla.
+     *
+     * @param directory La cartella (null per non fare nulla).
+     */
+    public static void forceDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // es. Windows: la durata del rename dipende dal filesystem
+        }
+    }
+}
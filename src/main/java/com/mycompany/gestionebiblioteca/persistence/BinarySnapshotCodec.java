@@ -0,0 +1,607 @@
+/**
+ * @file BinarySnapshotCodec.java
+ * @brief Codifica e decodifica degli snapshot binari di libri, utenti e prestiti.
+ *
+ * Lo snapshot binario evita all'avvio il parsing del testo: i codici numerici
+ * (ISBN, matricola) occupano 8 byte, le date sono giorni dall'epoca e le
+ * stringhe sono precedute dalla loro lunghezza. Il file viene letto tramite
+ * un MappedByteBuffer, senza copiarlo prima in memoria.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class BinarySnapshotCodec
+ * @brief Formato binario degli snapshot (big-endian).
+ *
+ * Struttura del file:
+ * - magic "GBS" seguito dalla versione del formato (1 byte);
+ * - tipo di contenuto (1 byte: libri, utenti o prestiti);
+ * - numero di record (int);
+ * - i record, uno dopo l'altro.
+ *
+ * Codici (ISBN e matricola): un byte di tag seguito dal valore.
+ * - tag 1..18: codice di sole cifre lungo "tag" caratteri, salvato come long
+ *   (gli zeri iniziali vengono ricostruiti dalla lunghezza);
+ * - tag 0: codice non numerico, salvato come stringa;
+ * - tag -1: codice assente (null).
+ *
+ * Stringhe: lunghezza in byte UTF-8 (int, -1 per null) seguita dai byte.
+ * Date: giorno dall'epoca (int); NO_DATE indica una data assente.
+ */
+final class BinarySnapshotCodec {
+
+    /**
+     * @brief Primi byte di ogni snapshot binario ("GBS" + versione).
+     */
+    private static final byte[] MAGIC = {'G', 'B', 'S', 1};
+
+    /**
+     * @brief Tipo di contenuto: libri.
+     */
+    static final byte BOOKS = 1;
+
+    /**
+     * @brief Tipo di contenuto: utenti.
+     */
+    static final byte USERS = 2;
+
+    /**
+     * @brief Tipo di contenuto: prestiti.
+     */
+    static final byte LOANS = 3;
+
+    /**
+     * @brief Numero massimo di cifre di un codice salvabile come long.
+     */
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    /**
+     * @brief Tag di un codice salvato come stringa.
+     */
+    private static final byte TEXT_CODE = 0;
+
+    /**
+     * @brief Tag di un codice assente.
+     */
+    private static final byte NULL_CODE = -1;
+
+    /**
+     * @brief Valore che rappresenta una data assente.
+     */
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    /**
+     * @brief Costruttore privato: la classe espone solo metodi statici.
+     */
+    private BinarySnapshotCodec() {
+    }
+
+    /**
+     * @brief Indica se un file è uno snapshot binario.
+     *
+     * @param file Il file da controllare (deve esistere).
+     * @return true se il file inizia con il magic del formato binario.
+     * @throws IOException In caso di errori di lettura.
+     */
+    static boolean isBinary(Path file) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while (read < head.length && (n = in.read(head, read, head.length - read)) > 0) {
+                read += n;
+            }
+        }
+        if (read < head.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // scrittura
+
+    /**
+     * @brief Scrive uno snapshot binario dei libri.
+     *
+     * @param file File di destinazione (viene sovrascritto).
+     * @param books Libri da salvare; gli elementi null vengono ignorati.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    static void writeBooks(Path file, Collection<Book> books) throws IOException {
+        try (DataOutputStream out = open(file, BOOKS, countNonNull(books))) {
+            for (Book book : books) {
+                if (book == null) {
+                    continue;
+                }
+                writeBook(out, book);
+            }
+        }
+    }
+
+    /**
+     * @brief Scrive uno snapshot binario degli utenti.
+     *
+     * @param file File di destinazione (viene sovrascritto).
+     * @param users Utenti da salvare; gli elementi null vengono ignorati.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    static void writeUsers(Path file, Collection<User> users) throws IOException {
+        try (DataOutputStream out = open(file, USERS, countNonNull(users))) {
+            for (User user : users) {
+                if (user == null) {
+                    continue;
+                }
+                writeUser(out, user);
+            }
+        }
+    }
+
+    /**
+     * @brief Scrive uno snapshot binario dei prestiti.
+     *
+     * @param file File di destinazione (viene sovrascritto).
+     * @param loans Prestiti da salvare; gli elementi null vengono ignorati.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    static void writeLoans(Path file, Collection<Loan> loans) throws IOException {
+        try (DataOutputStream out = open(file, LOANS, countNonNull(loans))) {
+            for (Loan loan : loans) {
+                if (loan == null) {
+                    continue;
+                }
+                writeCode(out, loan.getUserMatricola());
+                writeCode(out, loan.getBookIsbn());
+                writeDate(out, loan.getLoanDate());
+                writeDate(out, loan.getDueDate());
+                writeDate(out, loan.getReturnDate());
+            }
+        }
+    }
+
+    // lettura
+
+    /**
+     * @brief Legge i libri di uno snapshot binario.
+     *
+     * @param file Il file da leggere.
+     * @param consumer Destinatario dei libri, nell'ordine del file.
+     * @throws IOException Se il file non è uno snapshot di libri valido.
+     */
+    static void readBooks(Path file, Consumer<? super Book> consumer) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int count = readHeader(buffer, BOOKS, file);
+        try {
+            for (int i = 0; i < count; i++) {
+                Book book = readBook(buffer);
+                if (book == null) {
+                    throw new IOException("ISBN mancante nello snapshot dei libri: " + file);
+                }
+                consumer.accept(book);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Snapshot dei libri troncato o non valido: " + file, e);
+        }
+    }
+
+    /**
+     * @brief Legge gli utenti di uno snapshot binario.
+     *
+     * @param file Il file da leggere.
+     * @param consumer Destinatario degli utenti, nell'ordine del file.
+     * @throws IOException Se il file non è uno snapshot di utenti valido.
+     */
+    static void readUsers(Path file, Consumer<? super User> consumer) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int count = readHeader(buffer, USERS, file);
+        try {
+            for (int i = 0; i < count; i++) {
+                consumer.accept(readUser(buffer));
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Snapshot degli utenti troncato o non valido: " + file, e);
+        }
+    }
+
+    /**
+     * @brief Legge i prestiti di uno snapshot binario.
+     *
+     * @param file Il file da leggere.
+     * @param consumer Destinatario dei prestiti, nell'ordine del file.
+     * @throws IOException Se il file non è uno snapshot di prestiti valido.
+     */
+    static void readLoans(Path file, Consumer<? super Loan> consumer) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int count = readHeader(buffer, LOANS, file);
+        try {
+            for (int i = 0; i < count; i++) {
+                String matricola = readCode(buffer);
+                String isbn = readCode(buffer);
+                LocalDate loanDate = readDate(buffer);
+                LocalDate dueDate = readDate(buffer);
+                LocalDate returnDate = readDate(buffer);
+                if (loanDate == null || dueDate == null) {
+                    throw new IOException("Date mancanti nello snapshot dei prestiti: " + file);
+                }
+                consumer.accept(new Loan(matricola, isbn, loanDate, dueDate, returnDate));
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | java.time.DateTimeException e) {
+            throw new IOException("Snapshot dei prestiti troncato o non valido: " + file, e);
+        }
+    }
+
+    // singoli record (usati anche da SlottedRecordFile)
+
+    /**
+     * @brief Codifica un libro in un array di byte.
+     *
+     * @param book Il libro.
+     * @return Il record binario del libro.
+     */
+    static byte[] encodeBook(Book book) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeBook(out, book);
+        } catch (IOException e) {
+            throw new IllegalStateException("Scrittura in memoria non riuscita", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @brief Decodifica un libro scritto da encodeBook.
+     *
+     * @param record Il record binario.
+     * @return Il libro.
+     * @throws IOException Se il record non è valido.
+     */
+    static Book decodeBook(byte[] record) throws IOException {
+        try {
+            Book book = readBook(ByteBuffer.wrap(record));
+            if (book == null) {
+                throw new IOException("ISBN mancante nel record del libro");
+            }
+            return book;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Record del libro non valido", e);
+        }
+    }
+
+    /**
+     * @brief Codifica un utente in un array di byte.
+     *
+     * @param user L'utente.
+     * @return Il record binario dell'utente.
+     */
+    static byte[] encodeUser(User user) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeUser(out, user);
+        } catch (IOException e) {
+            throw new IllegalStateException("Scrittura in memoria non riuscita", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @brief Decodifica un utente scritto da encodeUser.
+     *
+     * @param record Il record binario.
+     * @return L'utente.
+     * @throws IOException Se il record non è valido.
+     */
+    static User decodeUser(byte[] record) throws IOException {
+        try {
+            return readUser(ByteBuffer.wrap(record));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Record dell'utente non valido", e);
+        }
+    }
+
+    /**
+     * @brief Scrive i campi di un libro.
+     *
+     * @param out Stream di destinazione.
+     * @param book Il libro.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private static void writeBook(DataOutputStream out, Book book) throws IOException {
+        writeCode(out, book.getIsbn());
+        writeString(out, book.getTitle());
+        List<String> authors = book.getAuthors();
+        out.writeInt(authors.size());
+        for (String author : authors) {
+            writeString(out, author);
+        }
+        out.writeInt(book.getYear());
+        out.writeInt(book.getTotalCopies());
+        out.writeInt(book.getAvailableCopies());
+    }
+
+    /**
+     * @brief Legge i campi di un libro scritti da writeBook.
+     *
+     * @param buffer Buffer di lettura.
+     * @return Il libro, oppure null se manca l'ISBN.
+     */
+    private static Book readBook(ByteBuffer buffer) {
+        String isbn = readCode(buffer);
+        String title = readString(buffer);
+        int authorCount = buffer.getInt();
+        List<String> authors = new ArrayList<>(Math.min(authorCount, 16));
+        for (int a = 0; a < authorCount; a++) {
+            authors.add(readString(buffer));
+        }
+        int year = buffer.getInt();
+        int totalCopies = buffer.getInt();
+        int availableCopies = buffer.getInt();
+        if (isbn == null) {
+            return null;
+        }
+        return new Book(isbn, title, authors, year, totalCopies, availableCopies);
+    }
+
+    /**
+     * @brief Scrive i campi di un utente.
+     *
+     * @param out Stream di destinazione.
+     * @param user L'utente.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        writeCode(out, user.getMatricola());
+        writeString(out, user.getFirstName());
+        writeString(out, user.getLastName());
+        writeString(out, user.getEmail());
+    }
+
+    /**
+     * @brief Legge i campi di un utente scritti da writeUser.
+     *
+     * @param buffer Buffer di lettura.
+     * @return L'utente.
+     */
+    private static User readUser(ByteBuffer buffer) {
+        String matricola = readCode(buffer);
+        String firstName = readString(buffer);
+        String lastName = readString(buffer);
+        String email = readString(buffer);
+        return new User(matricola, firstName, lastName, email);
+    }
+
+    // metodi di utilità
+
+    /**
+     * @brief Apre il file in scrittura e scrive l'intestazione.
+     *
+     * @param file File di destinazione.
+     * @param kind Tipo di contenuto.
+     * @param count Numero di record che seguiranno.
+     * @return Lo stream posizionato dopo l'intestazione.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private static DataOutputStream open(Path file, byte kind, int count) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+        out.write(MAGIC);
+        out.writeByte(kind);
+        out.writeInt(count);
+        return out;
+    }
+
+    /**
+     * @brief Mappa in memoria l'intero file in sola lettura.
+     *
+     * Il canale viene chiuso subito: la mappatura resta valida finché il
+     * buffer è raggiungibile.
+     *
+     * @param file Il file da mappare.
+     * @return Il buffer mappato.
+     * @throws IOException In caso di errori di I/O.
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * @brief Verifica l'intestazione e restituisce il numero di record.
+     *
+     * @param buffer Buffer posizionato all'inizio del file.
+     * @param expectedKind Tipo di contenuto atteso.
+     * @param file Il file letto, usato nei messaggi di errore.
+     * @return Il numero di record.
+     * @throws IOException Se l'intestazione non è valida o il tipo non corrisponde.
+     */
+    private static int readHeader(MappedByteBuffer buffer, byte expectedKind, Path file) throws IOException {
+        if (buffer.remaining() < MAGIC.length + 5) {
+            throw new IOException("Snapshot binario troncato: " + file);
+        }
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) {
+                throw new IOException("Formato di snapshot non riconosciuto: " + file);
+            }
+        }
+        byte kind = buffer.get();
+        if (kind != expectedKind) {
+            throw new IOException("Lo snapshot " + file + " contiene dati di tipo " + kind
+                    + " invece di " + expectedKind);
+        }
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Numero di record non valido nello snapshot: " + file);
+        }
+        return count;
+    }
+
+    /**
+     * @brief Scrive un codice (ISBN o matricola).
+     *
+     * @param out Stream di destinazione.
+     * @param code Il codice, eventualmente null.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private static void writeCode(DataOutputStream out, String code) throws IOException {
+        if (code == null) {
+            out.writeByte(NULL_CODE);
+        } else if (isNumeric(code)) {
+            out.writeByte(code.length());
+            out.writeLong(Long.parseLong(code));
+        } else {
+            out.writeByte(TEXT_CODE);
+            writeString(out, code);
+        }
+    }
+
+    /**
+     * @brief Legge un codice scritto da writeCode.
+     *
+     * @param buffer Buffer di lettura.
+     * @return Il codice, eventualmente null.
+     */
+    private static String readCode(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        if (tag == NULL_CODE) {
+            return null;
+        }
+        if (tag == TEXT_CODE) {
+            return readString(buffer);
+        }
+        if (tag < 0 || tag > MAX_NUMERIC_DIGITS) {
+            throw new IllegalArgumentException("Tag di codice non valido: " + tag);
+        }
+        long value = buffer.getLong();
+        // ricostruzione a larghezza fissa, con gli zeri iniziali
+        char[] digits = new char[tag];
+        for (int i = tag - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * @brief Indica se un codice può essere salvato in forma numerica.
+     *
+     * @param code Il codice da controllare.
+     * @return true se il codice contiene da 1 a 18 cifre decimali ASCII.
+     */
+    private static boolean isNumeric(String code) {
+        int length = code.length();
+        if (length == 0 || length > MAX_NUMERIC_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @brief Scrive una stringa preceduta dalla sua lunghezza in byte.
+     *
+     * @param out Stream di destinazione.
+     * @param value La stringa, eventualmente null.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @brief Legge una stringa scritta da writeString.
+     *
+     * @param buffer Buffer di lettura.
+     * @return La stringa, eventualmente null.
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Lunghezza di stringa non valida: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @brief Scrive una data come giorno dall'epoca.
+     *
+     * @param out Stream di destinazione.
+     * @param date La data, eventualmente null.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+        out.writeInt(date == null ? NO_DATE : Math.toIntExact(date.toEpochDay()));
+    }
+
+    /**
+     * @brief Legge una data scritta da writeDate.
+     *
+     * @param buffer Buffer di lettura.
+     * @return La data, eventualmente null.
+     */
+    private static LocalDate readDate(ByteBuffer buffer) {
+        int epochDay = buffer.getInt();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * @brief Conta gli elementi non null di una collezione.
+     *
+     * @param items La collezione.
+     * @return Il numero di elementi non null.
+     */
+    private static int countNonNull(Collection<?> items) {
+        int count = 0;
+        for (Object item : items) {
+            if (item != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
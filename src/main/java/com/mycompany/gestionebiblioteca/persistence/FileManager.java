@@ -17,15 +17,22 @@ package com.mycompany.gestionebiblioteca.persistence;
 import com.mycompany.gestionebiblioteca.model.Book;
 import com.mycompany.gestionebiblioteca.model.User;
 import com.mycompany.gestionebiblioteca.model.Loan;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  *
@@ -38,8 +45,20 @@ import java.util.List;
  * Questa classe contiene metodi per leggere e scrivere su file testuali
  * contenenti liste di libri, utenti e prestiti. I file utilizzano un formato
  * semplice basato su righe di testo con campi separati da '|'.
+ *
+ * In alternativa i file possono essere scritti come snapshot binari
+ * (SnapshotFormat.BINARY); in lettura il formato viene riconosciuto
+ * automaticamente dai primi byte del file.
+ *
+ * Ogni salvataggio scrive su un file temporaneo, lo sincronizza su disco e lo
+ * sostituisce al file con un rename atomico (AtomicFileWriter): un crash
+ * durante la scrittura non perde i dati già salvati.
+ *
+ * Nel formato SLOTTED i file di libri e utenti possono anche essere
+ * aggiornati record per record (updateBooks, updateUsers): i file restano
+ * aperti tra un aggiornamento e l'altro e vanno chiusi con close().
  */
-public class FileManager {
+public class FileManager implements AutoCloseable {
 
     // header e separatore dei file di testo
     /**
@@ -62,102 +81,168 @@ public class FileManager {
      */
     private static final String SEPARATOR = "|";
 
+    /**
+     * @brief Formato usato per scrivere i file (la lettura riconosce entrambi i formati).
+     */
+    private final SnapshotFormat format;
+
+    /**
+     * @brief Numero di versioni precedenti conservate come backup a ogni riscrittura completa (0 = nessuna).
+     */
+    private final int backupGenerations;
+
+    /**
+     * @brief Oltre questa frazione di record modificati (1/n) conviene riscrivere il file per intero.
+     */
+    private static final int INCREMENTAL_FRACTION = 8;
+
+    /**
+     * @brief Numero di modifiche sempre ammesso in forma incrementale, anche su file piccoli.
+     */
+    private static final int INCREMENTAL_MIN_CHANGES = 64;
+
+    /**
+     * @brief File a slot aperti per gli aggiornamenti incrementali (accesso sincronizzato sulla mappa).
+     */
+    private final Map<Path, SlottedRecordFile> stores = new HashMap<>();
+
+    /**
+     * @brief Costruttore: i file vengono scritti nel formato testuale.
+     */
+    public FileManager() {
+        this(SnapshotFormat.TEXT);
+    }
+
+    /**
+     * @brief Costruttore con formato di scrittura esplicito.
+     *
+     * @param format Formato con cui scrivere i file.
+     * @throws IllegalArgumentException Se il formato è null.
+     */
+    public FileManager(SnapshotFormat format) {
+        this(format, 0);
+    }
+
+    /**
+     * @brief Costruttore con formato e backup a rotazione.
+     *
+     * A ogni salvataggio la versione precedente del file diventa "nome.bak1",
+     * la "nome.bak1" diventa "nome.bak2" e così via, fino al numero di
+     * generazioni indicato.
+     *
+     * @param format Formato con cui scrivere i file.
+     * @param backupGenerations Numero di versioni precedenti da conservare (0 = nessun backup).
+     * @throws IllegalArgumentException Se il formato è null o backupGenerations è negativo.
+     */
+    public FileManager(SnapshotFormat format, int backupGenerations) {
+        if (format == null) {
+            throw new IllegalArgumentException("format non deve essere null");
+        }
+        if (backupGenerations < 0) {
+            throw new IllegalArgumentException("backupGenerations non deve essere negativo");
+        }
+        this.format = format;
+        this.backupGenerations = backupGenerations;
+    }
+
+    /**
+     * @brief Restituisce il numero di versioni precedenti conservate a ogni riscrittura completa.
+     * @return Le generazioni di backup (0 = nessun backup).
+     */
+    public int getBackupGenerations() {
+        return backupGenerations;
+    }
+
+    /**
+     * @brief Restituisce il formato usato in scrittura.
+     * @return Il formato dei file scritti.
+     */
+    public SnapshotFormat getFormat() {
+        return format;
+    }
+
     // operazioni sui libri 
     /**
      * @brief Carica l'elenco dei libri da un file.
      *
-     * Il metodo legge tutte le righe del file, salta l'header e converte
-     * ciascuna riga in un oggetto Libro.
+     * Il file viene letto in streaming tramite forEachBook: salta l'header e
+     * converte ciascuna riga in un oggetto Libro.
      *
      * @param file Percorso del file da cui leggere.
      * @return Lista dei libri contenuti nel file.
      * @throws IOException Se si verificano errori di I/O o formati non validi.
      */
     public List<Book> loadBooks(Path file) throws IOException { // legge un file di testo che contiene i libri, trasforma ogni riga valida in un oggetto Book, restituisce una lista di libri
+        List<Book> result = new ArrayList<>(); // result: lista finale di Book
+        forEachBook(file, result::add);
+        return result;
+    }
+
+    /**
+     * @brief Legge in streaming i libri di un file, uno alla volta.
+     *
+     * Il file non viene caricato interamente in memoria: ogni riga viene
+     * suddivisa a mano sul separatore e il libro ottenuto viene passato
+     * subito al consumer. Se il file non esiste viene creato vuoto nel
+     * formato configurato e il consumer non viene invocato; uno snapshot
+     * binario viene riconosciuto e letto automaticamente.
+     *
+     * @param file Percorso del file da cui leggere.
+     * @param consumer Destinatario dei libri letti, nell'ordine del file.
+     * @throws IOException Se si verificano errori di I/O o formati non validi.
+     */
+    public void forEachBook(Path file, Consumer<? super Book> consumer) throws IOException {
         // qui si verifica che il percorso del file non sia null
         if (file == null) {
             throw new IllegalArgumentException("il file non deve essere null"); // si usa IllegalArgumentException  perche è un errore di uso del metodo, non di i/o 
         }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer non deve essere null");
+        }
 
-        // gestione del caso in cui il file non esiste
+        // se il file non esiste non è errore, semplicemente non ci sono libri
         if (!Files.exists(file)) {
-            //crea le cartelle se servono
-            Path parent = file.getParent();
-            if (parent != null) {
-                Files.createDirectories(parent);
-            }
-            // crea il file solo con l'header
-            Files.write(file, Arrays.asList(BOOKS_HEADER), StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            // restituisce una lista vuota
-            return new ArrayList<>(); // se il file non esiste non è errore, semplicemente non ci sono libri
+            saveBooks(file, new ArrayList<Book>());
+            return;
         }
+        if (SlottedRecordFile.isSlotted(file)) {
+            readSlotted(file, BinarySnapshotCodec.BOOKS, record -> consumer.accept(BinarySnapshotCodec.decodeBook(record)));
+            return;
+        }
+        if (BinarySnapshotCodec.isBinary(file)) {
+            BinarySnapshotCodec.readBooks(file, consumer);
+            return;
+        }
+        try (RecordReader reader = openRecords(file, BOOKS_HEADER)) {
+            // ciclo sui record del file (righe vuote e header sono già saltati dal reader)
+            while (reader.next()) {
+                // il formato del file è: ISBN | titolo | autore | anno | copie totali | copie disponibili -> se il numero dei campi è sbagliato -> eccezione
+                if (reader.fieldCount() != 6) {
+                    throw new IOException("Riga del file dei libri non valida " + reader.rawLine());
+                }
 
-        // lettura completa del file
-        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8); // tutte le righe vengono caricate in memoria
-        List<Book> result = new ArrayList<>(); // result: lista finale di Book
-
-        // ciclo sulle righe del file
-        for (int i = 0; i < lines.size(); i++) {
-            // salto le righe nulle
-            String rawLine = lines.get(i);
-            if (rawLine == null) {
-                continue;
-            }
-            // eliimina spazi + salta righe vuote
-            String line = rawLine.trim();
-            if (line.isEmpty()) {
-                continue;
-            }
-            // se la prima riga corrisponde all'header (non è un libro) viene ignorata
-            if (i == 0 && line.equals(BOOKS_HEADER)) {
-                continue;
-            }
-
-            // divide la riga usando |
-            String[] parts = line.split("\\|", -1);
-
-            // il formato del file è: ISBN | titolo | autore | anno | copie totali | copie disponibili -> se il numero dei campi è sbagliato -> eccezione
-            if (parts.length != 6) {
-                throw new IOException("Riga del file dei libri non valida " + rawLine);
-            }
-
-            // lettura dei campi
-            String isbn = parts[0]; // isbn è obbligatorio 
-            String title = emptyToNull(parts[1]); // title e author possono essere null-> nel caso vengono trasformati in null
-            String authorsStr = emptyToNull(parts[2]);
-            
-            // parsing degli autori separati da punto e virgola
-            List<String> authors = new ArrayList<>();
-            if (authorsStr != null && !authorsStr.isEmpty()) {
-                String[] authorArray = authorsStr.split(";");
-                for (String author : authorArray) {
-                    String trimmed = author.trim();
-                    if (!trimmed.isEmpty()) {
-                        authors.add(trimmed);
-                    }
+                // lettura dei campi
+                String isbn = reader.field(0); // isbn è obbligatorio 
+                String title = reader.isEmpty(1) ? null : reader.field(1); // title e author possono essere null-> nel caso vengono trasformati in null
+                List<String> authors = reader.isEmpty(2) ? new ArrayList<String>() : parseAuthors(reader.field(2));
+
+                int year;
+                int totalCopies;
+                int availableCopies;
+
+                // converte i campi in interi direttamente dalla riga
+                try {
+                    year = reader.intField(3);
+                    totalCopies = reader.intField(4);
+                    availableCopies = reader.intField(5);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Valore numerico non valido nella riga del file dei libri: " + reader.rawLine(), e); // se il file contiene valori non numerici -> errore -> che viene incapsulato in una IOexception
                 }
-            }
-            
-            int year;
-            int totalCopies;
-            int availableCopies;
 
-            // converte stringhe in interi
-            try {
-                year = Integer.parseInt(parts[3]);
-                totalCopies = Integer.parseInt(parts[4]);
-                availableCopies = Integer.parseInt(parts[5]);
-            } catch (NumberFormatException e) {
-                throw new IOException("Valore numerico non valido nella riga del file dei libri: " + rawLine, e); // se il file contiene valori non numerici -> errore -> che viene incapsulato in una IOexception
+                // creazione dell'oggetto Book
+                consumer.accept(new Book(isbn, title, authors, year, totalCopies, availableCopies));
             }
-
-            // creazione dell'oggetto Book
-            Book book = new Book(isbn, title, authors, year, totalCopies, availableCopies);
-            result.add(book);
         }
-
-        return result;
     }
 
     /**
@@ -179,6 +264,20 @@ public class FileManager {
         if (books == null) { // si verifica che la collezione dei libri non sia nulla
             throw new IllegalArgumentException("il file non deve essere null");
         }
+        if (format == SnapshotFormat.SLOTTED) {
+            Map<String, byte[]> records = new LinkedHashMap<>();
+            for (Book book : books) {
+                if (book != null) {
+                    records.put(book.getIsbn(), BinarySnapshotCodec.encodeBook(book));
+                }
+            }
+            writeSlotted(file, BinarySnapshotCodec.BOOKS, records);
+            return;
+        }
+        if (format == SnapshotFormat.BINARY) {
+            AtomicFileWriter.write(file, temp -> BinarySnapshotCodec.writeBooks(temp, books), backupGenerations);
+            return;
+        }
 
         List<String> lines = new ArrayList<>(); // lines contiene tutte le righe da scrivere nel file
         lines.add(BOOKS_HEADER); // la prima riga è sempre l'header
@@ -220,15 +319,9 @@ public class FileManager {
             lines.add(line);
         }
 
-        // creazione delle directory se necessarie -> se il file si trova in una cartella che ancora non esiste-> viene creata
-        Path parent = file.getParent();
-        if (parent != null) {
-            Files.createDirectories(parent);
-        }
-
-        // scrittura sul file -> crea il file se non esiste + sovrascrive il contenuto precedente
-        Files.write(file, lines, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        // scrittura su un temporaneo + rename atomico -> il file non è mai visibile a metà
+        // (le cartelle mancanti vengono create da AtomicFileWriter)
+        writeLines(file, lines);
 
     }
 
@@ -243,95 +336,46 @@ public class FileManager {
      * @throws IOException Se il formato è errato o il file non è leggibile.
      */
     public List<Loan> loadLoans(Path file) throws IOException {
+        List<Loan> result = new ArrayList<>(); // result contiene i prestiti validi trovati 
+        forEachLoan(file, result::add);
+        return result;
+    }
 
+    /**
+     * @brief Legge in streaming i prestiti di un file, uno alla volta.
+     *
+     * Se il file non esiste viene creato vuoto nel formato configurato e il
+     * consumer non viene invocato; uno snapshot binario viene riconosciuto e
+     * letto automaticamente.
+     *
+     * @param file Percorso del file da cui leggere.
+     * @param consumer Destinatario dei prestiti letti, nell'ordine del file.
+     * @throws IOException Se il formato è errato o il file non è leggibile.
+     */
+    public void forEachLoan(Path file, Consumer<? super Loan> consumer) throws IOException {
         // verifico che il percorso del file non sia nullo
         if (file == null) {
             throw new IllegalArgumentException("il percorso del file non deve essere null");
         }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer non deve essere null");
+        }
 
-        // se il file ancora non esiste:
+        // se il file ancora non esiste -> non ci sono ancora prestiti registrati
         if (!Files.exists(file)) {
-            Path parent = file.getParent(); // creao la directory 
-            if (parent != null) {
-                Files.createDirectories(parent);
-            }
-            /**
-             * asList restituisce una lista di dimensione fissa, non puoi
-             * aggiungere/rimuovere elementi, ma puoi modificare quelli
-             * esistenti
-             *
-             */
-            // creo il file solo con l'header -> scrivo solo l'intestazione 
-            Files.write(file, Arrays.asList(LOANS_HEADER), StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            // restituisce una lista vuota -> se il file non esiste -> non ci sono ancora prestiti registrati
-            return new ArrayList<>();
-        }
-
-        // lettura del contenuto del file
-        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8); // tutte le righe vengono caricate in memoria
-        List<Loan> result = new ArrayList<>(); // result contiene i prestiti validi trovati 
-
-        for (int i = 0; i < lines.size(); i++) {
-            String rawLine = lines.get(i);
-            if (rawLine == null) { // salto le righe nulle
-                continue;
-            }
-            String line = rawLine.trim();
-            if (line.isEmpty()) { // rimuovo spazi inutili e ignoro righe vuote
-                continue;
-            }
-            if (i == 0 && line.equals(LOANS_HEADER)) { // la prima riga è quella dell'header, non rappresenta un prestito
-                continue;
-            }
-
-            String[] parts = line.split("\\|", -1); // divide la riga usando |
-
-            // ogni riga deve contenere esattamente 5 campi -> se il formato non è rispettato -> file non valido
-            if (parts.length != 5) {
-                throw new IOException("Riga non valida nel file dei prestiti: " + rawLine);
-            }
-
-            // estrazione dei valori testuali
-            String matricola = parts[0];
-            String isbn = parts[1];
-            String loanDateStr = parts[2];
-            String dueDateStr = parts[3];
-            String returnDateStr = parts[4];
-
-            // se una data è scritta male -> il file dei prestiti non è valido
-            try {
-
-                /*
-                prende la stringa loanDateStr -> la coverte in un oggetto LocalDate -> 
-                se la stringa non è una data valida, Java lancia DateTimeParseException
-                 */
-                java.time.LocalDate loanDate = java.time.LocalDate.parse(loanDateStr);
-                java.time.LocalDate dueDate = java.time.LocalDate.parse(dueDateStr); // stessa cpsa per la data di scadenza
-
-                java.time.LocalDate returnDate = null; // inzializzo la data di restituizione a null -> prestito non restituito
-
-                // se returnDateStr è null -> uso "" -> altrimenti fa trim() quindi rimuovo spazi all'inizio e alla fine
-                String trimmedReturn = returnDateStr == null ? "" : returnDateStr.trim();
-
-                // controllo se la data di restituizione è davvero presente
-                // entra nell'if solo se 1) trimmedReturn non è vuota (quindi non è "") 2) trimmedreturn non è la stringa null
-                if (!trimmedReturn.isEmpty() && !"null".equalsIgnoreCase(trimmedReturn)) {
-                    returnDate = java.time.LocalDate.parse(trimmedReturn); // converte trimmedretunr in localdate (se non è una data valida -> eccezione e si va nel catch)
-                }
-
-                // creo oggetto Loan 
-                Loan loan = new Loan(matricola, isbn, loanDate, dueDate, returnDate);
-                result.add(loan); // aggiungo il prestito appena creato alla lista result che poi viene restituita dal metodo
-            } catch (java.time.format.DateTimeParseException e) {
-                /*
-                trasforma l'errore di parsinh in un errore di file (ioexception)
-                 */
-                throw new IOException("Valore di data non valido nella riga del file dei prestiti: " + rawLine, e);
+            saveLoans(file, new ArrayList<Loan>());
+            return;
+        }
+        if (BinarySnapshotCodec.isBinary(file)) {
+            BinarySnapshotCodec.readLoans(file, consumer);
+            return;
+        }
+        try (RecordReader reader = openRecords(file, LOANS_HEADER)) {
+            while (reader.next()) {
+                // conversione del record in un oggetto Loan
+                consumer.accept(parseLoan(reader));
             }
         }
-
-        return result;
     }
 
     /**
@@ -352,6 +396,11 @@ public class FileManager {
         if (loans == null) {
             throw new IllegalArgumentException("loans non deve essere null");
         }
+        // i prestiti non hanno un formato a slot: SLOTTED li scrive come snapshot binario
+        if (format == SnapshotFormat.BINARY || format == SnapshotFormat.SLOTTED) {
+            AtomicFileWriter.write(file, temp -> BinarySnapshotCodec.writeLoans(temp, loans), backupGenerations);
+            return;
+        }
 
         List<String> lines = new ArrayList<>(); // lines contiene tutte le righe del file
         lines.add(LOANS_HEADER); // la prima riga è sempre l'header
@@ -361,30 +410,13 @@ public class FileManager {
                 continue;
             }
 
-            // estrazione e validazione dei campi 
-            String matricola = requireNoSeparator(loan.getUserMatricola()); // controlla che non contenga il separatore
-            String isbn = requireNoSeparator(loan.getBookIsbn());
-            String loanDate = loan.getLoanDate().toString(); // conversione delle date in stringhe
-            String dueDate = loan.getDueDate().toString();
-
-            //se returnDate esiste -> scrivila come data 
-            // se returnDate è null -> scrivi la stringa null ( null nel file rappresenta prestito non restituito)
-            String returnDate = loan.getReturnDate() != null ? loan.getReturnDate().toString() : "null";
-
             // costruzione della riga di testo -> tutti i campi vengono uniti usando il seperatore | 
-            String line = String.join(SEPARATOR, matricola, isbn, loanDate, dueDate, returnDate);
+            String line = formatLoan(loan);
             lines.add(line); // la riga viene aggiunta alla lista delle righe da scrivere
         }
 
-        // creazione della directory se non esiste ( se esiste gia -> nessun errore)
-        Path parent = file.getParent();
-        if (parent != null) {
-            Files.createDirectories(parent);
-        }
-
-        // scrittura finale su file (crea il file se non esiste) 
-        Files.write(file, lines, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        // scrittura finale su file (temporaneo + rename atomico)
+        writeLines(file, lines);
 
     }
 
@@ -400,68 +432,61 @@ public class FileManager {
      * @throws IOException Se il file è formattato in modo errato.
      */
     public List<User> loadUsers(Path file) throws IOException {
+        List<User> result = new ArrayList<>(); // result contiene gli utenti validi 
+        forEachUser(file, result::add);
+        return result; // alla fine del metodo la lista contiene solo utenti validi 
+    }
+
+    /**
+     * @brief Legge in streaming gli utenti di un file, uno alla volta.
+     *
+     * Se il file non esiste viene creato vuoto nel formato configurato e il
+     * consumer non viene invocato; uno snapshot binario viene riconosciuto e
+     * letto automaticamente.
+     *
+     * @param file Percorso del file dei dati.
+     * @param consumer Destinatario degli utenti letti, nell'ordine del file.
+     * @throws IOException Se il file è formattato in modo errato.
+     */
+    public void forEachUser(Path file, Consumer<? super User> consumer) throws IOException {
         // verifico che il percorso del file non sia nullo
         if (file == null) {
             throw new IllegalArgumentException("file non deve essere null");
         }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer non deve essere null");
+        }
 
-        // se il file non è stato ancora cretao il metodo non fallisce ma:
+        // se il file non è stato ancora creato il metodo non fallisce: non ci sono utenti registrati
         if (!Files.exists(file)) {
-            // 1) se la directoru che deve contenere il file non esiste -> viene creata
-            Path parent = file.getParent();
-            if (parent != null) {
-                Files.createDirectories(parent);
-            }
-            // 2) creazione del file con solo l'header 
-            // viene creato il file + viene scritto solo l'header + il file viene inizializzato 
-            Files.write(file, Arrays.asList(USERS_HEADER), StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            return new ArrayList<>(); // restituisco lista vuota ( se il file non esiste ->  non ci sono utenti registrati) 
+            saveUsers(file, new ArrayList<User>());
+            return;
         }
+        if (SlottedRecordFile.isSlotted(file)) {
+            readSlotted(file, BinarySnapshotCodec.USERS, record -> consumer.accept(BinarySnapshotCodec.decodeUser(record)));
+            return;
+        }
+        if (BinarySnapshotCodec.isBinary(file)) {
+            BinarySnapshotCodec.readUsers(file, consumer);
+            return;
+        }
+        try (RecordReader reader = openRecords(file, USERS_HEADER)) {
+            while (reader.next()) {
+                // ogni riga deve contenere esattamente 4 campi
+                if (reader.fieldCount() != 4) {
+                    throw new IOException("Riga non valida nel file degli utenti: " + reader.rawLine());
+                }
 
-        // lettura del file esistente 
-        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8); // tutte le righe del file vengono lette in memoria
-        List<User> result = new ArrayList<>(); // result contiene gli utenti validi 
-
-        // iterazione riga per riga (uso un ciclo perche la prima riga è l'header e bisogna sapere quando i == 0)
-        for (int i = 0; i < lines.size(); i++) {
-            // ignoro righe nulle
-            String rawLine = lines.get(i);
-            if (rawLine == null) {
-                continue;
-            }
-
-            // rimuovo spazi inutili + righe vuote vengono ignorate 
-            String line = rawLine.trim();
-            if (line.isEmpty()) {
-                continue;
-            }
-
-            // la prima riga non rappresenta un utente perche è l'header
-            if (i == 0 && line.equals(USERS_HEADER)) {
-                continue;
-            }
+                // estrazione dei campi
+                String matricola = reader.field(0); // matricola è obbligatoria 
+                String firstName = reader.isEmpty(1) ? null : reader.field(1); // nome, cognome e mail se sono vuoti diventano null
+                String lastName = reader.isEmpty(2) ? null : reader.field(2);
+                String email = reader.isEmpty(3) ? null : reader.field(3);
 
-            // suddivisione della riga in campi
-            String[] parts = line.split("\\|", -1);
-            // ogni riga deve contenere esattamente 4 campi
-            if (parts.length != 4) {
-                throw new IOException("Riga non valida nel file degli utenti: " + rawLine);
+                // creazione dell'oggetto User
+                consumer.accept(new User(matricola, firstName, lastName, email));
             }
-
-            // estrazione dei campi
-            String matricola = parts[0]; // matricola è obbligatoria 
-            String firstName = emptyToNull(parts[1]); // nome, cognome e mail se sono vuoti diventano null
-            String lastName = emptyToNull(parts[2]);
-            String email = emptyToNull(parts[3]);
-
-            // creazione dell'oggetto User
-            User user = new User(matricola, firstName, lastName, email);
-            // l'utente valido viene salvato nella lista finale
-            result.add(user);
         }
-
-        return result; // alla fine del metodo la lista contiene solo utenti validi 
     }
 
     /**
@@ -481,6 +506,20 @@ public class FileManager {
         if (users == null) {
             throw new IllegalArgumentException("users non deve essere null");
         }
+        if (format == SnapshotFormat.SLOTTED) {
+            Map<String, byte[]> records = new LinkedHashMap<>();
+            for (User user : users) {
+                if (user != null) {
+                    records.put(user.getMatricola(), BinarySnapshotCodec.encodeUser(user));
+                }
+            }
+            writeSlotted(file, BinarySnapshotCodec.USERS, records);
+            return;
+        }
+        if (format == SnapshotFormat.BINARY) {
+            AtomicFileWriter.write(file, temp -> BinarySnapshotCodec.writeUsers(temp, users), backupGenerations);
+            return;
+        }
 
         List<String> lines = new ArrayList<>();
         lines.add(USERS_HEADER);
@@ -502,36 +541,254 @@ public class FileManager {
             lines.add(line);
         }
 
-        Path parent = file.getParent();
-        if (parent != null) {
-            Files.createDirectories(parent);
+        writeLines(file, lines);
+
+    }
+
+    // aggiornamenti incrementali (formato SLOTTED)
+    /**
+     * @brief Riscrive nel file solo i libri modificati e cancellati.
+     *
+     * Ogni libro viene scritto al proprio posto con una scrittura posizionale,
+     * poi il file viene sincronizzato una volta sola. L'aggiornamento non è
+     * possibile (e il metodo restituisce false, senza scrivere nulla) se il
+     * formato non è SLOTTED, se il file non è ancora nel formato a slot, se un
+     * record non entra nello slot o se le modifiche sono così tante che
+     * conviene riscrivere il file: in quei casi va usato saveBooks.
+     *
+     * Le modifiche sul posto non ruotano i backup: ".bak1" resta la versione
+     * precedente all'ultima riscrittura completa, non all'ultimo aggiornamento.
+     *
+     * @param file Percorso del file.
+     * @param changed Libri inseriti o modificati.
+     * @param removedIsbns ISBN dei libri cancellati.
+     * @return true se il file è stato aggiornato.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public boolean updateBooks(Path file, Collection<Book> changed, Collection<String> removedIsbns) throws IOException {
+        if (file == null || changed == null || removedIsbns == null) {
+            throw new IllegalArgumentException("file, changed e removedIsbns non devono essere null");
+        }
+        if (format != SnapshotFormat.SLOTTED) {
+            return false;
+        }
+        Map<String, byte[]> records = new LinkedHashMap<>();
+        for (Book book : changed) {
+            if (book != null) {
+                records.put(book.getIsbn(), BinarySnapshotCodec.encodeBook(book));
+            }
+        }
+        return updateSlotted(file, BinarySnapshotCodec.BOOKS, records, removedIsbns);
+    }
+
+    /**
+     * @brief Riscrive nel file solo gli utenti modificati e cancellati.
+     *
+     * Stesse regole di updateBooks.
+     *
+     * @param file Percorso del file.
+     * @param changed Utenti inseriti o modificati.
+     * @param removedMatricole Matricole degli utenti cancellati.
+     * @return true se il file è stato aggiornato.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public boolean updateUsers(Path file, Collection<User> changed, Collection<String> removedMatricole) throws IOException {
+        if (file == null || changed == null || removedMatricole == null) {
+            throw new IllegalArgumentException("file, changed e removedMatricole non devono essere null");
+        }
+        if (format != SnapshotFormat.SLOTTED) {
+            return false;
+        }
+        Map<String, byte[]> records = new LinkedHashMap<>();
+        for (User user : changed) {
+            if (user != null) {
+                records.put(user.getMatricola(), BinarySnapshotCodec.encodeUser(user));
+            }
         }
+        return updateSlotted(file, BinarySnapshotCodec.USERS, records, removedMatricole);
+    }
 
-        Files.write(file, lines, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    /**
+     * @brief Chiude i file rimasti aperti per gli aggiornamenti incrementali.
+     *
+     * @throws IOException In caso di errori di chiusura.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (stores) {
+            IOException failure = null;
+            for (SlottedRecordFile store : stores.values()) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            stores.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
 
+    // formato di riga dei prestiti (condiviso con LoanJournal)
+    /**
+     * @brief Converte un prestito nella corrispondente riga di testo.
+     *
+     * Il formato è quello del file dei prestiti:
+     * Matricola|ISBN|DataPrestito|DataRestituzionePrevista|DataRestituzioneEffettiva.
+     * Una data di restituzione assente viene scritta come "null".
+     *
+     * @param loan Prestito da convertire (non null).
+     * @return La riga di testo che rappresenta il prestito.
+     * @throws IllegalArgumentException Se un campo contiene il separatore.
+     */
+    static String formatLoan(Loan loan) {
+        // estrazione e validazione dei campi 
+        String matricola = requireNoSeparator(loan.getUserMatricola()); // controlla che non contenga il separatore
+        String isbn = requireNoSeparator(loan.getBookIsbn());
+        String loanDate = loan.getLoanDate().toString(); // conversione delle date in stringhe
+        String dueDate = loan.getDueDate().toString();
+
+        //se returnDate esiste -> scrivila come data 
+        // se returnDate è null -> scrivi la stringa null ( null nel file rappresenta prestito non restituito)
+        String returnDate = loan.getReturnDate() != null ? loan.getReturnDate().toString() : "null";
+
+        return String.join(SEPARATOR, matricola, isbn, loanDate, dueDate, returnDate);
     }
 
-    // metodi di utilità 
     /**
-     * @brief Converte un valore null in stringa vuota.
+     * @brief Ricostruisce un prestito a partire dai campi di una riga.
      *
-     * @param value Valore da convertire.
-     * @return Stringa vuota se il valore è null; altrimenti il valore stesso.
+     * @param parts I cinque campi della riga, già separati.
+     * @param rawLine La riga originale, usata nei messaggi di errore.
+     * @return Il prestito corrispondente.
+     * @throws IOException Se il numero di campi è errato o una data non è valida.
      */
-    private static String nullToEmpty(String value) {
-        return value == null ? "" : value;
+    static Loan parseLoan(String[] parts, String rawLine) throws IOException {
+        // ogni riga deve contenere esattamente 5 campi -> se il formato non è rispettato -> file non valido
+        if (parts.length != 5) {
+            throw new IOException("Riga non valida nel file dei prestiti: " + rawLine);
+        }
+
+        // estrazione dei valori testuali
+        String matricola = parts[0];
+        String isbn = parts[1];
+        String loanDateStr = parts[2];
+        String dueDateStr = parts[3];
+        String returnDateStr = parts[4];
+
+        // se una data è scritta male -> il file dei prestiti non è valido
+        try {
+            java.time.LocalDate loanDate = java.time.LocalDate.parse(loanDateStr);
+            java.time.LocalDate dueDate = java.time.LocalDate.parse(dueDateStr);
 
+            java.time.LocalDate returnDate = null; // inzializzo la data di restituizione a null -> prestito non restituito
+            String trimmedReturn = returnDateStr == null ? "" : returnDateStr.trim();
+
+            // entra nell'if solo se la data di restituzione è davvero presente (non vuota e non "null")
+            if (!trimmedReturn.isEmpty() && !"null".equalsIgnoreCase(trimmedReturn)) {
+                returnDate = java.time.LocalDate.parse(trimmedReturn);
+            }
+
+            return new Loan(matricola, isbn, loanDate, dueDate, returnDate);
+        } catch (java.time.format.DateTimeParseException e) {
+            // trasforma l'errore di parsing in un errore di file (ioexception)
+            throw new IOException("Valore di data non valido nella riga del file dei prestiti: " + rawLine, e);
+        }
     }
 
     /**
-     * @brief Converte una stringa vuota in null.
+     * @brief Ricostruisce un prestito a partire dal record corrente di un reader.
+     *
+     * Equivalente a parseLoan(String[], String), ma converte le date
+     * direttamente dalla riga senza creare le stringhe dei singoli campi.
+     *
+     * @param reader Reader posizionato su un record del file dei prestiti.
+     * @return Il prestito corrispondente.
+     * @throws IOException Se il numero di campi è errato o una data non è valida.
+     */
+    static Loan parseLoan(RecordReader reader) throws IOException {
+        if (reader.fieldCount() != 5) {
+            throw new IOException("Riga non valida nel file dei prestiti: " + reader.rawLine());
+        }
+        try {
+            LocalDate loanDate = reader.dateField(2);
+            LocalDate dueDate = reader.dateField(3);
+
+            // prestito non restituito se il campo è vuoto o contiene "null"
+            LocalDate returnDate = null;
+            if (!reader.fieldEqualsIgnoreCase(4, "") && !reader.fieldEqualsIgnoreCase(4, "null")) {
+                returnDate = LocalDate.parse(reader.field(4).trim());
+            }
+
+            return new Loan(reader.field(0), reader.field(1), loanDate, dueDate, returnDate);
+        } catch (DateTimeParseException e) {
+            throw new IOException("Valore di data non valido nella riga del file dei prestiti: " + reader.rawLine(), e);
+        }
+    }
+
+    // lettura in streaming
+    /**
+     * @brief Apre un file di testo esistente in lettura.
+     *
+     * @param file Percorso del file.
+     * @param header Header del file, saltato se presente sulla prima riga.
+     * @return Il reader sui record del file.
+     * @throws IOException In caso di errori di I/O.
+     */
+    private static RecordReader openRecords(Path file, String header) throws IOException {
+        BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        return new RecordReader(in, header);
+    }
+
+    /**
+     * @brief Scrive le righe di un file di testo con una sostituzione atomica.
+     *
+     * @param file Percorso del file.
+     * @param lines Righe da scrivere.
+     * @throws IOException In caso di errori di I/O.
+     */
+    private void writeLines(Path file, List<String> lines) throws IOException {
+        AtomicFileWriter.write(file, temp -> Files.write(temp, lines, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), backupGenerations);
+    }
+
+    /**
+     * @brief Suddivide il campo autori (separati da ';') in una lista.
+     *
+     * I nomi vengono rifilati e quelli vuoti ignorati.
+     *
+     * @param authorsStr Il campo autori, non vuoto.
+     * @return La lista degli autori.
+     */
+    private static List<String> parseAuthors(String authorsStr) {
+        List<String> authors = new ArrayList<>();
+        int start = 0;
+        while (start <= authorsStr.length()) {
+            int end = authorsStr.indexOf(';', start);
+            if (end < 0) {
+                end = authorsStr.length();
+            }
+            String trimmed = authorsStr.substring(start, end).trim();
+            if (!trimmed.isEmpty()) {
+                authors.add(trimmed);
+            }
+            start = end + 1;
+        }
+        return authors;
+    }
+
+    // metodi di utilità 
+    /**
+     * @brief Converte un valore null in stringa vuota.
      *
      * @param value Valore da convertire.
-     * @return null se la stringa è vuota; altrimenti la stringa originale.
+     * @return Stringa vuota se il valore è null; altrimenti il valore stesso.
      */
-    private static String emptyToNull(String value) {
-        return value == null || value.isEmpty() ? null : value;
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+
     }
 
     /**
@@ -550,4 +807,110 @@ public class FileManager {
         }
         return value;
     }
+
+    /**
+     * @brief Scrive un file a slot completo, chiudendo prima l'eventuale versione aperta.
+     *
+     * @param file Percorso del file.
+     * @param kind Tipo di contenuto.
+     * @param records Chiave → record.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void writeSlotted(Path file, byte kind, Map<String, byte[]> records) throws IOException {
+        synchronized (stores) {
+            SlottedRecordFile open = stores.remove(file);
+            if (open != null) {
+                open.close();
+            }
+            SlottedRecordFile.write(file, kind, records, backupGenerations);
+        }
+    }
+
+    /**
+     * @brief Applica al file a slot le modifiche indicate, se possibile.
+     *
+     * @param file Percorso del file.
+     * @param kind Tipo di contenuto.
+     * @param records Chiave → record da scrivere.
+     * @param removed Chiavi da cancellare.
+     * @return true se il file è stato aggiornato.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private boolean updateSlotted(Path file, byte kind, Map<String, byte[]> records, Collection<String> removed)
+            throws IOException {
+        synchronized (stores) {
+            SlottedRecordFile store = stores.get(file);
+            if (store == null || !store.isCurrent()) {
+                // file mai aperto, oppure sostituito da una riscrittura completa (es. commit di una transazione)
+                if (store != null) {
+                    stores.remove(file);
+                    store.close();
+                }
+                if (!Files.exists(file) || !SlottedRecordFile.isSlotted(file)) {
+                    return false;
+                }
+                store = SlottedRecordFile.open(file, kind);
+                stores.put(file, store);
+            }
+            if (records.size() + removed.size() > Math.max(INCREMENTAL_MIN_CHANGES, store.size() / INCREMENTAL_FRACTION)) {
+                return false;
+            }
+            for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+                if (!store.fits(entry.getKey(), entry.getValue())) {
+                    return false;
+                }
+            }
+            try {
+                for (String key : removed) {
+                    if (key != null) {
+                        store.remove(key);
+                    }
+                }
+                for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+                    store.put(entry.getKey(), entry.getValue());
+                }
+                store.force();
+            } catch (IOException | RuntimeException e) {
+                // lo stato dell'indice in memoria non è più affidabile: alla prossima scrittura il file viene riaperto
+                stores.remove(file);
+                store.close();
+                throw e;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @brief Destinatario di un record binario letto da un file a slot.
+     */
+    private interface RecordConsumer {
+
+        /**
+         * @param record Il record.
+         * @throws IOException Se il record non è valido.
+         */
+        void accept(byte[] record) throws IOException;
+    }
+
+    /**
+     * @brief Legge i record di un file a slot.
+     *
+     * @param file Percorso del file.
+     * @param kind Tipo di contenuto atteso.
+     * @param consumer Destinatario dei record.
+     * @throws IOException Se il file o un record non sono validi.
+     */
+    private static void readSlotted(Path file, byte kind, RecordConsumer consumer) throws IOException {
+        try {
+            SlottedRecordFile.forEach(file, kind, record -> {
+                try {
+                    consumer.accept(record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new IOException("Record non valido nel file " + file, e.getCause());
+        }
+    }
 }
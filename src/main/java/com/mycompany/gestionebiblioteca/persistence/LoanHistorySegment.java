@@ -0,0 +1,773 @@
+/**
+ * @file LoanHistorySegment.java
+ * @brief Segmento su file dei prestiti storici (già restituiti).
+ *
+ * I prestiti restituiti non servono quasi mai all'interfaccia, che mostra
+ * soprattutto i prestiti attivi: invece di tenerli tutti in memoria vengono
+ * spostati in questo file e riletti solo quando viene chiesto lo storico di
+ * un utente o di un libro.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class LoanHistorySegment
+ * @brief File append-only dei prestiti restituiti, letto in streaming su richiesta.
+ *
+ * Il formato dei record è quello di LoanJournal:
+ * - "S|Matricola|ISBN|DataPrestito|DataScadenza|DataRestituzione" per un prestito archiviato;
+ * - "D|id" per una cancellazione.
+ *
+ * Le ricerche scorrono il file a blocchi e tengono in memoria solo i
+ * prestiti che soddisfano il filtro, quindi la memoria occupata non cresce
+ * con gli anni di storico. Un record ripetuto sostituisce il precedente.
+ * Un'eventuale ultima riga incompleta (scrittura interrotta) viene tolta dal
+ * file prima della prima scrittura, come nel journal dei prestiti.
+ * Ogni scrittura viene sincronizzata su disco prima di tornare, così il
+ * chiamante può poi togliere i prestiti dal file dei prestiti attivi.
+ *
+ * In memoria restano solo dei contatori, salvati anche nel file
+ * "<segmento>.counters": record totali e prestiti validi fino a una certa
+ * posizione del file, più la data di prestito più recente archiviata. Le
+ * scritture aggiungono record in coda senza consultare il file; quando i
+ * record non ancora contati raggiungono la soglia (o quando viene chiesto
+ * count()) vengono verificati rileggendo il file solo per i loro
+ * identificativi. Quando i record superati (sostituiti o cancellati) sono
+ * più di quelli validi, e almeno la soglia indicata, il file viene
+ * riscritto con i soli record validi.
+ */
+public class LoanHistorySegment {
+
+    /**
+     * @brief Prefisso dei record di archiviazione.
+     */
+    private static final String SAVE_RECORD = "S";
+
+    /**
+     * @brief Prefisso dei record di cancellazione.
+     */
+    private static final String DELETE_RECORD = "D";
+
+    /**
+     * @brief Estensione del segmento storico rispetto al file dei prestiti.
+     */
+    private static final String HISTORY_SUFFIX = ".history";
+
+    /**
+     * @brief Estensione del file dei contatori rispetto al segmento.
+     */
+    private static final String COUNTERS_SUFFIX = ".counters";
+
+    /**
+     * @brief Dimensione (in byte) dei blocchi letti durante le ricerche.
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * @brief Numero minimo predefinito di record superati prima di una compattazione.
+     */
+    private static final int DEFAULT_COMPACTION_MIN_DEAD_RECORDS = 1024;
+
+    /**
+     * @brief Percorso del file del segmento.
+     */
+    private final Path segmentFile;
+
+    /**
+     * @brief Percorso del file dei contatori.
+     */
+    private final Path countersFile;
+
+    /**
+     * @brief Record superati oltre i quali (e oltre il numero dei validi) il file viene compattato.
+     *
+     * È anche il numero di record non ancora contati oltre il quale i contatori vengono verificati.
+     */
+    private final int compactionMinDeadRecords;
+
+    /**
+     * @brief true dopo che contatori e coda del file sono stati letti.
+     */
+    private boolean opened;
+
+    /**
+     * @brief Byte iniziali del file già considerati nei contatori.
+     */
+    private long countedBytes;
+
+    /**
+     * @brief Numero di record completi nei byte contati, validi e superati.
+     */
+    private long records;
+
+    /**
+     * @brief Numero di prestiti validi nei byte contati.
+     */
+    private long live;
+
+    /**
+     * @brief Record completi scritti dopo i byte contati.
+     */
+    private long pending;
+
+    /**
+     * @brief Data di prestito più recente fra i record di archiviazione (null se non ce ne sono).
+     *
+     * Un prestito con data successiva non può essere nello storico: serve a
+     * rispondere a contains() senza leggere il file per i prestiti nuovi.
+     */
+    private LocalDate latestLoanDate;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param segmentFile Percorso del file del segmento (viene creato alla prima scrittura).
+     * @throws IllegalArgumentException Se segmentFile è null.
+     */
+    public LoanHistorySegment(Path segmentFile) {
+        this(segmentFile, DEFAULT_COMPACTION_MIN_DEAD_RECORDS);
+    }
+
+    /**
+     * @brief Costruttore con soglia di compattazione.
+     *
+     * @param segmentFile Percorso del file del segmento (viene creato alla prima scrittura).
+     * @param compactionMinDeadRecords Numero minimo di record superati prima di compattare (maggiore di 0).
+     * @throws IllegalArgumentException Se segmentFile è null o la soglia non è positiva.
+     */
+    public LoanHistorySegment(Path segmentFile, int compactionMinDeadRecords) {
+        if (segmentFile == null) {
+            throw new IllegalArgumentException("segmentFile non deve essere null");
+        }
+        if (compactionMinDeadRecords <= 0) {
+            throw new IllegalArgumentException("compactionMinDeadRecords deve essere positivo");
+        }
+        this.segmentFile = segmentFile;
+        this.countersFile = segmentFile.resolveSibling(segmentFile.getFileName() + COUNTERS_SUFFIX);
+        this.compactionMinDeadRecords = compactionMinDeadRecords;
+    }
+
+    /**
+     * @brief Restituisce il percorso predefinito del segmento associato a un file di prestiti.
+     *
+     * @param loansFile Il file dei prestiti.
+     * @return Il percorso del segmento (stessa cartella, suffisso ".history").
+     */
+    public static Path defaultPathFor(Path loansFile) {
+        if (loansFile == null) {
+            throw new IllegalArgumentException("loansFile non deve essere null");
+        }
+        return loansFile.resolveSibling(loansFile.getFileName() + HISTORY_SUFFIX);
+    }
+
+    /**
+     * @brief Restituisce il percorso del segmento.
+     *
+     * @return Il percorso del file.
+     */
+    public Path getSegmentFile() {
+        return segmentFile;
+    }
+
+    /**
+     * @brief Archivia dei prestiti con una sola scrittura sincronizzata.
+     *
+     * Un prestito già presente viene sostituito; il file non viene letto.
+     *
+     * @param loans I prestiti da archiviare.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public synchronized void append(Collection<Loan> loans) throws IOException {
+        if (loans == null) {
+            throw new IllegalArgumentException("loans non deve essere null");
+        }
+        open();
+        StringBuilder text = new StringBuilder();
+        for (Loan loan : loans) {
+            text.append(SAVE_RECORD).append('|').append(FileManager.formatLoan(loan)).append('\n');
+        }
+        write(text);
+        for (Loan loan : loans) {
+            pending++;
+            noteLoanDate(loan.getLoanDate());
+        }
+        verifyIfNeeded();
+    }
+
+    /**
+     * @brief Cancella dei prestiti dallo storico con una sola scrittura sincronizzata.
+     *
+     * Il file non viene letto: una cancellazione di un prestito non archiviato
+     * è un record superato come gli altri e sparisce alla compattazione.
+     *
+     * @param ids Identificativi dei prestiti da cancellare.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public synchronized void appendDelete(Collection<LoanId> ids) throws IOException {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids non deve essere null");
+        }
+        open();
+        StringBuilder text = new StringBuilder();
+        Set<LoanId> deleted = new HashSet<>();
+        for (LoanId id : ids) {
+            String idText = id.toString();
+            if (idText.indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("id non valido: " + idText);
+            }
+            if (deleted.add(id)) {
+                text.append(DELETE_RECORD).append('|').append(idText).append('\n');
+            }
+        }
+        write(text);
+        pending += deleted.size();
+        verifyIfNeeded();
+    }
+
+    /**
+     * @brief Restituisce il numero di prestiti nello storico.
+     *
+     * I record scritti dopo l'ultimo conteggio vengono prima verificati.
+     *
+     * @return Il numero di prestiti distinti archiviati e non cancellati.
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     */
+    public synchronized int count() throws IOException {
+        open();
+        verify();
+        return (int) live;
+    }
+
+    /**
+     * @brief Verifica se un prestito è nello storico.
+     *
+     * @param id Identificativo del prestito.
+     * @return true se il prestito è archiviato e non cancellato.
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     * @see #findArchived(Collection)
+     */
+    public synchronized boolean contains(LoanId id) throws IOException {
+        if (id == null) {
+            return false;
+        }
+        return !findArchived(Collections.singletonList(id)).isEmpty();
+    }
+
+    /**
+     * @brief Restituisce quali degli identificativi indicati sono nello storico.
+     *
+     * Gli identificativi con data di prestito successiva a quella di ogni
+     * prestito archiviato vengono scartati senza leggere il file (è il caso
+     * dei prestiti appena aperti); per gli altri il file viene letto una volta.
+     *
+     * @param ids Identificativi da cercare.
+     * @return Gli identificativi archiviati e non cancellati.
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     */
+    public synchronized Set<LoanId> findArchived(Collection<? extends LoanId> ids) throws IOException {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids non deve essere null");
+        }
+        open();
+        Set<LoanId> candidates = new HashSet<>();
+        for (LoanId id : ids) {
+            if (id != null && latestLoanDate != null && !id.getLoanDate().isAfter(latestLoanDate)) {
+                candidates.add(id);
+            }
+        }
+        Set<LoanId> found = new HashSet<>();
+        if (candidates.isEmpty()) {
+            return found;
+        }
+        scan(0, Long.MAX_VALUE, new LoanJournal.Visitor() {
+            @Override
+            public void onSave(Loan loan) {
+                if (candidates.contains(loan.getId())) {
+                    found.add(loan.getId());
+                }
+            }
+
+            @Override
+            public void onDelete(LoanId id) {
+                found.remove(id);
+            }
+        });
+        return found;
+    }
+
+    /**
+     * @brief Restituisce i prestiti archiviati che soddisfano un filtro.
+     *
+     * @param filter Il filtro.
+     * @return I prestiti corrispondenti, nell'ordine di archiviazione.
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     */
+    public synchronized List<Loan> find(Predicate<? super Loan> filter) throws IOException {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter non deve essere null");
+        }
+        Map<LoanId, Loan> matches = new LinkedHashMap<>();
+        scan(0, Long.MAX_VALUE, new LoanJournal.Visitor() {
+            @Override
+            public void onSave(Loan loan) {
+                LoanId id = loan.getId();
+                // un record più recente sostituisce il precedente anche se non soddisfa più il filtro
+                matches.remove(id);
+                if (filter.test(loan)) {
+                    matches.put(id, loan);
+                }
+            }
+
+            @Override
+            public void onDelete(LoanId id) {
+                matches.remove(id);
+            }
+        });
+        return new ArrayList<>(matches.values());
+    }
+
+    /**
+     * @brief Cerca un prestito archiviato tramite il suo identificativo.
+     *
+     * @param id Identificativo del prestito.
+     * @return Il prestito, oppure empty() se non è nello storico.
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     */
+    public synchronized Optional<Loan> findById(LoanId id) throws IOException {
+        if (id == null) {
+            return Optional.empty();
+        }
+        open();
+        if (latestLoanDate == null || id.getLoanDate().isAfter(latestLoanDate)) {
+            return Optional.empty();
+        }
+        List<Loan> found = find(loan -> id.equals(loan.getId()));
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    /**
+     * @brief Svuota lo storico.
+     *
+     * @throws IOException In caso di errori.
+     */
+    public synchronized void truncate() throws IOException {
+        Files.deleteIfExists(countersFile);
+        Files.deleteIfExists(segmentFile);
+        countedBytes = 0;
+        records = 0;
+        live = 0;
+        pending = 0;
+        latestLoanDate = null;
+        opened = true;
+    }
+
+    /**
+     * @brief Riscrive il file con i soli record validi (l'ultimo di ogni prestito non cancellato).
+     *
+     * Il file viene letto due volte in streaming: la prima individua l'ultimo
+     * record di ogni prestito, la seconda scrive quei record su un temporaneo
+     * che sostituisce il file in modo atomico. L'ordine di archiviazione dei
+     * record rimasti non cambia. Il file dei contatori viene tolto prima della
+     * sostituzione e riscritto dopo: se manca, all'avvio i contatori vengono
+     * ricostruiti.
+     *
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public synchronized void compact() throws IOException {
+        open();
+        if (!Files.exists(segmentFile)) {
+            return;
+        }
+        Map<LoanId, Long> latest = latestRecords();
+        LocalDate[] newest = {null};
+        Files.deleteIfExists(countersFile);
+        AtomicFileWriter.write(segmentFile, temp -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                long[] position = {0};
+                scan(0, Long.MAX_VALUE, new LoanJournal.Visitor() {
+                    @Override
+                    public void onSave(Loan loan) {
+                        Long last = latest.get(loan.getId());
+                        if (last != null && last == position[0]) {
+                            try {
+                                writer.write(SAVE_RECORD + "|" + FileManager.formatLoan(loan) + "\n");
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            if (newest[0] == null || loan.getLoanDate().isAfter(newest[0])) {
+                                newest[0] = loan.getLoanDate();
+                            }
+                        }
+                        position[0]++;
+                    }
+
+                    @Override
+                    public void onDelete(LoanId id) {
+                        position[0]++;
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }, 0);
+        countedBytes = Files.size(segmentFile);
+        records = latest.size();
+        live = latest.size();
+        pending = 0;
+        latestLoanDate = newest[0];
+        writeCounters();
+    }
+
+    /**
+     * @brief Legge i contatori e la coda del file non ancora contata.
+     *
+     * Prima viene tolta l'eventuale ultima riga incompleta, così la scrittura
+     * successiva non finisce attaccata al frammento. Se il file dei contatori
+     * manca o non corrisponde al segmento (storico scritto da una versione
+     * precedente, o crash durante una compattazione) i contatori vengono
+     * ricostruiti con una lettura completa.
+     *
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     */
+    private void open() throws IOException {
+        if (opened) {
+            return;
+        }
+        LoanJournal.truncateIncompleteTail(segmentFile);
+        long size = Files.exists(segmentFile) ? Files.size(segmentFile) : 0;
+        if (!readCounters(size)) {
+            rebuildCounters();
+            size = countedBytes;
+        }
+        pending = 0;
+        scan(countedBytes, size, new LoanJournal.Visitor() {
+            @Override
+            public void onSave(Loan loan) {
+                pending++;
+                noteLoanDate(loan.getLoanDate());
+            }
+
+            @Override
+            public void onDelete(LoanId id) {
+                pending++;
+            }
+        });
+        opened = true;
+    }
+
+    /**
+     * @brief Legge il file dei contatori.
+     *
+     * @param size Dimensione attuale del segmento.
+     * @return true se i contatori sono validi per il segmento.
+     * @throws IOException In caso di errori di lettura.
+     */
+    private boolean readCounters(long size) throws IOException {
+        if (!Files.exists(countersFile)) {
+            return false;
+        }
+        String[] parts = new String(Files.readAllBytes(countersFile), StandardCharsets.UTF_8).trim().split("\\|", -1);
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            long bytes = Long.parseLong(parts[0]);
+            long total = Long.parseLong(parts[1]);
+            long valid = Long.parseLong(parts[2]);
+            if (bytes > size || valid < 0 || valid > total) {
+                return false;
+            }
+            countedBytes = bytes;
+            records = total;
+            live = valid;
+            latestLoanDate = parts[3].isEmpty() ? null : LocalDate.parse(parts[3]);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @brief Ricostruisce i contatori leggendo tutto il segmento.
+     *
+     * È l'unico caso in cui viene tenuto in memoria (temporaneamente)
+     * l'insieme degli identificativi: succede solo senza un file dei
+     * contatori valido.
+     *
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    private void rebuildCounters() throws IOException {
+        Set<LoanId> ids = new HashSet<>();
+        long[] total = {0};
+        LocalDate[] newest = {null};
+        scan(0, Long.MAX_VALUE, new LoanJournal.Visitor() {
+            @Override
+            public void onSave(Loan loan) {
+                ids.add(loan.getId());
+                total[0]++;
+                if (newest[0] == null || loan.getLoanDate().isAfter(newest[0])) {
+                    newest[0] = loan.getLoanDate();
+                }
+            }
+
+            @Override
+            public void onDelete(LoanId id) {
+                ids.remove(id);
+                total[0]++;
+            }
+        });
+        countedBytes = Files.exists(segmentFile) ? Files.size(segmentFile) : 0;
+        records = total[0];
+        live = ids.size();
+        latestLoanDate = newest[0];
+        writeCounters();
+    }
+
+    /**
+     * @brief Verifica i record non ancora contati quando raggiungono la soglia, poi compatta se serve.
+     *
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    private void verifyIfNeeded() throws IOException {
+        if (pending < compactionMinDeadRecords) {
+            return;
+        }
+        verify();
+        long dead = records - live;
+        if (dead >= compactionMinDeadRecords && dead > live) {
+            compact();
+        }
+    }
+
+    /**
+     * @brief Aggiunge ai contatori i record scritti dopo l'ultimo conteggio.
+     *
+     * I record non contati vengono letti in memoria (sono al più qualche
+     * soglia di compattazione); il resto del file viene scorso solo per
+     * sapere quali dei loro identificativi erano già validi.
+     *
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    private void verify() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        long size = Files.size(segmentFile);
+        List<Map.Entry<LoanId, Boolean>> tail = new ArrayList<>();
+        scan(countedBytes, size, new LoanJournal.Visitor() {
+            @Override
+            public void onSave(Loan loan) {
+                tail.add(new AbstractMap.SimpleImmutableEntry<>(loan.getId(), Boolean.TRUE));
+            }
+
+            @Override
+            public void onDelete(LoanId id) {
+                tail.add(new AbstractMap.SimpleImmutableEntry<>(id, Boolean.FALSE));
+            }
+        });
+        Set<LoanId> touched = new HashSet<>();
+        for (Map.Entry<LoanId, Boolean> record : tail) {
+            touched.add(record.getKey());
+        }
+        Set<LoanId> present = new HashSet<>();
+        scan(0, countedBytes, new LoanJournal.Visitor() {
+            @Override
+            public void onSave(Loan loan) {
+                if (touched.contains(loan.getId())) {
+                    present.add(loan.getId());
+                }
+            }
+
+            @Override
+            public void onDelete(LoanId id) {
+                present.remove(id);
+            }
+        });
+        for (Map.Entry<LoanId, Boolean> record : tail) {
+            records++;
+            if (record.getValue()) {
+                if (present.add(record.getKey())) {
+                    live++;
+                }
+            } else if (present.remove(record.getKey())) {
+                live--;
+            }
+        }
+        countedBytes = size;
+        pending = 0;
+        writeCounters();
+    }
+
+    /**
+     * @brief Individua la posizione dell'ultimo record di ogni prestito valido.
+     *
+     * @return Per ogni prestito valido, l'indice del suo ultimo record.
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     */
+    private Map<LoanId, Long> latestRecords() throws IOException {
+        Map<LoanId, Long> latest = new HashMap<>();
+        long[] ordinal = {0};
+        scan(0, Long.MAX_VALUE, new LoanJournal.Visitor() {
+            @Override
+            public void onSave(Loan loan) {
+                latest.put(loan.getId(), ordinal[0]++);
+            }
+
+            @Override
+            public void onDelete(LoanId id) {
+                latest.remove(id);
+                ordinal[0]++;
+            }
+        });
+        return latest;
+    }
+
+    /**
+     * @brief Scrive in modo atomico il file dei contatori.
+     *
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void writeCounters() throws IOException {
+        if (!Files.exists(segmentFile)) {
+            Files.deleteIfExists(countersFile);
+            return;
+        }
+        String text = countedBytes + "|" + records + "|" + live + "|"
+                + (latestLoanDate == null ? "" : latestLoanDate.toString()) + "\n";
+        AtomicFileWriter.write(countersFile,
+                temp -> Files.write(temp, text.getBytes(StandardCharsets.UTF_8)), 0);
+    }
+
+    /**
+     * @brief Aggiorna la data di prestito più recente archiviata.
+     *
+     * @param loanDate Data di prestito di un record di archiviazione.
+     */
+    private void noteLoanDate(LocalDate loanDate) {
+        if (latestLoanDate == null || loanDate.isAfter(latestLoanDate)) {
+            latestLoanDate = loanDate;
+        }
+    }
+
+    /**
+     * @brief Aggiunge dei record in coda al file e li sincronizza su disco.
+     *
+     * @param records I record, ciascuno terminato da '\n'.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void write(CharSequence records) throws IOException {
+        if (records.length() == 0) {
+            return;
+        }
+        Path parent = segmentFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(segmentFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // la scrittura può essere arrivata a metà: coda e contatori vanno riletti
+            opened = false;
+            throw e;
+        }
+    }
+
+    /**
+     * @brief Scorre a blocchi i record completi compresi fra due posizioni del file.
+     *
+     * Le posizioni devono cadere all'inizio di un record. Le righe vengono
+     * spezzate sui byte '\n', che in UTF-8 non compaiono mai dentro un
+     * carattere multibyte.
+     *
+     * @param from Posizione (in byte) del primo record.
+     * @param to Posizione (in byte) oltre la quale fermarsi.
+     * @param visitor Destinatario dei record completi.
+     * @throws IOException Se il file non è leggibile o contiene un record non valido.
+     */
+    private void scan(long from, long to, LoanJournal.Visitor visitor) throws IOException {
+        if (from >= to || !Files.exists(segmentFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            long end = Math.min(to, channel.size());
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = from;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(READ_BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+                    if (b == '\n') {
+                        visit(new String(line.toByteArray(), StandardCharsets.UTF_8), visitor);
+                        line.reset();
+                    } else {
+                        line.write(b);
+                    }
+                }
+            }
+            // quanto resta in "line" non è terminato da '\n': scrittura interrotta, viene ignorato
+            // (e tolto dal file alla prima scrittura)
+        }
+    }
+
+    /**
+     * @brief Interpreta un record completo.
+     *
+     * @param record La riga del record.
+     * @param visitor Destinatario del record.
+     * @throws IOException Se il record non è valido.
+     */
+    private static void visit(String record, LoanJournal.Visitor visitor) throws IOException {
+        if (record.trim().isEmpty()) {
+            return;
+        }
+        if (record.startsWith(SAVE_RECORD + "|")) {
+            String[] parts = record.substring(2).split("\\|", -1);
+            visitor.onSave(FileManager.parseLoan(parts, record));
+        } else if (record.startsWith(DELETE_RECORD + "|")) {
+            visitor.onDelete(LoanJournal.parseId(record.substring(2), record));
+        } else {
+            throw new IOException("Record non valido nello storico dei prestiti: " + record);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/**
+ * @file LoanJournal.java
+ * @brief Journal append-only delle modifiche ai prestiti.
+ *
+ * Il journal affianca il file dei prestiti (snapshot): ogni modifica viene
+ * aggiunta in coda come singolo record, senza riscrivere l'intero file.
+ * All'avvio i record vengono rieseguiti sopra lo snapshot e, periodicamente,
+ * vengono "compattati" riscrivendo lo snapshot e svuotando il journal.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class LoanJournal
+ * @brief Write-ahead log dei prestiti basato su un file di testo.
+ *
+ * Ogni riga del journal è un record:
+ * - "S|Matricola|ISBN|DataPrestito|DataScadenza|DataRestituzione" per un salvataggio;
+ * - "D|id" per una cancellazione.
+ *
+ * I record sono idempotenti (upsert e delete dell'entità completa), quindi
+ * rieseguire il journal sopra uno snapshot più recente produce lo stesso stato.
+ * Un'eventuale ultima riga incompleta (scrittura interrotta da un crash) viene
+ * tolta dal file prima della riesecuzione o della prima scrittura: il record
+ * successivo non può finire attaccato al frammento.
+ * Ogni scrittura viene sincronizzata su disco (FileChannel.force) prima di
+ * tornare: un record confermato sopravvive anche a un crash del sistema
+ * operativo o a un'interruzione di corrente, non solo a quello del programma.
+ */
+public class LoanJournal {
+
+    /**
+     * @brief Prefisso dei record di salvataggio.
+     */
+    private static final String SAVE_RECORD = "S";
+
+    /**
+     * @brief Prefisso dei record di cancellazione.
+     */
+    private static final String DELETE_RECORD = "D";
+
+    /**
+     * @brief Estensione del file di journal rispetto al file dei prestiti.
+     */
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * @brief Dimensione dei blocchi letti a ritroso per cercare l'ultimo record completo.
+     */
+    private static final int TAIL_BLOCK_SIZE = 4096;
+
+    /**
+     * @brief Percorso del file di journal.
+     */
+    private final Path journalFile;
+
+    /**
+     * @brief Numero di record presenti nel journal dall'ultima compattazione.
+     */
+    private int size;
+
+    /**
+     * @brief true se la coda del file è già stata verificata (nessun record incompleto).
+     */
+    private boolean tailChecked;
+
+    /**
+     * @interface Visitor
+     * @brief Riceve i record del journal durante la riesecuzione.
+     */
+    public interface Visitor {
+
+        /**
+         * @brief Invocato per ogni record di salvataggio.
+         * @param loan Il prestito salvato.
+         */
+        void onSave(Loan loan);
+
+        /**
+         * @brief Invocato per ogni record di cancellazione.
+         * @param id Identificativo del prestito cancellato.
+         */
+        void onDelete(LoanId id);
+    }
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param journalFile Percorso del file di journal.
+     * @throws IllegalArgumentException Se il percorso è null.
+     */
+    public LoanJournal(Path journalFile) {
+        if (journalFile == null) {
+            throw new IllegalArgumentException("journalFile non deve essere null");
+        }
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * @brief Restituisce il percorso di journal predefinito per un file di prestiti.
+     *
+     * Il journal viene posizionato accanto al file (es. "loans.txt.journal").
+     *
+     * @param loansFile Il file dei prestiti.
+     * @return Il percorso del journal.
+     */
+    public static Path defaultPathFor(Path loansFile) {
+        if (loansFile == null) {
+            throw new IllegalArgumentException("loansFile non deve essere null");
+        }
+        return loansFile.resolveSibling(loansFile.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * @brief Restituisce il percorso del file di journal.
+     * @return Il percorso del journal.
+     */
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * @brief Restituisce il numero di record dall'ultima compattazione.
+     * @return Il numero di record presenti nel journal.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @brief Aggiunge in coda un record di salvataggio.
+     *
+     * @param loan Il prestito salvato.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public void appendSave(Loan loan) throws IOException {
+        append(saveRecord(loan) + "\n", 1);
+    }
+
+    /**
+     * @brief Aggiunge in coda un record di cancellazione.
+     *
+     * @param id Identificativo del prestito cancellato.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public void appendDelete(LoanId id) throws IOException {
+        append(deleteRecord(id) + "\n", 1);
+    }
+
+    /**
+     * @brief Aggiunge in coda un blocco di salvataggi e cancellazioni con una sola scrittura.
+     *
+     * I salvataggi precedono le cancellazioni. Il file viene aperto una sola
+     * volta per l'intero blocco, invece che una volta per record.
+     *
+     * @param saved I prestiti salvati (può essere vuota).
+     * @param deleted Gli identificativi dei prestiti cancellati (può essere vuota).
+     * @throws IllegalArgumentException Se una delle collezioni è null.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public void appendAll(Collection<? extends Loan> saved, Collection<? extends LoanId> deleted) throws IOException {
+        if (saved == null || deleted == null) {
+            throw new IllegalArgumentException("saved e deleted non devono essere null");
+        }
+        StringBuilder records = new StringBuilder();
+        int count = 0;
+        for (Loan loan : saved) {
+            records.append(saveRecord(loan)).append('\n');
+            count++;
+        }
+        for (LoanId id : deleted) {
+            records.append(deleteRecord(id)).append('\n');
+            count++;
+        }
+        if (count > 0) {
+            append(records.toString(), count);
+        }
+    }
+
+    /**
+     * @brief Compone il record di un salvataggio.
+     * @param loan Il prestito salvato.
+     * @return Il record, senza terminatore di riga.
+     */
+    private static String saveRecord(Loan loan) {
+        return SAVE_RECORD + "|" + FileManager.formatLoan(loan);
+    }
+
+    /**
+     * @brief Compone il record di una cancellazione.
+     * @param id Identificativo del prestito cancellato.
+     * @return Il record, senza terminatore di riga.
+     */
+    private static String deleteRecord(LoanId id) {
+        String text = id.toString();
+        if (text.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("id non valido: " + text);
+        }
+        return DELETE_RECORD + "|" + text;
+    }
+
+    /**
+     * @brief Riesegue in ordine tutti i record completi del journal.
+     *
+     * Se il journal non esiste non viene eseguito nulla. Un record incompleto
+     * in coda (scrittura interrotta) viene prima tolto dal file.
+     *
+     * @param visitor Destinatario dei record.
+     * @throws IOException Se il journal non è leggibile o contiene record non validi.
+     */
+    public void replay(Visitor visitor) throws IOException {
+        size = 0;
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        truncateIncompleteTail(journalFile);
+        tailChecked = true;
+        String content = new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+
+        int start = 0;
+        int end;
+        while ((end = content.indexOf('\n', start)) >= 0) {
+            String record = content.substring(start, end);
+            start = end + 1;
+            if (record.trim().isEmpty()) {
+                continue;
+            }
+            if (record.startsWith(SAVE_RECORD + "|")) {
+                String[] parts = record.substring(2).split("\\|", -1);
+                visitor.onSave(FileManager.parseLoan(parts, record));
+            } else if (record.startsWith(DELETE_RECORD + "|")) {
+                visitor.onDelete(parseId(record.substring(2), record));
+            } else {
+                throw new IOException("Record non valido nel journal dei prestiti: " + record);
+            }
+            size++;
+        }
+    }
+
+    /**
+     * @brief Ricostruisce l'identificativo di un record di cancellazione.
+     *
+     * @param text La forma testuale dell'identificativo.
+     * @param rawLine Il record originale, usato nei messaggi di errore.
+     * @return L'identificativo.
+     * @throws IOException Se l'identificativo non è valido.
+     */
+    static LoanId parseId(String text, String rawLine) throws IOException {
+        try {
+            return LoanId.parse(text);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Identificativo non valido nel record: " + rawLine, e);
+        }
+    }
+
+    /**
+     * @brief Toglie da un file di record l'eventuale ultima riga non terminata da '\n'.
+     *
+     * Solo le righe terminate da '\n' sono record completi: il resto è una
+     * scrittura interrotta da un crash. Il file viene letto a ritroso a blocchi
+     * fino all'ultimo '\n' (che in UTF-8 non compare mai dentro un carattere
+     * multibyte) e troncato subito dopo.
+     *
+     * @param file Il file (se non esiste non viene fatto nulla).
+     * @return true se il file è stato troncato.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    static boolean truncateIncompleteTail(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long keep = 0;
+            ByteBuffer block = ByteBuffer.allocate(TAIL_BLOCK_SIZE);
+            for (long end = size; end > 0 && keep == 0; ) {
+                long start = Math.max(0, end - TAIL_BLOCK_SIZE);
+                block.clear();
+                block.limit((int) (end - start));
+                while (block.hasRemaining() && channel.read(block, start + block.position()) >= 0) {
+                    // lettura posizionale fino a riempire il blocco
+                }
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') {
+                        keep = start + i + 1;
+                        break;
+                    }
+                }
+                end = start;
+            }
+            if (keep == size) {
+                return false;
+            }
+            channel.truncate(keep);
+            channel.force(false);
+            return true;
+        }
+    }
+
+    /**
+     * @brief Svuota il journal dopo che lo snapshot è stato riscritto.
+     *
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public void truncate() throws IOException {
+        Files.deleteIfExists(journalFile);
+        size = 0;
+        tailChecked = true;
+    }
+
+    /**
+     * @brief Scrive uno o più record in coda al file e li sincronizza su disco.
+     *
+     * Una sola sincronizzazione per chiamata: un blocco di appendAll() costa
+     * quanto un singolo record.
+     *
+     * @param records I record da scrivere, ciascuno terminato da '\n'.
+     * @param count Numero di record contenuti.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void append(String records, int count) throws IOException {
+        Path parent = journalFile.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (!tailChecked) {
+            truncateIncompleteTail(journalFile);
+            tailChecked = true;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // il record conta come scritto solo quando è sul disco, non nella cache del sistema
+            channel.force(false);
+        } catch (IOException e) {
+            // la scrittura può essere arrivata a metà: la prossima ripulisce la coda
+            tailChecked = false;
+            throw e;
+        }
+        size += count;
+    }
+}
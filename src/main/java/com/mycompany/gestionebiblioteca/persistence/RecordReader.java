@@ -0,0 +1,353 @@
+/**
+ * @file RecordReader.java
+ * @brief Lettore in streaming dei file di testo delimitati da '|'.
+ *
+ * Sostituisce la lettura completa del file (Files.readAllLines) seguita da
+ * String.split con espressione regolare: il file viene letto riga per riga
+ * e ogni riga viene suddivisa a mano, memorizzando solo le posizioni dei
+ * campi. Le stringhe vengono create solo per i campi effettivamente richiesti
+ * e i campi numerici e le date vengono convertiti direttamente dalla riga.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class RecordReader
+ * @brief Cursore sui record di un file di testo con campi separati da '|'.
+ *
+ * Uso tipico:
+ * <pre>
+ * try (RecordReader reader = new RecordReader(in, HEADER)) {
+ *     while (reader.next()) {
+ *         String isbn = reader.field(0);
+ *         int year = reader.intField(3);
+ *     }
+ * }
+ * </pre>
+ *
+ * Regole di lettura (identiche a quelle storiche di FileManager):
+ * - ogni riga viene considerata senza gli spazi iniziali e finali;
+ * - le righe vuote vengono ignorate;
+ * - la prima riga viene ignorata se coincide con l'header;
+ * - i campi non vengono ulteriormente rifilati.
+ */
+public class RecordReader implements Closeable {
+
+    /**
+     * @brief Carattere separatore dei campi.
+     */
+    private static final char SEPARATOR = '|';
+
+    /**
+     * @brief Sorgente delle righe.
+     */
+    private final BufferedReader in;
+
+    /**
+     * @brief Header atteso sulla prima riga (null se il file non ha header).
+     */
+    private final String header;
+
+    /**
+     * @brief Riga corrente, così come letta dal file.
+     */
+    private String rawLine;
+
+    /**
+     * @brief Numero (a partire da 1) della riga corrente.
+     */
+    private int lineNumber;
+
+    /**
+     * @brief Posizioni di inizio dei campi della riga corrente.
+     */
+    private int[] starts = new int[8];
+
+    /**
+     * @brief Posizioni di fine (esclusive) dei campi della riga corrente.
+     */
+    private int[] ends = new int[8];
+
+    /**
+     * @brief Numero di campi della riga corrente.
+     */
+    private int fieldCount;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param in Sorgente delle righe (viene chiusa da close()).
+     * @param header Header da ignorare se presente sulla prima riga (può essere null).
+     */
+    public RecordReader(BufferedReader in, String header) {
+        if (in == null) {
+            throw new IllegalArgumentException("in non deve essere null");
+        }
+        this.in = in;
+        this.header = header;
+    }
+
+    /**
+     * @brief Avanza al record successivo.
+     *
+     * @return true se è disponibile un nuovo record, false a fine file.
+     * @throws IOException In caso di errori di lettura.
+     */
+    public boolean next() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+
+            // limiti della riga senza spazi iniziali e finali (stessa semantica di trim())
+            int start = 0;
+            int end = line.length();
+            while (start < end && line.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                continue;
+            }
+            if (lineNumber == 1 && header != null && end - start == header.length()
+                    && line.regionMatches(start, header, 0, header.length())) {
+                continue;
+            }
+
+            rawLine = line;
+            tokenize(start, end);
+            return true;
+        }
+        rawLine = null;
+        fieldCount = 0;
+        return false;
+    }
+
+    /**
+     * @brief Restituisce il numero di campi del record corrente.
+     * @return Il numero di campi.
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @brief Restituisce la riga corrente così come letta dal file.
+     * @return La riga corrente.
+     */
+    public String rawLine() {
+        return rawLine;
+    }
+
+    /**
+     * @brief Restituisce il numero (a partire da 1) della riga corrente.
+     * @return Il numero di riga.
+     */
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @brief Restituisce il valore di un campo.
+     *
+     * @param index Indice del campo (a partire da 0).
+     * @return Il testo del campo (eventualmente vuoto).
+     */
+    public String field(int index) {
+        checkIndex(index);
+        return rawLine.substring(starts[index], ends[index]);
+    }
+
+    /**
+     * @brief Indica se un campo è vuoto.
+     *
+     * @param index Indice del campo.
+     * @return true se il campo non contiene caratteri.
+     */
+    public boolean isEmpty(int index) {
+        checkIndex(index);
+        return starts[index] == ends[index];
+    }
+
+    /**
+     * @brief Confronta un campo con una stringa ignorando maiuscole e minuscole
+     * e gli spazi esterni al campo.
+     *
+     * @param index Indice del campo.
+     * @param value Valore da confrontare.
+     * @return true se il campo coincide con il valore.
+     */
+    public boolean fieldEqualsIgnoreCase(int index, String value) {
+        checkIndex(index);
+        int start = starts[index];
+        int end = ends[index];
+        while (start < end && rawLine.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && rawLine.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end - start == value.length() && rawLine.regionMatches(true, start, value, 0, value.length());
+    }
+
+    /**
+     * @brief Converte un campo in intero senza creare stringhe intermedie.
+     *
+     * Accetta lo stesso formato di Integer.parseInt (segno opzionale e cifre decimali).
+     *
+     * @param index Indice del campo.
+     * @return Il valore intero.
+     * @throws NumberFormatException Se il campo non è un intero valido.
+     */
+    public int intField(int index) {
+        checkIndex(index);
+        int pos = starts[index];
+        int end = ends[index];
+        if (pos == end) {
+            throw new NumberFormatException("Campo numerico vuoto");
+        }
+        boolean negative = false;
+        char first = rawLine.charAt(pos);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            pos++;
+            if (pos == end) {
+                throw new NumberFormatException("Campo numerico non valido: " + field(index));
+            }
+        }
+        // accumulo in negativo per gestire anche Integer.MIN_VALUE, come Integer.parseInt
+        long result = 0;
+        while (pos < end) {
+            int digit = Character.digit(rawLine.charAt(pos++), 10);
+            if (digit < 0) {
+                throw new NumberFormatException("Campo numerico non valido: " + field(index));
+            }
+            result = result * 10 - digit;
+            if (result < Integer.MIN_VALUE) {
+                throw new NumberFormatException("Campo numerico fuori intervallo: " + field(index));
+            }
+        }
+        if (!negative && result == Integer.MIN_VALUE) {
+            throw new NumberFormatException("Campo numerico fuori intervallo: " + field(index));
+        }
+        return (int) (negative ? result : -result);
+    }
+
+    /**
+     * @brief Converte un campo in data.
+     *
+     * Il formato ISO "aaaa-mm-gg" (quello scritto da LocalDate.toString) viene
+     * convertito direttamente; ogni altro formato passa da LocalDate.parse.
+     *
+     * @param index Indice del campo.
+     * @return La data corrispondente.
+     * @throws DateTimeParseException Se il campo non è una data valida.
+     */
+    public LocalDate dateField(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        if (ends[index] - start == 10
+                && rawLine.charAt(start + 4) == '-' && rawLine.charAt(start + 7) == '-') {
+            int year = digits(start, 4);
+            int month = digits(start + 5, 2);
+            int day = digits(start + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                try {
+                    return LocalDate.of(year, month, day);
+                } catch (DateTimeException e) {
+                    throw new DateTimeParseException("Data non valida: " + e.getMessage(), field(index), 0, e);
+                }
+            }
+        }
+        return LocalDate.parse(field(index));
+    }
+
+    /**
+     * @brief Chiude la sorgente delle righe.
+     * @throws IOException In caso di errori di chiusura.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @brief Individua i campi della riga corrente tra start ed end.
+     *
+     * @param start Inizio della riga (senza spazi iniziali).
+     * @param end Fine della riga (senza spazi finali).
+     */
+    private void tokenize(int start, int end) {
+        fieldCount = 0;
+        int fieldStart = start;
+        for (int i = start; i < end; i++) {
+            if (rawLine.charAt(i) == SEPARATOR) {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addField(fieldStart, end);
+    }
+
+    /**
+     * @brief Registra i limiti di un campo, ingrandendo i vettori se necessario.
+     *
+     * @param start Inizio del campo.
+     * @param end Fine (esclusiva) del campo.
+     */
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            int[] newStarts = new int[starts.length * 2];
+            int[] newEnds = new int[ends.length * 2];
+            System.arraycopy(starts, 0, newStarts, 0, fieldCount);
+            System.arraycopy(ends, 0, newEnds, 0, fieldCount);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * @brief Converte una sequenza di cifre decimali della riga corrente.
+     *
+     * @param from Posizione della prima cifra.
+     * @param length Numero di cifre.
+     * @return Il valore, oppure -1 se la sequenza contiene caratteri non numerici.
+     */
+    private int digits(int from, int length) {
+        int value = 0;
+        for (int i = from; i < from + length; i++) {
+            char c = rawLine.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @brief Verifica che l'indice indichi un campo del record corrente.
+     *
+     * @param index Indice da verificare.
+     * @throws IndexOutOfBoundsException Se non esiste un campo con quell'indice.
+     */
+    private void checkIndex(int index) {
+        if (rawLine == null || index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Campo inesistente: " + index);
+        }
+    }
+}
@@ -0,0 +1,585 @@
+/**
+ * @file SlottedRecordFile.java
+ * @brief File a slot di dimensione fissa, aggiornabile un record alla volta.
+ *
+ * Uno snapshot (testo o binario) va riscritto per intero anche quando cambia
+ * un solo campo di un solo libro. In questo formato ogni record occupa una
+ * posizione fissa del file: aggiornarlo costa una scrittura posizionale di
+ * pochi byte tramite FileChannel, indipendentemente dalla dimensione del catalogo.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class SlottedRecordFile
+ * @brief Archivio di record binari indicizzati per chiave, in slot di dimensione fissa.
+ *
+ * Struttura del file (big-endian):
+ * - intestazione di HEADER_SIZE byte: magic "GBP" + versione, tipo di contenuto
+ *   (come BinarySnapshotCodec), dimensione dello slot (int);
+ * - una sequenza di posizioni, ciascuna formata da due slot gemelli.
+ *
+ * Ogni slot contiene: CRC32 del resto dello slot (int), numero di sequenza
+ * (long), stato (vivo o libero), chiave e record preceduti dalla lunghezza.
+ *
+ * Un aggiornamento scrive sempre lo slot gemello di quello corrente, con un
+ * numero di sequenza più alto: se un crash interrompe la scrittura, il CRC
+ * dello slot nuovo non torna e alla lettura vale ancora la versione precedente.
+ * Una cancellazione scrive uno slot "libero", e la posizione viene riusata
+ * dal prossimo inserimento.
+ *
+ * Gli aggiornamenti non vengono sincronizzati uno per uno: force() va chiamato
+ * alla fine di un gruppo di scritture.
+ */
+final class SlottedRecordFile implements Closeable {
+
+    /**
+     * @brief Primi byte del file ("GBP" + versione).
+     */
+    private static final byte[] MAGIC = {'G', 'B', 'P', 1};
+
+    /**
+     * @brief Dimensione dell'intestazione (il resto è riservato).
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * @brief Byte occupati in ogni slot da CRC, sequenza, stato e lunghezze.
+     */
+    private static final int SLOT_OVERHEAD = 4 + 8 + 1 + 2 + 4;
+
+    /**
+     * @brief Dimensione minima di uno slot.
+     */
+    private static final int MIN_SLOT_SIZE = 64;
+
+    /**
+     * @brief Stato di uno slot che contiene un record.
+     */
+    private static final byte LIVE = 1;
+
+    /**
+     * @brief Stato di uno slot di un record cancellato.
+     */
+    private static final byte FREE = 2;
+
+    private final Path file;
+    private final FileChannel channel;
+
+    /**
+     * @brief Identità del file aperto (inode), per accorgersi se è stato sostituito.
+     */
+    private final Object fileKey;
+
+    private final int slotSize;
+
+    /**
+     * @brief Chiave → posizione del record.
+     */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * @brief Posizioni il cui slot corrente è il secondo dei due gemelli.
+     */
+    private final BitSet secondSlotCurrent = new BitSet();
+
+    /**
+     * @brief Posizioni libere, riusate dagli inserimenti.
+     */
+    private final Deque<Integer> freePositions = new ArrayDeque<>();
+
+    /**
+     * @brief Numero di posizioni presenti nel file.
+     */
+    private int positionCount;
+
+    /**
+     * @brief Numero di sequenza più alto scritto finora.
+     */
+    private long sequence;
+
+    /**
+     * @brief Destinatario degli slot letti durante la scansione del file.
+     */
+    private interface SlotVisitor {
+
+        /**
+         * @param position Posizione dello slot.
+         * @param second true se lo slot corrente è il secondo gemello.
+         * @param slot Il contenuto dello slot corrente (null se la posizione non è mai stata scritta).
+         */
+        void visit(int position, boolean second, Slot slot);
+    }
+
+    /**
+     * @brief Contenuto decodificato di uno slot valido.
+     */
+    private static final class Slot {
+        final long sequence;
+        final byte state;
+        final String key;
+        final byte[] record;
+
+        Slot(long sequence, byte state, String key, byte[] record) {
+            this.sequence = sequence;
+            this.state = state;
+            this.key = key;
+            this.record = record;
+        }
+    }
+
+    private SlottedRecordFile(Path file, FileChannel channel, Object fileKey, int slotSize) {
+        this.file = file;
+        this.channel = channel;
+        this.fileKey = fileKey;
+        this.slotSize = slotSize;
+    }
+
+    // formato
+
+    /**
+     * @brief Indica se un file è in formato a slot.
+     *
+     * @param file Il file da controllare (deve esistere).
+     * @return true se il file inizia con il magic del formato.
+     * @throws IOException In caso di errori di lettura.
+     */
+    static boolean isSlotted(Path file) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while (read < head.length && (n = in.read(head, read, head.length - read)) > 0) {
+                read += n;
+            }
+        }
+        if (read < head.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @brief Scrive un file a slot completo con i record indicati.
+     *
+     * La dimensione dello slot è la più piccola potenza di due che contiene il
+     * record più lungo, così i record successivi di lunghezza simile entrano
+     * negli slot esistenti. La scrittura passa da AtomicFileWriter.
+     *
+     * @param file File di destinazione.
+     * @param kind Tipo di contenuto (BinarySnapshotCodec.BOOKS, USERS, ...).
+     * @param records Chiave → record, nell'ordine in cui scriverli.
+     * @param backupGenerations Versioni precedenti da conservare.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    static void write(Path file, byte kind, Map<String, byte[]> records, int backupGenerations) throws IOException {
+        int largest = 0;
+        for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+            largest = Math.max(largest, slotBytes(entry.getKey(), entry.getValue()));
+        }
+        int slotSize = MIN_SLOT_SIZE;
+        while (slotSize < largest) {
+            slotSize <<= 1;
+        }
+        int size = slotSize;
+        AtomicFileWriter.write(file, temp -> {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+                out.write(header(kind, size).array());
+                byte[] empty = new byte[size];
+                long seq = 0;
+                for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+                    out.write(encodeSlot(size, ++seq, LIVE, entry.getKey(), entry.getValue()).array());
+                    out.write(empty);
+                }
+            }
+        }, backupGenerations);
+    }
+
+    /**
+     * @brief Legge i record vivi di un file a slot, nell'ordine delle posizioni.
+     *
+     * @param file Il file da leggere.
+     * @param kind Tipo di contenuto atteso.
+     * @param consumer Destinatario dei record.
+     * @throws IOException Se il file non è valido.
+     */
+    static void forEach(Path file, byte kind, Consumer<byte[]> consumer) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int slotSize = readHeader(buffer, kind, file);
+        scan(buffer, slotSize, (position, second, slot) -> {
+            if (slot != null && slot.state == LIVE) {
+                consumer.accept(slot.record);
+            }
+        });
+    }
+
+    /**
+     * @brief Apre un file a slot per aggiornarlo record per record.
+     *
+     * @param file Il file (deve esistere ed essere in formato a slot).
+     * @param kind Tipo di contenuto atteso.
+     * @return L'archivio aperto.
+     * @throws IOException Se il file non è valido.
+     */
+    static SlottedRecordFile open(Path file, byte kind) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int slotSize = readHeader(buffer, kind, file);
+            SlottedRecordFile store = new SlottedRecordFile(file, channel, currentFileKey(file), slotSize);
+            store.positionCount = scan(buffer, slotSize, (position, second, slot) -> {
+                if (second) {
+                    store.secondSlotCurrent.set(position);
+                }
+                if (slot != null) {
+                    store.sequence = Math.max(store.sequence, slot.sequence);
+                }
+                if (slot != null && slot.state == LIVE) {
+                    store.positions.put(slot.key, position);
+                } else {
+                    store.freePositions.add(position);
+                }
+            });
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // aggiornamenti
+
+    /**
+     * @brief Indica se il file aperto è ancora quello presente sul disco.
+     *
+     * Una riscrittura completa (rename atomico) sostituisce il file: da quel
+     * momento le scritture su questo canale andrebbero perse.
+     *
+     * @return true se il file non è stato sostituito.
+     */
+    boolean isCurrent() {
+        try {
+            return fileKey != null && Files.exists(file) && Objects.equals(fileKey, currentFileKey(file));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @brief Numero di record presenti.
+     *
+     * @return Il numero di chiavi vive.
+     */
+    int size() {
+        return positions.size();
+    }
+
+    /**
+     * @brief Indica se un record entra in uno slot di questo file.
+     *
+     * @param key La chiave.
+     * @param record Il record.
+     * @return true se put() può scriverlo senza riscrivere il file.
+     */
+    boolean fits(String key, byte[] record) {
+        return slotBytes(key, record) <= slotSize;
+    }
+
+    /**
+     * @brief Inserisce o aggiorna un record con una scrittura posizionale.
+     *
+     * @param key La chiave.
+     * @param record Il record (deve rispettare fits()).
+     * @throws IOException In caso di errori di scrittura.
+     */
+    void put(String key, byte[] record) throws IOException {
+        if (!fits(key, record)) {
+            throw new IllegalArgumentException("Record troppo grande per lo slot di " + slotSize + " byte: " + key);
+        }
+        Integer position = positions.get(key);
+        if (position == null) {
+            position = freePositions.poll();
+        }
+        if (position == null) {
+            // nuova posizione in coda: i due gemelli vengono scritti insieme, il secondo vuoto
+            position = positionCount++;
+            ByteBuffer pair = ByteBuffer.allocate(2 * slotSize);
+            pair.put(encodeSlot(slotSize, ++sequence, LIVE, key, record));
+            pair.flip();
+            pair.limit(2 * slotSize);
+            writeFully(pair, offsetOf(position, false));
+            secondSlotCurrent.clear(position);
+        } else {
+            writeTwin(position, encodeSlot(slotSize, ++sequence, LIVE, key, record));
+        }
+        positions.put(key, position);
+    }
+
+    /**
+     * @brief Cancella un record (se non esiste non fa nulla).
+     *
+     * @param key La chiave.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    void remove(String key) throws IOException {
+        Integer position = positions.remove(key);
+        if (position == null) {
+            return;
+        }
+        writeTwin(position, encodeSlot(slotSize, ++sequence, FREE, "", new byte[0]));
+        freePositions.add(position);
+    }
+
+    /**
+     * @brief Sincronizza su disco le scritture eseguite finora.
+     *
+     * @throws IOException In caso di errori.
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * @brief Chiude il canale del file.
+     *
+     * @throws IOException In caso di errori.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // metodi di utilità
+
+    /**
+     * @brief Scrive lo slot gemello di quello corrente e lo rende corrente.
+     *
+     * @param position La posizione.
+     * @param slot Il contenuto dello slot.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void writeTwin(int position, ByteBuffer slot) throws IOException {
+        boolean second = !secondSlotCurrent.get(position);
+        writeFully(slot, offsetOf(position, second));
+        secondSlotCurrent.set(position, second);
+    }
+
+    /**
+     * @brief Scrive un buffer per intero a partire da una posizione del file.
+     *
+     * @param buffer Il buffer.
+     * @param offset La posizione nel file.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * @brief Posizione nel file di uno slot.
+     *
+     * @param position La posizione del record.
+     * @param second true per il secondo gemello.
+     * @return L'offset in byte.
+     */
+    private long offsetOf(int position, boolean second) {
+        return HEADER_SIZE + (long) position * 2 * slotSize + (second ? slotSize : 0);
+    }
+
+    /**
+     * @brief Byte necessari per salvare un record in uno slot.
+     *
+     * @param key La chiave.
+     * @param record Il record.
+     * @return La dimensione minima dello slot.
+     */
+    private static int slotBytes(String key, byte[] record) {
+        return SLOT_OVERHEAD + key.getBytes(StandardCharsets.UTF_8).length + record.length;
+    }
+
+    /**
+     * @brief Codifica uno slot, completo di CRC.
+     *
+     * @param slotSize Dimensione dello slot.
+     * @param sequence Numero di sequenza.
+     * @param state Stato dello slot.
+     * @param key La chiave.
+     * @param record Il record.
+     * @return Il buffer dello slot, pronto per la scrittura.
+     */
+    private static ByteBuffer encodeSlot(int slotSize, long sequence, byte state, String key, byte[] record) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer slot = ByteBuffer.allocate(slotSize);
+        slot.putInt(0);
+        slot.putLong(sequence);
+        slot.put(state);
+        slot.putShort((short) keyBytes.length);
+        slot.put(keyBytes);
+        slot.putInt(record.length);
+        slot.put(record);
+        int used = slot.position();
+        CRC32 crc = new CRC32();
+        crc.update(slot.array(), 4, used - 4);
+        slot.putInt(0, (int) crc.getValue());
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * @brief Decodifica uno slot, verificandone il CRC.
+     *
+     * @param buffer Il contenuto del file.
+     * @param offset Inizio dello slot.
+     * @param slotSize Dimensione dello slot.
+     * @return Lo slot, oppure null se vuoto, incompleto o corrotto.
+     */
+    private static Slot decodeSlot(ByteBuffer buffer, int offset, int slotSize) {
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(offset);
+        slot.limit(offset + slotSize);
+        int storedCrc = slot.getInt();
+        long sequence = slot.getLong();
+        byte state = slot.get();
+        if (state != LIVE && state != FREE) {
+            return null;
+        }
+        int keyLength = slot.getShort() & 0xffff;
+        if (keyLength > slot.remaining() - 4) {
+            return null;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        slot.get(keyBytes);
+        int recordLength = slot.getInt();
+        if (recordLength < 0 || recordLength > slot.remaining()) {
+            return null;
+        }
+        byte[] record = new byte[recordLength];
+        slot.get(record);
+
+        byte[] checked = new byte[slot.position() - offset - 4];
+        ByteBuffer region = buffer.duplicate();
+        region.position(offset + 4);
+        region.get(checked);
+        CRC32 crc = new CRC32();
+        crc.update(checked);
+        if ((int) crc.getValue() != storedCrc) {
+            return null;
+        }
+        return new Slot(sequence, state, new String(keyBytes, StandardCharsets.UTF_8), record);
+    }
+
+    /**
+     * @brief Percorre tutte le posizioni, scegliendo per ciascuna lo slot valido più recente.
+     *
+     * Una coppia incompleta in fondo al file (crash durante un'aggiunta) viene ignorata.
+     *
+     * @param buffer Il contenuto del file.
+     * @param slotSize Dimensione dello slot.
+     * @param visitor Destinatario degli slot.
+     * @return Il numero di posizioni complete.
+     */
+    private static int scan(ByteBuffer buffer, int slotSize, SlotVisitor visitor) {
+        int count = (int) ((buffer.limit() - HEADER_SIZE) / (2L * slotSize));
+        for (int position = 0; position < count; position++) {
+            int offset = HEADER_SIZE + position * 2 * slotSize;
+            Slot first = decodeSlot(buffer, offset, slotSize);
+            Slot second = decodeSlot(buffer, offset + slotSize, slotSize);
+            boolean secondCurrent = second != null && (first == null || second.sequence > first.sequence);
+            visitor.visit(position, secondCurrent, secondCurrent ? second : first);
+        }
+        return count;
+    }
+
+    /**
+     * @brief Costruisce l'intestazione del file.
+     *
+     * @param kind Tipo di contenuto.
+     * @param slotSize Dimensione dello slot.
+     * @return Il buffer dell'intestazione (HEADER_SIZE byte).
+     */
+    private static ByteBuffer header(byte kind, int slotSize) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.put(kind);
+        header.putInt(slotSize);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * @brief Verifica l'intestazione e restituisce la dimensione dello slot.
+     *
+     * @param buffer Il contenuto del file.
+     * @param expectedKind Tipo di contenuto atteso.
+     * @param file Il file, usato nei messaggi di errore.
+     * @return La dimensione dello slot.
+     * @throws IOException Se l'intestazione non è valida.
+     */
+    private static int readHeader(ByteBuffer buffer, byte expectedKind, Path file) throws IOException {
+        if (buffer.limit() < HEADER_SIZE) {
+            throw new IOException("File a slot troncato: " + file);
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("Formato a slot non riconosciuto: " + file);
+            }
+        }
+        byte kind = buffer.get(MAGIC.length);
+        if (kind != expectedKind) {
+            throw new IOException("Il file " + file + " contiene dati di tipo " + kind + " invece di " + expectedKind);
+        }
+        int slotSize = buffer.getInt(MAGIC.length + 1);
+        if (slotSize < MIN_SLOT_SIZE) {
+            throw new IOException("Dimensione dello slot non valida nel file: " + file);
+        }
+        return slotSize;
+    }
+
+    /**
+     * @brief Identità del file sul disco (inode, dove disponibile).
+     *
+     * @param file Il file.
+     * @return La chiave del file, oppure null se il sistema non la fornisce.
+     * @throws IOException In caso di errori.
+     */
+    private static Object currentFileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+}
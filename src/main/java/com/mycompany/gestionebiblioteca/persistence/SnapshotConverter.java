@@ -0,0 +1,143 @@
+/**
+ * @file SnapshotConverter.java
+ * @brief Conversione dei file di dati tra formato testuale e snapshot binario.
+ *
+ * Permette di passare allo snapshot binario per velocizzare l'avvio e di
+ * tornare al formato testuale, leggibile e modificabile a mano.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class SnapshotConverter
+ * @brief Converte i file di libri, utenti e prestiti in entrambe le direzioni.
+ *
+ * Il formato del file di origine viene riconosciuto automaticamente; origine
+ * e destinazione possono coincidere (il file viene letto completamente prima
+ * di essere riscritto).
+ *
+ * Uso da riga di comando:
+ * <pre>
+ * SnapshotConverter books|users|loans text|binary|slotted origine destinazione
+ * </pre>
+ */
+public class SnapshotConverter {
+
+    /**
+     * @brief Costruttore privato: la classe espone solo metodi statici.
+     */
+    private SnapshotConverter() {
+    }
+
+    /**
+     * @brief Converte un file di libri nel formato indicato.
+     *
+     * @param source File di origine (testo o binario).
+     * @param target File di destinazione.
+     * @param targetFormat Formato del file di destinazione.
+     * @return Il numero di libri convertiti.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public static int convertBooks(Path source, Path target, SnapshotFormat targetFormat) throws IOException {
+        requireArguments(source, target, targetFormat);
+        FileManager fileManager = new FileManager(targetFormat);
+        List<Book> books = fileManager.loadBooks(source);
+        fileManager.saveBooks(target, books);
+        return books.size();
+    }
+
+    /**
+     * @brief Converte un file di utenti nel formato indicato.
+     *
+     * @param source File di origine (testo o binario).
+     * @param target File di destinazione.
+     * @param targetFormat Formato del file di destinazione.
+     * @return Il numero di utenti convertiti.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public static int convertUsers(Path source, Path target, SnapshotFormat targetFormat) throws IOException {
+        requireArguments(source, target, targetFormat);
+        FileManager fileManager = new FileManager(targetFormat);
+        List<User> users = fileManager.loadUsers(source);
+        fileManager.saveUsers(target, users);
+        return users.size();
+    }
+
+    /**
+     * @brief Converte un file di prestiti nel formato indicato.
+     *
+     * @param source File di origine (testo o binario).
+     * @param target File di destinazione.
+     * @param targetFormat Formato del file di destinazione.
+     * @return Il numero di prestiti convertiti.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public static int convertLoans(Path source, Path target, SnapshotFormat targetFormat) throws IOException {
+        requireArguments(source, target, targetFormat);
+        FileManager fileManager = new FileManager(targetFormat);
+        List<Loan> loans = fileManager.loadLoans(source);
+        fileManager.saveLoans(target, loans);
+        return loans.size();
+    }
+
+    /**
+     * @brief Punto di ingresso da riga di comando.
+     *
+     * @param args Tipo di dati, formato di destinazione, file di origine e di destinazione.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Uso: SnapshotConverter books|users|loans text|binary|slotted origine destinazione");
+            System.exit(2);
+            return;
+        }
+        SnapshotFormat targetFormat = SnapshotFormat.valueOf(args[1].toUpperCase(Locale.ROOT));
+        Path source = Paths.get(args[2]);
+        Path target = Paths.get(args[3]);
+
+        int converted;
+        switch (args[0]) {
+            case "books":
+                converted = convertBooks(source, target, targetFormat);
+                break;
+            case "users":
+                converted = convertUsers(source, target, targetFormat);
+                break;
+            case "loans":
+                converted = convertLoans(source, target, targetFormat);
+                break;
+            default:
+                System.err.println("Tipo di dati sconosciuto: " + args[0]);
+                System.exit(2);
+                return;
+        }
+        System.out.println("Convertiti " + converted + " record in " + target);
+    }
+
+    /**
+     * @brief Verifica che i parametri di conversione non siano null.
+     *
+     * @param source File di origine.
+     * @param target File di destinazione.
+     * @param targetFormat Formato di destinazione.
+     * @throws IllegalArgumentException Se un parametro è null.
+     */
+    private static void requireArguments(Path source, Path target, SnapshotFormat targetFormat) {
+        if (source == null || target == null || targetFormat == null) {
+            throw new IllegalArgumentException("source, target e targetFormat non devono essere null");
+        }
+    }
+}
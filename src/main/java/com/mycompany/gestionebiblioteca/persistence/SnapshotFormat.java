@@ -0,0 +1,36 @@
+/**
+ * @file SnapshotFormat.java
+ * @brief Formati disponibili per i file di dati dell'applicazione.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @enum SnapshotFormat
+ * @brief Formato con cui FileManager scrive i file di libri, utenti e prestiti.
+ *
+ * In lettura il formato viene sempre riconosciuto automaticamente, quindi
+ * un FileManager configurato per un formato legge anche file negli altri.
+ */
+public enum SnapshotFormat {
+
+    /**
+     * @brief Testo con campi separati da '|' e una riga di header (formato storico).
+     */
+    TEXT,
+
+    /**
+     * @brief Snapshot binario compatto, letto tramite memory mapping.
+     */
+    BINARY,
+
+    /**
+     * @brief File binario a slot fissi (libri e utenti): un record modificato
+     * viene riscritto al suo posto, senza riscrivere il file (vedi FileManager.updateBooks).
+     * I prestiti, che hanno già il journal, vengono scritti come BINARY.
+     */
+    SLOTTED
+}
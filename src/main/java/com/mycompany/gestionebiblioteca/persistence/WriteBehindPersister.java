@@ -0,0 +1,285 @@
+/**
+ * @file WriteBehindPersister.java
+ * @brief Motore di persistenza write-behind condiviso dai repository su file.
+ *
+ * Invece di riscrivere un file ad ogni modifica, i repository segnalano al
+ * motore che il proprio file è "sporco". Le segnalazioni per lo stesso file
+ * vengono accorpate e la scrittura avviene su un thread in background, allo
+ * scadere dell'intervallo configurato oppure al raggiungimento del numero
+ * massimo di modifiche in attesa (group commit).
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author valerialupo
+ */
+/**
+ * @class WriteBehindPersister
+ * @brief Accorpa e scrive in differita gli snapshot dei repository su file.
+ *
+ * Garanzie:
+ * - tutte le scritture avvengono su un unico thread, quindi sono ordinate e
+ *   un file non viene mai scritto da due thread contemporaneamente;
+ * - i file vengono scritti nell'ordine in cui sono diventati "sporchi";
+ * - flush() ritorna solo quando tutte le modifiche segnalate prima della
+ *   chiamata sono state scritte e sincronizzate su disco (fsync);
+ * - close() esegue un flush finale, sincronizza tutti i file gestiti e
+ *   arresta il thread in background.
+ *
+ * Se una scrittura in background fallisce, il file resta "sporco" e viene
+ * ritentato; l'errore viene rilanciato alla successiva chiamata di flush() o close().
+ */
+public class WriteBehindPersister implements AutoCloseable {
+
+    /**
+     * @interface FlushTask
+     * @brief Operazione che scrive su file lo stato corrente di un repository.
+     */
+    public interface FlushTask {
+
+        /**
+         * @brief Scrive lo snapshot corrente sul file.
+         * @throws IOException In caso di errori di scrittura.
+         */
+        void flush() throws IOException;
+    }
+
+    /**
+     * @brief Intervallo massimo (ms) tra una modifica e la sua scrittura.
+     */
+    private final long flushIntervalMillis;
+
+    /**
+     * @brief Numero di modifiche in attesa che forza una scrittura immediata.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * @brief Thread unico che esegue tutte le scritture.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @brief File in attesa di scrittura, nell'ordine in cui sono diventati sporchi.
+     */
+    private final Map<Path, FlushTask> dirty = new LinkedHashMap<>();
+
+    /**
+     * @brief Tutti i file gestiti dal motore (sincronizzati alla chiusura).
+     */
+    private final Set<Path> knownFiles = new LinkedHashSet<>();
+
+    /**
+     * @brief Modifiche segnalate dall'ultima scrittura.
+     */
+    private int pendingChanges;
+
+    /**
+     * @brief Indica se è già stata pianificata una scrittura.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * @brief Indica se il motore è stato chiuso.
+     */
+    private boolean closed;
+
+    /**
+     * @brief Ultimo errore di scrittura non ancora segnalato al chiamante.
+     */
+    private IOException lastFailure;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param flushIntervalMillis Ritardo massimo di scrittura in millisecondi (maggiore di 0).
+     * @param maxBatchSize Numero di modifiche che forza la scrittura immediata (maggiore di 0).
+     * @throws IllegalArgumentException Se uno dei parametri non è positivo.
+     */
+    public WriteBehindPersister(long flushIntervalMillis, int maxBatchSize) {
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("flushIntervalMillis deve essere positivo");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize deve essere positivo");
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @brief Segnala che il file indicato deve essere riscritto.
+     *
+     * Più segnalazioni per lo stesso file prima della scrittura vengono
+     * accorpate: verrà eseguito un solo task (l'ultimo registrato).
+     *
+     * @param file Il file da riscrivere.
+     * @param task Operazione che scrive lo stato corrente sul file.
+     * @throws IllegalStateException Se il motore è stato chiuso.
+     */
+    public synchronized void markDirty(Path file, FlushTask task) {
+        if (file == null || task == null) {
+            throw new IllegalArgumentException("file e task non devono essere null");
+        }
+        if (closed) {
+            throw new IllegalStateException("WriteBehindPersister chiuso");
+        }
+        dirty.put(file, task);
+        knownFiles.add(file);
+        pendingChanges++;
+
+        if (pendingChanges >= maxBatchSize) {
+            // batch pieno: scrittura immediata (in background)
+            executor.execute(() -> writeDirty(false));
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(() -> writeDirty(false), flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @brief Scrive e sincronizza su disco tutte le modifiche in attesa.
+     *
+     * Blocca il chiamante finché le scritture non sono completate.
+     *
+     * @throws UncheckedIOException Se una scrittura fallisce.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        awaitWrite();
+    }
+
+    /**
+     * @brief Esegue il flush finale, sincronizza i file e arresta il motore.
+     *
+     * Il motore viene marcato chiuso prima del flush finale: una segnalazione
+     * successiva fallisce con IllegalStateException invece di restare in
+     * attesa di una scrittura che non avverrà mai. Le chiamate successive
+     * non hanno effetto.
+     *
+     * @throws UncheckedIOException Se la scrittura o la sincronizzazione falliscono.
+     */
+    @Override
+    public void close() {
+        List<Path> files;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            files = new ArrayList<>(knownFiles);
+        }
+        try {
+            awaitWrite();
+            for (Path file : files) {
+                force(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la sincronizzazione dei file", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @brief Accoda una scrittura sincronizzata e ne attende il completamento.
+     */
+    private void awaitWrite() {
+        Future<?> done = executor.submit(() -> writeDirty(true));
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Flush interrotto", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Flush fallito", e.getCause());
+        }
+        IOException failure;
+        synchronized (this) {
+            failure = lastFailure;
+            lastFailure = null;
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Errore durante la scrittura differita", failure);
+        }
+    }
+
+    /**
+     * @brief Scrive tutti i file sporchi (eseguito solo dal thread del motore).
+     *
+     * @param sync Se true, ogni file scritto viene sincronizzato su disco.
+     */
+    private void writeDirty(boolean sync) {
+        Map<Path, FlushTask> batch;
+        synchronized (this) {
+            batch = new LinkedHashMap<>(dirty);
+            dirty.clear();
+            pendingChanges = 0;
+            flushScheduled = false;
+        }
+        for (Map.Entry<Path, FlushTask> entry : batch.entrySet()) {
+            try {
+                entry.getValue().flush();
+                if (sync) {
+                    force(entry.getKey());
+                }
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    // il file resta sporco: se nel frattempo non è stato segnalato di nuovo, si ritenta con lo stesso task
+                    if (!dirty.containsKey(entry.getKey())) {
+                        dirty.put(entry.getKey(), entry.getValue());
+                    }
+                    lastFailure = e instanceof IOException ? (IOException) e
+                            : new IOException("Errore durante la scrittura di " + entry.getKey(), e);
+                    if (!flushScheduled && !closed) {
+                        flushScheduled = true;
+                        executor.schedule(() -> writeDirty(false), flushIntervalMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Sincronizza su disco il contenuto di un file (fsync).
+     *
+     * @param file Il file da sincronizzare; se non esiste non viene fatto nulla.
+     * @throws IOException In caso di errori di I/O.
+     */
+    private static void force(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+}
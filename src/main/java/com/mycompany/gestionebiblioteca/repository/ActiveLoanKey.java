@@ -0,0 +1,108 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * @brief Istantanea immutabile dei campi con cui un prestito attivo è indicizzato.
+ *
+ * Il prestito è mutabile (scadenza e restituzione), quindi gli insiemi ordinati
+ * dei prestiti attivi non possono confrontare direttamente gli oggetti Loan:
+ * conservano invece una chiave con i valori letti al momento del salvataggio.
+ */
+final class ActiveLoanKey {
+
+    /**
+     * @brief Ordinamento dei prestiti attivi: scadenza, matricola, ISBN (come findActiveLoansOrderByDueDate).
+     */
+    static final Comparator<ActiveLoanKey> BY_DUE_DATE = Comparator
+            .comparing((ActiveLoanKey key) -> key.dueDate, Comparator.nullsLast(LocalDate::compareTo))
+            .thenComparing(key -> key.matricola)
+            .thenComparing(key -> key.isbn)
+            .thenComparing(key -> key.id);
+
+    /**
+     * @brief Ordinamento dei prestiti attivi di un utente: scadenza, ISBN (come findActiveLoansByUser).
+     */
+    static final Comparator<ActiveLoanKey> BY_USER_DUE_DATE = Comparator
+            .comparing((ActiveLoanKey key) -> key.dueDate, Comparator.nullsLast(LocalDate::compareTo))
+            .thenComparing(key -> key.isbn)
+            .thenComparing(key -> key.id);
+
+    /**
+     * @brief Ordinamento dei prestiti attivi di un libro: scadenza, matricola (come findActiveLoansByIsbn).
+     */
+    static final Comparator<ActiveLoanKey> BY_BOOK_DUE_DATE = Comparator
+            .comparing((ActiveLoanKey key) -> key.dueDate, Comparator.nullsLast(LocalDate::compareTo))
+            .thenComparing(key -> key.matricola)
+            .thenComparing(key -> key.id);
+
+    /**
+     * @brief ID del prestito nel repository.
+     */
+    private final LoanId id;
+
+    /**
+     * @brief Matricola dell'utente.
+     */
+    private final String matricola;
+
+    /**
+     * @brief ISBN del libro.
+     */
+    private final String isbn;
+
+    /**
+     * @brief Scadenza al momento dell'indicizzazione.
+     */
+    private final LocalDate dueDate;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param id ID del prestito nel repository.
+     * @param loan Il prestito da cui leggere i campi indicizzati.
+     */
+    ActiveLoanKey(LoanId id, Loan loan) {
+        this.id = id;
+        this.matricola = loan.getUserMatricola();
+        this.isbn = loan.getBookIsbn();
+        this.dueDate = loan.getDueDate();
+    }
+
+    /**
+     * @brief Restituisce l'ID del prestito.
+     * @return L'ID del prestito nel repository.
+     */
+    LoanId getId() {
+        return id;
+    }
+
+    /**
+     * @brief Restituisce la matricola indicizzata.
+     * @return La matricola dell'utente.
+     */
+    String getMatricola() {
+        return matricola;
+    }
+
+    /**
+     * @brief Restituisce l'ISBN indicizzato.
+     * @return L'ISBN del libro.
+     */
+    String getIsbn() {
+        return isbn;
+    }
+}
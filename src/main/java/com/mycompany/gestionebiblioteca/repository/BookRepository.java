@@ -54,6 +54,21 @@ public interface BookRepository extends CrudRepository<String, Book> {
      * @return Lista dei libri corrispondenti.
      */
     List<Book> findByAuthorContaining(String keyword);
+
+    /**
+     * @brief Restituisce i libri della stessa opera: stesso titolo, stessi autori e stesso anno.
+     *
+     * Titolo e autori vengono confrontati ignorando maiuscole/minuscole e spazi
+     * esterni; l'ordine degli autori non conta. Le implementazioni devono
+     * rispondere tramite un indice, senza scorrere l'intero catalogo: il metodo
+     * viene usato per il controllo dei duplicati semantici a ogni inserimento.
+     *
+     * @param title Titolo del libro.
+     * @param authors Autori del libro.
+     * @param year Anno di pubblicazione.
+     * @return Lista dei libri corrispondenti (vuota se nessuno, o se titolo o autori mancano).
+     */
+    List<Book> findByTitleAndAuthorsAndYear(String title, List<String> authors, int year);
     
     
     
@@ -0,0 +1,178 @@
+/**
+ * @file CodeKeyedMap.java
+ * @brief Mappa indicizzata da matricole o ISBN, memorizzati come long.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import com.mycompany.gestionebiblioteca.model.NumericCode;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+/**
+ * @class CodeKeyedMap
+ * @brief Mappa codice → valore che converte il codice in numero al confine del repository.
+ *
+ * I codici nel formato canonico (esattamente "digits" cifre, vedi NumericCode)
+ * finiscono in una LongObjectMap: niente String né Entry per ogni elemento e
+ * nessun hashCode() calcolato sulle stringhe. I pochi codici fuori formato
+ * (dati importati o di prova) restano in una HashMap di riserva, così il
+ * comportamento è quello di una Map<String, V> per qualunque chiave.
+ *
+ * Come HashMap, l'ordine di iterazione dei valori non è specificato.
+ * I valori null non sono ammessi. La classe non è thread-safe: i repository
+ * concorrenti la leggono e la modificano solo sotto il proprio SnapshotLock.
+ *
+ * @param <V> Tipo dei valori.
+ */
+final class CodeKeyedMap<V> {
+
+    /**
+     * @brief Numero di cifre dei codici canonici.
+     */
+    private final int digits;
+
+    /**
+     * @brief Valori dei codici canonici, indicizzati dal loro valore numerico.
+     */
+    private final LongObjectMap<V> numeric = new LongObjectMap<>();
+
+    /**
+     * @brief Valori dei codici fuori formato.
+     */
+    private final Map<String, V> other = new HashMap<>();
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param digits Numero di cifre dei codici (NumericCode.MATRICOLA_DIGITS o NumericCode.ISBN_DIGITS).
+     */
+    CodeKeyedMap(int digits) {
+        this.digits = digits;
+    }
+
+    /**
+     * @brief Restituisce il valore associato a un codice.
+     *
+     * @param code Il codice (può essere null).
+     * @return Il valore, oppure null se assente.
+     */
+    V get(String code) {
+        long key = NumericCode.encode(code, digits);
+        return key >= 0 ? numeric.get(key) : other.get(code);
+    }
+
+    /**
+     * @brief Verifica se un codice è presente.
+     *
+     * @param code Il codice (può essere null).
+     * @return true se il codice è presente.
+     */
+    boolean containsKey(String code) {
+        return get(code) != null;
+    }
+
+    /**
+     * @brief Associa un valore a un codice.
+     *
+     * @param code Il codice.
+     * @param value Il valore.
+     * @return Il valore precedente, oppure null.
+     * @throws IllegalArgumentException Se value è null.
+     */
+    V put(String code, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value non deve essere null");
+        }
+        long key = NumericCode.encode(code, digits);
+        return key >= 0 ? numeric.put(key, value) : other.put(code, value);
+    }
+
+    /**
+     * @brief Restituisce il valore di un codice, creandolo se assente.
+     *
+     * @param code Il codice.
+     * @param factory Crea il valore a partire dal codice.
+     * @return Il valore esistente o quello appena creato.
+     */
+    V computeIfAbsent(String code, Function<String, ? extends V> factory) {
+        long key = NumericCode.encode(code, digits);
+        return key >= 0
+                ? numeric.computeIfAbsent(key, ignored -> factory.apply(code))
+                : other.computeIfAbsent(code, factory);
+    }
+
+    /**
+     * @brief Rimuove un codice.
+     *
+     * @param code Il codice (può essere null).
+     * @return Il valore rimosso, oppure null.
+     */
+    V remove(String code) {
+        long key = NumericCode.encode(code, digits);
+        return key >= 0 ? numeric.remove(key) : other.remove(code);
+    }
+
+    /**
+     * @brief Restituisce il numero di codici.
+     *
+     * @return Il numero di codici.
+     */
+    int size() {
+        return numeric.size() + other.size();
+    }
+
+    /**
+     * @brief Rimuove tutti i codici.
+     */
+    void clear() {
+        numeric.clear();
+        other.clear();
+    }
+
+    /**
+     * @brief Restituisce una vista in sola lettura dei valori.
+     *
+     * @return I valori (prima quelli dei codici canonici, poi gli altri).
+     */
+    Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                Iterator<V> first = numeric.valueIterator();
+                Iterator<V> second = other.values().iterator();
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return first.hasNext() || second.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        if (first.hasNext()) {
+                            return first.next();
+                        }
+                        if (second.hasNext()) {
+                            return second.next();
+                        }
+                        throw new NoSuchElementException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CodeKeyedMap.this.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,654 @@
+/**
+ * @file ColumnarBookRepository.java
+ * @brief Repository dei libri in memoria organizzato per colonne.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.NumericCode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+/**
+ * @class ColumnarBookRepository
+ * @brief Implementazione compatta di BookRepository: una colonna (array) per ogni attributo.
+ *
+ * Con InMemoryBookRepository ogni libro è un oggetto Book con la propria
+ * ArrayList di autori, e su un catalogo grande la memoria se ne va in
+ * intestazioni di oggetti e nomi di autori ripetuti. Qui il catalogo è
+ * memorizzato per colonne:
+ * - ISBN come long (NumericCode; gli ISBN fuori formato restano testo a parte);
+ * - titolo, anno, copie totali e copie disponibili in array paralleli;
+ * - autori codificati con un dizionario: ogni nome è memorizzato una sola
+ *   volta e ogni libro tiene solo un int[] di codici.
+ *
+ * I libri restituiti sono copie costruite al momento (viste materializzate):
+ * le modifiche a un Book letto diventano effettive solo con save, come
+ * avviene già nei servizi. Le scansioni (findAllOrderByTitle, ricerche per
+ * titolo e autore) scorrono array contigui; la ricerca per autore confronta
+ * la parola chiave una volta per nome del dizionario e poi solo codici interi.
+ * L'ordine per titolo viene calcolato una volta e riusato finché non cambia
+ * un titolo o l'insieme dei libri.
+ *
+ * La riga di un ISBN si trova in una LongIntMap (codice → riga, senza
+ * boxing); la ricerca per opera usa un indice chiave di WorkKeyIndex → righe,
+ * aggiornato da save e deleteById, invece di scorrere tutto il catalogo.
+ *
+ * La rimozione sposta l'ultima riga nel posto lasciato libero, quindi
+ * l'ordine di findAll non è specificato (come per una HashMap). I nomi del
+ * dizionario non più usati restano fino a deleteAll.
+ *
+ * La classe non è thread-safe.
+ */
+public class ColumnarBookRepository implements BookRepository {
+
+    /**
+     * @brief Capacità iniziale delle colonne.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * @brief Codici autore di un libro senza autori (condiviso).
+     */
+    private static final int[] NO_AUTHORS = new int[0];
+
+    /**
+     * @brief Ordinamento per titolo, uguale a quello di InMemoryBookRepository.
+     */
+    private static final Comparator<String> TITLE_ORDER = Comparator.nullsLast(String::compareToIgnoreCase);
+
+    /**
+     * @brief Colonna degli ISBN in forma numerica (-1 se l'ISBN è in otherIsbns).
+     */
+    private long[] isbns;
+
+    /**
+     * @brief Colonna dei titoli.
+     */
+    private String[] titles;
+
+    /**
+     * @brief Colonna dei codici autore (indici in authorNames).
+     */
+    private int[][] authors;
+
+    /**
+     * @brief Colonna degli anni di pubblicazione.
+     */
+    private int[] years;
+
+    /**
+     * @brief Colonna delle copie totali.
+     */
+    private int[] totalCopies;
+
+    /**
+     * @brief Colonna delle copie disponibili.
+     */
+    private int[] availableCopies;
+
+    /**
+     * @brief Numero di righe occupate.
+     */
+    private int size;
+
+    /**
+     * @brief ISBN fuori formato, per riga (di solito vuota).
+     */
+    private final Map<Integer, String> otherIsbns = new HashMap<>();
+
+    /**
+     * @brief Codice numerico dell'ISBN → riga.
+     */
+    private final LongIntMap rows = new LongIntMap();
+
+    /**
+     * @brief ISBN fuori formato → riga (di solito vuota).
+     */
+    private final Map<String, Integer> otherRows = new HashMap<>();
+
+    /**
+     * @brief Chiave dell'opera (WorkKeyIndex.key) → righe dei libri di quell'opera.
+     */
+    private final Map<String, int[]> workRows = new HashMap<>();
+
+    /**
+     * @brief Dizionario degli autori: codice → nome.
+     */
+    private final List<String> authorNames = new ArrayList<>();
+
+    /**
+     * @brief Dizionario degli autori: nome → codice.
+     */
+    private final Map<String, Integer> authorCodes = new HashMap<>();
+
+    /**
+     * @brief Righe ordinate per titolo (null se da ricalcolare).
+     */
+    private int[] titleOrder;
+
+    /**
+     * @brief Costruttore.
+     */
+    public ColumnarBookRepository() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @brief Salva o aggiorna un libro nel repository.
+     *
+     * @param entity L'entità libro da salvare.
+     * @return L'entità salvata.
+     * @throws IllegalArgumentException Se l'entità è null o se l'ISBN è null.
+     */
+    @Override
+    public Book save(Book entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Libro non deve essere null");
+        }
+        String isbn = entity.getIsbn();
+        if (isbn == null) {
+            throw new IllegalArgumentException("isbn non deve essere null");
+        }
+        long code = NumericCode.encode(isbn, NumericCode.ISBN_DIGITS);
+        int row = rowOf(isbn, code);
+        String previousWork = null;
+        if (row == LongIntMap.MISSING) {
+            if (size == isbns.length) {
+                grow();
+            }
+            row = size++;
+            isbns[row] = code;
+            if (code >= 0) {
+                rows.put(code, row);
+            } else {
+                otherRows.put(isbn, row);
+                otherIsbns.put(row, isbn);
+            }
+            titleOrder = null;
+        } else {
+            previousWork = workKeyOf(row);
+            if (!Objects.equals(titles[row], entity.getTitle())) {
+                titleOrder = null;
+            }
+        }
+        titles[row] = entity.getTitle();
+        authors[row] = encodeAuthors(entity.getAuthors());
+        years[row] = entity.getYear();
+        totalCopies[row] = entity.getTotalCopies();
+        availableCopies[row] = entity.getAvailableCopies();
+        String work = workKeyOf(row);
+        if (!Objects.equals(previousWork, work)) {
+            removeWorkRow(previousWork, row);
+            addWorkRow(work, row);
+        }
+        return entity;
+    }
+
+    /**
+     * @brief Recupera un libro tramite il suo ISBN.
+     *
+     * @param id L'ISBN del libro da cercare.
+     * @return Un Optional con una copia del libro, altrimenti vuoto.
+     */
+    @Override
+    public Optional<Book> findById(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        int row = rowOf(id, NumericCode.encode(id, NumericCode.ISBN_DIGITS));
+        return row == LongIntMap.MISSING ? Optional.empty() : Optional.of(materialize(row));
+    }
+
+    /**
+     * @brief Restituisce l'intera collezione di libri.
+     *
+     * @return Lista (nuova) di tutti i libri presenti.
+     */
+    @Override
+    public List<Book> findAll() {
+        List<Book> result = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            result.add(materialize(row));
+        }
+        return result;
+    }
+
+    /**
+     * @brief Rimuove un libro dal repository.
+     *
+     * L'ultima riga viene spostata al posto di quella rimossa.
+     *
+     * @param id L'ISBN del libro da rimuovere. Se null, l'operazione viene ignorata.
+     */
+    @Override
+    public void deleteById(String id) {
+        if (id == null) {
+            return;
+        }
+        long code = NumericCode.encode(id, NumericCode.ISBN_DIGITS);
+        int row = code >= 0 ? rows.remove(code) : removeOtherRow(id);
+        if (row == LongIntMap.MISSING) {
+            return;
+        }
+        int last = --size;
+        otherIsbns.remove(row);
+        removeWorkRow(workKeyOf(row), row);
+        if (row != last) {
+            moveWorkRow(workKeyOf(last), last, row);
+            isbns[row] = isbns[last];
+            titles[row] = titles[last];
+            authors[row] = authors[last];
+            years[row] = years[last];
+            totalCopies[row] = totalCopies[last];
+            availableCopies[row] = availableCopies[last];
+            String other = otherIsbns.remove(last);
+            if (other != null) {
+                otherIsbns.put(row, other);
+            }
+            if (isbns[row] >= 0) {
+                rows.put(isbns[row], row);
+            } else {
+                otherRows.put(other, row);
+            }
+        }
+        titles[last] = null;
+        authors[last] = null;
+        titleOrder = null;
+    }
+
+    /**
+     * @brief Svuota completamente il repository, dizionario degli autori compreso.
+     */
+    @Override
+    public void deleteAll() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+        otherIsbns.clear();
+        rows.clear();
+        otherRows.clear();
+        workRows.clear();
+        authorNames.clear();
+        authorCodes.clear();
+        titleOrder = null;
+    }
+
+    /**
+     * @brief Verifica l'esistenza di un libro.
+     *
+     * @param id L'ISBN da controllare.
+     * @return true se il libro esiste, false altrimenti.
+     */
+    @Override
+    public boolean existsById(String id) {
+        return id != null && rowOf(id, NumericCode.encode(id, NumericCode.ISBN_DIGITS)) != LongIntMap.MISSING;
+    }
+
+    /**
+     * @brief Conta il numero totale di libri nel repository.
+     *
+     * @return Il numero di elementi presenti.
+     */
+    @Override
+    public long count() {
+        return size;
+    }
+
+    /**
+     * @brief Alias per findById specifico per il dominio (ricerca per ISBN).
+     *
+     * @param isbn Il codice ISBN.
+     * @return Optional con il libro trovato.
+     */
+    @Override
+    public Optional<Book> findByIsbn(String isbn) {
+        return findById(isbn);
+    }
+
+    /**
+     * @brief Cerca i libri il cui titolo contiene la parola chiave (case-insensitive).
+     *
+     * @param keyword La stringa da cercare nel titolo.
+     * @return Lista dei libri corrispondenti, ordinata alfabeticamente per titolo.
+     */
+    @Override
+    public List<Book> findByTitleContaining(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Book> result = new ArrayList<>();
+        for (int row : titleOrder()) {
+            if (containsIgnoreCase(titles[row], keyword)) {
+                result.add(materialize(row));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @brief Cerca i libri con almeno un autore che contiene la parola chiave (case-insensitive).
+     *
+     * Ordinamento: primo autore, poi titolo (come InMemoryBookRepository).
+     *
+     * @param keyword La stringa da cercare nei nomi degli autori.
+     * @return Lista dei libri corrispondenti.
+     */
+    @Override
+    public List<Book> findByAuthorContaining(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        // ogni nome del dizionario viene confrontato una sola volta
+        boolean[] matching = new boolean[authorNames.size()];
+        boolean any = false;
+        for (int code = 0; code < matching.length; code++) {
+            matching[code] = containsIgnoreCase(authorNames.get(code), keyword);
+            any |= matching[code];
+        }
+        if (!any) {
+            return Collections.emptyList();
+        }
+        List<Book> result = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            for (int code : authors[row]) {
+                if (matching[code]) {
+                    result.add(materialize(row));
+                    break;
+                }
+            }
+        }
+        result.sort(Comparator.comparing(
+                (Book b) -> b.getAuthors().isEmpty() ? "" : b.getAuthors().get(0),
+                Comparator.nullsLast(String::compareToIgnoreCase))
+                .thenComparing(Book::getTitle, TITLE_ORDER));
+        return result;
+    }
+
+    /**
+     * @brief Cerca i libri della stessa opera (stessa chiave di WorkKeyIndex).
+     *
+     * Le righe vengono lette dall'indice delle opere, senza scorrere il catalogo.
+     *
+     * @param title Titolo del libro.
+     * @param authors Autori del libro (in qualsiasi ordine).
+     * @param year Anno di pubblicazione.
+     * @return Lista dei libri corrispondenti.
+     */
+    @Override
+    public List<Book> findByTitleAndAuthorsAndYear(String title, List<String> authors, int year) {
+        String key = WorkKeyIndex.key(title, authors, year);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        int[] matching = workRows.get(key);
+        if (matching == null) {
+            return Collections.emptyList();
+        }
+        List<Book> result = new ArrayList<>(matching.length);
+        for (int row : matching) {
+            result.add(materialize(row));
+        }
+        return result;
+    }
+
+    /**
+     * @brief Restituisce tutti i libri ordinati per titolo.
+     *
+     * @return Lista completa dei libri ordinata alfabeticamente.
+     */
+    @Override
+    public List<Book> findAllOrderByTitle() {
+        int[] order = titleOrder();
+        List<Book> result = new ArrayList<>(order.length);
+        for (int row : order) {
+            result.add(materialize(row));
+        }
+        return result;
+    }
+
+    /**
+     * @brief Costruisce la copia Book di una riga.
+     *
+     * @param row La riga.
+     * @return Il libro.
+     */
+    private Book materialize(int row) {
+        return new Book(isbnOf(row), titles[row], decodeAuthors(row), years[row],
+                totalCopies[row], availableCopies[row]);
+    }
+
+    /**
+     * @brief Restituisce l'ISBN di una riga.
+     *
+     * @param row La riga.
+     * @return L'ISBN.
+     */
+    private String isbnOf(int row) {
+        long code = isbns[row];
+        return code >= 0 ? NumericCode.decode(code, NumericCode.ISBN_DIGITS) : otherIsbns.get(row);
+    }
+
+    /**
+     * @brief Restituisce la riga di un ISBN.
+     *
+     * @param isbn L'ISBN.
+     * @param code Il suo codice numerico (negativo se fuori formato).
+     * @return La riga, oppure LongIntMap.MISSING se l'ISBN è assente.
+     */
+    private int rowOf(String isbn, long code) {
+        if (code >= 0) {
+            return rows.get(code);
+        }
+        Integer row = otherRows.get(isbn);
+        return row == null ? LongIntMap.MISSING : row;
+    }
+
+    /**
+     * @brief Rimuove un ISBN fuori formato dalla mappa delle righe.
+     *
+     * @param isbn L'ISBN.
+     * @return La riga che occupava, oppure LongIntMap.MISSING se assente.
+     */
+    private int removeOtherRow(String isbn) {
+        Integer row = otherRows.remove(isbn);
+        return row == null ? LongIntMap.MISSING : row;
+    }
+
+    /**
+     * @brief Calcola la chiave dell'opera di una riga.
+     *
+     * @param row La riga.
+     * @return La chiave, oppure null se il libro non ha titolo o autori.
+     */
+    private String workKeyOf(int row) {
+        return WorkKeyIndex.key(titles[row], decodeAuthors(row), years[row]);
+    }
+
+    /**
+     * @brief Aggiunge una riga all'indice delle opere.
+     *
+     * @param work La chiave dell'opera (se null, l'operazione viene ignorata).
+     * @param row La riga.
+     */
+    private void addWorkRow(String work, int row) {
+        if (work == null) {
+            return;
+        }
+        int[] current = workRows.get(work);
+        if (current == null) {
+            workRows.put(work, new int[] {row});
+        } else {
+            int[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = row;
+            workRows.put(work, extended);
+        }
+    }
+
+    /**
+     * @brief Toglie una riga dall'indice delle opere.
+     *
+     * @param work La chiave dell'opera (se null, l'operazione viene ignorata).
+     * @param row La riga.
+     */
+    private void removeWorkRow(String work, int row) {
+        int[] current = work == null ? null : workRows.get(work);
+        if (current == null) {
+            return;
+        }
+        int i = 0;
+        while (i < current.length && current[i] != row) {
+            i++;
+        }
+        if (i == current.length) {
+            return;
+        }
+        if (current.length == 1) {
+            workRows.remove(work);
+            return;
+        }
+        int[] reduced = Arrays.copyOf(current, current.length - 1);
+        if (i < reduced.length) {
+            reduced[i] = current[current.length - 1];
+        }
+        workRows.put(work, reduced);
+    }
+
+    /**
+     * @brief Aggiorna l'indice delle opere quando una riga viene spostata.
+     *
+     * @param work La chiave dell'opera della riga (se null, l'operazione viene ignorata).
+     * @param from La riga di origine.
+     * @param to La riga di destinazione.
+     */
+    private void moveWorkRow(String work, int from, int to) {
+        int[] current = work == null ? null : workRows.get(work);
+        if (current == null) {
+            return;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == from) {
+                current[i] = to;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @brief Converte i nomi degli autori in codici del dizionario, aggiungendo quelli nuovi.
+     *
+     * @param names I nomi (può essere null).
+     * @return I codici.
+     */
+    private int[] encodeAuthors(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return NO_AUTHORS;
+        }
+        int[] codes = new int[names.size()];
+        for (int i = 0; i < codes.length; i++) {
+            String name = names.get(i);
+            Integer code = authorCodes.get(name);
+            if (code == null) {
+                code = authorNames.size();
+                authorNames.add(name);
+                authorCodes.put(name, code);
+            }
+            codes[i] = code;
+        }
+        return codes;
+    }
+
+    /**
+     * @brief Riporta i codici autore di una riga ai nomi.
+     *
+     * @param row La riga.
+     * @return I nomi, nell'ordine originale.
+     */
+    private List<String> decodeAuthors(int row) {
+        int[] codes = authors[row];
+        String[] names = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            names[i] = authorNames.get(codes[i]);
+        }
+        return Arrays.asList(names);
+    }
+
+    /**
+     * @brief Restituisce le righe ordinate per titolo, ricalcolandole se necessario.
+     *
+     * @return Le righe ordinate.
+     */
+    private int[] titleOrder() {
+        if (titleOrder == null) {
+            Integer[] boxed = new Integer[size];
+            for (int row = 0; row < size; row++) {
+                boxed[row] = row;
+            }
+            Arrays.sort(boxed, (a, b) -> TITLE_ORDER.compare(titles[a], titles[b]));
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = boxed[i];
+            }
+            titleOrder = order;
+        }
+        return titleOrder;
+    }
+
+    /**
+     * @brief Verifica se un testo contiene una parola chiave, ignorando maiuscole e minuscole.
+     *
+     * @param text Il testo (può essere null).
+     * @param keyword La parola chiave.
+     * @return true se il testo la contiene.
+     */
+    private static boolean containsIgnoreCase(String text, String keyword) {
+        if (text == null) {
+            return false;
+        }
+        int last = text.length() - keyword.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, keyword, 0, keyword.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @brief Alloca colonne vuote.
+     *
+     * @param capacity La capacità.
+     */
+    private void allocate(int capacity) {
+        isbns = new long[capacity];
+        titles = new String[capacity];
+        authors = new int[capacity][];
+        years = new int[capacity];
+        totalCopies = new int[capacity];
+        availableCopies = new int[capacity];
+    }
+
+    /**
+     * @brief Raddoppia la capacità delle colonne mantenendo le righe occupate.
+     */
+    private void grow() {
+        int capacity = isbns.length * 2;
+        isbns = Arrays.copyOf(isbns, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        authors = Arrays.copyOf(authors, capacity);
+        years = Arrays.copyOf(years, capacity);
+        totalCopies = Arrays.copyOf(totalCopies, capacity);
+        availableCopies = Arrays.copyOf(availableCopies, capacity);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+/**
+ *
+ * @author Giovanni
+ */
+import com.mycompany.gestionebiblioteca.model.Book;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @brief Implementazione thread-safe del repository dei libri.
+ *
+ * Stesso comportamento di InMemoryBookRepository, ma utilizzabile da più thread
+ * contemporaneamente:
+ * - lo storage è una ConcurrentHashMap, quindi le ricerche per ISBN non usano lock;
+ * - le scritture aggiornano storage e indici a trigrammi sotto uno SnapshotLock esclusivo;
+ * - findAll e findAllOrderByTitle leggono uno snapshot coerente con una lettura ottimistica;
+ * - le ricerche per titolo e autore consultano gli indici a trigrammi sotto il lock
+ *   condiviso (gli indici non tollerano letture concorrenti alle scritture), quindi
+ *   più ricerche procedono in parallelo e attendono solo le scritture in corso.
+ */
+public class ConcurrentBookRepository implements BookRepository {
+
+    /**
+     * @brief Ordinamento per titolo (case-insensitive).
+     */
+    private static final Comparator<Book> BY_TITLE =
+            Comparator.comparing(Book::getTitle, Comparator.nullsLast(String::compareToIgnoreCase));
+
+    /**
+     * @brief Storage interno: ISBN → libro.
+     */
+    private final Map<String, Book> storage = new ConcurrentHashMap<>();
+
+    /**
+     * @brief Indice a trigrammi dei titoli.
+     */
+    private final TrigramIndex titleIndex = new TrigramIndex();
+
+    /**
+     * @brief Indice a trigrammi degli autori.
+     */
+    private final TrigramIndex authorIndex = new TrigramIndex();
+
+    /**
+     * @brief Indice delle opere (titolo, autori, anno) per i duplicati semantici.
+     */
+    private final WorkKeyIndex workIndex = new WorkKeyIndex();
+
+    /**
+     * @brief Coordinamento tra letture e scritture.
+     */
+    private final SnapshotLock lock = new SnapshotLock();
+
+    /**
+     * @brief Salva o aggiorna un libro nel repository.
+     *
+     * @param entity L'entità libro da salvare.
+     * @return L'entità appena salvata.
+     * @throws IllegalArgumentException Se l'entità è null o se l'ISBN è null.
+     */
+    @Override
+    public Book save(Book entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Libro non deve essere null");
+        }
+        String isbn = entity.getIsbn();
+        if (isbn == null) {
+            throw new IllegalArgumentException("isbn non deve essere null");
+        }
+        lock.write(() -> store(isbn, entity));
+        return entity;
+    }
+
+    /**
+     * @brief Salva in blocco una collezione di libri con un solo lock di scrittura.
+     *
+     * @param entities I libri da salvare.
+     * @return I libri salvati, nello stesso ordine.
+     * @throws IllegalArgumentException Se la collezione, un libro o un ISBN sono null
+     * (in tal caso nessun libro viene salvato).
+     */
+    @Override
+    public List<Book> saveAll(Collection<? extends Book> entities) {
+        if (entities == null) {
+            throw new IllegalArgumentException("entities non deve essere null");
+        }
+        List<Book> saved = new ArrayList<>(entities);
+        for (Book book : saved) {
+            if (book == null) {
+                throw new IllegalArgumentException("Libro non deve essere null");
+            }
+            if (book.getIsbn() == null) {
+                throw new IllegalArgumentException("isbn non deve essere null");
+            }
+        }
+        lock.write(() -> {
+            for (Book book : saved) {
+                store(book.getIsbn(), book);
+            }
+        });
+        return saved;
+    }
+
+    /**
+     * @brief Recupera un libro tramite il suo ISBN (senza lock).
+     *
+     * @param id L'ISBN del libro da cercare.
+     * @return Un Optional contenente il libro se presente, altrimenti vuoto.
+     */
+    @Override
+    public Optional<Book> findById(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(storage.get(id));
+    }
+
+    /**
+     * @brief Restituisce uno snapshot coerente dell'intera collezione di libri.
+     * @return Lista di tutti i libri presenti.
+     */
+    @Override
+    public List<Book> findAll() {
+        return lock.read(() -> new ArrayList<>(storage.values()));
+    }
+
+    /**
+     * @brief Rimuove un libro dal repository.
+     *
+     * @param id L'ISBN del libro da rimuovere. Se null, l'operazione viene ignorata.
+     */
+    @Override
+    public void deleteById(String id) {
+        if (id == null) {
+            return;
+        }
+        lock.write(() -> remove(id));
+    }
+
+    /**
+     * @brief Rimuove in blocco i libri indicati con un solo lock di scrittura.
+     *
+     * @param ids Gli ISBN dei libri da rimuovere (i null vengono ignorati).
+     */
+    @Override
+    public void deleteAllById(Collection<? extends String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids non deve essere null");
+        }
+        lock.write(() -> {
+            for (String id : ids) {
+                if (id != null) {
+                    remove(id);
+                }
+            }
+        });
+    }
+
+    /**
+     * @brief Svuota completamente il repository.
+     */
+    @Override
+    public void deleteAll() {
+        lock.write(() -> {
+            storage.clear();
+            titleIndex.clear();
+            authorIndex.clear();
+            workIndex.clear();
+        });
+    }
+
+    /**
+     * @brief Verifica l'esistenza di un libro (senza lock).
+     *
+     * @param id L'ISBN da controllare.
+     * @return true se il libro esiste, false altrimenti.
+     */
+    @Override
+    public boolean existsById(String id) {
+        if (id == null) {
+            return false;
+        }
+        return storage.containsKey(id);
+    }
+
+    /**
+     * @brief Conta il numero totale di libri nel repository.
+     * @return Il numero di elementi presenti.
+     */
+    @Override
+    public long count() {
+        return storage.size();
+    }
+
+    /**
+     * @brief Alias per findById specifico per il dominio (ricerca per ISBN).
+     * @param isbn Il codice ISBN.
+     * @return Optional con il libro trovato.
+     */
+    @Override
+    public Optional<Book> findByIsbn(String isbn) {
+        return findById(isbn);
+    }
+
+    /**
+     * @brief Cerca libri il cui titolo contiene la parola chiave (case-insensitive).
+     *
+     * @param keyword La stringa da cercare nel titolo.
+     * @return Lista di libri corrispondenti, ordinata alfabeticamente per titolo.
+     */
+    @Override
+    public List<Book> findByTitleContaining(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Book> result = lock.readLocked(() -> booksOf(titleIndex.search(keyword)));
+        result.sort(BY_TITLE);
+        return result;
+    }
+
+    /**
+     * @brief Cerca libri con almeno un autore che contiene la parola chiave (case-insensitive).
+     *
+     * Ordinamento: primo autore della lista, poi titolo.
+     *
+     * @param keyword La stringa da cercare nei nomi degli autori.
+     * @return Lista di libri corrispondenti.
+     */
+    @Override
+    public List<Book> findByAuthorContaining(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Book> result = lock.readLocked(() -> booksOf(authorIndex.search(keyword)));
+        result.sort(Comparator.comparing(
+                (Book b) -> b.getAuthors().isEmpty() ? "" : b.getAuthors().get(0),
+                Comparator.nullsLast(String::compareToIgnoreCase))
+                .thenComparing(BY_TITLE));
+        return result;
+    }
+
+    /**
+     * @brief Cerca i libri della stessa opera tramite l'indice delle opere.
+     *
+     * @param title Titolo del libro.
+     * @param authors Autori del libro (in qualsiasi ordine).
+     * @param year Anno di pubblicazione.
+     * @return Lista dei libri corrispondenti.
+     */
+    @Override
+    public List<Book> findByTitleAndAuthorsAndYear(String title, List<String> authors, int year) {
+        return lock.readLocked(() -> booksOf(workIndex.find(title, authors, year)));
+    }
+
+    /**
+     * @brief Restituisce tutti i libri ordinati per titolo.
+     *
+     * @return Lista completa dei libri ordinata alfabeticamente.
+     */
+    @Override
+    public List<Book> findAllOrderByTitle() {
+        List<Book> result = findAll();
+        result.sort(BY_TITLE);
+        return result;
+    }
+
+    // operazioni sullo storage (chiamate solo sotto il lock di scrittura)
+
+    /**
+     * @brief Memorizza un libro e aggiorna gli indici.
+     *
+     * @param isbn L'ISBN del libro.
+     * @param entity Il libro.
+     */
+    private void store(String isbn, Book entity) {
+        storage.put(isbn, entity);
+        titleIndex.put(isbn, Collections.singletonList(entity.getTitle()));
+        authorIndex.put(isbn, entity.getAuthors() != null ? entity.getAuthors() : Collections.<String>emptyList());
+        workIndex.put(isbn, entity.getTitle(), entity.getAuthors(), entity.getYear());
+    }
+
+    /**
+     * @brief Rimuove un libro dallo storage e dagli indici.
+     *
+     * @param id L'ISBN del libro.
+     */
+    private void remove(String id) {
+        storage.remove(id);
+        titleIndex.remove(id);
+        authorIndex.remove(id);
+        workIndex.remove(id);
+    }
+
+    /**
+     * @brief Converte un insieme di ISBN nei libri corrispondenti.
+     *
+     * @param isbns Gli ISBN restituiti da un indice.
+     * @return Lista (modificabile) dei libri corrispondenti.
+     */
+    private List<Book> booksOf(Set<String> isbns) {
+        List<Book> result = new ArrayList<>(isbns.size());
+        for (String isbn : isbns) {
+            result.add(storage.get(isbn));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import com.mycompany.gestionebiblioteca.model.NumericCode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * @brief Implementazione thread-safe del repository dei prestiti.
+ *
+ * Stesso comportamento di InMemoryLoanRepository (chiave LoanId
+ * e indici secondari per utente, libro e prestiti
+ * attivi), ma utilizzabile da più thread contemporaneamente:
+ * - storage e indice delle scadenze sono collezioni concorrenti (ConcurrentHashMap,
+ *   ConcurrentSkipListSet), quindi possono essere attraversati anche durante una scrittura;
+ * - gli indici per matricola e per ISBN sono CodeKeyedMap, che memorizzano i codici
+ *   come long come in InMemoryLoanRepository;
+ * - le scritture aggiornano storage e indici sotto uno SnapshotLock esclusivo;
+ * - findAll e i prestiti attivi per scadenza leggono con una lettura ottimistica,
+ *   senza lock, ripetuta sotto lock condiviso solo se una scrittura l'ha interrotta;
+ *   le ricerche per matricola e per ISBN consultano le CodeKeyedMap, che non
+ *   tollerano letture concorrenti alle scritture, e usano quindi il lock condiviso.
+ *   In entrambi i casi il risultato è uno snapshot coerente tra storage e indici.
+ */
+public class ConcurrentLoanRepository implements LoanRepository {
+
+    /**
+     * @brief Storage interno: identificativo → prestito.
+     */
+    private final Map<LoanId, Loan> storage = new ConcurrentHashMap<>();
+
+    /**
+     * @brief Indice secondario: matricola → ID dei prestiti dell'utente.
+     */
+    private final CodeKeyedMap<Set<LoanId>> idsByUser = new CodeKeyedMap<>(NumericCode.MATRICOLA_DIGITS);
+
+    /**
+     * @brief Indice secondario: ISBN → ID dei prestiti del libro.
+     */
+    private final CodeKeyedMap<Set<LoanId>> idsByIsbn = new CodeKeyedMap<>(NumericCode.ISBN_DIGITS);
+
+    /**
+     * @brief Prestiti attivi ordinati per scadenza.
+     */
+    private final NavigableSet<ActiveLoanKey> activeByDueDate = new ConcurrentSkipListSet<>(ActiveLoanKey.BY_DUE_DATE);
+
+    /**
+     * @brief Prestiti attivi di ogni utente ordinati per scadenza.
+     */
+    private final CodeKeyedMap<NavigableSet<ActiveLoanKey>> activeByUser = new CodeKeyedMap<>(NumericCode.MATRICOLA_DIGITS);
+
+    /**
+     * @brief Prestiti attivi di ogni libro ordinati per scadenza.
+     */
+    private final CodeKeyedMap<NavigableSet<ActiveLoanKey>> activeByIsbn = new CodeKeyedMap<>(NumericCode.ISBN_DIGITS);
+
+    /**
+     * @brief Chiave con cui ogni prestito attivo è stato indicizzato (per poterla rimuovere).
+     */
+    private final Map<LoanId, ActiveLoanKey> activeKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @brief Coordinamento tra letture e scritture.
+     */
+    private final SnapshotLock lock = new SnapshotLock();
+
+    /**
+     * @brief Salva o aggiorna un prestito.
+     *
+     * @param entity Il prestito da salvare.
+     * @return L'istanza salvata.
+     * @throws IllegalArgumentException Se l'entità passata è null.
+     */
+    @Override
+    public Loan save(Loan entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Prestito non deve essere null");
+        }
+        LoanId id = entity.getId();
+        lock.write(() -> {
+            storage.put(id, entity);
+            index(id, entity);
+        });
+        return entity;
+    }
+
+    /**
+     * @brief Salva in blocco una collezione di prestiti con un solo lock di scrittura.
+     *
+     * @param entities I prestiti da salvare.
+     * @return I prestiti salvati, nello stesso ordine.
+     * @throws IllegalArgumentException Se la collezione o un prestito sono null
+     * (in tal caso nessun prestito viene salvato).
+     */
+    @Override
+    public List<Loan> saveAll(Collection<? extends Loan> entities) {
+        if (entities == null) {
+            throw new IllegalArgumentException("entities non deve essere null");
+        }
+        List<Loan> saved = new ArrayList<>(entities);
+        for (Loan loan : saved) {
+            if (loan == null) {
+                throw new IllegalArgumentException("Prestito non deve essere null");
+            }
+        }
+        lock.write(() -> {
+            for (Loan loan : saved) {
+                LoanId id = loan.getId();
+                storage.put(id, loan);
+                index(id, loan);
+            }
+        });
+        return saved;
+    }
+
+    /**
+     * @brief Cerca un prestito tramite il suo identificativo (senza lock).
+     *
+     * @param id L'identificativo (matricola, ISBN e data di inizio).
+     * @return Optional contenente il prestito se trovato.
+     */
+    @Override
+    public Optional<Loan> findById(LoanId id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(storage.get(id));
+    }
+
+    /**
+     * @brief Restituisce uno snapshot coerente di tutti i prestiti.
+     * @return Lista di tutti i prestiti.
+     */
+    @Override
+    public List<Loan> findAll() {
+        return lock.read(() -> new ArrayList<>(storage.values()));
+    }
+
+    /**
+     * @brief Rimuove un prestito specifico.
+     * @param id La chiave identificativa del prestito.
+     */
+    @Override
+    public void deleteById(LoanId id) {
+        if (id == null) {
+            return;
+        }
+        lock.write(() -> remove(id));
+    }
+
+    /**
+     * @brief Rimuove in blocco i prestiti indicati con un solo lock di scrittura.
+     *
+     * @param ids Le chiavi dei prestiti da rimuovere (i null vengono ignorati).
+     */
+    @Override
+    public void deleteAllById(Collection<? extends LoanId> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids non deve essere null");
+        }
+        lock.write(() -> {
+            for (LoanId id : ids) {
+                if (id != null) {
+                    remove(id);
+                }
+            }
+        });
+    }
+
+    /**
+     * @brief Svuota l'intero archivio prestiti.
+     */
+    @Override
+    public void deleteAll() {
+        lock.write(() -> {
+            storage.clear();
+            idsByUser.clear();
+            idsByIsbn.clear();
+            activeByDueDate.clear();
+            activeByUser.clear();
+            activeByIsbn.clear();
+            activeKeys.clear();
+        });
+    }
+
+    /**
+     * @brief Verifica l'esistenza di un prestito tramite ID (senza lock).
+     * @param id La chiave da cercare.
+     * @return true se esiste, false altrimenti.
+     */
+    @Override
+    public boolean existsById(LoanId id) {
+        if (id == null) {
+            return false;
+        }
+        return storage.containsKey(id);
+    }
+
+    /**
+     * @brief Conta il numero totale di prestiti (attivi e chiusi).
+     * @return Il totale dei record.
+     */
+    @Override
+    public long count() {
+        return storage.size();
+    }
+
+    /**
+     * @brief Trova tutto lo storico dei prestiti di un utente.
+     *
+     * @param matricola La matricola dell'utente.
+     * @return Lista dei prestiti associati all'utente.
+     */
+    @Override
+    public List<Loan> findByUserMatricola(String matricola) {
+        if (matricola == null || matricola.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return lock.readLocked(() -> loansOf(idsByUser.get(matricola)));
+    }
+
+    /**
+     * @brief Trova tutto lo storico dei prestiti di un libro.
+     *
+     * @param isbn L'ISBN del libro.
+     * @return Lista dei prestiti che hanno coinvolto quel libro.
+     */
+    @Override
+    public List<Loan> findByBookIsbn(String isbn) {
+        if (isbn == null || isbn.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return lock.readLocked(() -> loansOf(idsByIsbn.get(isbn)));
+    }
+
+    /**
+     * @brief Recupera i prestiti attivi ordinati per scadenza, matricola e ISBN.
+     *
+     * @return Lista ordinata dei prestiti attivi.
+     */
+    @Override
+    public List<Loan> findActiveLoansOrderByDueDate() {
+        return lock.read(() -> activeLoansOf(activeByDueDate));
+    }
+
+    /**
+     * @brief Recupera i prestiti attivi di un utente ordinati per scadenza e ISBN.
+     *
+     * @param matricola La matricola dell'utente.
+     * @return Lista dei prestiti in corso per quell'utente.
+     */
+    @Override
+    public List<Loan> findActiveLoansByUser(String matricola) {
+        if (matricola == null || matricola.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return lock.readLocked(() -> {
+            NavigableSet<ActiveLoanKey> keys = activeByUser.get(matricola);
+            return keys == null ? new ArrayList<Loan>() : activeLoansOf(keys);
+        });
+    }
+
+    /**
+     * @brief Recupera i prestiti attivi di un libro ordinati per scadenza e matricola.
+     *
+     * @param isbn L'ISBN del libro.
+     * @return Lista dei prestiti in corso per quel libro.
+     */
+    @Override
+    public List<Loan> findActiveLoansByIsbn(String isbn) {
+        if (isbn == null || isbn.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return lock.readLocked(() -> {
+            NavigableSet<ActiveLoanKey> keys = activeByIsbn.get(isbn);
+            return keys == null ? new ArrayList<Loan>() : activeLoansOf(keys);
+        });
+    }
+
+    // gestione degli indici secondari (chiamati solo sotto il lock di scrittura)
+
+    /**
+     * @brief Aggiorna gli indici secondari dopo il salvataggio di un prestito.
+     *
+     * @param id L'ID del prestito.
+     * @param loan Il prestito salvato.
+     */
+    private void index(LoanId id, Loan loan) {
+        idsByUser.computeIfAbsent(loan.getUserMatricola(), key -> ConcurrentHashMap.newKeySet()).add(id);
+        idsByIsbn.computeIfAbsent(loan.getBookIsbn(), key -> ConcurrentHashMap.newKeySet()).add(id);
+
+        removeActiveKey(id);
+        if (loan.isActive()) {
+            ActiveLoanKey key = new ActiveLoanKey(id, loan);
+            activeKeys.put(id, key);
+            activeByDueDate.add(key);
+            activeByUser.computeIfAbsent(key.getMatricola(),
+                    user -> new ConcurrentSkipListSet<>(ActiveLoanKey.BY_USER_DUE_DATE)).add(key);
+            activeByIsbn.computeIfAbsent(key.getIsbn(),
+                    book -> new ConcurrentSkipListSet<>(ActiveLoanKey.BY_BOOK_DUE_DATE)).add(key);
+        }
+    }
+
+    /**
+     * @brief Rimuove un prestito dallo storage e dagli indici.
+     *
+     * @param id L'ID del prestito.
+     */
+    private void remove(LoanId id) {
+        Loan removed = storage.remove(id);
+        if (removed != null) {
+            removeFromIndex(idsByUser, removed.getUserMatricola(), id);
+            removeFromIndex(idsByIsbn, removed.getBookIsbn(), id);
+            removeActiveKey(id);
+        }
+    }
+
+    /**
+     * @brief Rimuove la chiave attiva registrata per un prestito, se presente.
+     *
+     * @param id L'ID del prestito.
+     */
+    private void removeActiveKey(LoanId id) {
+        ActiveLoanKey previous = activeKeys.remove(id);
+        if (previous == null) {
+            return;
+        }
+        activeByDueDate.remove(previous);
+        removeFromActiveIndex(activeByUser, previous.getMatricola(), previous);
+        removeFromActiveIndex(activeByIsbn, previous.getIsbn(), previous);
+    }
+
+    /**
+     * @brief Rimuove una chiave attiva da un indice per utente o per libro, eliminando le voci rimaste vuote.
+     *
+     * @param index L'indice da aggiornare.
+     * @param code La matricola o l'ISBN.
+     * @param key La chiave attiva da rimuovere.
+     */
+    private static void removeFromActiveIndex(CodeKeyedMap<NavigableSet<ActiveLoanKey>> index, String code, ActiveLoanKey key) {
+        NavigableSet<ActiveLoanKey> keys = index.get(code);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                index.remove(code);
+            }
+        }
+    }
+
+    /**
+     * @brief Rimuove un ID da un indice, eliminando le voci rimaste vuote.
+     *
+     * @param index L'indice da aggiornare.
+     * @param key La chiave dell'indice.
+     * @param id L'ID da rimuovere.
+     */
+    private static void removeFromIndex(CodeKeyedMap<Set<LoanId>> index, String key, LoanId id) {
+        Set<LoanId> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @brief Converte un insieme di ID nei prestiti corrispondenti.
+     *
+     * @param ids Gli ID (può essere null).
+     * @return La lista dei prestiti.
+     */
+    private List<Loan> loansOf(Set<LoanId> ids) {
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<Loan> result = new ArrayList<>(ids.size());
+        for (LoanId id : ids) {
+            result.add(storage.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * @brief Converte un insieme ordinato di chiavi attive nei prestiti corrispondenti.
+     *
+     * @param keys Le chiavi, già ordinate.
+     * @return La lista dei prestiti ancora attivi, nello stesso ordine.
+     */
+    private List<Loan> activeLoansOf(NavigableSet<ActiveLoanKey> keys) {
+        List<Loan> result = new ArrayList<>();
+        for (ActiveLoanKey key : keys) {
+            Loan loan = storage.get(key.getId());
+            if (loan.isActive()) {
+                result.add(loan);
+            }
+        }
+        return result;
+    }
+}
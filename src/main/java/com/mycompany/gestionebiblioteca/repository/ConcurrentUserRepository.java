@@ -0,0 +1,319 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import com.mycompany.gestionebiblioteca.model.NumericCode;
+import com.mycompany.gestionebiblioteca.model.User;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Implementazione thread-safe del repository degli utenti.
+ *
+ * Stesso comportamento di InMemoryUserRepository, ma utilizzabile da più thread
+ * contemporaneamente (più postazioni, importazioni in blocco):
+ * - lo storage è una ConcurrentHashMap, quindi le ricerche per chiave non usano lock;
+ * - le scritture sono serializzate da uno SnapshotLock;
+ * - findAll e le query ordinate leggono uno snapshot coerente con una lettura
+ *   ottimistica, ripetuta sotto lock condiviso solo se interrotta da una scrittura;
+ * - le email indicizzate per ogni matricola, lette e scritte solo sotto il lock
+ *   di scrittura, stanno in una CodeKeyedMap (matricole memorizzate come long).
+ */
+public class ConcurrentUserRepository implements UserRepository {
+
+    /**
+     * @brief Ordinamento per cognome e poi per nome.
+     */
+    private static final Comparator<User> BY_NAME = Comparator
+            .comparing(User::getLastName, Comparator.nullsLast(String::compareToIgnoreCase))
+            .thenComparing(User::getFirstName, Comparator.nullsLast(String::compareToIgnoreCase));
+
+    /**
+     * @brief Struttura dati per memorizzare gli utenti (Chiave: Matricola, Valore: User).
+     */
+    private final Map<String, User> storage = new ConcurrentHashMap<>();
+
+    /**
+     * @brief Indice secondario: email normalizzata → matricole degli utenti.
+     */
+    private final Map<String, Set<String>> idsByEmail = new ConcurrentHashMap<>();
+
+    /**
+     * @brief Email con cui ogni utente è stato indicizzato (per poterla rimuovere).
+     */
+    private final CodeKeyedMap<String> emailKeys = new CodeKeyedMap<>(NumericCode.MATRICOLA_DIGITS);
+
+    /**
+     * @brief Coordinamento tra letture e scritture.
+     */
+    private final SnapshotLock lock = new SnapshotLock();
+
+    /**
+     * @brief Salva o aggiorna un utente nel repository.
+     *
+     * @param entity L'oggetto User da salvare.
+     * @return L'entità salvata.
+     * @throws IllegalArgumentException Se l'entità o la matricola sono null.
+     */
+    @Override
+    public User save(User entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("user must not be null");
+        }
+        String matricola = entity.getMatricola();
+        if (matricola == null) {
+            throw new IllegalArgumentException("matricola must not be null");
+        }
+        lock.write(() -> store(matricola, entity));
+        return entity;
+    }
+
+    /**
+     * @brief Salva in blocco una collezione di utenti con un solo lock di scrittura.
+     *
+     * @param entities Gli utenti da salvare.
+     * @return Gli utenti salvati, nello stesso ordine.
+     * @throws IllegalArgumentException Se la collezione, un utente o una matricola sono null
+     * (in tal caso nessun utente viene salvato).
+     */
+    @Override
+    public List<User> saveAll(Collection<? extends User> entities) {
+        if (entities == null) {
+            throw new IllegalArgumentException("entities non deve essere null");
+        }
+        List<User> saved = new ArrayList<>(entities);
+        for (User user : saved) {
+            if (user == null) {
+                throw new IllegalArgumentException("user must not be null");
+            }
+            if (user.getMatricola() == null) {
+                throw new IllegalArgumentException("matricola must not be null");
+            }
+        }
+        lock.write(() -> {
+            for (User user : saved) {
+                store(user.getMatricola(), user);
+            }
+        });
+        return saved;
+    }
+
+    /**
+     * @brief Cerca un utente tramite la sua matricola (senza lock).
+     *
+     * @param id La matricola dell'utente.
+     * @return Optional contenente l'utente se trovato.
+     */
+    @Override
+    public Optional<User> findById(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(storage.get(id));
+    }
+
+    /**
+     * @brief Restituisce uno snapshot coerente di tutti gli utenti.
+     * @return Lista di tutti gli utenti.
+     */
+    @Override
+    public List<User> findAll() {
+        return lock.read(() -> new ArrayList<>(storage.values()));
+    }
+
+    /**
+     * @brief Rimuove un utente tramite la sua matricola.
+     * @param id La matricola dell'utente da rimuovere.
+     */
+    @Override
+    public void deleteById(String id) {
+        if (id == null) {
+            return;
+        }
+        lock.write(() -> remove(id));
+    }
+
+    /**
+     * @brief Rimuove in blocco gli utenti indicati con un solo lock di scrittura.
+     *
+     * @param ids Le matricole degli utenti da rimuovere (i null vengono ignorati).
+     */
+    @Override
+    public void deleteAllById(Collection<? extends String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids non deve essere null");
+        }
+        lock.write(() -> {
+            for (String id : ids) {
+                if (id != null) {
+                    remove(id);
+                }
+            }
+        });
+    }
+
+    /**
+     * @brief Rimuove tutti gli utenti.
+     */
+    @Override
+    public void deleteAll() {
+        lock.write(() -> {
+            storage.clear();
+            idsByEmail.clear();
+            emailKeys.clear();
+        });
+    }
+
+    /**
+     * @brief Verifica l'esistenza di un utente (senza lock).
+     *
+     * @param id La matricola da verificare.
+     * @return true se l'utente esiste.
+     */
+    @Override
+    public boolean existsById(String id) {
+        if (id == null) {
+            return false;
+        }
+        return storage.containsKey(id);
+    }
+
+    /**
+     * @brief Conta gli utenti registrati.
+     * @return Il numero di utenti.
+     */
+    @Override
+    public long count() {
+        return storage.size();
+    }
+
+    /**
+     * @brief Alias di findById per la ricerca per matricola.
+     *
+     * @param matricola La matricola.
+     * @return Optional contenente l'utente se trovato.
+     */
+    @Override
+    public Optional<User> findByMatricola(String matricola) {
+        return findById(matricola);
+    }
+
+    /**
+     * @brief Cerca gli utenti il cui cognome contiene la parola chiave (case-insensitive).
+     *
+     * @param keyword La parola chiave.
+     * @return Lista degli utenti trovati, ordinata per cognome e nome.
+     */
+    @Override
+    public List<User> findByLastNameContaining(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        String lowerKeyword = keyword.trim().toLowerCase();
+        List<User> result = new ArrayList<>();
+        for (User user : findAll()) {
+            String lastName = user.getLastName();
+            if (lastName != null && lastName.toLowerCase().contains(lowerKeyword)) {
+                result.add(user);
+            }
+        }
+        result.sort(BY_NAME);
+        return result;
+    }
+
+    /**
+     * @brief Cerca gli utenti con l'email indicata tramite l'indice delle email.
+     *
+     * @param email Email da cercare (case-insensitive, spazi esterni ignorati).
+     * @return Lista degli utenti con quell'email.
+     */
+    @Override
+    public List<User> findByEmailIgnoreCase(String email) {
+        String key = InMemoryUserRepository.emailKey(email);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        return lock.read(() -> {
+            Set<String> ids = idsByEmail.get(key);
+            List<User> result = new ArrayList<>();
+            if (ids != null) {
+                for (String id : ids) {
+                    result.add(storage.get(id));
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * @brief Restituisce tutti gli utenti ordinati per cognome e nome.
+     * @return Lista ordinata di tutti gli utenti.
+     */
+    @Override
+    public List<User> findAllOrderByLastNameAndFirstName() {
+        List<User> result = findAll();
+        result.sort(BY_NAME);
+        return result;
+    }
+
+    // operazioni sullo storage (chiamate solo sotto il lock di scrittura)
+
+    /**
+     * @brief Memorizza un utente e aggiorna l'indice delle email.
+     *
+     * @param matricola La matricola dell'utente.
+     * @param entity L'utente.
+     */
+    private void store(String matricola, User entity) {
+        storage.put(matricola, entity);
+        unindexEmail(matricola);
+        String key = InMemoryUserRepository.emailKey(entity.getEmail());
+        if (key != null) {
+            idsByEmail.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(matricola);
+            emailKeys.put(matricola, key);
+        }
+    }
+
+    /**
+     * @brief Rimuove un utente e la sua voce nell'indice delle email.
+     *
+     * @param id La matricola dell'utente.
+     */
+    private void remove(String id) {
+        storage.remove(id);
+        unindexEmail(id);
+    }
+
+    /**
+     * @brief Rimuove dall'indice delle email la voce di un utente.
+     *
+     * @param matricola La matricola dell'utente.
+     */
+    private void unindexEmail(String matricola) {
+        String key = emailKeys.remove(matricola);
+        if (key == null) {
+            return;
+        }
+        Set<String> ids = idsByEmail.get(key);
+        if (ids != null) {
+            ids.remove(matricola);
+            if (ids.isEmpty()) {
+                idsByEmail.remove(key);
+            }
+        }
+    }
+}
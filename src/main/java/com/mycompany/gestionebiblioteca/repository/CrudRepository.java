@@ -1,5 +1,7 @@
 package com.mycompany.gestionebiblioteca.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,6 +36,28 @@ public interface CrudRepository<ID, T> {
      */
     T save(T entity); 
 
+    /**
+     * @brief Salva in blocco una collezione di entità.
+     *
+     * Equivale a chiamare save per ogni elemento, nell'ordine della collezione.
+     * Le implementazioni con persistenza su file ridefiniscono il metodo per
+     * scrivere una sola volta alla fine del blocco, invece che dopo ogni entità.
+     *
+     * @param entities Le entità da salvare.
+     * @return Le entità salvate, nello stesso ordine.
+     * @throws IllegalArgumentException Se la collezione è null.
+     */
+    default List<T> saveAll(Collection<? extends T> entities) {
+        if (entities == null) {
+            throw new IllegalArgumentException("entities non deve essere null");
+        }
+        List<T> saved = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            saved.add(save(entity));
+        }
+        return saved;
+    }
+
     
     
     /**
@@ -63,6 +87,25 @@ public interface CrudRepository<ID, T> {
      * @param id Identificatore dell'entità da rimuovere.
      */
     void deleteById(ID id); 
+
+    /**
+     * @brief Elimina in blocco le entità associate agli ID indicati.
+     *
+     * Equivale a chiamare deleteById per ogni ID; gli ID inesistenti vengono
+     * ignorati. Le implementazioni con persistenza su file ridefiniscono il
+     * metodo per scrivere una sola volta alla fine del blocco.
+     *
+     * @param ids Identificatori delle entità da rimuovere.
+     * @throws IllegalArgumentException Se la collezione è null.
+     */
+    default void deleteAllById(Collection<? extends ID> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids non deve essere null");
+        }
+        for (ID id : ids) {
+            deleteById(id);
+        }
+    }
     
     
     /**
@@ -6,7 +6,8 @@
  * Questa classe funge da adattatore tra un repository in memoria (delegate)
  * e un sistema di persistenza basato su file gestito da FileManager.
  * Ogni modifica (inserimento, cancellazione o aggiornamento) viene salvata
- * automaticamente sul file tramite il metodo persistAll().
+ * automaticamente sul file tramite il metodo persistAll(): subito, oppure in
+ * differita tramite un WriteBehindPersister se fornito al costruttore.
  * Al momento dell’istanziazione, il repository viene inizializzato leggendo
  * tutti i libri presenti nel file specificato.
  */
@@ -14,11 +15,16 @@ package com.mycompany.gestionebiblioteca.repository;
 
 import com.mycompany.gestionebiblioteca.model.Book;
 import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.WriteBehindPersister;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  *
@@ -32,7 +38,7 @@ import java.util.Optional;
  * LibroRepository (delegate) aggiungendo la persistenza su file senza
  * modificarne l’implementazione interna.
  */
-public class FileBackedBookRepository implements BookRepository {
+public class FileBackedBookRepository implements BookRepository, TransactionalRepository {
     
     /**
      * @brief Repository interno che gestisce i dati in memoria.
@@ -48,6 +54,31 @@ public class FileBackedBookRepository implements BookRepository {
      * @brief Percorso del file in cui vengono memorizzati i libri.
      */
     private final Path booksFile;
+    
+    /**
+     * @brief Motore di scrittura differita (null se la persistenza è sincrona).
+     */
+    private final WriteBehindPersister persister;
+
+    /**
+     * @brief true mentre è aperta una transazione (le scritture su file sono sospese).
+     */
+    private boolean transactionActive;
+
+    /**
+     * @brief true se il repository è stato modificato nella transazione corrente.
+     */
+    private boolean transactionDirty;
+
+    /**
+     * @brief Identificatori dei libri modificati o cancellati dall'ultima scrittura su file.
+     */
+    private final Set<String> dirtyIds = new LinkedHashSet<>();
+
+    /**
+     * @brief true se il file va riscritto per intero (deleteAll o scrittura precedente fallita).
+     */
+    private boolean fullRewrite;
 
     
     /**
@@ -70,6 +101,24 @@ public class FileBackedBookRepository implements BookRepository {
     
     // questa classe dipende da altre componenti : non crea nulla da sola , riceve tutto dall'esterno -> dependency injection)
     public FileBackedBookRepository(BookRepository delegate, FileManager fileManager, Path booksFile) {
+        this(delegate, fileManager, booksFile, null);
+    }
+    
+    
+    /**
+     * @brief Costruttore con persistenza write-behind.
+     *
+     * Le modifiche non vengono scritte sul thread chiamante: il file viene
+     * segnalato come "sporco" al persister, che accorpa le scritture.
+     *
+     * @param delegate Repository che gestisce i dati in memoria.
+     * @param fileManager Gestore della persistenza su file.
+     * @param booksFile Percorso del file contenente i libri.
+     * @param persister Motore di scrittura differita (null per la scrittura sincrona).
+     * @throws IllegalArgumentException Se uno dei parametri obbligatori è null.
+     */
+    public FileBackedBookRepository(BookRepository delegate, FileManager fileManager, Path booksFile,
+            WriteBehindPersister persister) {
         
         if (delegate == null) {
             throw new IllegalArgumentException("delegate non deve essere null");
@@ -83,6 +132,7 @@ public class FileBackedBookRepository implements BookRepository {
         this.delegate = delegate; // chi gestisce i dati
         this.fileManager = fileManager; // come si salvano
         this.booksFile = booksFile; // dove si salvano
+        this.persister = persister; // quando si salvano (null -> subito)
         
         loadFromFile(); // caricamento inziale dal file
 
@@ -96,7 +146,7 @@ public class FileBackedBookRepository implements BookRepository {
      * e li inserisce nel repository in memoria (delegate).
      */
     
-    // è private perche viene chiamato solo dal costruttore 
+    // è private perche viene chiamato solo dal costruttore e dal rollback di una transazione
     private void loadFromFile() { // sincronizza il repository in memoria (delegate) con il contenuto del file dei libri
          try { 
             // FileManager apre il file, legge riga per riga, converte ogni riga in un oggetto Book 
@@ -122,21 +172,184 @@ public class FileBackedBookRepository implements BookRepository {
     /**
      * @brief Salva sul file tutti i libri presenti nel repository.
      *
-     * Questo metodo garantisce che ogni modifica sia immediatamente
-     * persistita per evitare perdita di dati.
+     * Senza persister ogni modifica viene immediatamente persistita per
+     * evitare perdita di dati; con il persister il file viene solo segnalato
+     * come da riscrivere e la scrittura avviene in background.
      */
     private void persistAll() { // salvare su file lo stato completo e corrente del repository in memoria
+        if (transactionActive) {
+            // la scrittura avverrà al commit della transazione
+            transactionDirty = true;
+            return;
+        }
+        if (persister != null) {
+            persister.markDirty(booksFile, this::writeSnapshot);
+            return;
+        }
         try { 
-            // recupero dello stato corrente
-            List<Book> allBooks = delegate.findAll(); 
-            // scrittura sul file
-            fileManager.saveBooks(booksFile, allBooks);
+            writeSnapshot();
         } catch (IOException e) {
             throw new UncheckedIOException("Errore durante il salvataggio dei libri sul file " + booksFile, e);
         }
     }
     
     
+    /**
+     * @brief Scrive sul file le modifiche accumulate dall'ultima scrittura.
+     *
+     * Se il FileManager lo permette (formato SLOTTED) vengono riscritti solo
+     * i record dei libri modificati o cancellati; altrimenti il file viene
+     * riscritto per intero. Le entità da scrivere vengono copiate sotto il lock
+     * del repository e la scrittura (anche in background) lavora sulle copie:
+     * una modifica successiva agli oggetti in memoria non finisce a metà nel
+     * file, ma in una scrittura successiva.
+     *
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void writeSnapshot() throws IOException {
+        List<Book> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        boolean full;
+        synchronized (this) {
+            if (dirtyIds.isEmpty() && !fullRewrite) {
+                return; // già scritto da una scrittura precedente
+            }
+            for (String id : dirtyIds) {
+                Optional<Book> current = delegate.findById(id);
+                if (current.isPresent()) {
+                    changed.add(copyOf(current.get()));
+                } else {
+                    removed.add(id);
+                }
+            }
+            full = fullRewrite;
+            dirtyIds.clear();
+            fullRewrite = false;
+        }
+        try {
+            if (full || !fileManager.updateBooks(booksFile, changed, removed)) {
+                List<Book> allBooks;
+                synchronized (this) {
+                    allBooks = new ArrayList<>();
+                    for (Book current : delegate.findAll()) {
+                        allBooks.add(copyOf(current));
+                    }
+                }
+                fileManager.saveBooks(booksFile, allBooks);
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                // non si sa cosa sia arrivato su disco: la prossima scrittura riparte da capo
+                fullRewrite = true;
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * @brief Copia un libro, per scriverlo senza tenere il lock del repository.
+     *
+     * @param book Il libro.
+     * @return Una copia indipendente (anche la lista degli autori).
+     */
+    private static Book copyOf(Book book) {
+        return new Book(book.getIsbn(), book.getTitle(), book.getAuthors(), book.getYear(),
+                book.getTotalCopies(), book.getAvailableCopies());
+    }
+
+
+    /**
+     * @brief Registra un libro modificato o cancellato, da scrivere alla prossima persistenza.
+     *
+     * @param id Identificatore (ignorato se null).
+     */
+    private void markDirty(String id) {
+        if (id != null) {
+            dirtyIds.add(id);
+        }
+    }
+
+
+    // partecipazione alle transazioni di TransactionManager
+
+    /**
+     * @brief Restituisce il file dei libri.
+     */
+    @Override
+    public Path getFile() {
+        return booksFile;
+    }
+
+
+    /**
+     * @brief Restituisce le generazioni di backup del FileManager.
+     */
+    @Override
+    public int getBackupGenerations() {
+        return fileManager.getBackupGenerations();
+    }
+
+
+    /**
+     * @brief Attende le scritture differite già pianificate (nessuna attesa se sincrono).
+     */
+    @Override
+    public void awaitPendingWrites() {
+        if (persister != null) {
+            persister.flush();
+        }
+    }
+
+
+    /**
+     * @brief Sospende la scrittura su file fino alla fine della transazione.
+     */
+    @Override
+    public synchronized void beginTransaction() {
+        transactionActive = true;
+        transactionDirty = false;
+    }
+
+
+    /**
+     * @brief Indica se i libri sono stati modificati nella transazione.
+     */
+    @Override
+    public synchronized boolean hasTransactionChanges() {
+        return transactionDirty;
+    }
+
+
+    /**
+     * @brief Scrive lo stato corrente dei libri sul file temporaneo del commit.
+     */
+    @Override
+    public synchronized void writeTransactionSnapshot(Path target) throws IOException {
+        fileManager.saveBooks(target, delegate.findAll());
+    }
+
+
+    /**
+     * @brief Chiude la transazione; al rollback ricarica i libri dal file.
+     */
+    @Override
+    public synchronized void endTransaction(boolean committed) {
+        boolean dirty = transactionDirty;
+        transactionActive = false;
+        transactionDirty = false;
+        if (dirty) {
+            // il file è stato riscritto dal commit o viene ricaricato dal rollback
+            dirtyIds.clear();
+            fullRewrite = false;
+        }
+        if (!committed && dirty) {
+            // il file contiene ancora lo stato precedente alla transazione
+            loadFromFile();
+        }
+    }
+
+    
     /**
      * @brief Salva un libro e aggiorna il file di persistenza.
      *
@@ -144,11 +357,40 @@ public class FileBackedBookRepository implements BookRepository {
      * @return Il libro salvato.
      */
     @Override
-    public Book save(Book entity) {
+    public synchronized Book save(Book entity) {
         Book saved = delegate.save(entity);
+        markDirty(saved.getIsbn());
         persistAll();
         return saved;
     }
+
+    
+    
+    
+    /**
+     * @brief Salva in blocco una collezione di libri con una sola scrittura su file.
+     *
+     * Il file viene aggiornato una volta alla fine del blocco (anche se il
+     * blocco si interrompe a metà, così resta allineato alla memoria).
+     *
+     * @param entities Libri da salvare.
+     * @return Gli elementi salvati, nello stesso ordine.
+     */
+    @Override
+    public synchronized List<Book> saveAll(Collection<? extends Book> entities) {
+        try {
+            return delegate.saveAll(entities);
+        } finally {
+            if (entities != null) {
+                for (Book entity : entities) {
+                    if (entity != null) {
+                        markDirty(entity.getIsbn());
+                    }
+                }
+            }
+            persistAll();
+        }
+    }
     
     
      /**
@@ -173,18 +415,42 @@ public class FileBackedBookRepository implements BookRepository {
      * @brief Elimina un libro tramite ID e aggiorna il file.
      */
     @Override
-    public void deleteById(String id) {
+    public synchronized void deleteById(String id) {
         delegate.deleteById(id);
+        markDirty(id);
         persistAll();
     }
 
     
+    
+    
+    /**
+     * @brief Elimina in blocco gli libri indicati con una sola scrittura su file.
+     *
+     * @param ids Identificatori degli libri da eliminare.
+     */
+    @Override
+    public synchronized void deleteAllById(Collection<? extends String> ids) {
+        try {
+            delegate.deleteAllById(ids);
+        } finally {
+            if (ids != null) {
+                for (String id : ids) {
+                    markDirty(id);
+                }
+            }
+            persistAll();
+        }
+    }
+
+    
     /**
      * @brief Elimina tutti i libri e sincronizza il file.
      */
     @Override
-    public void deleteAll() {
+    public synchronized void deleteAll() {
         delegate.deleteAll();
+        fullRewrite = true;
         persistAll();
     }
 
@@ -233,6 +499,14 @@ public class FileBackedBookRepository implements BookRepository {
         return delegate.findByAuthorContaining(keyword);
     }
 
+    /**
+     * @brief Cerca i libri con stesso titolo, stessi autori e stesso anno.
+     */
+    @Override
+    public List<Book> findByTitleAndAuthorsAndYear(String title, List<String> authors, int year) {
+        return delegate.findByTitleAndAuthorsAndYear(title, authors, year);
+    }
+
     /**
      * @brief Restituisce tutti i libri ordinati per titolo.
      */
@@ -2,12 +2,22 @@
 package com.mycompany.gestionebiblioteca.repository;
 
 import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
 import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.WriteBehindPersister;
+import com.mycompany.gestionebiblioteca.persistence.LoanHistorySegment;
+import com.mycompany.gestionebiblioteca.persistence.LoanJournal;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
 
 
 /**
@@ -22,6 +32,21 @@ import java.util.Optional;
  * persistita su file. Al momento della creazione, il repository viene
  * inizializzato caricando tutti i prestiti esistenti dal file specificato.
  *
+ * In modalità journal (costruttore con LoanJournal) le modifiche non
+ * riscrivono l'intero file: vengono aggiunte in coda al journal e lo snapshot
+ * viene riscritto solo alla compattazione, quando il journal raggiunge la
+ * soglia indicata.
+ *
+ * Con un WriteBehindPersister le riscritture dello snapshot vengono accorpate
+ * ed eseguite in background; la compattazione attende comunque che lo
+ * snapshot sia su disco prima di svuotare il journal.
+ *
+ * Con un LoanHistorySegment (archiviazione a due livelli) in memoria restano
+ * solo i prestiti attivi: un prestito restituito viene spostato nel segmento
+ * storico e riletto dal file solo quando lo storico viene richiesto
+ * (findByUserMatricola, findByBookIsbn, findById, findAll). Se uno stesso
+ * prestito compare in entrambi i livelli vale la versione attiva.
+ *
  * @see PrestitoRepository
  * @see FileManager
  * @see com.mycompany.gestionebiblioteca.model.Prestito
@@ -34,7 +59,7 @@ import java.util.Optional;
 
 
 // chi usa LoanRepository non deve sapere se i dati sono salvati in memoria, su file o su database
-public class FileBackedLoanRepository implements LoanRepository { 
+public class FileBackedLoanRepository implements LoanRepository, TransactionalRepository { 
     
     /**
      * @brief Repository interno che gestisce i dati in memoria.
@@ -55,6 +80,45 @@ public class FileBackedLoanRepository implements LoanRepository {
      */
     private final Path loansFile;
     
+    /**
+     * @brief Journal delle modifiche (null se la modalità journal non è attiva).
+     */
+    private final LoanJournal journal;
+    
+    /**
+     * @brief Numero di record del journal oltre il quale viene eseguita la compattazione.
+     */
+    private final int compactionThreshold;
+    
+    /**
+     * @brief Motore di scrittura differita (null se la persistenza è sincrona).
+     */
+    private final WriteBehindPersister persister;
+
+    /**
+     * @brief true mentre è aperta una transazione (snapshot e journal sono sospesi).
+     */
+    private boolean transactionActive;
+
+    /**
+     * @brief true se il repository è stato modificato nella transazione corrente.
+     */
+    private boolean transactionDirty;
+
+    /**
+     * @brief Segmento dei prestiti restituiti (null se tutti i prestiti restano in memoria).
+     */
+    private final LoanHistorySegment history;
+
+    /**
+     * @brief Prestiti da cancellare dallo storico al commit della transazione corrente.
+     */
+    private final List<LoanId> pendingHistoryDeletes = new ArrayList<>();
+
+    /**
+     * @brief true se lo storico va svuotato al commit della transazione corrente.
+     */
+    private boolean pendingHistoryClear;
     
     
     
@@ -72,6 +136,88 @@ public class FileBackedLoanRepository implements LoanRepository {
     
     
     public FileBackedLoanRepository(LoanRepository delegate, FileManager fileManager, Path loansFile) {
+        this(delegate, fileManager, loansFile, null, 0, null);
+    }
+    
+    
+    
+    /**
+     * @brief Costruttore con persistenza write-behind.
+     *
+     * @param delegate Repository che gestisce i prestiti in memoria.
+     * @param fileManager Gestore della persistenza su file.
+     * @param loansFile Percorso del file contenente i prestiti.
+     * @param persister Motore di scrittura differita (null per la scrittura sincrona).
+     * @throws IllegalArgumentException Se uno dei parametri obbligatori è null.
+     */
+    public FileBackedLoanRepository(LoanRepository delegate, FileManager fileManager, Path loansFile,
+            WriteBehindPersister persister) {
+        this(delegate, fileManager, loansFile, null, 0, persister);
+    }
+    
+    
+    
+    /**
+     * @brief Costruttore in modalità journal.
+     *
+     * Le modifiche vengono aggiunte in coda al journal; quando il numero di
+     * record supera compactionThreshold lo snapshot viene riscritto e il
+     * journal svuotato. All'avvio il journal viene rieseguito sopra lo snapshot.
+     *
+     * @param delegate Repository che gestisce i prestiti in memoria.
+     * @param fileManager Gestore della persistenza su file.
+     * @param loansFile Percorso del file contenente i prestiti (snapshot).
+     * @param journal Journal delle modifiche (null per disattivare la modalità journal).
+     * @param compactionThreshold Numero massimo di record nel journal prima della compattazione.
+     * @throws IllegalArgumentException Se uno dei parametri obbligatori è null
+     * o se la soglia non è positiva in modalità journal.
+     */
+    public FileBackedLoanRepository(LoanRepository delegate, FileManager fileManager, Path loansFile,
+            LoanJournal journal, int compactionThreshold) {
+        this(delegate, fileManager, loansFile, journal, compactionThreshold, null);
+    }
+    
+    
+    
+    /**
+     * @brief Costruttore completo: modalità journal e persistenza write-behind.
+     *
+     * @param delegate Repository che gestisce i prestiti in memoria.
+     * @param fileManager Gestore della persistenza su file.
+     * @param loansFile Percorso del file contenente i prestiti (snapshot).
+     * @param journal Journal delle modifiche (null per disattivare la modalità journal).
+     * @param compactionThreshold Numero massimo di record nel journal prima della compattazione.
+     * @param persister Motore di scrittura differita (null per la scrittura sincrona).
+     * @throws IllegalArgumentException Se uno dei parametri obbligatori è null
+     * o se la soglia non è positiva in modalità journal.
+     */
+    public FileBackedLoanRepository(LoanRepository delegate, FileManager fileManager, Path loansFile,
+            LoanJournal journal, int compactionThreshold, WriteBehindPersister persister) {
+        this(delegate, fileManager, loansFile, journal, compactionThreshold, persister, null);
+    }
+
+
+
+    /**
+     * @brief Costruttore con archiviazione a due livelli dei prestiti.
+     *
+     * I prestiti attivi restano in memoria e nel file dei prestiti; quelli
+     * restituiti vengono spostati nel segmento storico, anche quelli già
+     * presenti nel file all'avvio.
+     *
+     * @param delegate Repository che gestisce i prestiti attivi in memoria.
+     * @param fileManager Gestore della persistenza su file.
+     * @param loansFile Percorso del file contenente i prestiti attivi (snapshot).
+     * @param journal Journal delle modifiche (null per disattivare la modalità journal).
+     * @param compactionThreshold Numero massimo di record nel journal prima della compattazione.
+     * @param persister Motore di scrittura differita (null per la scrittura sincrona).
+     * @param history Segmento dei prestiti restituiti (null per tenere tutto in memoria).
+     * @throws IllegalArgumentException Se uno dei parametri obbligatori è null
+     * o se la soglia non è positiva in modalità journal.
+     */
+    public FileBackedLoanRepository(LoanRepository delegate, FileManager fileManager, Path loansFile,
+            LoanJournal journal, int compactionThreshold, WriteBehindPersister persister,
+            LoanHistorySegment history) {
         if (delegate == null) {
             throw new IllegalArgumentException("delegate non deve essere null");
         }
@@ -81,10 +227,17 @@ public class FileBackedLoanRepository implements LoanRepository {
         if (loansFile == null) {
             throw new IllegalArgumentException("loansFile non deve essere null");
         }
+        if (journal != null && compactionThreshold < 1) {
+            throw new IllegalArgumentException("compactionThreshold deve essere positivo");
+        }
         
         this.delegate = delegate;
         this.fileManager = fileManager;
         this.loansFile = loansFile;
+        this.journal = journal;
+        this.compactionThreshold = compactionThreshold;
+        this.persister = persister;
+        this.history = history;
         
         // caricamento iniziale dei dati
         /*
@@ -118,10 +271,328 @@ public class FileBackedLoanRepository implements LoanRepository {
             for (Loan loan : loans) {
                 delegate.save(loan);
             }
+            
+            // in modalità journal le modifiche successive allo snapshot vengono rieseguite in ordine
+            if (journal != null) {
+                journal.replay(new LoanJournal.Visitor() {
+                    @Override
+                    public void onSave(Loan loan) {
+                        delegate.save(loan);
+                    }
+
+                    @Override
+                    public void onDelete(LoanId id) {
+                        delegate.deleteById(id);
+                    }
+                });
+            }
         } catch (IOException e) {
             throw new UncheckedIOException("Errore durante il caricamento dei prestiti dal file " + loansFile, e);
         }
+
+        // prestiti restituiti rimasti nel file (file precedente all'archiviazione, o crash a metà spostamento)
+        archiveReturnedLoans();
         
+        // all'avvio il journal viene ripiegato nello snapshot, così si riparte da un journal vuoto
+        if (journal != null && journal.size() > 0) {
+            compact();
+        }
+    }
+    
+    
+    
+    /**
+     * @brief Ripiega il journal nello snapshot.
+     *
+     * Riscrive il file dei prestiti con lo stato corrente e svuota il journal.
+     * Lo snapshot viene scritto prima di svuotare il journal: un crash tra le
+     * due operazioni non perde dati, perché i record sono idempotenti.
+     * Senza journal equivale a una riscrittura completa del file.
+     *
+     * In modalità journal lo snapshot viene scritto direttamente sul thread
+     * chiamante e mai dal persister: deve essere su disco prima di svuotare il
+     * journal, e attendere il persister tenendo il lock del repository
+     * bloccherebbe il thread di scrittura.
+     */
+    public synchronized void compact() {
+        if (deferredToTransaction()) {
+            return;
+        }
+        if (journal == null) {
+            persistAll();
+            return;
+        }
+        try {
+            writeSnapshot();
+            journal.truncate();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la compattazione del journal " + journal.getJournalFile(), e);
+        }
+    }
+    
+    
+    
+    /**
+     * @brief Registra un salvataggio: in coda al journal oppure riscrivendo il file.
+     *
+     * @param loan Il prestito salvato.
+     */
+    private void persistSave(Loan loan) {
+        if (deferredToTransaction()) {
+            return;
+        }
+        if (journal == null) {
+            persistAll();
+            return;
+        }
+        try {
+            journal.appendSave(loan);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la scrittura del journal " + journal.getJournalFile(), e);
+        }
+        compactIfNeeded();
+    }
+    
+    
+    
+    /**
+     * @brief Registra un blocco di modifiche in coda al journal con una sola scrittura.
+     *
+     * @param saved I prestiti salvati.
+     * @param deleted Gli identificativi dei prestiti cancellati.
+     */
+    private void persistBatch(Collection<? extends Loan> saved, Collection<? extends LoanId> deleted) {
+        if (deferredToTransaction()) {
+            return;
+        }
+        try {
+            journal.appendAll(saved, deleted);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la scrittura del journal " + journal.getJournalFile(), e);
+        }
+        compactIfNeeded();
+    }
+    
+    
+    
+    /**
+     * @brief Registra una cancellazione: in coda al journal oppure riscrivendo il file.
+     *
+     * @param id Identificativo del prestito cancellato.
+     */
+    private void persistDelete(LoanId id) {
+        if (deferredToTransaction()) {
+            return;
+        }
+        if (journal == null) {
+            persistAll();
+            return;
+        }
+        try {
+            journal.appendDelete(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la scrittura del journal " + journal.getJournalFile(), e);
+        }
+        compactIfNeeded();
+    }
+    
+    
+    
+    /**
+     * @brief Durante una transazione registra la modifica invece di scriverla.
+     *
+     * @return true se la scrittura va rimandata al commit della transazione.
+     */
+    private boolean deferredToTransaction() {
+        if (transactionActive) {
+            transactionDirty = true;
+            return true;
+        }
+        return false;
+    }
+    
+    
+    
+    /**
+     * @brief Sposta nel segmento storico i prestiti restituiti ancora in memoria.
+     *
+     * I prestiti vengono prima scritti (e sincronizzati) nello storico e solo
+     * dopo tolti dai prestiti attivi: un crash a metà lascia il prestito in
+     * entrambi i livelli e il successivo avvio completa lo spostamento.
+     * Durante una transazione non fa nulla: lo spostamento avviene al commit.
+     */
+    private void archiveReturnedLoans() {
+        if (history == null || transactionActive) {
+            return;
+        }
+        List<Loan> returned = new ArrayList<>();
+        for (Loan loan : delegate.findAll()) {
+            if (!loan.isActive()) {
+                returned.add(loan);
+            }
+        }
+        archive(returned);
+    }
+
+
+
+    /**
+     * @brief Sposta nel segmento storico i prestiti indicati.
+     *
+     * @param returned Prestiti restituiti da archiviare.
+     */
+    private void archive(List<Loan> returned) {
+        if (returned.isEmpty()) {
+            return;
+        }
+        try {
+            history.append(returned);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante l'archiviazione dei prestiti in " + history.getSegmentFile(), e);
+        }
+        List<LoanId> ids = new ArrayList<>();
+        for (Loan loan : returned) {
+            ids.add(loan.getId());
+        }
+        removeFromActive(ids);
+    }
+
+
+
+    /**
+     * @brief Toglie dei prestiti dal livello attivo (memoria, journal e snapshot).
+     *
+     * Senza journal il file viene riscritto una sola volta; in modalità journal
+     * le cancellazioni vengono aggiunte in coda con una sola scrittura oppure,
+     * oltre la soglia, ripiegate subito in una compattazione.
+     *
+     * @param ids Identificativi dei prestiti.
+     */
+    private void removeFromActive(Collection<? extends LoanId> ids) {
+        if (journal == null) {
+            try {
+                delegate.deleteAllById(ids);
+            } finally {
+                persistAll();
+            }
+            return;
+        }
+        delegate.deleteAllById(ids);
+        if (journal.size() + ids.size() >= compactionThreshold) {
+            compact();
+            return;
+        }
+        List<LoanId> deleted = new ArrayList<>(ids.size());
+        for (LoanId id : ids) {
+            if (id != null) {
+                deleted.add(id);
+            }
+        }
+        persistBatch(Collections.<Loan>emptyList(), deleted);
+    }
+
+
+
+    /**
+     * @brief Cancella dei prestiti dal segmento storico (al commit, se c'è una transazione aperta).
+     *
+     * Vengono scritte solo le cancellazioni dei prestiti davvero archiviati:
+     * per i prestiti appena aperti (es. l'annullamento di un prestito) lo
+     * storico non viene nemmeno letto.
+     *
+     * @param ids Identificativi dei prestiti.
+     */
+    private void deleteFromHistory(Collection<? extends LoanId> ids) {
+        List<LoanId> valid = new ArrayList<>();
+        for (LoanId id : ids) {
+            if (id != null) {
+                valid.add(id);
+            }
+        }
+        if (history == null || valid.isEmpty()) {
+            return;
+        }
+        if (transactionActive) {
+            transactionDirty = true;
+            pendingHistoryDeletes.addAll(valid);
+            return;
+        }
+        try {
+            Set<LoanId> archived = history.findArchived(valid);
+            if (!archived.isEmpty()) {
+                history.appendDelete(archived);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la scrittura dello storico " + history.getSegmentFile(), e);
+        }
+    }
+
+
+
+    /**
+     * @brief Cancella dallo storico i prestiti appena entrati nel livello attivo con lo stesso identificativo.
+     *
+     * Succede quando lo stesso utente riprende lo stesso libro nel giorno di
+     * una restituzione, o quando viene risalvato un prestito storico: la
+     * versione attiva sostituisce quella archiviata, così un identificativo
+     * non è mai in entrambi i livelli e count() può sommarli. Lo storico viene
+     * letto solo per i prestiti con data non successiva all'ultimo archiviato.
+     *
+     * @param added Prestiti che prima del salvataggio non erano nel livello attivo.
+     */
+    private void supersedeArchived(Collection<Loan> added) {
+        if (history == null || added.isEmpty()) {
+            return;
+        }
+        List<LoanId> ids = new ArrayList<>(added.size());
+        for (Loan loan : added) {
+            ids.add(loan.getId());
+        }
+        deleteFromHistory(ids);
+    }
+
+
+
+    /**
+     * @brief Unisce ai prestiti attivi quelli dello storico che soddisfano un filtro.
+     *
+     * @param active Prestiti attivi già trovati.
+     * @param filter Filtro sullo storico.
+     * @return I prestiti attivi seguiti da quelli storici (senza duplicati: vale la versione attiva).
+     */
+    private List<Loan> withHistory(List<Loan> active, Predicate<Loan> filter) {
+        if (history == null) {
+            return active;
+        }
+        Set<LoanId> activeIds = new HashSet<>();
+        for (Loan loan : active) {
+            activeIds.add(loan.getId());
+        }
+        List<Loan> result = new ArrayList<>(active);
+        try {
+            for (Loan loan : history.find(filter)) {
+                if (!activeIds.contains(loan.getId())) {
+                    result.add(loan);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la lettura dello storico " + history.getSegmentFile(), e);
+        }
+        return result;
+    }
+
+
+
+    
+    
+    
+    /**
+     * @brief Esegue la compattazione quando il journal raggiunge la soglia.
+     */
+    private void compactIfNeeded() {
+        if (journal.size() >= compactionThreshold) {
+            compact();
+        }
     }
     
     
@@ -130,19 +601,165 @@ public class FileBackedLoanRepository implements LoanRepository {
      * @brief Salva su file tutti i prestiti attualmente presenti nel repository interno.
      *
      * Questo metodo è invocato dopo ogni modifica (salvataggio o cancellazione)
-     * per mantenere consistenza tra memoria e file.
+     * per mantenere consistenza tra memoria e file. Con il persister la
+     * scrittura viene solo pianificata ed eseguita in background.
      */
     private void persistAll() { // private perchè chi usa il repository non deve sapere quando o come avviene la persitenza
+        if (deferredToTransaction()) {
+            return;
+        }
+        if (persister != null) {
+            persister.markDirty(loansFile, this::writeSnapshot);
+            return;
+        }
         try {
-            // lettura dello stato corrente in memoria
-            List<Loan> allLoans = delegate.findAll();
-            // cosa succede: il fileManager apre il file + serializza ogni Loan + scrive il contenuto
-            fileManager.saveLoans(loansFile, allLoans);
+            writeSnapshot();
         } catch (IOException e) {
             throw new UncheckedIOException("Errore durante il salvataggio dei prestiti sul file " + loansFile, e);
         }
       
     }
+    
+    
+    
+    /**
+     * @brief Scrive sul file lo stato corrente del repository.
+     *
+     * Lo snapshot viene letto sotto il lock del repository, così una
+     * scrittura in background non osserva una modifica a metà.
+     *
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void writeSnapshot() throws IOException {
+        List<Loan> allLoans;
+        synchronized (this) {
+            // lettura dello stato corrente in memoria
+            allLoans = delegate.findAll();
+        }
+        // cosa succede: il fileManager apre il file + serializza ogni Loan + scrive il contenuto
+        fileManager.saveLoans(loansFile, allLoans);
+    }
+
+
+
+    // partecipazione alle transazioni di TransactionManager
+
+    /**
+     * @brief Restituisce il file dei prestiti.
+     *
+     * @return Il percorso del file.
+     */
+    @Override
+    public Path getFile() {
+        return loansFile;
+    }
+
+
+    /**
+     * @brief Restituisce le generazioni di backup del FileManager.
+     *
+     * @return Le generazioni di backup.
+     */
+    @Override
+    public int getBackupGenerations() {
+        return fileManager.getBackupGenerations();
+    }
+
+
+
+    /**
+     * @brief Attende le scritture differite già pianificate (nessuna attesa se sincrono).
+     */
+    @Override
+    public void awaitPendingWrites() {
+        if (persister != null) {
+            persister.flush();
+        }
+    }
+
+
+
+    /**
+     * @brief Sospende snapshot e journal fino alla fine della transazione.
+     */
+    @Override
+    public synchronized void beginTransaction() {
+        transactionActive = true;
+        transactionDirty = false;
+        pendingHistoryDeletes.clear();
+        pendingHistoryClear = false;
+    }
+
+
+
+    /**
+     * @brief Indica se i prestiti sono stati modificati nella transazione.
+     *
+     * @return true se c'è qualcosa da scrivere al commit.
+     */
+    @Override
+    public synchronized boolean hasTransactionChanges() {
+        return transactionDirty;
+    }
+
+
+
+    /**
+     * @brief Scrive lo stato corrente dei prestiti sul file temporaneo del commit.
+     *
+     * Lo snapshot contiene anche le modifiche ancora nel journal.
+     *
+     * @param target File su cui scrivere.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    @Override
+    public synchronized void writeTransactionSnapshot(Path target) throws IOException {
+        fileManager.saveLoans(target, delegate.findAll());
+    }
+
+
+
+    /**
+     * @brief Chiude la transazione.
+     *
+     * Dopo il commit lo snapshot sul file contiene già tutto il journal, che
+     * quindi viene svuotato (come dopo una compattazione: un crash prima dello
+     * svuotamento non perde dati, i record sono idempotenti). Dopo un rollback
+     * i prestiti vengono ricaricati da snapshot e journal, che non sono stati toccati.
+     * Con lo storico, al commit vengono applicate le cancellazioni rimandate e
+     * archiviati i prestiti restituiti durante la transazione.
+     *
+     * @param committed true se la transazione è stata confermata.
+     */
+    @Override
+    public synchronized void endTransaction(boolean committed) {
+        boolean dirty = transactionDirty;
+        transactionActive = false;
+        transactionDirty = false;
+        if (!dirty) {
+            return;
+        }
+        List<LoanId> historyDeletes = new ArrayList<>(pendingHistoryDeletes);
+        boolean historyClear = pendingHistoryClear;
+        pendingHistoryDeletes.clear();
+        pendingHistoryClear = false;
+        if (!committed) {
+            loadFromFile();
+            return;
+        }
+        if (journal != null) {
+            try {
+                journal.truncate();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Errore durante lo svuotamento del journal " + journal.getJournalFile(), e);
+            }
+        }
+        if (historyClear) {
+            clearHistory();
+        }
+        deleteFromHistory(historyDeletes);
+        archiveReturnedLoans();
+    }
 
     
     
@@ -153,9 +770,61 @@ public class FileBackedLoanRepository implements LoanRepository {
      * @return Il prestito salvato.
      */
     @Override
-    public Loan save(Loan entity) {
+    public synchronized Loan save(Loan entity) {
+        boolean added = history != null && entity != null && !delegate.existsById(entity.getId());
         Loan saved = delegate.save(entity);
-        persistAll();
+        if (added) {
+            supersedeArchived(Collections.singletonList(saved));
+        }
+        persistSave(saved);
+        if (history != null && !saved.isActive() && !transactionActive) {
+            archive(Collections.singletonList(saved));
+        }
+        return saved;
+    }
+
+
+    
+    
+    /**
+     * @brief Salva in blocco una collezione di prestiti.
+     *
+     * Senza journal il file viene riscritto una sola volta alla fine del blocco.
+     * In modalità journal i salvataggi vengono aggiunti in coda al journal con
+     * una sola scrittura; se il blocco porterebbe il journal oltre la soglia si
+     * passa direttamente alla
+     * compattazione, senza scrivere record che verrebbero subito ripiegati.
+     *
+     * @param entities Prestiti da salvare.
+     * @return I prestiti salvati, nello stesso ordine.
+     */
+    @Override
+    public synchronized List<Loan> saveAll(Collection<? extends Loan> entities) {
+        List<Loan> added = new ArrayList<>();
+        if (history != null && entities != null) {
+            for (Loan entity : entities) {
+                if (entity != null && !delegate.existsById(entity.getId())) {
+                    added.add(entity);
+                }
+            }
+        }
+        List<Loan> saved;
+        if (journal == null) {
+            try {
+                saved = delegate.saveAll(entities);
+            } finally {
+                persistAll();
+            }
+        } else {
+            saved = delegate.saveAll(entities);
+            if (journal.size() + saved.size() >= compactionThreshold) {
+                compact();
+            } else {
+                persistBatch(saved, Collections.<LoanId>emptyList());
+            }
+        }
+        supersedeArchived(added);
+        archiveReturnedLoans();
         return saved;
     }
 
@@ -168,8 +837,16 @@ public class FileBackedLoanRepository implements LoanRepository {
      * @return Optional contenente il prestito, oppure empty().
      */
     @Override
-    public Optional<Loan> findById(String id) {
-        return delegate.findById(id);
+    public Optional<Loan> findById(LoanId id) {
+        Optional<Loan> active = delegate.findById(id);
+        if (active.isPresent() || history == null) {
+            return active;
+        }
+        try {
+            return history.findById(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la lettura dello storico " + history.getSegmentFile(), e);
+        }
     }
 
     
@@ -177,11 +854,13 @@ public class FileBackedLoanRepository implements LoanRepository {
     /**
      * @brief Restituisce tutti i prestiti presenti nel repository.
      *
+     * Con lo storico attivo i prestiti restituiti vengono letti dal segmento.
+     *
      * @return Lista completa dei prestiti.
      */
     @Override
     public List<Loan> findAll() {
-        return delegate.findAll();
+        return withHistory(delegate.findAll(), loan -> true);
     }
 
     
@@ -192,20 +871,67 @@ public class FileBackedLoanRepository implements LoanRepository {
      * @param id Identificativo del prestito da eliminare.
      */
     @Override
-    public void deleteById(String id) {
+    public synchronized void deleteById(LoanId id) {
+        if (id == null) {
+            return;
+        }
         delegate.deleteById(id);
-        persistAll();
+        persistDelete(id);
+        deleteFromHistory(Collections.singletonList(id));
+    }
+
+    
+    
+    
+    /**
+     * @brief Elimina in blocco i prestiti indicati.
+     *
+     * Come saveAll: senza journal il file viene riscritto una sola volta, in
+     * modalità journal le cancellazioni vengono aggiunte in coda oppure, oltre
+     * la soglia, ripiegate subito in una compattazione.
+     *
+     * @param ids Identificativi dei prestiti da eliminare.
+     */
+    @Override
+    public synchronized void deleteAllById(Collection<? extends LoanId> ids) {
+        removeFromActive(ids);
+        deleteFromHistory(ids);
     }
 
     
     
     /**
      * @brief Elimina tutti i prestiti e sincronizza il file.
+     *
+     * In modalità journal lo snapshot vuoto viene scritto subito e il journal svuotato.
+     * Anche lo storico viene svuotato (al commit, se c'è una transazione aperta).
      */
     @Override
-    public void deleteAll() {
+    public synchronized void deleteAll() {
         delegate.deleteAll();
-        persistAll();
+        compact();
+        if (history == null) {
+            return;
+        }
+        if (transactionActive) {
+            pendingHistoryClear = true;
+            pendingHistoryDeletes.clear();
+            return;
+        }
+        clearHistory();
+    }
+
+
+
+    /**
+     * @brief Svuota il segmento storico.
+     */
+    private void clearHistory() {
+        try {
+            history.truncate();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante lo svuotamento dello storico " + history.getSegmentFile(), e);
+        }
     }
 
     
@@ -217,18 +943,34 @@ public class FileBackedLoanRepository implements LoanRepository {
      * @return true se il prestito esiste, false altrimenti.
      */
     @Override
-    public boolean existsById(String id) {
-        return delegate.existsById(id);
+    public boolean existsById(LoanId id) {
+        if (delegate.existsById(id)) {
+            return true;
+        }
+        return history != null && findById(id).isPresent();
     }
 
     
     
     /**
      * @brief Restituisce il numero totale di prestiti.
+     *
+     * Con lo storico attivo al numero dei prestiti in memoria si aggiunge
+     * quello tenuto dal segmento, senza leggere i prestiti storici: un
+     * identificativo non è mai in entrambi i livelli (un'archiviazione
+     * interrotta viene completata all'avvio, un prestito risalvato sostituisce
+     * quello archiviato).
      */
     @Override
     public long count() {
-        return delegate.count();
+        if (history == null) {
+            return delegate.count();
+        }
+        try {
+            return delegate.count() + history.count();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante la lettura dello storico " + history.getSegmentFile(), e);
+        }
     }
 
     
@@ -241,7 +983,11 @@ public class FileBackedLoanRepository implements LoanRepository {
      */
     @Override
     public List<Loan> findByUserMatricola(String matricola) {
-        return delegate.findByUserMatricola(matricola);
+        List<Loan> active = delegate.findByUserMatricola(matricola);
+        if (matricola == null || matricola.trim().isEmpty()) {
+            return active;
+        }
+        return withHistory(active, loan -> matricola.equals(loan.getUserMatricola()));
     }
 
     
@@ -254,7 +1000,11 @@ public class FileBackedLoanRepository implements LoanRepository {
      */
     @Override
     public List<Loan> findByBookIsbn(String isbn) {
-        return delegate.findByBookIsbn(isbn);
+        List<Loan> active = delegate.findByBookIsbn(isbn);
+        if (isbn == null || isbn.trim().isEmpty()) {
+            return active;
+        }
+        return withHistory(active, loan -> isbn.equals(loan.getBookIsbn()));
     }
 
     
@@ -281,6 +1031,17 @@ public class FileBackedLoanRepository implements LoanRepository {
     public List<Loan> findActiveLoansByUser(String matricola) {
         return delegate.findActiveLoansByUser(matricola);
     }
+
+    /**
+     * @brief Restituisce i prestiti attivi di un libro (lo storico su file non viene letto).
+     *
+     * @param isbn ISBN del libro.
+     * @return Lista dei prestiti attivi.
+     */
+    @Override
+    public List<Loan> findActiveLoansByIsbn(String isbn) {
+        return delegate.findActiveLoansByIsbn(isbn);
+    }
     
     
 }
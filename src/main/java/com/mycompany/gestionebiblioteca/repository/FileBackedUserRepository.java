@@ -1,11 +1,16 @@
 package com.mycompany.gestionebiblioteca.repository;
 import com.mycompany.gestionebiblioteca.model.User;
 import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.WriteBehindPersister;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;       
+import java.util.Optional;
+import java.util.Set;       
 /**
  *
  * @author valerialupo
@@ -26,7 +31,8 @@ import java.util.Optional;
  *
  * La sincronizzazione con il file avviene tramite:
  * loadFromFile(): chiamato nel costruttore per inizializzare lo stato
- * persistAll(): chiamato dopo ogni modifica (save, delete)
+ * persistAll(): chiamato dopo ogni modifica (save, delete); se è presente
+ * un WriteBehindPersister la scrittura viene accorpata ed eseguita in background
  *
  * In caso di errore I/O vengono sollevate UncheckedIOException
  * per semplificare la gestione delle eccezioni a livello applicativo.
@@ -35,7 +41,7 @@ import java.util.Optional;
  */
 
 
-public class FileBackedUserRepository implements UserRepository {
+public class FileBackedUserRepository implements UserRepository, TransactionalRepository {
     
     
     /**
@@ -58,6 +64,31 @@ public class FileBackedUserRepository implements UserRepository {
      */
     private final Path usersFile;
     
+    /**
+     * @brief Motore di scrittura differita (null se la persistenza è sincrona).
+     */
+    private final WriteBehindPersister persister;
+
+    /**
+     * @brief true mentre è aperta una transazione (le scritture su file sono sospese).
+     */
+    private boolean transactionActive;
+
+    /**
+     * @brief true se il repository è stato modificato nella transazione corrente.
+     */
+    private boolean transactionDirty;
+
+    /**
+     * @brief Identificatori dei utenti modificati o cancellati dall'ultima scrittura su file.
+     */
+    private final Set<String> dirtyIds = new LinkedHashSet<>();
+
+    /**
+     * @brief true se il file va riscritto per intero (deleteAll o scrittura precedente fallita).
+     */
+    private boolean fullRewrite;
+    
     
     
     
@@ -74,6 +105,24 @@ public class FileBackedUserRepository implements UserRepository {
      * @throws IllegalArgumentException Se uno dei parametri è null.
      */
     public FileBackedUserRepository(UserRepository delegate, FileManager fileManager, Path usersFile) {
+        this(delegate, fileManager, usersFile, null);
+    }
+    
+    
+    
+    
+    /**
+     * @brief Costruttore con persistenza write-behind.
+     *
+     * @param delegate Repository interno su cui delegare tutte le operazioni.
+     * @param fileManager Componente che gestisce la persistenza su file.
+     * @param usersFile Percorso del file che contiene gli utenti.
+     * @param persister Motore di scrittura differita (null per la scrittura sincrona).
+     *
+     * @throws IllegalArgumentException Se uno dei parametri obbligatori è null.
+     */
+    public FileBackedUserRepository(UserRepository delegate, FileManager fileManager, Path usersFile,
+            WriteBehindPersister persister) {
         if (delegate == null) {
             throw new IllegalArgumentException("delegate non deve essere null");
         }
@@ -86,6 +135,7 @@ public class FileBackedUserRepository implements UserRepository {
         this.delegate = delegate;
         this.fileManager = fileManager;
         this.usersFile = usersFile;
+        this.persister = persister;
         loadFromFile();
     }
     
@@ -100,7 +150,7 @@ public class FileBackedUserRepository implements UserRepository {
      * Legge il file tramite FileManager, elimina eventuali dati preesistenti
      * nel repository in-memory e reinserisce tutti gli utenti caricati.
      *
-     * Questo metodo viene chiamato automaticamente nel costruttore.
+     * Questo metodo viene chiamato automaticamente nel costruttore e al rollback di una transazione.
      *
      * @throws UncheckedIOException Se il file non può essere letto correttamente.
      */
@@ -130,14 +180,197 @@ public class FileBackedUserRepository implements UserRepository {
      * @throws UncheckedIOException Se durante il salvataggio si verifica un errore I/O.
      */
     private void persistAll() {
+        if (transactionActive) {
+            // la scrittura avverrà al commit della transazione
+            transactionDirty = true;
+            return;
+        }
+        if (persister != null) {
+            persister.markDirty(usersFile, this::writeSnapshot);
+            return;
+        }
         try {
-            List<User> allUsers = delegate.findAll();
-            fileManager.saveUsers(usersFile, allUsers);
+            writeSnapshot();
         } catch (IOException e) {
             throw new UncheckedIOException("Failed to save users to file " + usersFile, e);
         }
        
     }
+    
+    
+    
+    
+    /**
+     * @brief Scrive sul file le modifiche accumulate dall'ultima scrittura.
+     *
+     * Se il FileManager lo permette (formato SLOTTED) vengono riscritti solo
+     * i record dei utenti modificati o cancellati; altrimenti il file viene
+     * riscritto per intero. Le entità da scrivere vengono copiate sotto il lock
+     * del repository e la scrittura (anche in background) lavora sulle copie:
+     * una modifica successiva agli oggetti in memoria non finisce a metà nel
+     * file, ma in una scrittura successiva.
+     *
+     * @throws IOException In caso di errori di scrittura.
+     */
+    private void writeSnapshot() throws IOException {
+        List<User> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        boolean full;
+        synchronized (this) {
+            if (dirtyIds.isEmpty() && !fullRewrite) {
+                return; // già scritto da una scrittura precedente
+            }
+            for (String id : dirtyIds) {
+                Optional<User> current = delegate.findById(id);
+                if (current.isPresent()) {
+                    changed.add(copyOf(current.get()));
+                } else {
+                    removed.add(id);
+                }
+            }
+            full = fullRewrite;
+            dirtyIds.clear();
+            fullRewrite = false;
+        }
+        try {
+            if (full || !fileManager.updateUsers(usersFile, changed, removed)) {
+                List<User> allUsers;
+                synchronized (this) {
+                    allUsers = new ArrayList<>();
+                    for (User current : delegate.findAll()) {
+                        allUsers.add(copyOf(current));
+                    }
+                }
+                fileManager.saveUsers(usersFile, allUsers);
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                // non si sa cosa sia arrivato su disco: la prossima scrittura riparte da capo
+                fullRewrite = true;
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * @brief Copia un utente, per scriverlo senza tenere il lock del repository.
+     *
+     * @param user L'utente.
+     * @return Una copia indipendente.
+     */
+    private static User copyOf(User user) {
+        return new User(user.getMatricola(), user.getFirstName(), user.getLastName(), user.getEmail());
+    }
+
+
+    /**
+     * @brief Registra un utente modificato o cancellato, da scrivere alla prossima persistenza.
+     *
+     * @param id Identificatore (ignorato se null).
+     */
+    private void markDirty(String id) {
+        if (id != null) {
+            dirtyIds.add(id);
+        }
+    }
+
+
+    // partecipazione alle transazioni di TransactionManager
+
+    /**
+     * @brief Restituisce il file degli utenti.
+     *
+     * @return Il percorso del file.
+     */
+    @Override
+    public Path getFile() {
+        return usersFile;
+    }
+
+
+    /**
+     * @brief Restituisce le generazioni di backup del FileManager.
+     */
+    @Override
+    public int getBackupGenerations() {
+        return fileManager.getBackupGenerations();
+    }
+
+
+
+
+    /**
+     * @brief Attende le scritture differite già pianificate (nessuna attesa se sincrono).
+     */
+    @Override
+    public void awaitPendingWrites() {
+        if (persister != null) {
+            persister.flush();
+        }
+    }
+
+
+
+
+    /**
+     * @brief Sospende la scrittura su file fino alla fine della transazione.
+     */
+    @Override
+    public synchronized void beginTransaction() {
+        transactionActive = true;
+        transactionDirty = false;
+    }
+
+
+
+
+    /**
+     * @brief Indica se gli utenti sono stati modificati nella transazione.
+     *
+     * @return true se c'è qualcosa da scrivere al commit.
+     */
+    @Override
+    public synchronized boolean hasTransactionChanges() {
+        return transactionDirty;
+    }
+
+
+
+
+    /**
+     * @brief Scrive lo stato corrente degli utenti sul file temporaneo del commit.
+     *
+     * @param target File su cui scrivere.
+     * @throws IOException In caso di errori di scrittura.
+     */
+    @Override
+    public synchronized void writeTransactionSnapshot(Path target) throws IOException {
+        fileManager.saveUsers(target, delegate.findAll());
+    }
+
+
+
+
+    /**
+     * @brief Chiude la transazione; al rollback ricarica gli utenti dal file.
+     *
+     * @param committed true se la transazione è stata confermata.
+     */
+    @Override
+    public synchronized void endTransaction(boolean committed) {
+        boolean dirty = transactionDirty;
+        transactionActive = false;
+        transactionDirty = false;
+        if (dirty) {
+            // il file è stato riscritto dal commit o viene ricaricato dal rollback
+            dirtyIds.clear();
+            fullRewrite = false;
+        }
+        if (!committed && dirty) {
+            loadFromFile();
+        }
+    }
 
     
      /**
@@ -150,8 +383,9 @@ public class FileBackedUserRepository implements UserRepository {
      * @return L’utente salvato.
      */
     @Override
-    public User save(User entity) {
+    public synchronized User save(User entity) {
         User saved = delegate.save(entity);
+        markDirty(saved.getMatricola());
         persistAll();
         return saved;
     }
@@ -159,6 +393,34 @@ public class FileBackedUserRepository implements UserRepository {
     
     
     
+    /**
+     * @brief Salva in blocco una collezione di utenti con una sola scrittura su file.
+     *
+     * Il file viene aggiornato una volta alla fine del blocco (anche se il
+     * blocco si interrompe a metà, così resta allineato alla memoria).
+     *
+     * @param entities Utenti da salvare.
+     * @return Gli elementi salvati, nello stesso ordine.
+     */
+    @Override
+    public synchronized List<User> saveAll(Collection<? extends User> entities) {
+        try {
+            return delegate.saveAll(entities);
+        } finally {
+            if (entities != null) {
+                for (User entity : entities) {
+                    if (entity != null) {
+                        markDirty(entity.getMatricola());
+                    }
+                }
+            }
+            persistAll();
+        }
+    }
+
+    
+    
+    
     /**
      * @brief Trova un utente tramite il suo identificatore.
      *
@@ -194,22 +456,46 @@ public class FileBackedUserRepository implements UserRepository {
      * @param id Identificatore dell’utente da eliminare.
      */
     @Override
-    public void deleteById(String id) {
+    public synchronized void deleteById(String id) {
         delegate.deleteById(id);
+        markDirty(id);
         persistAll();
     }
 
     
     
     
+    /**
+     * @brief Elimina in blocco gli utenti indicati con una sola scrittura su file.
+     *
+     * @param ids Identificatori degli utenti da eliminare.
+     */
+    @Override
+    public synchronized void deleteAllById(Collection<? extends String> ids) {
+        try {
+            delegate.deleteAllById(ids);
+        } finally {
+            if (ids != null) {
+                for (String id : ids) {
+                    markDirty(id);
+                }
+            }
+            persistAll();
+        }
+    }
+
+    
+    
+    
     /**
      * @brief Elimina tutti gli utenti dal repository.
      *
      * Dopo l’eliminazione lo stato viene persistito su file.
      */
     @Override
-    public void deleteAll() {
+    public synchronized void deleteAll() {
         delegate.deleteAll();
+        fullRewrite = true;
         persistAll();
     }
 
@@ -268,6 +554,20 @@ public class FileBackedUserRepository implements UserRepository {
         return delegate.findByLastNameContaining(keyword);
     }
 
+
+
+
+    /**
+     * @brief Cerca gli utenti con l'email indicata.
+     *
+     * @param email Email da cercare.
+     * @return Lista degli utenti con quell'email.
+     */
+    @Override
+    public List<User> findByEmailIgnoreCase(String email) {
+        return delegate.findByEmailIgnoreCase(email);
+    }
+
     
     
     
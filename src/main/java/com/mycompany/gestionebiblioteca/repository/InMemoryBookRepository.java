@@ -10,27 +10,47 @@ package com.mycompany.gestionebiblioteca.repository;
  * @author Giovanni
  */
 import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.NumericCode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * @brief Implementazione in memoria del repository per la gestione dei libri.
  *
  * Questa classe fornisce un'implementazione concreta dell'interfaccia BookRepository
- * utilizzando una struttura dati in memoria (HashMap).
+ * utilizzando una struttura dati in memoria (CodeKeyedMap: gli ISBN di 13 cifre
+ * vengono memorizzati come long in una tabella a indirizzamento aperto).
+ *
+ * Le ricerche per titolo e per autore usano due indici a trigrammi (TrigramIndex),
+ * aggiornati da save, deleteById e deleteAll: vengono verificati solo i libri che
+ * contengono tutti i trigrammi della parola chiave, invece dell'intero catalogo.
  */
 public class InMemoryBookRepository implements BookRepository {
 
     /**
-     * @brief Storage interno basato su HashMap.
-     * Mappa l'ISBN (chiave univoca) all'oggetto Book (valore).
+     * @brief Storage interno.
+     * Mappa l'ISBN (chiave univoca, convertito in long) all'oggetto Book (valore).
+     */
+    private final CodeKeyedMap<Book> storage = new CodeKeyedMap<>(NumericCode.ISBN_DIGITS);
+
+    /**
+     * @brief Indice a trigrammi dei titoli (ISBN → titolo).
+     */
+    private final TrigramIndex titleIndex = new TrigramIndex();
+
+    /**
+     * @brief Indice a trigrammi degli autori (ISBN → nomi degli autori).
      */
-    private final Map<String, Book> storage = new HashMap<>();
+    private final TrigramIndex authorIndex = new TrigramIndex();
+
+    /**
+     * @brief Indice delle opere (titolo, autori, anno) per i duplicati semantici.
+     */
+    private final WorkKeyIndex workIndex = new WorkKeyIndex();
 
     /**
      * @brief Salva o aggiorna un libro nel repository.
@@ -52,6 +72,9 @@ public class InMemoryBookRepository implements BookRepository {
             throw new IllegalArgumentException("isbn non deve essere null");
         }
         storage.put(isbn, entity);
+        titleIndex.put(isbn, Collections.singletonList(entity.getTitle()));
+        authorIndex.put(isbn, entity.getAuthors() != null ? entity.getAuthors() : Collections.<String>emptyList());
+        workIndex.put(isbn, entity.getTitle(), entity.getAuthors(), entity.getYear());
         return entity;
     }
 
@@ -92,6 +115,9 @@ public class InMemoryBookRepository implements BookRepository {
             return;
         }
         storage.remove(id);
+        titleIndex.remove(id);
+        authorIndex.remove(id);
+        workIndex.remove(id);
     }
 
     /**
@@ -101,6 +127,9 @@ public class InMemoryBookRepository implements BookRepository {
     @Override
     public void deleteAll() {
         storage.clear();
+        titleIndex.clear();
+        authorIndex.clear();
+        workIndex.clear();
     }
 
     /**
@@ -149,14 +178,7 @@ public class InMemoryBookRepository implements BookRepository {
         if (keyword == null || keyword.trim().isEmpty()) {
             return Collections.emptyList();
         }
-        String lowerKeyword = keyword.toLowerCase();
-        List<Book> result = new ArrayList<>();
-        for (Book book : storage.values()) {
-            String title = book.getTitle();
-            if (title != null && title.toLowerCase().contains(lowerKeyword)) {
-                result.add(book);
-            }
-        }
+        List<Book> result = booksOf(titleIndex.search(keyword));
         result.sort(Comparator.comparing(Book::getTitle, Comparator.nullsLast(String::compareToIgnoreCase)));
         return result;
     }
@@ -179,22 +201,8 @@ public class InMemoryBookRepository implements BookRepository {
         if (keyword == null || keyword.trim().isEmpty()) {
             return Collections.emptyList();
         }
-        String lowerKeyword = keyword.toLowerCase();
-        List<Book> result = new ArrayList<>();
-        
-        // Iterazione su tutti i libri
-        for (Book book : storage.values()) {
-            List<String> authors = book.getAuthors();
-            if (authors != null) {
-                // Controllo se ALMENO UN autore matcha la keyword
-                for (String author : authors) {
-                    if (author != null && author.toLowerCase().contains(lowerKeyword)) {
-                        result.add(book);
-                        break; // Trovato un match, aggiungo il libro ed esco dal loop autori
-                    }
-                }
-            }
-        }
+        // l'indice restituisce i libri con ALMENO UN autore che contiene la keyword
+        List<Book> result = booksOf(authorIndex.search(keyword));
         
         // Ordinamento complesso: usa il primo autore della lista, se esiste
         result.sort(Comparator.comparing(
@@ -204,6 +212,19 @@ public class InMemoryBookRepository implements BookRepository {
         return result;
     }
 
+    /**
+     * @brief Cerca i libri della stessa opera tramite l'indice delle opere.
+     *
+     * @param title Titolo del libro.
+     * @param authors Autori del libro (in qualsiasi ordine).
+     * @param year Anno di pubblicazione.
+     * @return Lista dei libri corrispondenti.
+     */
+    @Override
+    public List<Book> findByTitleAndAuthorsAndYear(String title, List<String> authors, int year) {
+        return booksOf(workIndex.find(title, authors, year));
+    }
+
     /**
      * @brief Restituisce tutti i libri ordinati per titolo.
      *
@@ -215,4 +236,18 @@ public class InMemoryBookRepository implements BookRepository {
         result.sort(Comparator.comparing(Book::getTitle, Comparator.nullsLast(String::compareToIgnoreCase)));
         return result;
     }
+
+    /**
+     * @brief Converte un insieme di ISBN nei libri corrispondenti.
+     *
+     * @param isbns Gli ISBN restituiti da un indice.
+     * @return Lista (modificabile) dei libri corrispondenti.
+     */
+    private List<Book> booksOf(Set<String> isbns) {
+        List<Book> result = new ArrayList<>(isbns.size());
+        for (String isbn : isbns) {
+            result.add(storage.get(isbn));
+        }
+        return result;
+    }
 }
@@ -11,14 +11,18 @@ package com.mycompany.gestionebiblioteca.repository;
  */
 
 import com.mycompany.gestionebiblioteca.model.Loan;
-import java.time.LocalDate;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import com.mycompany.gestionebiblioteca.model.NumericCode;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * @brief Implementazione in memoria del repository per la gestione dei prestiti (Loan).
@@ -27,28 +31,52 @@ import java.util.Optional;
  *
  * Aspetti architetturali chiave:
  * - **Chiave Primaria Composta**: Poiché l'oggetto Loan è identificato da una terna (Utente, Libro, Data),
- * questo repository genera una chiave sintetica (Stringa) concatenando questi valori per l'inserimento nella HashMap.
+ * la chiave della HashMap è una LoanId (matricola e ISBN numerici, data come giorno epoch, hash precalcolato),
+ * ottenuta da Loan.getId() senza costruire stringhe a ogni operazione.
+ * - **Indici secondari**: matricola → prestiti, ISBN → prestiti e insieme dei prestiti attivi
+ * ordinato per scadenza (globale, per utente e per libro). Gli indici per matricola e per ISBN sono
+ * CodeKeyedMap, che memorizzano i codici come long. Gli indici vengono aggiornati da save, deleteById e
+ * deleteAll, quindi le ricerche costano in proporzione al numero di risultati e non al numero totale
+ * di prestiti. Le modifiche a scadenza e restituzione di un prestito memorizzato diventano visibili
+ * negli indici solo dopo la chiamata a save (come avviene nei servizi).
  */
 public class InMemoryLoanRepository implements LoanRepository {
 
     /**
      * @brief Storage interno.
-     * Mappa l'ID sintetico (String) all'oggetto Loan.
+     * Mappa l'identificativo (LoanId) all'oggetto Loan.
      */
-    private final Map<String, Loan> storage = new HashMap<>();
+    private final Map<LoanId, Loan> storage = new HashMap<>();
 
     /**
-     * @brief Genera l'ID univoco per la memorizzazione nella mappa.
-     *
-     * Combina matricola, ISBN e data di inizio per creare una chiave univoca.
-     * Formato: "MATRICOLA:ISBN:YYYY-MM-DD"
-     *
-     * @param loan Il prestito da cui estrarre le informazioni.
-     * @return Una stringa univoca che rappresenta la chiave primaria del prestito.
+     * @brief Indice secondario: matricola → ID dei prestiti dell'utente (in ordine di inserimento).
      */
-    private String buildId(Loan loan) {
-        return loan.getUserMatricola() + ":" + loan.getBookIsbn() + ":" + loan.getLoanDate();
-    }
+    private final CodeKeyedMap<Set<LoanId>> idsByUser = new CodeKeyedMap<>(NumericCode.MATRICOLA_DIGITS);
+
+    /**
+     * @brief Indice secondario: ISBN → ID dei prestiti del libro (in ordine di inserimento).
+     */
+    private final CodeKeyedMap<Set<LoanId>> idsByIsbn = new CodeKeyedMap<>(NumericCode.ISBN_DIGITS);
+
+    /**
+     * @brief Prestiti attivi ordinati per scadenza.
+     */
+    private final NavigableSet<ActiveLoanKey> activeByDueDate = new TreeSet<>(ActiveLoanKey.BY_DUE_DATE);
+
+    /**
+     * @brief Prestiti attivi di ogni utente ordinati per scadenza.
+     */
+    private final CodeKeyedMap<NavigableSet<ActiveLoanKey>> activeByUser = new CodeKeyedMap<>(NumericCode.MATRICOLA_DIGITS);
+
+    /**
+     * @brief Prestiti attivi di ogni libro ordinati per scadenza.
+     */
+    private final CodeKeyedMap<NavigableSet<ActiveLoanKey>> activeByIsbn = new CodeKeyedMap<>(NumericCode.ISBN_DIGITS);
+
+    /**
+     * @brief Chiave con cui ogni prestito attivo è stato indicizzato (per poterla rimuovere).
+     */
+    private final Map<LoanId, ActiveLoanKey> activeKeys = new HashMap<>();
 
     /**
      * @brief Salva o aggiorna un prestito.
@@ -62,19 +90,20 @@ public class InMemoryLoanRepository implements LoanRepository {
         if (entity == null) {
             throw new IllegalArgumentException("Prestito non deve essere null");
         }
-        String id = buildId(entity);
+        LoanId id = entity.getId();
         storage.put(id, entity);
+        index(id, entity);
         return entity;
     }
 
     /**
-     * @brief Cerca un prestito tramite la sua chiave sintetica.
+     * @brief Cerca un prestito tramite il suo identificativo.
      *
-     * @param id La stringa identificativa (formato "Matricola:ISBN:Data").
+     * @param id L'identificativo (matricola, ISBN e data di inizio).
      * @return Optional contenente il prestito se trovato.
      */
     @Override
-    public Optional<Loan> findById(String id) {
+    public Optional<Loan> findById(LoanId id) {
         if (id == null) {
             return Optional.empty();
         }
@@ -95,11 +124,14 @@ public class InMemoryLoanRepository implements LoanRepository {
      * @param id La chiave identificativa del prestito.
      */
     @Override
-    public void deleteById(String id) {
+    public void deleteById(LoanId id) {
         if (id == null) {
             return;
         }
-        storage.remove(id);
+        Loan removed = storage.remove(id);
+        if (removed != null) {
+            unindex(id, removed);
+        }
     }
 
     /**
@@ -108,6 +140,12 @@ public class InMemoryLoanRepository implements LoanRepository {
     @Override
     public void deleteAll() {
         storage.clear();
+        idsByUser.clear();
+        idsByIsbn.clear();
+        activeByDueDate.clear();
+        activeByUser.clear();
+        activeByIsbn.clear();
+        activeKeys.clear();
     }
 
     /**
@@ -116,7 +154,7 @@ public class InMemoryLoanRepository implements LoanRepository {
      * @return true se esiste, false altrimenti.
      */
     @Override
-    public boolean existsById(String id) {
+    public boolean existsById(LoanId id) {
         if (id == null) {
             return false;
         }
@@ -145,13 +183,7 @@ public class InMemoryLoanRepository implements LoanRepository {
         if (matricola == null || matricola.trim().isEmpty()) {
             return Collections.emptyList();
         }
-        List<Loan> result = new ArrayList<>();
-        for (Loan loan : storage.values()) {
-            if (matricola.equals(loan.getUserMatricola())) {
-                result.add(loan);
-            }
-        }
-        return result;
+        return loansOf(idsByUser.get(matricola));
     }
 
     /**
@@ -165,13 +197,7 @@ public class InMemoryLoanRepository implements LoanRepository {
         if (isbn == null || isbn.trim().isEmpty()) {
             return Collections.emptyList();
         }
-        List<Loan> result = new ArrayList<>();
-        for (Loan loan : storage.values()) {
-            if (isbn.equals(loan.getBookIsbn())) {
-                result.add(loan);
-            }
-        }
-        return result;
+        return loansOf(idsByIsbn.get(isbn));
     }
 
     /**
@@ -188,17 +214,7 @@ public class InMemoryLoanRepository implements LoanRepository {
      */
     @Override
     public List<Loan> findActiveLoansOrderByDueDate() {
-        List<Loan> result = new ArrayList<>();
-        for (Loan loan : storage.values()) {
-            if (loan.isActive()) {
-                result.add(loan);
-            }
-        }
-        result.sort(Comparator
-                .comparing(Loan::getDueDate, Comparator.nullsLast(LocalDate::compareTo))
-                .thenComparing(Loan::getUserMatricola)
-                .thenComparing(Loan::getBookIsbn));
-        return result;
+        return activeLoansOf(activeByDueDate);
     }
 
     /**
@@ -218,15 +234,154 @@ public class InMemoryLoanRepository implements LoanRepository {
         if (matricola == null || matricola.trim().isEmpty()) {
             return Collections.emptyList();
         }
-        List<Loan> result = new ArrayList<>();
-        for (Loan loan : storage.values()) {
-            if (loan.isActive() && matricola.equals(loan.getUserMatricola())) {
+        NavigableSet<ActiveLoanKey> keys = activeByUser.get(matricola);
+        if (keys == null) {
+            return new ArrayList<>();
+        }
+        return activeLoansOf(keys);
+    }
+
+    /**
+     * @brief Recupera i prestiti attivi di un libro.
+     *
+     * Criterio di ordinamento:
+     * 1. Data di Scadenza.
+     * 2. Matricola dell'utente.
+     *
+     * @param isbn L'ISBN del libro.
+     * @return Lista dei prestiti in corso per quel libro.
+     */
+    @Override
+    public List<Loan> findActiveLoansByIsbn(String isbn) {
+        if (isbn == null || isbn.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        NavigableSet<ActiveLoanKey> keys = activeByIsbn.get(isbn);
+        if (keys == null) {
+            return new ArrayList<>();
+        }
+        return activeLoansOf(keys);
+    }
+
+    // gestione degli indici secondari
+
+    /**
+     * @brief Aggiorna gli indici secondari dopo il salvataggio di un prestito.
+     *
+     * Matricola e ISBN fanno parte dell'ID, quindi non cambiano tra un salvataggio
+     * e l'altro; scadenza e stato attivo invece sì, per cui la vecchia chiave
+     * attiva viene sempre rimossa e, se il prestito è ancora attivo, sostituita.
+     *
+     * @param id L'ID del prestito.
+     * @param loan Il prestito salvato.
+     */
+    private void index(LoanId id, Loan loan) {
+        idsByUser.computeIfAbsent(loan.getUserMatricola(), key -> new LinkedHashSet<>()).add(id);
+        idsByIsbn.computeIfAbsent(loan.getBookIsbn(), key -> new LinkedHashSet<>()).add(id);
+
+        removeActiveKey(id);
+        if (loan.isActive()) {
+            ActiveLoanKey key = new ActiveLoanKey(id, loan);
+            activeKeys.put(id, key);
+            activeByDueDate.add(key);
+            activeByUser.computeIfAbsent(key.getMatricola(), user -> new TreeSet<>(ActiveLoanKey.BY_USER_DUE_DATE)).add(key);
+            activeByIsbn.computeIfAbsent(key.getIsbn(), book -> new TreeSet<>(ActiveLoanKey.BY_BOOK_DUE_DATE)).add(key);
+        }
+    }
+
+    /**
+     * @brief Rimuove un prestito cancellato dagli indici secondari.
+     *
+     * @param id L'ID del prestito.
+     * @param loan Il prestito rimosso.
+     */
+    private void unindex(LoanId id, Loan loan) {
+        removeFromIndex(idsByUser, loan.getUserMatricola(), id);
+        removeFromIndex(idsByIsbn, loan.getBookIsbn(), id);
+        removeActiveKey(id);
+    }
+
+    /**
+     * @brief Rimuove la chiave attiva registrata per un prestito, se presente.
+     *
+     * @param id L'ID del prestito.
+     */
+    private void removeActiveKey(LoanId id) {
+        ActiveLoanKey previous = activeKeys.remove(id);
+        if (previous == null) {
+            return;
+        }
+        activeByDueDate.remove(previous);
+        removeFromActiveIndex(activeByUser, previous.getMatricola(), previous);
+        removeFromActiveIndex(activeByIsbn, previous.getIsbn(), previous);
+    }
+
+    /**
+     * @brief Rimuove una chiave attiva da un indice per utente o per libro, eliminando le voci rimaste vuote.
+     *
+     * @param index L'indice da aggiornare.
+     * @param code La matricola o l'ISBN.
+     * @param key La chiave attiva da rimuovere.
+     */
+    private static void removeFromActiveIndex(CodeKeyedMap<NavigableSet<ActiveLoanKey>> index, String code, ActiveLoanKey key) {
+        NavigableSet<ActiveLoanKey> keys = index.get(code);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                index.remove(code);
+            }
+        }
+    }
+
+    /**
+     * @brief Rimuove un ID da un indice, eliminando le voci rimaste vuote.
+     *
+     * @param index L'indice da aggiornare.
+     * @param key La chiave dell'indice.
+     * @param id L'ID da rimuovere.
+     */
+    private static void removeFromIndex(CodeKeyedMap<Set<LoanId>> index, String key, LoanId id) {
+        Set<LoanId> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @brief Converte un insieme di ID nei prestiti corrispondenti.
+     *
+     * @param ids Gli ID (può essere null).
+     * @return La lista dei prestiti, nell'ordine degli ID.
+     */
+    private List<Loan> loansOf(Set<LoanId> ids) {
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<Loan> result = new ArrayList<>(ids.size());
+        for (LoanId id : ids) {
+            result.add(storage.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * @brief Converte un insieme ordinato di chiavi attive nei prestiti corrispondenti.
+     *
+     * @param keys Le chiavi, già ordinate.
+     * @return La lista dei prestiti ancora attivi, nello stesso ordine.
+     */
+    private List<Loan> activeLoansOf(NavigableSet<ActiveLoanKey> keys) {
+        List<Loan> result = new ArrayList<>(keys.size());
+        for (ActiveLoanKey key : keys) {
+            Loan loan = storage.get(key.getId());
+            // un prestito chiuso senza passare da save non viene restituito (come la scansione completa)
+            if (loan.isActive()) {
                 result.add(loan);
             }
         }
-        result.sort(Comparator
-                .comparing(Loan::getDueDate, Comparator.nullsLast(LocalDate::compareTo))
-                .thenComparing(Loan::getBookIsbn));
         return result;
     }
 }
\ No newline at end of file
@@ -9,10 +9,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import com.mycompany.gestionebiblioteca.model.NumericCode;
 import com.mycompany.gestionebiblioteca.model.User;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  *
@@ -24,9 +28,25 @@ import java.util.Comparator;
 public class InMemoryUserRepository implements UserRepository {
 
     /**
-     * @brief Struttura dati per memorizzare gli utenti (Chiave: Matricola, Valore: User).
+     * @brief Struttura dati per memorizzare gli utenti (Chiave: Matricola convertita in long, Valore: User).
      */
-    private final Map<String, User> storage = new HashMap<>();
+    private final CodeKeyedMap<User> storage = new CodeKeyedMap<>(NumericCode.MATRICOLA_DIGITS);
+
+    /**
+     * @brief Indice secondario: email normalizzata → matricole degli utenti.
+     *
+     * L'insieme consente di rappresentare anche eventuali duplicati già
+     * presenti nei dati caricati da file.
+     */
+    private final Map<String, Set<String>> idsByEmail = new HashMap<>();
+
+    /**
+     * @brief Email con cui ogni utente è stato indicizzato.
+     *
+     * User è mutabile: la chiave viene memorizzata al salvataggio per poterla
+     * rimuovere anche se nel frattempo l'email dell'oggetto è cambiata.
+     */
+    private final Map<String, String> emailKeys = new HashMap<>();
 
     /**
      * @brief Salva o aggiorna un utente nel repository.
@@ -47,6 +67,12 @@ public class InMemoryUserRepository implements UserRepository {
             throw new IllegalArgumentException("matricola must not be null");
         }
         storage.put(matricola, entity);
+        unindexEmail(matricola);
+        String key = emailKey(entity.getEmail());
+        if (key != null) {
+            idsByEmail.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(matricola);
+            emailKeys.put(matricola, key);
+        }
         return entity;
     }
 
@@ -85,6 +111,7 @@ public class InMemoryUserRepository implements UserRepository {
             return;
         }
         storage.remove(id);
+        unindexEmail(id);
     }
 
     /**
@@ -95,6 +122,8 @@ public class InMemoryUserRepository implements UserRepository {
     @Override
     public void deleteAll() {
         storage.clear();
+        idsByEmail.clear();
+        emailKeys.clear();
     }
 
     /**
@@ -161,6 +190,26 @@ public class InMemoryUserRepository implements UserRepository {
         return result;
     }
 
+    /**
+     * @brief Cerca gli utenti con l'email indicata tramite l'indice delle email.
+     *
+     * @param email Email da cercare (case-insensitive, spazi esterni ignorati).
+     * @return Lista degli utenti con quell'email.
+     */
+    @Override
+    public List<User> findByEmailIgnoreCase(String email) {
+        String key = emailKey(email);
+        Set<String> ids = key == null ? null : idsByEmail.get(key);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<User> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            result.add(storage.get(id));
+        }
+        return result;
+    }
+
     /**
      * @brief Restituisce tutti gli utenti con ordinamento specifico.
      *
@@ -177,4 +226,37 @@ public class InMemoryUserRepository implements UserRepository {
                 .thenComparing(User::getFirstName, Comparator.nullsLast(String::compareToIgnoreCase)));
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * @brief Rimuove dall'indice delle email la voce di un utente, se presente.
+     *
+     * @param matricola La matricola dell'utente.
+     */
+    private void unindexEmail(String matricola) {
+        String key = emailKeys.remove(matricola);
+        if (key == null) {
+            return;
+        }
+        Set<String> ids = idsByEmail.get(key);
+        if (ids != null) {
+            ids.remove(matricola);
+            if (ids.isEmpty()) {
+                idsByEmail.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @brief Normalizza un'email per l'indice (trim e minuscolo).
+     *
+     * @param email L'email.
+     * @return La chiave dell'indice, o null se l'email è null o vuota.
+     */
+    static String emailKey(String email) {
+        if (email == null) {
+            return null;
+        }
+        String trimmed = email.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+}
@@ -2,6 +2,7 @@
 package com.mycompany.gestionebiblioteca.repository;
         
 import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
 import java.util.List;
         
 /**
@@ -18,6 +19,8 @@ import java.util.List;
  * avanzate di ricerca specifiche per la gestione dei prestiti, come
  * individuare prestiti attivi, prestiti per utente e prestiti per libro.
  *
+ * I prestiti sono identificati da una LoanId (matricola, ISBN e data di inizio).
+ *
  * Le implementazioni concrete (come FileBackedPrestitoRepository)
  * devono garantire che i metodi definiti rispettino tale contratto.
  *
@@ -26,7 +29,7 @@ import java.util.List;
  */
 
 
-public interface LoanRepository extends CrudRepository<String, Loan> {
+public interface LoanRepository extends CrudRepository<LoanId, Loan> {
     
     
      /**
@@ -76,6 +79,17 @@ public interface LoanRepository extends CrudRepository<String, Loan> {
      */
     List<Loan> findActiveLoansByUser(String matricola);
 
+    /**
+     * @brief Restituisce i prestiti attivi di un libro, ordinati per scadenza e matricola.
+     *
+     * Usa l'indice dei prestiti attivi per ISBN: il costo dipende dal numero
+     * di copie in prestito, non dall'archivio (né dallo storico del libro).
+     *
+     * @param isbn ISBN del libro.
+     * @return Lista dei prestiti attualmente attivi del libro.
+     */
+    List<Loan> findActiveLoansByIsbn(String isbn);
+
 }
 
 
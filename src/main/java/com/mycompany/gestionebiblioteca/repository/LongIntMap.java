@@ -0,0 +1,225 @@
+/**
+ * @file LongIntMap.java
+ * @brief Mappa a indirizzamento aperto con chiavi long e valori int primitivi.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+/**
+ * @class LongIntMap
+ * @brief Mappa long → int non negativo senza boxing né oggetti Entry.
+ *
+ * Stessa organizzazione di LongObjectMap (array paralleli, scansione
+ * lineare, hashing di Fibonacci, rimozione con backward shift), ma i valori
+ * sono int primitivi: una cella è libera se il suo valore è negativo, quindi
+ * sono ammessi solo valori non negativi (ad esempio indici di riga) e ogni
+ * long è una chiave valida.
+ *
+ * La classe non è thread-safe.
+ */
+final class LongIntMap {
+
+    /**
+     * @brief Valore restituito per le chiavi assenti.
+     */
+    static final int MISSING = -1;
+
+    /**
+     * @brief Capacità iniziale (potenza di due).
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * @brief Costante di Fibonacci per distribuire le chiavi vicine (codici consecutivi).
+     */
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+
+    private int[] values;
+
+    /**
+     * @brief Numero di bit dell'indice (capacità = 2^bits).
+     */
+    private int bits;
+
+    private int size;
+
+    /**
+     * @brief Costruttore.
+     */
+    LongIntMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @brief Restituisce il valore associato a una chiave.
+     *
+     * @param key La chiave.
+     * @return Il valore, oppure MISSING se la chiave è assente.
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); values[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * @brief Verifica se una chiave è presente.
+     *
+     * @param key La chiave.
+     * @return true se la chiave è presente.
+     */
+    boolean containsKey(long key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     * @brief Associa un valore a una chiave.
+     *
+     * @param key La chiave.
+     * @param value Il valore (non negativo).
+     * @return Il valore precedente, oppure MISSING.
+     * @throws IllegalArgumentException Se value è negativo.
+     */
+    int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value non deve essere negativo");
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (; values[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > maxSize()) {
+            allocate(keys.length << 1);
+        }
+        return MISSING;
+    }
+
+    /**
+     * @brief Rimuove una chiave.
+     *
+     * @param key La chiave.
+     * @return Il valore rimosso, oppure MISSING se la chiave era assente.
+     */
+    int remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (; values[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int removed = values[i];
+                shiftBack(i);
+                size--;
+                return removed;
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * @brief Restituisce il numero di chiavi.
+     *
+     * @return Il numero di chiavi.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @brief Rimuove tutte le chiavi e riporta la tabella alla capacità iniziale.
+     */
+    void clear() {
+        values = null;
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * @brief Cella di partenza della scansione per una chiave.
+     *
+     * @param key La chiave.
+     * @return L'indice della cella.
+     */
+    private int slot(long key) {
+        return (int) ((key * GOLDEN_RATIO) >>> (64 - bits));
+    }
+
+    /**
+     * @brief Numero massimo di chiavi prima del raddoppio (fattore di carico 0,75).
+     *
+     * @return La soglia.
+     */
+    private int maxSize() {
+        return keys.length - (keys.length >>> 2);
+    }
+
+    /**
+     * @brief Libera una cella spostando indietro gli elementi successivi della stessa sequenza.
+     *
+     * @param free La cella da liberare.
+     */
+    private void shiftBack(int free) {
+        int mask = keys.length - 1;
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] < 0) {
+                break;
+            }
+            int home = slot(keys[i]);
+            // l'elemento in i può occupare "free" solo se la sua cella naturale non cade in (free, i]
+            boolean movable = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (movable) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        values[free] = MISSING;
+    }
+
+    /**
+     * @brief Alloca una nuova tabella e vi reinserisce gli elementi presenti.
+     *
+     * @param capacity La nuova capacità (potenza di due).
+     */
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        bits = Integer.numberOfTrailingZeros(capacity);
+        if (oldValues == null) {
+            return;
+        }
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] >= 0) {
+                int i = slot(oldKeys[j]);
+                while (values[i] >= 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * @file LongObjectMap.java
+ * @brief Mappa a indirizzamento aperto con chiavi long primitive.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+/**
+ * @class LongObjectMap
+ * @brief Mappa long → valore senza boxing delle chiavi né oggetti Entry.
+ *
+ * Chiavi e valori stanno in due array paralleli; le collisioni vengono
+ * risolte con scansione lineare, che sfrutta la località della cache.
+ * Una cella è libera se il suo valore è null (i valori null non sono
+ * ammessi), quindi ogni long è una chiave valida. La rimozione ricompatta
+ * la sequenza di scansione (backward shift) invece di lasciare lapidi, così
+ * le ricerche non degradano dopo molte cancellazioni.
+ *
+ * La classe non è thread-safe.
+ *
+ * @param <V> Tipo dei valori.
+ */
+final class LongObjectMap<V> {
+
+    /**
+     * @brief Capacità iniziale (potenza di due).
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * @brief Costante di Fibonacci per distribuire le chiavi vicine (codici consecutivi).
+     */
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+
+    private Object[] values;
+
+    /**
+     * @brief Numero di bit dell'indice (capacità = 2^bits).
+     */
+    private int bits;
+
+    private int size;
+
+    /**
+     * @brief Costruttore.
+     */
+    LongObjectMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @brief Restituisce il valore associato a una chiave.
+     *
+     * @param key La chiave.
+     * @return Il valore, oppure null se la chiave è assente.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @brief Verifica se una chiave è presente.
+     *
+     * @param key La chiave.
+     * @return true se la chiave è presente.
+     */
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @brief Associa un valore a una chiave.
+     *
+     * @param key La chiave.
+     * @param value Il valore.
+     * @return Il valore precedente, oppure null.
+     * @throws IllegalArgumentException Se value è null.
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value non deve essere null");
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > maxSize()) {
+            allocate(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @brief Restituisce il valore di una chiave, creandolo se assente.
+     *
+     * @param key La chiave.
+     * @param factory Crea il valore (non deve restituire null).
+     * @return Il valore esistente o quello appena creato.
+     */
+    V computeIfAbsent(long key, LongFunction<? extends V> factory) {
+        V value = get(key);
+        if (value == null) {
+            value = factory.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @brief Rimuove una chiave.
+     *
+     * @param key La chiave.
+     * @return Il valore rimosso, oppure null se la chiave era assente.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V removed = (V) values[i];
+                shiftBack(i);
+                size--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @brief Restituisce il numero di chiavi.
+     *
+     * @return Il numero di chiavi.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @brief Rimuove tutte le chiavi e riporta la tabella alla capacità iniziale.
+     */
+    void clear() {
+        values = null;
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * @brief Restituisce un iteratore sui valori (in ordine di cella).
+     *
+     * La rimozione tramite l'iteratore non è supportata.
+     *
+     * @return L'iteratore.
+     */
+    Iterator<V> valueIterator() {
+        return new Iterator<V>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < values.length && values[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < values.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                V value = (V) values[next];
+                next = advance(next + 1);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * @brief Cella di partenza della scansione per una chiave.
+     *
+     * @param key La chiave.
+     * @return L'indice della cella.
+     */
+    private int slot(long key) {
+        return (int) ((key * GOLDEN_RATIO) >>> (64 - bits));
+    }
+
+    /**
+     * @brief Numero massimo di chiavi prima del raddoppio (fattore di carico 0,75).
+     *
+     * @return La soglia.
+     */
+    private int maxSize() {
+        return keys.length - (keys.length >>> 2);
+    }
+
+    /**
+     * @brief Libera una cella spostando indietro gli elementi successivi della stessa sequenza.
+     *
+     * @param free La cella da liberare.
+     */
+    private void shiftBack(int free) {
+        int mask = keys.length - 1;
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = slot(keys[i]);
+            // l'elemento in i può occupare "free" solo se la sua cella naturale non cade in (free, i]
+            boolean movable = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (movable) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        values[free] = null;
+    }
+
+    /**
+     * @brief Alloca una nuova tabella e vi reinserisce gli elementi presenti.
+     *
+     * @param capacity La nuova capacità (potenza di due).
+     */
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        bits = Integer.numberOfTrailingZeros(capacity);
+        if (oldValues == null) {
+            return;
+        }
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j]);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+/**
+ *
+ * @author Giovanni
+ */
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * @brief Coordinamento tra letture e scritture dei repository concorrenti.
+ *
+ * Le scritture sono serializzate da un StampedLock in modalità esclusiva, così
+ * che la mappa principale e gli indici secondari vengano aggiornati insieme.
+ *
+ * Le letture che devono restituire uno snapshot coerente (findAll e query
+ * ordinate) usano prima una lettura ottimistica, senza alcun lock: se nessuna
+ * scrittura è avvenuta nel frattempo il risultato è valido, altrimenti la
+ * lettura viene ripetuta sotto il lock condiviso. Le strutture lette in modo
+ * ottimistico devono quindi tollerare modifiche concorrenti (collezioni del
+ * package java.util.concurrent).
+ */
+final class SnapshotLock {
+
+    /**
+     * @brief Lock sottostante.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * @brief Esegue una lettura coerente, preferibilmente senza lock.
+     *
+     * Il lettore può essere eseguito due volte: non deve avere effetti collaterali.
+     *
+     * @param reader Operazione di lettura.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato ottenuto da una lettura non interrotta da scritture.
+     */
+    <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // stato incoerente letto durante una scrittura: si ripete sotto lock
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return readLocked(reader);
+    }
+
+    /**
+     * @brief Esegue una lettura sotto il lock condiviso.
+     *
+     * Necessario per le strutture che non tollerano letture concorrenti alle
+     * scritture; più letture condivise possono procedere in parallelo.
+     *
+     * @param reader Operazione di lettura.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato della lettura.
+     */
+    <T> T readLocked(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @brief Esegue una scrittura in modo esclusivo.
+     *
+     * @param writer Operazione di scrittura.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato della scrittura.
+     */
+    <T> T write(Supplier<T> writer) {
+        long stamp = lock.writeLock();
+        try {
+            return writer.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @brief Esegue una scrittura senza risultato in modo esclusivo.
+     *
+     * @param writer Operazione di scrittura.
+     */
+    void write(Runnable writer) {
+        long stamp = lock.writeLock();
+        try {
+            writer.run();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
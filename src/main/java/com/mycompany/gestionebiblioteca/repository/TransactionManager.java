@@ -0,0 +1,372 @@
+/**
+ * @file TransactionManager.java
+ * @brief Transazioni (unit of work) che coinvolgono più repository su file.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import com.mycompany.gestionebiblioteca.persistence.AtomicFileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ *
+ * @author valerialupo
+ */
+
+/**
+ * @class TransactionManager
+ * @brief Esegue un'operazione su più repository come un'unica modifica atomica su disco.
+ *
+ * Durante la transazione i repository partecipanti restano bloccati (monitor
+ * di ciascun repository, acquisiti sempre nello stesso ordine) e non scrivono
+ * nulla su file. Alla fine dell'operazione:
+ * - se l'operazione lancia un'eccezione, i repository modificati ricaricano
+ *   il proprio stato dai file, che non sono stati toccati (rollback);
+ * - altrimenti ogni file modificato viene scritto una sola volta, con questo protocollo:
+ *   1. snapshot su un file temporaneo accanto al definitivo ("nome.tx"), già sincronizzato su disco;
+ *   2. scrittura atomica del file di commit, che elenca le coppie temporaneo → definitivo:
+ *      da questo momento la transazione è confermata;
+ *   3. rename atomico di ogni temporaneo sul definitivo, conservando prima la
+ *      versione precedente come backup (".bak1", se il FileManager li prevede);
+ *   4. cancellazione del file di commit.
+ *
+ * Un crash prima del punto 2 lascia i file definitivi intatti; un crash dopo
+ * lascia il file di commit, e recover() completa i rename al successivo avvio.
+ * Con un solo file modificato il file di commit non serve: basta il rename atomico.
+ *
+ * Ogni commit riscrive per intero i file modificati e blocca tutti i
+ * partecipanti: è adatto a repository che riscrivono comunque lo snapshot a
+ * ogni modifica, non a quelli con journal o file a slot, di cui annullerebbe le
+ * scritture incrementali e il parallelismo dei lock per chiave di LoanService.
+ */
+public class TransactionManager {
+
+    /**
+     * @brief Suffisso dei file temporanei scritti durante il commit.
+     */
+    static final String TEMP_SUFFIX = ".tx";
+
+    /**
+     * @brief Separatore tra temporaneo e definitivo nel file di commit.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * @brief File che registra i rename di una transazione confermata.
+     */
+    private final Path commitFile;
+
+    /**
+     * @brief Repository partecipanti, ordinati per file (ordine di acquisizione dei lock).
+     */
+    private final List<TransactionalRepository> participants;
+
+    /**
+     * @brief Generazioni di backup di ciascun file definitivo.
+     */
+    private final Map<Path, Integer> backupGenerations = new LinkedHashMap<>();
+
+    /**
+     * @brief true sul thread che sta eseguendo una transazione (le chiamate annidate vi partecipano).
+     */
+    private final ThreadLocal<Boolean> active = new ThreadLocal<>();
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param commitFile File di commit (va passato anche a recover() all'avvio).
+     * @param participants Repository coinvolti nelle transazioni.
+     * @throws IllegalArgumentException Se commitFile o un partecipante sono null, o se non ci sono partecipanti.
+     */
+    public TransactionManager(Path commitFile, TransactionalRepository... participants) {
+        if (commitFile == null) {
+            throw new IllegalArgumentException("commitFile non deve essere null");
+        }
+        if (participants == null || participants.length == 0) {
+            throw new IllegalArgumentException("participants non deve essere vuoto");
+        }
+        List<TransactionalRepository> sorted = new ArrayList<>(Arrays.asList(participants));
+        for (TransactionalRepository participant : sorted) {
+            if (participant == null) {
+                throw new IllegalArgumentException("participant non deve essere null");
+            }
+        }
+        // ordine globale dei lock: due manager sugli stessi repository non vanno in deadlock
+        sorted.sort(Comparator.comparing(participant -> participant.getFile().toAbsolutePath().toString()));
+        this.commitFile = commitFile;
+        this.participants = sorted;
+        for (TransactionalRepository participant : sorted) {
+            backupGenerations.put(participant.getFile(), participant.getBackupGenerations());
+        }
+    }
+
+    /**
+     * @brief Esegue un'operazione in una transazione.
+     *
+     * Se il thread è già dentro una transazione di questo manager, l'operazione
+     * ne fa parte e viene confermata insieme a quella esterna.
+     *
+     * @param work L'operazione da eseguire.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato dell'operazione.
+     * @throws UncheckedIOException Se il commit non riesce (le modifiche vengono annullate,
+     * a meno che la transazione non fosse già confermata dal file di commit).
+     */
+    public <T> T inTransaction(Supplier<T> work) {
+        if (work == null) {
+            throw new IllegalArgumentException("work non deve essere null");
+        }
+        if (Boolean.TRUE.equals(active.get())) {
+            return work.get();
+        }
+        // fuori dai lock: il thread di scrittura differita ha bisogno dei monitor dei repository
+        for (TransactionalRepository participant : participants) {
+            participant.awaitPendingWrites();
+        }
+        active.set(Boolean.TRUE);
+        try {
+            return lockAndRun(0, work);
+        } finally {
+            active.remove();
+        }
+    }
+
+    /**
+     * @brief Acquisisce in ordine i monitor dei partecipanti ed esegue la transazione.
+     *
+     * @param index Indice del prossimo partecipante da bloccare.
+     * @param work L'operazione da eseguire.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato dell'operazione.
+     */
+    private <T> T lockAndRun(int index, Supplier<T> work) {
+        if (index == participants.size()) {
+            return run(work);
+        }
+        synchronized (participants.get(index)) {
+            return lockAndRun(index + 1, work);
+        }
+    }
+
+    /**
+     * @brief Esegue l'operazione e la conferma, oppure la annulla.
+     *
+     * @param work L'operazione da eseguire.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato dell'operazione.
+     */
+    private <T> T run(Supplier<T> work) {
+        for (TransactionalRepository participant : participants) {
+            participant.beginTransaction();
+        }
+        boolean committed = false;
+        try {
+            T result = work.get();
+
+            Map<Path, Path> staged = stage();
+            if (!staged.isEmpty()) {
+                publish(staged);
+                // punto di commit: da qui la transazione è confermata anche se i rename falliscono
+                committed = true;
+                apply(staged);
+            }
+            committed = true;
+            return result;
+        } finally {
+            endAll(committed);
+        }
+    }
+
+    /**
+     * @brief Scrive e sincronizza i file temporanei dei repository modificati.
+     *
+     * @return Le coppie file temporaneo → file definitivo.
+     */
+    private Map<Path, Path> stage() {
+        Map<Path, Path> staged = new LinkedHashMap<>();
+        try {
+            for (TransactionalRepository participant : participants) {
+                if (participant.hasTransactionChanges()) {
+                    Path target = participant.getFile();
+                    Path temp = tempFileFor(target);
+                    staged.put(temp, target);
+                    // un temporaneo rimasto da un commit fallito non deve finire nei backup
+                    Files.deleteIfExists(temp);
+                    // FileManager scrive il temporaneo in modo atomico e lo sincronizza su disco
+                    participant.writeTransactionSnapshot(temp);
+                }
+            }
+        } catch (IOException e) {
+            deleteQuietly(staged.keySet());
+            throw new UncheckedIOException("Errore durante la preparazione del commit", e);
+        }
+        return staged;
+    }
+
+    /**
+     * @brief Rende la transazione confermata scrivendo atomicamente il file di commit.
+     *
+     * Con un solo file il rename atomico basta da solo e il file di commit non viene scritto.
+     *
+     * @param staged Le coppie file temporaneo → file definitivo.
+     */
+    private void publish(Map<Path, Path> staged) {
+        try {
+            if (staged.size() == 1) {
+                Map.Entry<Path, Path> only = staged.entrySet().iterator().next();
+                AtomicFileWriter.replace(only.getKey(), only.getValue(), backupGenerations.get(only.getValue()));
+                return;
+            }
+            StringBuilder content = new StringBuilder();
+            for (Map.Entry<Path, Path> entry : staged.entrySet()) {
+                content.append(entry.getKey().toAbsolutePath()).append(SEPARATOR)
+                        .append(entry.getValue().toAbsolutePath()).append(SEPARATOR)
+                        .append(backupGenerations.get(entry.getValue())).append('\n');
+            }
+            byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+            AtomicFileWriter.write(commitFile, temp -> Files.write(temp, bytes,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 0);
+        } catch (IOException e) {
+            deleteQuietly(staged.keySet());
+            throw new UncheckedIOException("Errore durante la scrittura del file di commit " + commitFile, e);
+        }
+    }
+
+    /**
+     * @brief Sostituisce i file definitivi con i temporanei e cancella il file di commit.
+     *
+     * @param staged Le coppie file temporaneo → file definitivo.
+     */
+    private void apply(Map<Path, Path> staged) {
+        if (staged.size() == 1) {
+            return; // già applicato da publish()
+        }
+        try {
+            for (Map.Entry<Path, Path> entry : staged.entrySet()) {
+                AtomicFileWriter.replace(entry.getKey(), entry.getValue(), backupGenerations.get(entry.getValue()));
+            }
+            AtomicFileWriter.forceDirectory(commitFile.toAbsolutePath().getParent());
+            Files.delete(commitFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Transazione confermata ma non completata: "
+                    + "verrà completata da recover() al prossimo avvio", e);
+        }
+    }
+
+    /**
+     * @brief Chiude la transazione su tutti i partecipanti, anche se uno di essi fallisce.
+     *
+     * @param committed true se la transazione è stata confermata.
+     */
+    private void endAll(boolean committed) {
+        RuntimeException failure = null;
+        for (TransactionalRepository participant : participants) {
+            try {
+                participant.endTransaction(committed);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @brief Completa una transazione confermata ma interrotta da un crash.
+     *
+     * Va chiamato all'avvio, prima di creare i repository: esegue i rename
+     * rimasti in sospeso e cancella il file di commit. Se il file di commit
+     * non esiste non fa nulla.
+     *
+     * @param commitFile Il file di commit usato dal TransactionManager.
+     * @throws UncheckedIOException In caso di errori di lettura o di rename.
+     */
+    public static void recover(Path commitFile) {
+        if (commitFile == null) {
+            throw new IllegalArgumentException("commitFile non deve essere null");
+        }
+        try {
+            if (!Files.exists(commitFile)) {
+                return;
+            }
+            for (String line : Files.readAllLines(commitFile, StandardCharsets.UTF_8)) {
+                // temporaneo, definitivo e (facoltative) generazioni di backup
+                String[] parts = line.split(SEPARATOR, -1);
+                if (parts.length < 2) {
+                    continue;
+                }
+                Path temp = commitFile.getFileSystem().getPath(parts[0]);
+                Path target = commitFile.getFileSystem().getPath(parts[1]);
+                int generations = parts.length > 2 ? parseGenerations(parts[2], line) : 0;
+                // se il temporaneo non c'è più il rename era già avvenuto
+                if (Files.exists(temp)) {
+                    AtomicFileWriter.replace(temp, target, generations);
+                }
+            }
+            Files.delete(commitFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore durante il recupero della transazione " + commitFile, e);
+        }
+    }
+
+    /**
+     * @brief Legge le generazioni di backup di una riga del file di commit.
+     *
+     * @param text Il campo da leggere.
+     * @param line La riga, usata nel messaggio di errore.
+     * @return Le generazioni di backup.
+     * @throws IOException Se il campo non è un numero non negativo.
+     */
+    private static int parseGenerations(String text, String line) throws IOException {
+        try {
+            int generations = Integer.parseInt(text);
+            if (generations >= 0) {
+                return generations;
+            }
+        } catch (NumberFormatException e) {
+            // segnalato sotto
+        }
+        throw new IOException("Riga non valida nel file di commit: " + line);
+    }
+
+    /**
+     * @brief Restituisce il file temporaneo associato a un file.
+     *
+     * @param file Il file definitivo.
+     * @return Il file temporaneo nella stessa cartella (il rename resta atomico).
+     */
+    static Path tempFileFor(Path file) {
+        return file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * @brief Cancella i file temporanei di un commit non riuscito, ignorando gli errori.
+     *
+     * @param files I file da cancellare.
+     */
+    private static void deleteQuietly(Iterable<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // il temporaneo verrà sovrascritto dal prossimo commit
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.mycompany.gestionebiblioteca.repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ *
+ * @author valerialupo
+ */
+
+/**
+ * @brief Repository su file che può partecipare a una transazione di TransactionManager.
+ *
+ * Durante una transazione il repository non scrive nulla su disco: le
+ * modifiche restano in memoria e il repository ricorda soltanto di essere
+ * stato modificato. Al commit il TransactionManager chiede lo snapshot su un
+ * file temporaneo e lo sostituisce al file definitivo; al rollback il
+ * repository ricarica il proprio stato dal file, che non è stato toccato.
+ *
+ * Tutti i metodi vengono invocati dal TransactionManager tenendo il lock
+ * (monitor) del repository.
+ */
+public interface TransactionalRepository {
+
+    /**
+     * @brief Restituisce il file in cui il repository persiste i dati.
+     *
+     * @return Il percorso del file.
+     */
+    Path getFile();
+
+    /**
+     * @brief Restituisce quante versioni precedenti del file conservare al commit.
+     * @return Le generazioni di backup (0 = nessun backup).
+     */
+    int getBackupGenerations();
+
+    /**
+     * @brief Attende che le scritture differite già pianificate siano su disco.
+     *
+     * Va chiamato prima di acquisire il lock del repository: il thread di
+     * scrittura in background ha bisogno dello stesso lock per leggere lo snapshot.
+     */
+    void awaitPendingWrites();
+
+    /**
+     * @brief Apre la transazione: da qui in avanti le modifiche non vengono scritte su disco.
+     */
+    void beginTransaction();
+
+    /**
+     * @brief Indica se il repository è stato modificato nella transazione corrente.
+     *
+     * @return true se c'è qualcosa da scrivere al commit.
+     */
+    boolean hasTransactionChanges();
+
+    /**
+     * @brief Scrive lo stato corrente del repository su un file temporaneo.
+     *
+     * Al ritorno il file deve essere completo e sincronizzato su disco
+     * (FileManager scrive già in modo atomico e con fsync).
+     *
+     * @param target File su cui scrivere (diverso da getFile()).
+     * @throws IOException In caso di errori di scrittura.
+     */
+    void writeTransactionSnapshot(Path target) throws IOException;
+
+    /**
+     * @brief Chiude la transazione.
+     *
+     * Dopo un commit il file contiene già il nuovo stato; dopo un rollback
+     * lo stato in memoria viene ricaricato dal file.
+     *
+     * @param committed true se la transazione è stata confermata.
+     */
+    void endTransaction(boolean committed);
+}
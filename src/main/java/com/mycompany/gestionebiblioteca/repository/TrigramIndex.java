@@ -0,0 +1,175 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+/**
+ *
+ * @author Giovanni
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @brief Indice invertito a trigrammi per ricerche "contiene" case-insensitive.
+ *
+ * Ad ogni identificativo (es. ISBN) sono associati uno o più testi (es. il titolo
+ * o i nomi degli autori). Ogni testo viene memorizzato in minuscolo e scomposto in
+ * trigrammi (sequenze di 3 caratteri consecutivi); per ogni trigramma l'indice
+ * conserva l'insieme degli identificativi che lo contengono (posting list).
+ *
+ * Una ricerca interseca le posting list dei trigrammi della parola chiave, partendo
+ * dalla più corta, e verifica i soli candidati con String.contains. Le parole chiave
+ * più corte di 3 caratteri non hanno trigrammi e vengono verificate su tutti i testi
+ * memorizzati (già in minuscolo).
+ *
+ * I risultati riflettono i testi passati all'ultima chiamata di put: la classe non
+ * legge mai le entità, quindi va aggiornata ad ogni salvataggio.
+ */
+class TrigramIndex {
+
+    /**
+     * @brief Lunghezza dei frammenti indicizzati.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * @brief Posting list: trigramma → identificativi dei testi che lo contengono.
+     */
+    private final Map<String, Set<String>> postings = new HashMap<>();
+
+    /**
+     * @brief Testi indicizzati (in minuscolo) per ogni identificativo.
+     */
+    private final Map<String, List<String>> texts = new HashMap<>();
+
+    /**
+     * @brief Indicizza (o reindicizza) i testi associati a un identificativo.
+     *
+     * I testi null vengono ignorati.
+     *
+     * @param id L'identificativo.
+     * @param values I testi da associare all'identificativo.
+     */
+    void put(String id, List<String> values) {
+        remove(id);
+        List<String> lowered = new ArrayList<>(values.size());
+        for (String value : values) {
+            if (value != null) {
+                lowered.add(value.toLowerCase());
+            }
+        }
+        if (lowered.isEmpty()) {
+            return;
+        }
+        texts.put(id, lowered);
+        for (String gram : gramsOf(lowered)) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    /**
+     * @brief Rimuove dall'indice i testi di un identificativo.
+     *
+     * @param id L'identificativo da rimuovere.
+     */
+    void remove(String id) {
+        List<String> previous = texts.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : gramsOf(previous)) {
+            Set<String> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Svuota l'indice.
+     */
+    void clear() {
+        postings.clear();
+        texts.clear();
+    }
+
+    /**
+     * @brief Cerca gli identificativi con almeno un testo che contiene la parola chiave.
+     *
+     * @param keyword La parola chiave (il confronto ignora maiuscole e minuscole).
+     * @return Gli identificativi trovati, in ordine non specificato.
+     */
+    Set<String> search(String keyword) {
+        String lowerKeyword = keyword.toLowerCase();
+        if (lowerKeyword.length() < GRAM) {
+            return scan(texts.keySet(), lowerKeyword);
+        }
+
+        // raccolta delle posting list dei trigrammi della parola chiave: basta un trigramma assente per escludere tutto
+        List<Set<String>> lists = new ArrayList<>();
+        for (String gram : gramsOf(Collections.singletonList(lowerKeyword))) {
+            Set<String> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        // intersezione a partire dalla lista più corta
+        Set<String> candidates = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(lists.get(i));
+        }
+        // i trigrammi presenti non garantiscono che siano consecutivi: verifica finale
+        return scan(candidates, lowerKeyword);
+    }
+
+    /**
+     * @brief Verifica i candidati confrontando la parola chiave con i testi memorizzati.
+     *
+     * @param ids Gli identificativi candidati.
+     * @param lowerKeyword La parola chiave in minuscolo.
+     * @return Gli identificativi con almeno un testo che contiene la parola chiave.
+     */
+    private Set<String> scan(Set<String> ids, String lowerKeyword) {
+        Set<String> result = new HashSet<>();
+        for (String id : ids) {
+            for (String text : texts.get(id)) {
+                if (text.contains(lowerKeyword)) {
+                    result.add(id);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @brief Restituisce i trigrammi distinti di un insieme di testi.
+     *
+     * @param values I testi, già in minuscolo.
+     * @return I trigrammi distinti.
+     */
+    private static Set<String> gramsOf(List<String> values) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String value : values) {
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+}
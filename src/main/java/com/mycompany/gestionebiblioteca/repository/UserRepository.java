@@ -57,6 +57,23 @@ public interface UserRepository extends CrudRepository<String, User> {
     
     
     
+    /**
+     * @brief Restituisce gli utenti con l'email indicata.
+     *
+     * Il confronto ignora maiuscole/minuscole e spazi iniziali o finali.
+     * Le implementazioni devono rispondere tramite un indice, senza scorrere
+     * tutti gli utenti: il metodo viene usato per il controllo di unicità
+     * dell'email a ogni inserimento e modifica.
+     *
+     * @param email Email da cercare.
+     * @return Lista degli utenti con quell'email (vuota se nessuno, o se l'email è null o vuota).
+     */
+    List<User> findByEmailIgnoreCase(String email);
+
+    
+    
+    
+    
     /**
      * @brief Restituisce tutti gli utenti ordinati per cognome e poi per nome.
      *
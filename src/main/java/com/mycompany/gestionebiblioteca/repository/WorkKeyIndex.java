@@ -0,0 +1,139 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+/**
+ *
+ * @author Giovanni
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @brief Indice hash dei libri per "opera": titolo, insieme degli autori e anno.
+ *
+ * Due libri con lo stesso titolo (ignorando maiuscole e spazi esterni), gli stessi
+ * autori in qualsiasi ordine e lo stesso anno hanno la stessa chiave normalizzata:
+ * il controllo dei duplicati semantici diventa una singola ricerca in una HashMap
+ * invece di un confronto con tutto il catalogo.
+ *
+ * Come TrigramIndex, la classe non legge mai le entità: la chiave di ogni ISBN è
+ * quella calcolata all'ultima chiamata di put. key() è pubblica perché i service
+ * usano la stessa chiave per i lock degli inserimenti.
+ */
+public class WorkKeyIndex {
+
+    /**
+     * @brief Separatore tra i componenti della chiave (non compare nei testi inseriti).
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * @brief Chiave normalizzata → ISBN dei libri con quella chiave.
+     */
+    private final Map<String, Set<String>> isbnsByKey = new HashMap<>();
+
+    /**
+     * @brief Chiave con cui ogni ISBN è stato indicizzato.
+     */
+    private final Map<String, String> keys = new HashMap<>();
+
+    /**
+     * @brief Indicizza (o reindicizza) un libro.
+     *
+     * I libri senza titolo o senza autori non vengono indicizzati.
+     *
+     * @param isbn L'ISBN del libro.
+     * @param title Il titolo.
+     * @param authors Gli autori.
+     * @param year L'anno di pubblicazione.
+     */
+    void put(String isbn, String title, List<String> authors, int year) {
+        remove(isbn);
+        String key = key(title, authors, year);
+        if (key != null) {
+            isbnsByKey.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(isbn);
+            keys.put(isbn, key);
+        }
+    }
+
+    /**
+     * @brief Rimuove un libro dall'indice.
+     *
+     * @param isbn L'ISBN del libro.
+     */
+    void remove(String isbn) {
+        String key = keys.remove(isbn);
+        if (key == null) {
+            return;
+        }
+        Set<String> isbns = isbnsByKey.get(key);
+        if (isbns != null) {
+            isbns.remove(isbn);
+            if (isbns.isEmpty()) {
+                isbnsByKey.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @brief Svuota l'indice.
+     */
+    void clear() {
+        isbnsByKey.clear();
+        keys.clear();
+    }
+
+    /**
+     * @brief Restituisce gli ISBN dei libri con la stessa opera.
+     *
+     * @param title Il titolo.
+     * @param authors Gli autori.
+     * @param year L'anno di pubblicazione.
+     * @return Gli ISBN corrispondenti, in ordine di inserimento (insieme non modificabile).
+     */
+    Set<String> find(String title, List<String> authors, int year) {
+        String key = key(title, authors, year);
+        Set<String> isbns = key == null ? null : isbnsByKey.get(key);
+        return isbns == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(isbns);
+    }
+
+    /**
+     * @brief Calcola la chiave normalizzata di un'opera.
+     *
+     * Titolo e autori vengono ridotti in minuscolo e privati degli spazi esterni;
+     * gli autori vengono ordinati, così l'ordine di inserimento non conta.
+     *
+     * @param title Il titolo.
+     * @param authors Gli autori.
+     * @param year L'anno di pubblicazione.
+     * @return La chiave, oppure null se titolo o autori mancano.
+     */
+    public static String key(String title, List<String> authors, int year) {
+        if (title == null || authors == null || authors.isEmpty()) {
+            return null;
+        }
+        List<String> normalized = new ArrayList<>(authors.size());
+        for (String author : authors) {
+            if (author == null) {
+                return null;
+            }
+            normalized.add(author.trim().toLowerCase(Locale.ROOT));
+        }
+        Collections.sort(normalized);
+        StringBuilder key = new StringBuilder(title.trim().toLowerCase(Locale.ROOT));
+        for (String author : normalized) {
+            key.append(SEPARATOR).append(author);
+        }
+        return key.append(SEPARATOR).append(SEPARATOR).append(year).toString();
+    }
+}
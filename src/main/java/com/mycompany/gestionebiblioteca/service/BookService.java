@@ -8,10 +8,17 @@ package com.mycompany.gestionebiblioteca.service;
 import com.mycompany.gestionebiblioteca.exceptions.NotFoundException;
 import com.mycompany.gestionebiblioteca.exceptions.ValidationException;
 import com.mycompany.gestionebiblioteca.model.Book;
-import com.mycompany.gestionebiblioteca.model.Loan;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import com.mycompany.gestionebiblioteca.repository.BookRepository;
+import com.mycompany.gestionebiblioteca.repository.WorkKeyIndex;
 import java.util.stream.Collectors;
 
 /**
@@ -26,12 +33,31 @@ import java.util.stream.Collectors;
  * sostanziali, della gestione dei duplicati semantici e garantisce la coerenza
  * tra il numero totale di copie e quelle effettivamente disponibili in base ai
  * prestiti attivi.
+ *
+ * Ogni modifica riuscita del catalogo viene pubblicata come BookAdded,
+ * BookUpdated o BookDeleted sull'EventBus di LoanService; changes() ne è la
+ * vista dei libri.
  */
 public class BookService {
 
+    /**
+     * @brief Header (opzionale) dei file di importazione dei libri.
+     */
+    private static final String BOOKS_IMPORT_HEADER = "ISBN|Titolo|Autori|Anno|Copie";
+
     private final BookRepository bookRepository;
     private final LoanService loanService;
 
+    /**
+     * @brief Modifiche confermate ai libri (vista dell'EventBus).
+     */
+    private final ChangeFeed<String, Book> changes;
+
+    /**
+     * @brief Bus degli eventi di dominio (quello di LoanService).
+     */
+    private final EventBus events;
+
     /**
      * @brief Costruttore con iniezione delle dipendenze.
      *
@@ -49,6 +75,23 @@ public class BookService {
         }
         this.bookRepository = bookRepository;
         this.loanService = loanService;
+        this.events = loanService.getEventBus();
+        // le copie disponibili cambiano anche con prestiti e restituzioni: il bus è quello di LoanService
+        this.changes = ChangeFeed.books(events);
+    }
+
+    /**
+     * @brief Restituisce il flusso delle modifiche confermate ai libri.
+     *
+     * Comprende inserimenti, importazioni, modifiche ed eliminazioni del
+     * catalogo e le variazioni delle copie disponibili dovute a prestiti e
+     * restituzioni. Un cambio di ISBN arriva come REMOVED del vecchio ISBN
+     * seguito da ADDED del nuovo.
+     *
+     * @return Il flusso dei libri.
+     */
+    public ChangeFeed<String, Book> changes() {
+        return changes;
     }
 
     /**
@@ -76,10 +119,6 @@ public class BookService {
         validateYear(year);
         validateAuthors(authors);
 
-        // Controllo univocità ISBN (File)
-        if (bookRepository.existsById(isbn)) {
-            throw new ValidationException("Libro con ISBN " + isbn + " esiste già");
-        }
         String newTitle = title.trim();
 
         // Pulisco la lista autori in input (rimuovo spazi e vuoti)
@@ -88,55 +127,94 @@ public class BookService {
                 .filter(a -> !a.isEmpty())
                 .collect(Collectors.toList());
 
-        //CONTROLLO DUPLICATI SEMANTICI
-        List<Book> allBooks = bookRepository.findAll();
-
-        for (Book existingBook : allBooks) {
-
-            // Confronto Titolo (Case Insensitive)
-            boolean sameTitle = existingBook.getTitle().equalsIgnoreCase(newTitle);
-
-            // Confronto Autori (Uso un metodo helper per gestire liste e case-insensitive)
-            boolean sameAuthors = areAuthorsEqual(existingBook.getAuthors(), newAuthors);
-
-            // Confronto Anno
-            boolean sameYear = existingBook.getYear() == year;
+        // controlli e salvataggio sotto i lock dell'ISBN e dell'opera: due inserimenti
+        // concorrenti dello stesso libro non possono superare entrambi i controlli
+        return loanService.withLocks(() -> {
+            // Controllo univocità ISBN (File)
+            if (bookRepository.existsById(isbn)) {
+                throw new ValidationException("Libro con ISBN " + isbn + " esiste già");
+            }
 
-            // Se Titolo e Autori coincidono e anche l'anno coincide, è un duplicato
-            if (sameTitle && sameAuthors) {
-                if (sameYear) {
-                    throw new ValidationException(
-                            "Esiste già questo libro (stesso Titolo, Autori e Anno: " + year + ")."
-                    );
-                }
-                // Se l'anno è diverso, il ciclo continua (è una nuova edizione del libro).
+            //CONTROLLO DUPLICATI SEMANTICI
+            // Stesso Titolo e stessi Autori (case insensitive, ordine qualsiasi) e stesso Anno:
+            // l'indice delle opere del repository risponde con una sola ricerca.
+            // Se l'anno è diverso si tratta di una nuova edizione del libro.
+            if (!bookRepository.findByTitleAndAuthorsAndYear(newTitle, newAuthors, year).isEmpty()) {
+                throw new ValidationException(
+                        "Esiste già questo libro (stesso Titolo, Autori e Anno: " + year + ")."
+                );
             }
-        }
-        // creazione e salvataggio
-        // Quando creo un libro nuovo, disponibili = totali
-        int initialAvailable = totalCopies;
+            // creazione e salvataggio
+            // Quando creo un libro nuovo, disponibili = totali
+            int initialAvailable = totalCopies;
 
-        // Passo 'newAuthors' (la lista pulita) al costruttore
-        Book book = new Book(isbn, newTitle, newAuthors, year, totalCopies, initialAvailable);
+            // Passo 'newAuthors' (la lista pulita) al costruttore
+            Book book = new Book(isbn, newTitle, newAuthors, year, totalCopies, initialAvailable);
 
-        return bookRepository.save(book);
+            Book saved = bookRepository.save(book);
+            events.enqueue(Collections.singletonList(new DomainEvent.BookAdded(saved)));
+            return saved;
+        }, LoanService.bookKey(isbn), LoanService.workKey(newTitle, newAuthors, year));
     }
 
-    //METODO HELPER 
-    // Serve per confrontare due liste di autori ignorando maiuscole/minuscole
-    private boolean areAuthorsEqual(List<String> list1, List<String> list2) {
-        if (list1 == null || list2 == null) {
-            return false;
-        }
-        if (list1.size() != list2.size()) {
-            return false;
-        }
-
-        // Converto entrambe le liste in minuscolo e le ordino per essere sicuro del confronto
-        List<String> l1Sorted = list1.stream().map(String::toLowerCase).sorted().collect(Collectors.toList());
-        List<String> l2Sorted = list2.stream().map(String::toLowerCase).sorted().collect(Collectors.toList());
-
-        return l1Sorted.equals(l2Sorted);
+    /**
+     * @brief Importa in blocco i libri di un file (es. il catalogo di un editore).
+     *
+     * Formato delle righe: "ISBN|Titolo|Autori|Anno|Copie", con gli autori
+     * separati da ';' e l'header opzionale. Le righe vengono validate in
+     * parallelo con le stesse regole di addBook; ISBN e duplicati semantici già
+     * presenti nell'archivio o ripetuti nel file vengono scartati. Le righe
+     * valide sono salvate con una sola saveAll, quindi con una sola scrittura
+     * su file; le copie disponibili sono pari alle copie totali.
+     *
+     * @param file Il file da importare.
+     * @return L'esito dell'importazione, con gli errori riga per riga.
+     * @throws IOException Se il file non può essere letto.
+     */
+    public ImportReport importBooks(Path file) throws IOException {
+        Set<String> isbns = new HashSet<>();
+        // chiavi delle opere già accettate dal file, calcolate come l'indice dell'archivio
+        Set<String> works = new HashSet<>();
+        return BulkImporter.run(file, BOOKS_IMPORT_HEADER,
+                fields -> {
+                    BulkImporter.requireFields(fields, 5);
+                    validateIsbn(fields[0]);
+                    if (fields[1].isEmpty()) {
+                        throw new ValidationException("Il titolo non deve essere vuoto");
+                    }
+                    List<String> authors = new ArrayList<>();
+                    for (String author : fields[2].split(";")) {
+                        if (!author.trim().isEmpty()) {
+                            authors.add(author.trim());
+                        }
+                    }
+                    validateAuthors(authors);
+                    int year = BulkImporter.parseInt(fields[3], "Anno");
+                    int copies = BulkImporter.parseInt(fields[4], "Numero di copie");
+                    validateYear(year);
+                    validateTotalCopies(copies);
+                    return new Book(fields[0], fields[1], authors, year, copies, copies);
+                },
+                book -> {
+                    if (bookRepository.existsById(book.getIsbn()) || !isbns.add(book.getIsbn())) {
+                        throw new ValidationException("Libro con ISBN " + book.getIsbn() + " esiste già");
+                    }
+                    String work = WorkKeyIndex.key(book.getTitle(), book.getAuthors(), book.getYear());
+                    if (!bookRepository.findByTitleAndAuthorsAndYear(book.getTitle(), book.getAuthors(), book.getYear()).isEmpty()
+                            || !works.add(work)) {
+                        isbns.remove(book.getIsbn());
+                        throw new ValidationException(
+                                "Esiste già questo libro (stesso Titolo, Autori e Anno: " + book.getYear() + ")."
+                        );
+                    }
+                },
+                books -> {
+                    List<DomainEvent> added = new ArrayList<>(books.size());
+                    for (Book saved : bookRepository.saveAll(books)) {
+                        added.add(new DomainEvent.BookAdded(saved));
+                    }
+                    events.publishAll(added);
+                });
     }
 
     /**
@@ -173,51 +251,59 @@ public class BookService {
        
         
 
-        Book existing = bookRepository.findByIsbn(oldIsbn)
-                .orElseThrow(() -> new NotFoundException("Libro non trovato con ISBN " + oldIsbn));
+        // conteggio dei prestiti e scrittura sotto gli stessi lock di prestiti e restituzioni
+        return loanService.withLocks(() -> {
+            Book existing = bookRepository.findByIsbn(oldIsbn)
+                    .orElseThrow(() -> new NotFoundException("Libro non trovato con ISBN " + oldIsbn));
 
-        // conteggio dei libri in prestito attualmente
-        // Recupero quanti sono fuori in questo momento
-        int currentlyLoaned = loanService.countActiveLoansByIsbn(oldIsbn);
+            // conteggio dei libri in prestito attualmente
+            // Recupero quanti sono fuori in questo momento
+            int currentlyLoaned = loanService.countActiveLoansByIsbn(oldIsbn);
 
-        // Calcolo le nuove disponibili: Totale inserito - Quelli fuori
-        int newAvailableCopies = totalCopies - currentlyLoaned;
+            // Calcolo le nuove disponibili: Totale inserito - Quelli fuori
+            int newAvailableCopies = totalCopies - currentlyLoaned;
 
-        validateTotalCopies(newAvailableCopies); //validazione delle copie totali (maggiori di 0)
+            validateTotalCopies(newAvailableCopies); //validazione delle copie totali (maggiori di 0)
 
-        // se cambia ISBN devo creare un nuovo oggetto Book e cancellare il precedente (Delete & Insert)
-        boolean isbnChanged = !oldIsbn.equals(newIsbn);
+            // se cambia ISBN devo creare un nuovo oggetto Book e cancellare il precedente (Delete & Insert)
+            boolean isbnChanged = !oldIsbn.equals(newIsbn);
 
-        if (isbnChanged) {
-            // Se ci sono prestiti attivi, NON permetto di cambiare l'ISBN 
-            // romperebbe il collegamento con i prestiti esistenti nell'archivio
+            if (isbnChanged) {
+                // Se ci sono prestiti attivi, NON permetto di cambiare l'ISBN 
+                // romperebbe il collegamento con i prestiti esistenti nell'archivio
 
-            if (currentlyLoaned > 0) {
-                throw new ValidationException("Impossibile modificare l'ISBN: ci sono " + currentlyLoaned + " copie ancora in prestito.");
-            }
+                if (currentlyLoaned > 0) {
+                    throw new ValidationException("Impossibile modificare l'ISBN: ci sono " + currentlyLoaned + " copie ancora in prestito.");
+                }
 
-            if (bookRepository.existsById(newIsbn)) {
-                throw new ValidationException("Un libro con ISBN " + newIsbn + " esiste già.");
-            }
+                if (bookRepository.existsById(newIsbn)) {
+                    throw new ValidationException("Un libro con ISBN " + newIsbn + " esiste già.");
+                }
 
-            // Creo nuovo libro con le nuove specifiche
-            Book newBook = new Book(newIsbn, title, authors, publicationYear, totalCopies, newAvailableCopies);
+                // Creo nuovo libro con le nuove specifiche
+                Book newBook = new Book(newIsbn, title, authors, publicationYear, totalCopies, newAvailableCopies);
 
-            bookRepository.deleteById(existing.getIsbn());
-            return bookRepository.save(newBook);
+                bookRepository.deleteById(existing.getIsbn());
+                Book saved = bookRepository.save(newBook);
+                events.enqueue(Arrays.asList(new DomainEvent.BookDeleted(oldIsbn),
+                        new DomainEvent.BookAdded(saved)));
+                return saved;
 
-        } else {
-            // Update Standard (ISBN invariato)
-            existing.setTitle(title);
-            existing.setAuthors(authors);
-            existing.setYear(publicationYear);
+            } else {
+                // Update Standard (ISBN invariato)
+                existing.setTitle(title);
+                existing.setAuthors(authors);
+                existing.setYear(publicationYear);
 
-            // Aggiorno i contatori calcolati
-            existing.setAvailableCopies(newAvailableCopies);
-            existing.setTotalCopies(totalCopies);
+                // Aggiorno i contatori calcolati
+                existing.setAvailableCopies(newAvailableCopies);
+                existing.setTotalCopies(totalCopies);
 
-            return bookRepository.save(existing);
-        }
+                Book saved = bookRepository.save(existing);
+                events.enqueue(Collections.singletonList(new DomainEvent.BookUpdated(saved)));
+                return saved;
+            }
+        }, LoanService.bookKey(oldIsbn), LoanService.bookKey(newIsbn));
     }
 
     /**
@@ -235,23 +321,22 @@ public class BookService {
         //Validazione input
         validateIsbn(isbn);
 
-        if (!bookRepository.existsById(isbn)) {
-            throw new NotFoundException("Libro non trovato con ISBN " + isbn);
-        }
-
-        //verifico che non ci sia attualmente in prestito una copia del libro da rimuovere dal sistema
-        List<Loan> activeLoans = loanService.getActiveLoansOrderedByDueDate();
-
-        //controllo se nella lista c'è un prestito che riguarda questo ISBN
-        boolean isBorrowed = activeLoans.stream()
-                .anyMatch(loan -> loan.getBookIsbn().equals(isbn));
+        // con il lock del libro nessun prestito può iniziare tra il controllo e la cancellazione
+        loanService.withLocks(() -> {
+            if (!bookRepository.existsById(isbn)) {
+                throw new NotFoundException("Libro non trovato con ISBN " + isbn);
+            }
 
-        if (isBorrowed) {
-            throw new ValidationException("Impossibile eliminare il libro (" + isbn
-                    + "): risulta attualmente in prestito.");
-        }
+            //verifico che non ci sia attualmente in prestito una copia del libro da rimuovere dal sistema
+            if (loanService.countActiveLoansByIsbn(isbn) > 0) {
+                throw new ValidationException("Impossibile eliminare il libro (" + isbn
+                        + "): risulta attualmente in prestito.");
+            }
 
-        bookRepository.deleteById(isbn);
+            bookRepository.deleteById(isbn);
+            events.enqueue(Collections.singletonList(new DomainEvent.BookDeleted(isbn)));
+            return null;
+        }, LoanService.bookKey(isbn));
     }
 
     /**
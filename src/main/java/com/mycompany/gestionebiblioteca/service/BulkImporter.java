@@ -0,0 +1,168 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+import com.mycompany.gestionebiblioteca.exceptions.ValidationException;
+import com.mycompany.gestionebiblioteca.persistence.RecordReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Pipeline comune alle importazioni in blocco dei servizi.
+ *
+ * L'importazione procede in tre fasi:
+ * 1. lettura sequenziale del file (campi separati da '|', header opzionale);
+ * 2. conversione e validazione formale delle righe in parallelo: la funzione
+ *    di parsing non deve dipendere da stato condiviso mutabile;
+ * 3. controllo sequenziale dei duplicati (contro l'archivio e contro le righe
+ *    già accettate), in ordine di riga, e applicazione di tutte le righe valide
+ *    con una sola chiamata, quindi con una sola scrittura su file.
+ *
+ * Una riga che non supera la fase 2 o la fase 3 viene scartata e registrata
+ * nell'ImportReport con il messaggio della ValidationException.
+ */
+final class BulkImporter {
+
+    /**
+     * @brief Riga letta dal file, con il suo numero.
+     */
+    private static final class Row {
+
+        private final int line;
+        private final String[] fields;
+
+        Row(int line, String[] fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * @brief Esito della validazione di una riga: entità oppure messaggio d'errore.
+     */
+    private static final class Parsed<T> {
+
+        private final int line;
+        private final T value;
+        private final String error;
+
+        Parsed(int line, T value, String error) {
+            this.line = line;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    private BulkImporter() {
+    }
+
+    /**
+     * @brief Esegue l'importazione di un file.
+     *
+     * @param file Il file da importare.
+     * @param header Header da ignorare se presente sulla prima riga.
+     * @param parser Converte e valida i campi di una riga (eseguito in parallelo);
+     * segnala le righe non valide con ValidationException.
+     * @param admit Controlla i duplicati di un'entità valida e la registra come
+     * accettata (eseguito in sequenza, in ordine di riga); segnala i duplicati
+     * con ValidationException.
+     * @param apply Applica in blocco le entità accettate.
+     * @param <T> Tipo delle entità importate.
+     * @return L'esito dell'importazione.
+     * @throws IOException Se il file non può essere letto.
+     */
+    static <T> ImportReport run(Path file, String header, Function<String[], T> parser,
+            Consumer<T> admit, Consumer<List<T>> apply) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file non deve essere null");
+        }
+        List<Row> rows = new ArrayList<>();
+        try (RecordReader reader = new RecordReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), header)) {
+            while (reader.next()) {
+                String[] fields = new String[reader.fieldCount()];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = reader.field(i).trim();
+                }
+                rows.add(new Row(reader.lineNumber(), fields));
+            }
+        }
+
+        // fase 2: validazione formale in parallelo (l'ordine delle righe è preservato)
+        List<Parsed<T>> parsed = rows.parallelStream()
+                .map(row -> {
+                    try {
+                        return new Parsed<>(row.line, parser.apply(row.fields), null);
+                    } catch (ValidationException e) {
+                        return new Parsed<T>(row.line, null, e.getMessage());
+                    }
+                })
+                .collect(Collectors.toList());
+
+        // fase 3: duplicati, in ordine di riga
+        List<ImportReport.RowError> errors = new ArrayList<>();
+        List<T> accepted = new ArrayList<>();
+        for (Parsed<T> row : parsed) {
+            if (row.error != null) {
+                errors.add(new ImportReport.RowError(row.line, row.error));
+                continue;
+            }
+            try {
+                admit.accept(row.value);
+                accepted.add(row.value);
+            } catch (ValidationException e) {
+                errors.add(new ImportReport.RowError(row.line, e.getMessage()));
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            apply.accept(accepted);
+        }
+        return new ImportReport(rows.size(), accepted.size(), errors);
+    }
+
+    /**
+     * @brief Verifica il numero di campi di una riga.
+     *
+     * @param fields I campi della riga.
+     * @param expected I numeri di campi ammessi.
+     * @throws ValidationException Se il numero di campi non è tra quelli ammessi.
+     */
+    static void requireFields(String[] fields, int... expected) {
+        for (int count : expected) {
+            if (fields.length == count) {
+                return;
+            }
+        }
+        throw new ValidationException("Numero di campi non valido: " + fields.length);
+    }
+
+    /**
+     * @brief Converte un campo numerico.
+     *
+     * @param value Il valore del campo.
+     * @param name Nome del campo (per il messaggio d'errore).
+     * @return Il valore intero.
+     * @throws ValidationException Se il campo non è un intero.
+     */
+    static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ValidationException(name + " non valido: " + value);
+        }
+    }
+}
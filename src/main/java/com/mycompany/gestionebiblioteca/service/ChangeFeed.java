@@ -0,0 +1,180 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import com.mycompany.gestionebiblioteca.model.User;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Flusso delle modifiche confermate a un tipo di entità.
+ *
+ * È una vista dell'EventBus dei service: gli eventi di dominio di ogni
+ * operazione vengono tradotti in entità aggiunte, aggiornate e rimosse. Chi
+ * mostra i dati (ad esempio una tabella) può così aggiornare solo gli
+ * elementi cambiati invece di rileggere tutto l'archivio.
+ *
+ * Le modifiche di una stessa operazione vengono consegnate insieme, in
+ * ordine, come iscritto sincrono dell'EventBus (stesse regole di thread e di
+ * gestione degli errori): gli iscritti devono essere rapidi e, se aggiornano
+ * l'interfaccia, passare al thread JavaFX.
+ *
+ * @param <K> Tipo della chiave delle entità.
+ * @param <T> Tipo delle entità.
+ */
+public final class ChangeFeed<K, T> {
+
+    private final EventBus events;
+
+    /**
+     * @brief Traduce un evento nella modifica corrispondente (null se riguarda altre entità).
+     */
+    private final Function<DomainEvent, EntityChange<K, T>> mapping;
+
+    private final Map<Consumer<? super List<EntityChange<K, T>>>, EventBus.Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param events Il bus da cui leggere gli eventi.
+     * @param mapping Traduce un evento in una modifica, o in null se non interessa.
+     */
+    private ChangeFeed(EventBus events, Function<DomainEvent, EntityChange<K, T>> mapping) {
+        if (events == null) {
+            throw new IllegalArgumentException("events non deve essere null");
+        }
+        this.events = events;
+        this.mapping = mapping;
+    }
+
+    /**
+     * @brief Flusso dei prestiti: LoanRegistered come ADDED, LoanReturned come UPDATED.
+     *
+     * @param events Il bus degli eventi.
+     * @return Il flusso.
+     */
+    static ChangeFeed<LoanId, Loan> loans(EventBus events) {
+        return new ChangeFeed<>(events, event -> {
+            if (event instanceof DomainEvent.LoanRegistered) {
+                Loan loan = ((DomainEvent.LoanRegistered) event).getLoan();
+                return EntityChange.added(loan.getId(), loan);
+            }
+            if (event instanceof DomainEvent.LoanReturned) {
+                Loan loan = ((DomainEvent.LoanReturned) event).getLoan();
+                return EntityChange.updated(loan.getId(), loan);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @brief Flusso dei libri: BookAdded, BookUpdated e BookDeleted.
+     *
+     * @param events Il bus degli eventi.
+     * @return Il flusso.
+     */
+    static ChangeFeed<String, Book> books(EventBus events) {
+        return new ChangeFeed<>(events, event -> {
+            if (event instanceof DomainEvent.BookAdded) {
+                Book book = ((DomainEvent.BookAdded) event).getBook();
+                return EntityChange.added(book.getIsbn(), book);
+            }
+            if (event instanceof DomainEvent.BookUpdated) {
+                Book book = ((DomainEvent.BookUpdated) event).getBook();
+                return EntityChange.updated(book.getIsbn(), book);
+            }
+            if (event instanceof DomainEvent.BookDeleted) {
+                return EntityChange.removed(((DomainEvent.BookDeleted) event).getIsbn());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @brief Flusso degli utenti: UserAdded, UserUpdated e UserDeleted.
+     *
+     * @param events Il bus degli eventi.
+     * @return Il flusso.
+     */
+    static ChangeFeed<String, User> users(EventBus events) {
+        return new ChangeFeed<>(events, event -> {
+            if (event instanceof DomainEvent.UserAdded) {
+                User user = ((DomainEvent.UserAdded) event).getUser();
+                return EntityChange.added(user.getMatricola(), user);
+            }
+            if (event instanceof DomainEvent.UserUpdated) {
+                User user = ((DomainEvent.UserUpdated) event).getUser();
+                return EntityChange.updated(user.getMatricola(), user);
+            }
+            if (event instanceof DomainEvent.UserDeleted) {
+                return EntityChange.removed(((DomainEvent.UserDeleted) event).getMatricola());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @brief Iscrive un destinatario delle modifiche (iscriverlo di nuovo non lo duplica).
+     *
+     * @param subscriber Riceve le modifiche di ogni operazione.
+     * @throws IllegalArgumentException Se subscriber è null.
+     */
+    public void subscribe(Consumer<? super List<EntityChange<K, T>>> subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("subscriber non deve essere null");
+        }
+        EventBus.Subscription previous = subscriptions.put(subscriber, events.subscribeBatches(batch -> {
+            List<EntityChange<K, T>> changes = changesOf(batch);
+            if (!changes.isEmpty()) {
+                subscriber.accept(changes);
+            }
+        }));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * @brief Annulla l'iscrizione di un destinatario.
+     *
+     * @param subscriber Il destinatario da rimuovere.
+     */
+    public void unsubscribe(Consumer<? super List<EntityChange<K, T>>> subscriber) {
+        EventBus.Subscription subscription = subscriber == null ? null : subscriptions.remove(subscriber);
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * @brief Traduce gli eventi di un'operazione nelle modifiche di questo flusso.
+     *
+     * @param batch Gli eventi, in ordine.
+     * @return Le modifiche (non modificabili), nello stesso ordine.
+     */
+    private List<EntityChange<K, T>> changesOf(List<DomainEvent> batch) {
+        List<EntityChange<K, T>> changes = new ArrayList<>();
+        for (DomainEvent event : batch) {
+            EntityChange<K, T> change = mapping.apply(event);
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        return Collections.unmodifiableList(changes);
+    }
+}
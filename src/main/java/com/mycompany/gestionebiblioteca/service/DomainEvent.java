@@ -0,0 +1,230 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
+import java.time.Instant;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Evento di dominio pubblicato dai service su EventBus dopo un'operazione confermata.
+ *
+ * Gli eventi concreti sono le classi annidate (LoanRegistered, LoanReturned,
+ * BookAdded, BookUpdated, BookDeleted, UserAdded, UserUpdated, UserDeleted):
+ * un iscritto sceglie il tipo che gli interessa, oppure DomainEvent per
+ * riceverli tutti. Le entità contenute sono quelle restituite dal service al
+ * momento della pubblicazione e non vanno modificate dagli iscritti. Con i
+ * repository in memoria sono le stesse istanze dell'archivio: un iscritto
+ * asincrono che ne legge i campi vede lo stato del momento in cui li legge.
+ */
+public abstract class DomainEvent {
+
+    private final Instant occurredAt = Instant.now();
+
+    /**
+     * @brief Costruttore riservato agli eventi concreti.
+     */
+    private DomainEvent() {
+    }
+
+    /**
+     * @brief Restituisce l'istante in cui l'evento è stato creato.
+     *
+     * @return L'istante dell'evento.
+     */
+    public Instant getOccurredAt() {
+        return occurredAt;
+    }
+
+    /**
+     * @brief Verifica che l'argomento di un evento non sia null.
+     *
+     * @param value L'argomento.
+     * @param name Nome dell'argomento, per il messaggio di errore.
+     * @param <V> Tipo dell'argomento.
+     * @return L'argomento.
+     * @throws IllegalArgumentException Se l'argomento è null.
+     */
+    private static <V> V require(V value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException(name + " non deve essere null");
+        }
+        return value;
+    }
+
+    /**
+     * @brief Un prestito è stato registrato (la copia del libro è già stata scalata).
+     */
+    public static final class LoanRegistered extends DomainEvent {
+
+        private final Loan loan;
+
+        LoanRegistered(Loan loan) {
+            this.loan = require(loan, "loan");
+        }
+
+        public Loan getLoan() {
+            return loan;
+        }
+
+        @Override
+        public String toString() {
+            return "LoanRegistered " + loan.getId();
+        }
+    }
+
+    /**
+     * @brief Un prestito è stato restituito (la copia del libro è già tornata disponibile).
+     */
+    public static final class LoanReturned extends DomainEvent {
+
+        private final Loan loan;
+
+        LoanReturned(Loan loan) {
+            this.loan = require(loan, "loan");
+        }
+
+        public Loan getLoan() {
+            return loan;
+        }
+
+        @Override
+        public String toString() {
+            return "LoanReturned " + loan.getId();
+        }
+    }
+
+    /**
+     * @brief Un libro è stato aggiunto al catalogo (anche con un'importazione o un cambio di ISBN).
+     */
+    public static final class BookAdded extends DomainEvent {
+
+        private final Book book;
+
+        BookAdded(Book book) {
+            this.book = require(book, "book");
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        @Override
+        public String toString() {
+            return "BookAdded " + book.getIsbn();
+        }
+    }
+
+    /**
+     * @brief Sono cambiati i dati di un libro, comprese le copie disponibili dopo un prestito o una restituzione.
+     */
+    public static final class BookUpdated extends DomainEvent {
+
+        private final Book book;
+
+        BookUpdated(Book book) {
+            this.book = require(book, "book");
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        @Override
+        public String toString() {
+            return "BookUpdated " + book.getIsbn();
+        }
+    }
+
+    /**
+     * @brief Un libro è stato rimosso dal catalogo (anche prima di un cambio di ISBN).
+     */
+    public static final class BookDeleted extends DomainEvent {
+
+        private final String isbn;
+
+        BookDeleted(String isbn) {
+            this.isbn = require(isbn, "isbn");
+        }
+
+        public String getIsbn() {
+            return isbn;
+        }
+
+        @Override
+        public String toString() {
+            return "BookDeleted " + isbn;
+        }
+    }
+
+    /**
+     * @brief Un utente è stato registrato (anche con un'importazione o un cambio di matricola).
+     */
+    public static final class UserAdded extends DomainEvent {
+
+        private final User user;
+
+        UserAdded(User user) {
+            this.user = require(user, "user");
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        @Override
+        public String toString() {
+            return "UserAdded " + user.getMatricola();
+        }
+    }
+
+    /**
+     * @brief Sono cambiati nome, cognome o email di un utente.
+     */
+    public static final class UserUpdated extends DomainEvent {
+
+        private final User user;
+
+        UserUpdated(User user) {
+            this.user = require(user, "user");
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        @Override
+        public String toString() {
+            return "UserUpdated " + user.getMatricola();
+        }
+    }
+
+    /**
+     * @brief Un utente è stato eliminato (anche prima di un cambio di matricola).
+     */
+    public static final class UserDeleted extends DomainEvent {
+
+        private final String matricola;
+
+        UserDeleted(String matricola) {
+            this.matricola = require(matricola, "matricola");
+        }
+
+        public String getMatricola() {
+            return matricola;
+        }
+
+        @Override
+        public String toString() {
+            return "UserDeleted " + matricola;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Modifica di una singola entità (libro, utente o prestito) già confermata.
+ *
+ * Viene consegnata agli iscritti di un ChangeFeed dopo che l'operazione del
+ * service è andata a buon fine. La chiave identifica l'entità anche quando
+ * questa è stata rimossa (in quel caso getEntity() restituisce null).
+ *
+ * @param <K> Tipo della chiave (ISBN, matricola, LoanId).
+ * @param <T> Tipo dell'entità.
+ */
+public final class EntityChange<K, T> {
+
+    /**
+     * @brief Tipo di modifica.
+     */
+    public enum Kind {
+        ADDED, UPDATED, REMOVED
+    }
+
+    private final Kind kind;
+    private final K key;
+    private final T entity;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param kind Tipo di modifica.
+     * @param key Chiave dell'entità.
+     * @param entity L'entità (null per REMOVED).
+     */
+    private EntityChange(Kind kind, K key, T entity) {
+        if (key == null) {
+            throw new IllegalArgumentException("la chiave non deve essere null");
+        }
+        if (kind != Kind.REMOVED && entity == null) {
+            throw new IllegalArgumentException("l'entità non deve essere null");
+        }
+        this.kind = kind;
+        this.key = key;
+        this.entity = entity;
+    }
+
+    /**
+     * @brief Crea la modifica di un'entità aggiunta.
+     *
+     * @param key Chiave dell'entità.
+     * @param entity L'entità aggiunta.
+     * @param <K> Tipo della chiave.
+     * @param <T> Tipo dell'entità.
+     * @return La modifica.
+     * @throws IllegalArgumentException Se un parametro è null.
+     */
+    public static <K, T> EntityChange<K, T> added(K key, T entity) {
+        return new EntityChange<>(Kind.ADDED, key, entity);
+    }
+
+    /**
+     * @brief Crea la modifica di un'entità aggiornata.
+     *
+     * @param key Chiave dell'entità.
+     * @param entity L'entità con i nuovi dati.
+     * @param <K> Tipo della chiave.
+     * @param <T> Tipo dell'entità.
+     * @return La modifica.
+     * @throws IllegalArgumentException Se un parametro è null.
+     */
+    public static <K, T> EntityChange<K, T> updated(K key, T entity) {
+        return new EntityChange<>(Kind.UPDATED, key, entity);
+    }
+
+    /**
+     * @brief Crea la modifica di un'entità rimossa.
+     *
+     * @param key Chiave dell'entità rimossa.
+     * @param <K> Tipo della chiave.
+     * @param <T> Tipo dell'entità.
+     * @return La modifica.
+     * @throws IllegalArgumentException Se la chiave è null.
+     */
+    public static <K, T> EntityChange<K, T> removed(K key) {
+        return new EntityChange<>(Kind.REMOVED, key, null);
+    }
+
+    /**
+     * @brief Restituisce il tipo di modifica.
+     *
+     * @return Il tipo di modifica.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @brief Restituisce la chiave dell'entità.
+     *
+     * @return La chiave.
+     */
+    public K getKey() {
+        return key;
+    }
+
+    /**
+     * @brief Restituisce l'entità aggiunta o aggiornata.
+     *
+     * @return L'entità (null per REMOVED).
+     */
+    public T getEntity() {
+        return entity;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + key;
+    }
+}
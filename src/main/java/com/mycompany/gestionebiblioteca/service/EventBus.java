@@ -0,0 +1,413 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Bus degli eventi di dominio, interno al processo.
+ *
+ * I service pubblicano un DomainEvent per ogni modifica confermata (dopo il
+ * commit della transazione, se presente); cache, indici, interfaccia e
+ * statistiche possono così aggiornarsi incrementalmente invece di rileggere
+ * gli archivi. I ChangeFeed dei service sono viste di questo bus.
+ *
+ * Gli eventi di un'operazione formano un blocco, consegnato per intero e in
+ * ordine. Le operazioni che tengono dei lock accodano il blocco con enqueue()
+ * mentre i lock sono acquisiti e lo consegnano con deliverPending() dopo
+ * averli rilasciati: gli iscritti non rallentano prestiti e restituzioni, possono
+ * chiamare i service senza rischio di stallo e i blocchi arrivano comunque
+ * nell'ordine in cui le operazioni sono avvenute. Un solo thread alla volta
+ * consegna: se un altro thread sta già consegnando, il blocco viene consegnato
+ * da quello; se un iscritto pubblica, il suo blocco viene consegnato dopo
+ * quello in corso.
+ *
+ * Gli iscritti scelgono il tipo di evento (una classe annidata di DomainEvent,
+ * o DomainEvent per tutti) e la modalità di consegna:
+ * - **sincrona** (subscribe): l'iscritto viene eseguito sul thread che
+ *   consegna i blocchi. Deve essere rapido: fino al suo ritorno gli altri
+ *   blocchi restano in attesa.
+ * - **asincrona** (subscribeAsync): gli eventi vengono accodati in una coda
+ *   limitata e consegnati, nello stesso ordine, da un thread dedicato
+ *   all'iscritto. Chi pubblica non attende mai: se la coda è piena l'evento
+ *   viene passato alla politica di overflow dell'iscritto (per default
+ *   scartato e segnalato su System.err), così un iscritto lento non può né
+ *   bloccare le operazioni né occupare memoria senza limiti.
+ *
+ * La pubblicazione senza iscritti interessati costa solo la scansione della
+ * lista degli iscritti. Un iscritto che solleva un'eccezione non blocca gli
+ * altri né l'operazione, che è ormai confermata.
+ */
+public final class EventBus implements AutoCloseable {
+
+    /**
+     * @brief Iscrizione a un EventBus, annullabile.
+     */
+    @FunctionalInterface
+    public interface Subscription {
+
+        /**
+         * @brief Annulla l'iscrizione (per un iscritto asincrono, gli eventi già accodati vengono consegnati).
+         */
+        void cancel();
+    }
+
+    /**
+     * @brief Numero dei thread degli iscritti asincroni, per i nomi dei thread.
+     */
+    private static final AtomicInteger ASYNC_THREADS = new AtomicInteger();
+
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @brief Blocchi di eventi accodati e non ancora consegnati, in ordine.
+     */
+    private final Queue<List<DomainEvent>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @brief Tenuto dal thread che sta consegnando i blocchi.
+     */
+    private final ReentrantLock delivery = new ReentrantLock();
+
+    /**
+     * @brief Iscrive un destinatario sincrono.
+     *
+     * @param type Tipo degli eventi da ricevere.
+     * @param subscriber Riceve gli eventi sul thread che li consegna.
+     * @param <E> Tipo degli eventi.
+     * @return L'iscrizione.
+     * @throws IllegalArgumentException Se un parametro è null.
+     */
+    public <E extends DomainEvent> Subscription subscribe(Class<E> type, Consumer<? super E> subscriber) {
+        return register(new TypedHandler<>(type, subscriber));
+    }
+
+    /**
+     * @brief Iscrive un destinatario asincrono; gli eventi che non entrano nella coda vengono scartati e segnalati su System.err.
+     *
+     * @param type Tipo degli eventi da ricevere.
+     * @param subscriber Riceve gli eventi, in ordine, sul thread dedicato.
+     * @param capacity Numero massimo di eventi in attesa.
+     * @param <E> Tipo degli eventi.
+     * @return L'iscrizione (cancel() arresta il thread dopo gli eventi già accodati).
+     * @throws IllegalArgumentException Se un parametro è null o se capacity non è positiva.
+     */
+    public <E extends DomainEvent> Subscription subscribeAsync(Class<E> type, Consumer<? super E> subscriber, int capacity) {
+        return subscribeAsync(type, subscriber, capacity,
+                event -> System.err.println("Coda dell'iscritto piena, evento scartato: " + event));
+    }
+
+    /**
+     * @brief Iscrive un destinatario asincrono, con una coda limitata, un thread dedicato e una politica di overflow.
+     *
+     * @param type Tipo degli eventi da ricevere.
+     * @param subscriber Riceve gli eventi, in ordine, sul thread dedicato.
+     * @param capacity Numero massimo di eventi in attesa.
+     * @param overflow Riceve, sul thread che consegna, gli eventi scartati perché la coda è piena
+     * (ad esempio per segnare l'iscritto come da riallineare).
+     * @param <E> Tipo degli eventi.
+     * @return L'iscrizione (cancel() arresta il thread dopo gli eventi già accodati).
+     * @throws IllegalArgumentException Se un parametro è null o se capacity non è positiva.
+     */
+    public <E extends DomainEvent> Subscription subscribeAsync(Class<E> type, Consumer<? super E> subscriber,
+            int capacity, Consumer<? super E> overflow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity deve essere positiva");
+        }
+        if (overflow == null) {
+            throw new IllegalArgumentException("overflow non deve essere null");
+        }
+        AsyncHandler<E> handler = new AsyncHandler<>(type, subscriber, capacity, overflow);
+        Subscription registered = register(handler);
+        handler.start();
+        return () -> {
+            registered.cancel();
+            handler.stop();
+        };
+    }
+
+    /**
+     * @brief Iscrive un destinatario dei blocchi di eventi, consegnati per intero (usato da ChangeFeed).
+     *
+     * @param subscriber Riceve gli eventi di ogni operazione, in ordine.
+     * @return L'iscrizione.
+     * @throws IllegalArgumentException Se subscriber è null.
+     */
+    Subscription subscribeBatches(Consumer<? super List<DomainEvent>> subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("subscriber non deve essere null");
+        }
+        return register(batch -> guarded(batch, () -> subscriber.accept(batch)));
+    }
+
+    /**
+     * @brief Pubblica un evento a tutti gli iscritti interessati.
+     *
+     * @param event L'evento.
+     * @throws IllegalArgumentException Se l'evento è null.
+     */
+    public void publish(DomainEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("event non deve essere null");
+        }
+        publishAll(Collections.singletonList(event));
+    }
+
+    /**
+     * @brief Pubblica in ordine gli eventi di un'operazione, come un unico blocco.
+     *
+     * Da non usare tenendo dei lock: in quel caso vanno usati enqueue() e,
+     * dopo il rilascio, deliverPending().
+     *
+     * @param events Gli eventi.
+     * @throws IllegalArgumentException Se la lista o un evento sono null.
+     */
+    public void publishAll(List<? extends DomainEvent> events) {
+        enqueue(events);
+        deliverPending();
+    }
+
+    /**
+     * @brief Accoda gli eventi di un'operazione senza consegnarli.
+     *
+     * Non blocca e non esegue codice degli iscritti, quindi può essere chiamato
+     * tenendo i lock dell'operazione: l'ordine di accodamento segue quello dei
+     * lock. I blocchi vengono consegnati dalla prossima deliverPending().
+     *
+     * @param events Gli eventi (una lista vuota non viene accodata).
+     * @throws IllegalArgumentException Se la lista o un evento sono null.
+     */
+    void enqueue(List<? extends DomainEvent> events) {
+        if (events == null) {
+            throw new IllegalArgumentException("events non deve essere null");
+        }
+        List<DomainEvent> batch = new ArrayList<>(events);
+        if (batch.contains(null)) {
+            throw new IllegalArgumentException("event non deve essere null");
+        }
+        if (!batch.isEmpty()) {
+            pending.add(Collections.unmodifiableList(batch));
+        }
+    }
+
+    /**
+     * @brief Consegna i blocchi accodati, in ordine.
+     *
+     * Se un altro thread sta già consegnando, ritorna subito: i blocchi
+     * accodati vengono consegnati da quel thread, che prima di smettere
+     * controlla di nuovo la coda. Chiamata da un iscritto (consegna già in
+     * corso sullo stesso thread) ritorna subito per lo stesso motivo.
+     */
+    void deliverPending() {
+        if (delivery.isHeldByCurrentThread()) {
+            return;
+        }
+        while (!pending.isEmpty() && delivery.tryLock()) {
+            try {
+                for (List<DomainEvent> batch = pending.poll(); batch != null; batch = pending.poll()) {
+                    for (Handler handler : handlers) {
+                        handler.offer(batch);
+                    }
+                }
+            } finally {
+                delivery.unlock();
+            }
+        }
+    }
+
+    /**
+     * @brief Annulla tutte le iscrizioni e arresta i thread degli iscritti asincroni.
+     *
+     * Non attende i thread: gli eventi già accodati vengono consegnati prima
+     * del loro arresto.
+     */
+    @Override
+    public void close() {
+        for (Handler handler : handlers) {
+            handlers.remove(handler);
+            if (handler instanceof AsyncHandler) {
+                ((AsyncHandler<?>) handler).stop();
+            }
+        }
+    }
+
+    /**
+     * @brief Registra un iscritto.
+     *
+     * @param handler L'iscritto.
+     * @return L'iscrizione.
+     */
+    private Subscription register(Handler handler) {
+        handlers.add(handler);
+        return () -> handlers.remove(handler);
+    }
+
+    /**
+     * @brief Esegue il codice di un iscritto, isolandone gli errori.
+     *
+     * @param delivered Ciò che viene consegnato, per il messaggio di errore.
+     * @param action Il codice dell'iscritto.
+     */
+    private static void guarded(Object delivered, Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            // l'operazione è già confermata: l'errore di un iscritto non deve annullarla
+            System.err.println("Errore nella gestione dell'evento " + delivered + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @brief Iscritto del bus: riceve ogni blocco di eventi consegnato.
+     */
+    @FunctionalInterface
+    private interface Handler {
+
+        /**
+         * @brief Riceve un blocco di eventi.
+         *
+         * @param batch Gli eventi di un'operazione, in ordine.
+         */
+        void offer(List<DomainEvent> batch);
+    }
+
+    /**
+     * @brief Iscritto sincrono: filtra gli eventi per tipo e li consegna subito.
+     *
+     * @param <E> Tipo degli eventi.
+     */
+    private static class TypedHandler<E extends DomainEvent> implements Handler {
+
+        final Class<E> type;
+
+        private final Consumer<? super E> subscriber;
+
+        TypedHandler(Class<E> type, Consumer<? super E> subscriber) {
+            if (type == null || subscriber == null) {
+                throw new IllegalArgumentException("type e subscriber non devono essere null");
+            }
+            this.type = type;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void offer(List<DomainEvent> batch) {
+            for (DomainEvent event : batch) {
+                if (type.isInstance(event)) {
+                    offer(type.cast(event));
+                }
+            }
+        }
+
+        /**
+         * @brief Riceve un evento del tipo richiesto.
+         *
+         * @param event L'evento.
+         */
+        void offer(E event) {
+            deliver(event);
+        }
+
+        /**
+         * @brief Consegna un evento all'iscritto, isolandone gli errori.
+         *
+         * @param event L'evento.
+         */
+        final void deliver(E event) {
+            guarded(event, () -> subscriber.accept(event));
+        }
+    }
+
+    /**
+     * @brief Iscritto asincrono: accoda gli eventi e li consegna da un thread dedicato.
+     *
+     * @param <E> Tipo degli eventi.
+     */
+    private static final class AsyncHandler<E extends DomainEvent> extends TypedHandler<E> {
+
+        /**
+         * @brief Segnala al thread di terminare dopo gli eventi già accodati.
+         */
+        private static final Object STOP = new Object();
+
+        private final BlockingQueue<Object> queue;
+
+        private final Consumer<? super E> overflow;
+
+        private final Thread worker;
+
+        private volatile boolean stopped;
+
+        AsyncHandler(Class<E> type, Consumer<? super E> subscriber, int capacity, Consumer<? super E> overflow) {
+            super(type, subscriber);
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.overflow = overflow;
+            this.worker = new Thread(this::drain, "eventi-" + ASYNC_THREADS.incrementAndGet());
+            this.worker.setDaemon(true);
+        }
+
+        void start() {
+            worker.start();
+        }
+
+        @Override
+        void offer(E event) {
+            if (stopped) {
+                return;
+            }
+            // coda piena: l'evento passa alla politica di overflow, chi pubblica non attende
+            if (!queue.offer(event)) {
+                guarded(event, () -> overflow.accept(event));
+            }
+        }
+
+        /**
+         * @brief Arresta il thread dopo aver consegnato gli eventi già accodati, senza attendere.
+         *
+         * Se la coda è piena il segnale di arresto non viene accodato: il
+         * thread, vedendo stopped, termina appena la coda è vuota.
+         */
+        void stop() {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            queue.offer(STOP);
+        }
+
+        /**
+         * @brief Ciclo del thread dedicato.
+         */
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            try {
+                while (true) {
+                    Object event = stopped ? queue.poll() : queue.take();
+                    if (event == null || event == STOP) {
+                        return;
+                    }
+                    deliver((E) event);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Esito di un'importazione in blocco (utenti o libri).
+ *
+ * Riporta quante righe sono state lette, quante sono state importate e, per
+ * ogni riga scartata, il numero di riga nel file e il motivo.
+ */
+public final class ImportReport {
+
+    /**
+     * @brief Errore relativo a una singola riga del file importato.
+     */
+    public static final class RowError {
+
+        private final int line;
+        private final String message;
+
+        /**
+         * @brief Costruttore.
+         *
+         * @param line Numero della riga nel file (a partire da 1).
+         * @param message Motivo dello scarto.
+         */
+        RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * @return Il numero della riga nel file (a partire da 1).
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * @return Il motivo dello scarto.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "riga " + line + ": " + message;
+        }
+    }
+
+    private final int totalRows;
+    private final int importedCount;
+    private final List<RowError> errors;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param totalRows Numero di righe lette (header e righe vuote esclusi).
+     * @param importedCount Numero di righe importate.
+     * @param errors Errori delle righe scartate, in ordine di riga.
+     */
+    ImportReport(int totalRows, int importedCount, List<RowError> errors) {
+        this.totalRows = totalRows;
+        this.importedCount = importedCount;
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    /**
+     * @return Il numero di righe lette (header e righe vuote esclusi).
+     */
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * @return Il numero di righe importate.
+     */
+    public int getImportedCount() {
+        return importedCount;
+    }
+
+    /**
+     * @return Gli errori delle righe scartate, in ordine di riga (lista non modificabile).
+     */
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return true se almeno una riga è stata scartata.
+     */
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "Importate " + importedCount + " righe su " + totalRows + " (" + errors.size() + " scartate)";
+    }
+}
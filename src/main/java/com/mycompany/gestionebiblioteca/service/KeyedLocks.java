@@ -0,0 +1,98 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ *
+ * @author david
+ */
+/**
+ * @brief Lock per chiave (matricola, ISBN) basati su un numero fisso di "strisce".
+ *
+ * Ogni chiave viene associata, tramite il suo hash, a uno dei lock di un array
+ * fisso: operazioni su chiavi diverse procedono quasi sempre in parallelo e la
+ * memoria occupata non cresce con il numero di chiavi. Due chiavi possono
+ * condividere la stessa striscia: in quel caso si serializzano, senza errori.
+ *
+ * Più chiavi vengono sempre acquisite in ordine crescente di striscia, quindi
+ * due operazioni che bloccano le stesse chiavi in ordine diverso non possono
+ * andare in deadlock.
+ */
+final class KeyedLocks {
+
+    /**
+     * @brief Lock disponibili.
+     */
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param stripeCount Numero di lock (maggiore di 0).
+     * @throws IllegalArgumentException Se stripeCount non è positivo.
+     */
+    KeyedLocks(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount deve essere positivo");
+        }
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @brief Esegue un'operazione tenendo i lock di tutte le chiavi indicate.
+     *
+     * @param action L'operazione da eseguire.
+     * @param keys Le chiavi da bloccare (non null).
+     * @param <T> Tipo del risultato.
+     * @return Il risultato dell'operazione.
+     */
+    <T> T withLocks(Supplier<T> action, String... keys) {
+        int[] indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            indexes[i] = stripeOf(keys[i]);
+        }
+        // ordine globale di acquisizione + niente doppio lock della stessa striscia
+        Arrays.sort(indexes);
+        int count = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) {
+                indexes[count++] = indexes[i];
+            }
+        }
+
+        int locked = 0;
+        try {
+            for (; locked < count; locked++) {
+                stripes[indexes[locked]].lock();
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * @brief Restituisce la striscia associata a una chiave.
+     *
+     * @param key La chiave.
+     * @return L'indice del lock della chiave.
+     */
+    private int stripeOf(String key) {
+        int hash = key.hashCode();
+        // rimescola i bit alti, come HashMap, per distribuire meglio chiavi simili
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % stripes.length;
+    }
+}
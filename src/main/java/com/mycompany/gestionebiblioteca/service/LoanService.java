@@ -9,15 +9,28 @@ import com.mycompany.gestionebiblioteca.exceptions.NotFoundException;
 import com.mycompany.gestionebiblioteca.exceptions.ValidationException;
 import com.mycompany.gestionebiblioteca.model.Book;
 import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
 import com.mycompany.gestionebiblioteca.model.User;
 import com.mycompany.gestionebiblioteca.repository.BookRepository;
 import com.mycompany.gestionebiblioteca.repository.LoanRepository;
+import com.mycompany.gestionebiblioteca.repository.TransactionManager;
 import com.mycompany.gestionebiblioteca.repository.UserRepository;
+import com.mycompany.gestionebiblioteca.repository.WorkKeyIndex;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -32,13 +45,66 @@ import java.util.stream.Collectors;
  * la logica di assegnazione e restituzione, garantendo il rispetto delle regole
  * di business (es. limite massimo di prestiti per utente, verifica
  * disponibilità copie) e mantenendo aggiornato lo stato dell'inventario.
+ *
+ * Prestiti e restituzioni possono essere richiesti da più thread (più postazioni):
+ * ogni operazione blocca la matricola e l'ISBN coinvolti, quindi i controlli su
+ * copie disponibili e limite di prestiti e i relativi aggiornamenti avvengono in
+ * modo atomico. Operazioni su utenti e libri diversi procedono in parallelo.
+ * Per l'uso concorrente i repository devono essere thread-safe
+ * (es. Concurrent*Repository).
+ *
+ * Con un TransactionManager ogni prestito e ogni restituzione è una
+ * transazione: prestito e libro vengono scritti su disco insieme, con un'unica
+ * modifica atomica, e se l'operazione fallisce lo stato dei repository viene
+ * ricaricato dai file. Gli oggetti Loan e Book già in mano al chiamante non
+ * vengono ripristinati: dopo un errore vanno riletti dai repository.
+ * Senza TransactionManager (la configurazione dell'applicazione) ogni
+ * repository scrive con il proprio percorso incrementale e l'atomicità viene
+ * dall'ordine delle scritture più la riconciliazione: il prestito viene
+ * scritto per primo (nel journal, sincronizzato su disco) e solo dopo il
+ * libro, quindi un crash fra le due scritture lascia al più delle copie
+ * disponibili disallineate, che reconcileAvailableCopies() ricalcola
+ * all'avvio dai prestiti attivi.
+ *
+ * Dopo ogni operazione confermata gli eventi LoanRegistered o LoanReturned e
+ * BookUpdated vengono accodati sull'EventBus mentre i lock sono ancora
+ * acquisiti, e consegnati dopo averli rilasciati: le modifiche di uno stesso
+ * libro arrivano agli iscritti nell'ordine in cui sono avvenute, ma un
+ * iscritto lento non blocca altri prestiti e può chiamare il service.
+ * changes() è la vista dei prestiti di questo bus. L'EventBus è condiviso con
+ * BookService e UserService.
  */
 public class LoanService {
 
+    /**
+     * @brief Numero di lock per chiave usati da prestiti e restituzioni.
+     */
+    private static final int LOCK_STRIPES = 256;
+
     private final LoanRepository loanRepository;
     private final BookRepository bookRepository;
     private final UserRepository userRepository;
 
+    /**
+     * @brief Lock per matricola e ISBN.
+     */
+    private final KeyedLocks locks = new KeyedLocks(LOCK_STRIPES);
+
+    /**
+     * @brief Transazioni sui repository su file (null: nessuna transazione).
+     */
+    private final TransactionManager transactions;
+
+    /**
+     * @brief Bus degli eventi di dominio, condiviso con BookService e UserService.
+     */
+    private final EventBus events;
+
+    /**
+     * @brief Modifiche confermate ai prestiti (vista di events).
+     */
+    private final ChangeFeed<LoanId, Loan> loanChanges;
+
     /**
      * @brief Costruttore con iniezione delle dipendenze.
      *
@@ -51,6 +117,42 @@ public class LoanService {
     public LoanService(LoanRepository loanRepository,
             BookRepository bookRepository,
             UserRepository userRepository) {
+        this(loanRepository, bookRepository, userRepository, null);
+    }
+
+    /**
+     * @brief Costruttore con transazioni.
+     *
+     * @param loanRepository Repository per la gestione dei prestiti.
+     * @param bookRepository Repository per l'aggiornamento dello stato dei
+     * libri.
+     * @param userRepository Repository per la verifica degli utenti.
+     * @param transactions Transazioni che coprono i repository (null per non usarle).
+     * @throws IllegalArgumentException Se uno dei repository passati è null.
+     */
+    public LoanService(LoanRepository loanRepository,
+            BookRepository bookRepository,
+            UserRepository userRepository,
+            TransactionManager transactions) {
+        this(loanRepository, bookRepository, userRepository, transactions, new EventBus());
+    }
+
+    /**
+     * @brief Costruttore con transazioni e bus degli eventi.
+     *
+     * @param loanRepository Repository per la gestione dei prestiti.
+     * @param bookRepository Repository per l'aggiornamento dello stato dei
+     * libri.
+     * @param userRepository Repository per la verifica degli utenti.
+     * @param transactions Transazioni che coprono i repository (null per non usarle).
+     * @param events Bus su cui pubblicare gli eventi di dominio.
+     * @throws IllegalArgumentException Se uno dei repository o il bus sono null.
+     */
+    public LoanService(LoanRepository loanRepository,
+            BookRepository bookRepository,
+            UserRepository userRepository,
+            TransactionManager transactions,
+            EventBus events) {
         if (loanRepository == null) {
             throw new IllegalArgumentException("loanRepository non deve essere null");
         }
@@ -63,6 +165,12 @@ public class LoanService {
         this.loanRepository = loanRepository;
         this.bookRepository = bookRepository;
         this.userRepository = userRepository;
+        if (events == null) {
+            throw new IllegalArgumentException("events non deve essere null");
+        }
+        this.transactions = transactions;
+        this.events = events;
+        this.loanChanges = ChangeFeed.loans(events);
     }
 
     /**
@@ -138,6 +246,10 @@ public class LoanService {
      * Se tutti i controlli passano, crea il prestito e decrementa di 1 le copie
      * disponibili del libro.
      *
+     * I controlli 2-5 e gli aggiornamenti vengono eseguiti tenendo i lock della
+     * matricola e dell'ISBN: due richieste concorrenti per l'ultima copia, o per
+     * superare il limite dello stesso utente, non possono avere entrambe successo.
+     *
      * @param matricola Identificativo dell'utente che richiede il prestito.
      * @param isbn Identificativo del libro richiesto.
      * @param loanDate Data di inizio prestito.
@@ -154,6 +266,26 @@ public class LoanService {
         validateIsbn(isbn);
         validateLoanDates(loanDate, dueDate);
 
+        return withLocks(() -> {
+            Loan saved = transactional(() -> checkout(matricola, isbn, loanDate, dueDate));
+            List<DomainEvent> changed = new ArrayList<>();
+            changed.add(new DomainEvent.LoanRegistered(saved));
+            addBookUpdates(changed, Collections.singleton(isbn));
+            events.enqueue(changed);
+            return saved;
+        }, userKey(matricola), bookKey(isbn));
+    }
+
+    /**
+     * @brief Esegue controlli e aggiornamenti di un prestito (con i lock già acquisiti).
+     *
+     * @param matricola Identificativo dell'utente.
+     * @param isbn Identificativo del libro.
+     * @param loanDate Data di inizio prestito.
+     * @param dueDate Data di scadenza prevista.
+     * @return Il prestito salvato.
+     */
+    private Loan checkout(String matricola, String isbn, LocalDate loanDate, LocalDate dueDate) {
         if (!userRepository.existsById(matricola)) {
             throw new NotFoundException("Utente non trovato con matricola " + matricola);
         }
@@ -181,9 +313,16 @@ public class LoanService {
         Loan loan = new Loan(matricola, isbn, loanDate, dueDate, null);
         Loan saved = loanRepository.save(loan);
 
-        // Side effect: aggiorno l'inventario
-        book.setAvailableCopies(book.getAvailableCopies() - 1);
-        bookRepository.save(book);
+        // Side effect: aggiorno l'inventario (se fallisce, il prestito appena creato viene annullato)
+        int previousCopies = book.getAvailableCopies();
+        try {
+            book.setAvailableCopies(previousCopies - 1);
+            bookRepository.save(book);
+        } catch (RuntimeException e) {
+            book.setAvailableCopies(previousCopies);
+            loanRepository.deleteById(saved.getId());
+            throw e;
+        }
 
         return saved;
     }
@@ -194,6 +333,10 @@ public class LoanService {
      * Chiude il prestito impostando la data di restituzione effettiva e
      * incrementa di 1 il numero di copie disponibili del libro associato.
      *
+     * Come registerLoan, tiene i lock della matricola e dell'ISBN: due
+     * restituzioni concorrenti dello stesso prestito non incrementano due volte
+     * le copie disponibili.
+     *
      * @param loan L'oggetto prestito da chiudere.
      * @param returnDate La data effettiva di restituzione.
      * @return Il prestito aggiornato con la data di restituzione impostata.
@@ -208,6 +351,112 @@ public class LoanService {
         if (returnDate == null) {
             throw new ValidationException("la data di restituzione non deve essere null");
         }
+        return withLocks(() -> {
+            Loan updated = transactional(() -> checkin(loan, returnDate));
+            List<DomainEvent> changed = new ArrayList<>();
+            changed.add(new DomainEvent.LoanReturned(updated));
+            addBookUpdates(changed, Collections.singleton(updated.getBookIsbn()));
+            events.enqueue(changed);
+            return updated;
+        }, userKey(loan.getUserMatricola()), bookKey(loan.getBookIsbn()));
+    }
+
+    /**
+     * @brief Registra in blocco la restituzione di più prestiti (es. a fine semestre).
+     *
+     * Tutti i prestiti vengono chiusi con la stessa data. I prestiti aggiornati
+     * vengono salvati con una sola saveAll e i libri con un'altra, quindi con
+     * una scrittura per archivio invece di due per prestito. Il blocco è
+     * tutto-o-niente rispetto alla validazione: se un prestito è già chiuso,
+     * ripetuto o precedente alla data, nessun prestito viene modificato.
+     *
+     * @param loans I prestiti da chiudere.
+     * @param returnDate La data effettiva di restituzione.
+     * @return I prestiti aggiornati, nello stesso ordine.
+     * @throws ValidationException Se un prestito è già chiuso, compare più volte
+     * o se la data non è valida.
+     * @throws NotFoundException Se il libro di un prestito non esiste.
+     * @throws IllegalArgumentException Se la collezione o un prestito sono null.
+     */
+    public List<Loan> registerReturns(Collection<Loan> loans, LocalDate returnDate) {
+        if (loans == null) {
+            throw new IllegalArgumentException("la lista dei prestiti non deve essere null");
+        }
+        if (returnDate == null) {
+            throw new ValidationException("la data di restituzione non deve essere null");
+        }
+        List<Loan> batch = new ArrayList<>(loans);
+        List<String> keys = new ArrayList<>();
+        for (Loan loan : batch) {
+            if (loan == null) {
+                throw new IllegalArgumentException("il prestito non deve essere null");
+            }
+            keys.add(userKey(loan.getUserMatricola()));
+            keys.add(bookKey(loan.getBookIsbn()));
+        }
+        return withLocks(() -> {
+            List<Loan> updated = transactional(() -> checkinAll(batch, returnDate));
+            List<DomainEvent> changed = new ArrayList<>(updated.size() * 2);
+            Set<String> isbns = new LinkedHashSet<>();
+            for (Loan loan : updated) {
+                changed.add(new DomainEvent.LoanReturned(loan));
+                isbns.add(loan.getBookIsbn());
+            }
+            addBookUpdates(changed, isbns);
+            events.enqueue(changed);
+            return updated;
+        }, keys.toArray(new String[0]));
+    }
+
+    /**
+     * @brief Esegue controlli e aggiornamenti di una restituzione in blocco (con i lock già acquisiti).
+     *
+     * @param loans I prestiti da chiudere.
+     * @param returnDate La data effettiva di restituzione.
+     * @return I prestiti aggiornati.
+     */
+    private List<Loan> checkinAll(List<Loan> loans, LocalDate returnDate) {
+        // prima tutte le verifiche, così un errore non lascia il blocco a metà
+        Set<Loan> seen = Collections.newSetFromMap(new IdentityHashMap<Loan, Boolean>());
+        Map<String, Book> books = new LinkedHashMap<>();
+        Map<String, Integer> returnedCopies = new HashMap<>();
+        for (Loan loan : loans) {
+            if (!loan.isActive() || !seen.add(loan)) {
+                throw new ValidationException("il prestito è stato già restituito");
+            }
+            if (returnDate.isBefore(loan.getLoanDate())) {
+                throw new ValidationException("la data di ritorno non può essere inferiore alla data di inizio prestito");
+            }
+            String isbn = loan.getBookIsbn();
+            if (!books.containsKey(isbn)) {
+                books.put(isbn, bookRepository.findById(isbn)
+                        .orElseThrow(() -> new NotFoundException("Libro non trovato con ISBN " + isbn)));
+            }
+            returnedCopies.merge(isbn, 1, Integer::sum);
+        }
+
+        for (Loan loan : loans) {
+            loan.setReturnDate(returnDate);
+        }
+        List<Loan> updated = loanRepository.saveAll(loans);
+
+        // ripristino la disponibilità
+        for (Book book : books.values()) {
+            book.setAvailableCopies(book.getAvailableCopies() + returnedCopies.get(book.getIsbn()));
+        }
+        bookRepository.saveAll(books.values());
+
+        return updated;
+    }
+
+    /**
+     * @brief Esegue controlli e aggiornamenti di una restituzione (con i lock già acquisiti).
+     *
+     * @param loan Il prestito da chiudere.
+     * @param returnDate La data effettiva di restituzione.
+     * @return Il prestito aggiornato.
+     */
+    private Loan checkin(Loan loan, LocalDate returnDate) {
         if (!loan.isActive()) {
             throw new ValidationException("il prestito è stato già restituito");
         }
@@ -228,6 +477,37 @@ public class LoanService {
         return updated;
     }
 
+    /**
+     * @brief Riallinea le copie disponibili dei libri ai prestiti attivi.
+     *
+     * Senza TransactionManager prestito e libro vengono scritti ciascuno dal
+     * proprio repository (journal dei prestiti, file a slot dei libri): un
+     * crash tra le due scritture può lasciare le copie disponibili di un libro
+     * non allineate. Dato che le disponibili sono sempre "totali meno prestiti
+     * attivi", all'avvio vengono ricalcolate dai prestiti, che fanno fede.
+     * Va chiamato prima che il service sia usato da altri thread.
+     *
+     * @return Il numero di libri corretti.
+     */
+    public int reconcileAvailableCopies() {
+        Map<String, Integer> loaned = new HashMap<>();
+        for (Loan loan : loanRepository.findActiveLoansOrderByDueDate()) {
+            loaned.merge(loan.getBookIsbn(), 1, Integer::sum);
+        }
+        List<Book> corrected = new ArrayList<>();
+        for (Book book : bookRepository.findAll()) {
+            int available = Math.max(0, book.getTotalCopies() - loaned.getOrDefault(book.getIsbn(), 0));
+            if (book.getAvailableCopies() != available) {
+                book.setAvailableCopies(available);
+                corrected.add(book);
+            }
+        }
+        if (!corrected.isEmpty()) {
+            bookRepository.saveAll(corrected);
+        }
+        return corrected.size();
+    }
+
     /**
      * @brief Recupera tutti i prestiti attivi nel sistema ordinati per
      * scadenza.
@@ -255,6 +535,114 @@ public class LoanService {
         return loanRepository.findActiveLoansByUser(matricola).size();
     }
 
+    /**
+     * @brief Restituisce il flusso delle modifiche confermate ai prestiti.
+     *
+     * Un prestito registrato arriva come ADDED, una restituzione come UPDATED
+     * (il prestito non è più attivo).
+     *
+     * @return Il flusso dei prestiti.
+     */
+    public ChangeFeed<LoanId, Loan> changes() {
+        return loanChanges;
+    }
+
+    /**
+     * @brief Restituisce il bus degli eventi di dominio (condiviso con BookService e UserService).
+     *
+     * @return Il bus degli eventi.
+     */
+    public EventBus getEventBus() {
+        return events;
+    }
+
+    /**
+     * @brief Aggiunge un BookUpdated con lo stato attuale di ogni libro di cui è cambiata la disponibilità.
+     *
+     * @param changed Gli eventi dell'operazione.
+     * @param isbns Gli ISBN dei libri modificati.
+     */
+    private void addBookUpdates(List<DomainEvent> changed, Collection<String> isbns) {
+        for (String isbn : isbns) {
+            bookRepository.findById(isbn).ifPresent(book -> changed.add(new DomainEvent.BookUpdated(book)));
+        }
+    }
+
+    /**
+     * @brief Esegue un'operazione nella transazione, se configurata.
+     *
+     * @param work L'operazione da eseguire.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato dell'operazione.
+     */
+    private <T> T transactional(Supplier<T> work) {
+        return transactions == null ? work.get() : transactions.inTransaction(work);
+    }
+
+    /**
+     * @brief Esegue un'operazione tenendo i lock per chiave di prestiti e restituzioni.
+     *
+     * Usato da BookService e UserService per le modifiche che dipendono dai
+     * prestiti attivi (copie disponibili, eliminazioni, cambi di chiave):
+     * con i lock di bookKey() o userKey() il controllo e la scrittura non
+     * possono intrecciarsi con un prestito dello stesso libro o utente.
+     * Anche gli inserimenti lo usano, con emailKey() e workKey(), perché il
+     * controllo di univocità e il salvataggio avvengano insieme.
+     *
+     * L'operazione accoda i propri eventi con EventBus.enqueue(): vengono
+     * consegnati qui, dopo il rilascio dei lock.
+     *
+     * @param action L'operazione da eseguire.
+     * @param keys Le chiavi da bloccare, ottenute con bookKey(), userKey(), emailKey() o workKey().
+     * @param <T> Tipo del risultato.
+     * @return Il risultato dell'operazione.
+     */
+    <T> T withLocks(Supplier<T> action, String... keys) {
+        try {
+            return locks.withLocks(action, keys);
+        } finally {
+            events.deliverPending();
+        }
+    }
+
+    /**
+     * @brief Chiave di lock di un utente.
+     * @param matricola La matricola.
+     * @return La chiave da passare a KeyedLocks.
+     */
+    static String userKey(String matricola) {
+        return "utente:" + matricola;
+    }
+
+    /**
+     * @brief Chiave di lock di un libro.
+     * @param isbn L'ISBN.
+     * @return La chiave da passare a KeyedLocks.
+     */
+    static String bookKey(String isbn) {
+        return "libro:" + isbn;
+    }
+
+    /**
+     * @brief Chiave di lock di un indirizzo email (senza distinzione tra maiuscole e minuscole).
+     * @param email L'email.
+     * @return La chiave da passare a KeyedLocks.
+     */
+    static String emailKey(String email) {
+        return "email:" + email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @brief Chiave di lock di un'opera (titolo, autori e anno), per i duplicati semantici.
+     * @param title Il titolo.
+     * @param authors Gli autori.
+     * @param year L'anno di pubblicazione.
+     * @return La chiave da passare a KeyedLocks.
+     */
+    static String workKey(String title, List<String> authors, int year) {
+        return "opera:" + WorkKeyIndex.key(title, authors, year);
+    }
+
     /**
      * @brief Valida il formato della matricola.
      * @details Controlla che la stringa non sia vuota e corrisponda esattamente
@@ -309,19 +697,20 @@ public class LoanService {
 
     /**
      * @brief Conta quante copie di un libro specifico sono attualmente in
-     * prestito. * Metodo utilizzato principalmente dal BookService per
+     * prestito. Metodo utilizzato principalmente dal BookService per
      * calcolare la disponibilità durante le operazioni di aggiornamento
      * catalogo.
-     * * @param isbn L'ISBN del libro da verificare.
+     *
+     * Usa l'indice dei prestiti attivi per ISBN del repository: il costo è
+     * proporzionale alle copie in prestito.
+     *
+     * @param isbn L'ISBN del libro da verificare.
      * @return Il numero di prestiti attivi per quell'ISBN.
      */
     public int countActiveLoansByIsbn(String isbn) {
         if (isbn == null) {
             return 0;
         }
-        // Recupera tutti i prestiti di quel libro e conta quelli senza data di restituzione
-        return (int) loanRepository.findByBookIsbn(isbn).stream()
-                .filter(loan -> loan.getReturnDate() == null) // Solo quelli attivi
-                .count();
+        return loanRepository.findActiveLoansByIsbn(isbn).size();
     }
 }
@@ -10,10 +10,15 @@ import com.mycompany.gestionebiblioteca.exceptions.ValidationException;
 import com.mycompany.gestionebiblioteca.model.User;
 import com.mycompany.gestionebiblioteca.repository.UserRepository;
 import com.mycompany.gestionebiblioteca.service.LoanService;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  *
@@ -26,12 +31,31 @@ import java.util.Optional;
  * della validazione dei dati (formato matricola, email istituzionale) e
  * garantendo l'unicità dei campi chiave. Interagisce con il LoanService per
  * impedire modifiche strutturali o cancellazioni su utenti con prestiti attivi.
+ *
+ * Ogni modifica riuscita viene pubblicata come UserAdded, UserUpdated o
+ * UserDeleted sull'EventBus di LoanService; changes() ne è la vista degli
+ * utenti.
  */
 public class UserService {
 
+    /**
+     * @brief Header (opzionale) dei file di importazione degli utenti.
+     */
+    private static final String USERS_IMPORT_HEADER = "Matricola|Nome|Cognome|Email";
+
     private final UserRepository userRepository;
     private final LoanService loanService;
 
+    /**
+     * @brief Modifiche confermate agli utenti (vista dell'EventBus).
+     */
+    private final ChangeFeed<String, User> changes;
+
+    /**
+     * @brief Bus degli eventi di dominio (quello di LoanService).
+     */
+    private final EventBus events;
+
     /**
      * @brief Costruttore con iniezione delle dipendenze.
      *
@@ -49,6 +73,20 @@ public class UserService {
             throw new IllegalArgumentException("loanService non deve essere null");
         }
         this.loanService = loanService;
+        this.events = loanService.getEventBus();
+        this.changes = ChangeFeed.users(events);
+    }
+
+    /**
+     * @brief Restituisce il flusso delle modifiche confermate agli utenti.
+     *
+     * Un cambio di matricola arriva come REMOVED della vecchia matricola
+     * seguito da ADDED della nuova.
+     *
+     * @return Il flusso degli utenti.
+     */
+    public ChangeFeed<String, User> changes() {
+        return changes;
     }
 
     /**
@@ -70,15 +108,62 @@ public class UserService {
         validateMatricola(matricola);
         validateEmail(email);
 
-        if (userRepository.existsById(matricola)) {
-            throw new ValidationException("L'utente con matricola " + matricola + " già esiste");
-        }
-        if (emailInUse(email, null)) {
-            throw new ValidationException("Email " + email + " è già in uso");
-        }
+        // controlli e salvataggio sotto i lock della matricola e dell'email: due inserimenti
+        // concorrenti non possono superare entrambi i controlli di univocità
+        return loanService.withLocks(() -> {
+            if (userRepository.existsById(matricola)) {
+                throw new ValidationException("L'utente con matricola " + matricola + " già esiste");
+            }
+            if (emailInUse(email, null)) {
+                throw new ValidationException("Email " + email + " è già in uso");
+            }
 
-        User user = new User(matricola, firstName, lastName, email);
-        return userRepository.save(user);
+            User user = new User(matricola, firstName, lastName, email);
+            User saved = userRepository.save(user);
+            events.enqueue(Collections.singletonList(new DomainEvent.UserAdded(saved)));
+            return saved;
+        }, LoanService.userKey(matricola), LoanService.emailKey(email));
+    }
+
+    /**
+     * @brief Importa in blocco gli utenti di un file (es. la lista iscritti di un semestre).
+     *
+     * Il file ha lo stesso formato del file degli utenti (header
+     * "Matricola|Nome|Cognome|Email" opzionale). Le righe vengono validate in
+     * parallelo con le stesse regole di addUser; matricole ed email già presenti
+     * nell'archivio o ripetute nel file vengono scartate. Le righe valide sono
+     * salvate con una sola saveAll, quindi con una sola scrittura su file.
+     *
+     * @param file Il file da importare.
+     * @return L'esito dell'importazione, con gli errori riga per riga.
+     * @throws IOException Se il file non può essere letto.
+     */
+    public ImportReport importUsers(Path file) throws IOException {
+        Set<String> matricole = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        return BulkImporter.run(file, USERS_IMPORT_HEADER,
+                fields -> {
+                    BulkImporter.requireFields(fields, 4);
+                    validateMatricola(fields[0]);
+                    validateEmail(fields[3]);
+                    return new User(fields[0], fields[1], fields[2], fields[3]);
+                },
+                user -> {
+                    if (userRepository.existsById(user.getMatricola()) || !matricole.add(user.getMatricola())) {
+                        throw new ValidationException("L'utente con matricola " + user.getMatricola() + " già esiste");
+                    }
+                    if (emailInUse(user.getEmail(), null) || !emails.add(user.getEmail().toLowerCase())) {
+                        matricole.remove(user.getMatricola());
+                        throw new ValidationException("Email " + user.getEmail() + " è già in uso");
+                    }
+                },
+                users -> {
+                    List<DomainEvent> added = new ArrayList<>(users.size());
+                    for (User saved : userRepository.saveAll(users)) {
+                        added.add(new DomainEvent.UserAdded(saved));
+                    }
+                    events.publishAll(added);
+                });
     }
 
     /**
@@ -117,51 +202,56 @@ public class UserService {
         // Validazione Email specifica
         validateEmail(email);
 
-        // Cerco l'utente esistente
-        User existing = userRepository.findById(oldMatricola)
-                .orElseThrow(() -> new NotFoundException("Utente non trovato con matricola " + oldMatricola));
-
-        // Controllo duplicati Email (escludendo l'utente stesso)
-        // Nota: Ho integrato il controllo qui per mantenere lo stile compatto
-        boolean emailExists = userRepository.findAll().stream()
-                .anyMatch(u -> u.getEmail().equalsIgnoreCase(email.trim()) && !u.getMatricola().equals(oldMatricola));
-        if (emailExists) {
-            throw new ValidationException("Email " + email + " già in uso da un altro utente");
-        }
+        // il controllo dei prestiti attivi e la scrittura avvengono sotto i lock di prestiti e restituzioni
+        return loanService.withLocks(() -> {
+            // Cerco l'utente esistente
+            User existing = userRepository.findById(oldMatricola)
+                    .orElseThrow(() -> new NotFoundException("Utente non trovato con matricola " + oldMatricola));
 
-        //  Controllo se la Matricola sta cambiando
-        boolean matricolaChanged = !oldMatricola.equals(newMatricola);
-
-        if (matricolaChanged) {
-            // PRIMO SCENARIO: LA MATRICOLA CAMBIA 
-
-            // Verifico che la NUOVA matricola non sia già occupata
-            if (userRepository.existsById(newMatricola)) {
-                throw new ValidationException("Utente con matricola " + newMatricola + " esiste già.");
+            // Controllo duplicati Email (escludendo l'utente stesso)
+            if (emailInUse(email, oldMatricola)) {
+                throw new ValidationException("Email " + email + " già in uso da un altro utente");
             }
 
-            // Creo un nuovo oggetto con TUTTI i dati aggiornati
-            User newUser = new User(newMatricola, firstName, lastName, email);
+            //  Controllo se la Matricola sta cambiando
+            boolean matricolaChanged = !oldMatricola.equals(newMatricola);
 
-            // Cancello il vecchio e salvo il nuovo
-            // ATTENZIONE: Se l'utente ha prestiti attivi, questo potrebbe fallire (come per i libri)
-            long currentlyLoan = loanService.countActiveLoansForUser(oldMatricola);
-            if (currentlyLoan > 0) {
-                throw new ValidationException("L'utente con matricola " + oldMatricola + "ha dei prestiti attivi,impossibile modificare");
-            }
-            userRepository.deleteById(existing.getMatricola());
-            return userRepository.save(newUser);
+            if (matricolaChanged) {
+                // PRIMO SCENARIO: LA MATRICOLA CAMBIA 
 
-        } else {
-            // SECONDO SCENARIO : LA MATRICOLA NON CAMBIA 
+                // Verifico che la NUOVA matricola non sia già occupata
+                if (userRepository.existsById(newMatricola)) {
+                    throw new ValidationException("Utente con matricola " + newMatricola + " esiste già.");
+                }
 
-            // Aggiorno i campi sull'oggetto esistente
-            existing.setFirstName(firstName);
-            existing.setLastName(lastName);
-            existing.setEmail(email);
+                // Creo un nuovo oggetto con TUTTI i dati aggiornati
+                User newUser = new User(newMatricola, firstName, lastName, email);
 
-            return userRepository.save(existing);
-        }
+                // Cancello il vecchio e salvo il nuovo
+                // ATTENZIONE: Se l'utente ha prestiti attivi, questo potrebbe fallire (come per i libri)
+                long currentlyLoan = loanService.countActiveLoansForUser(oldMatricola);
+                if (currentlyLoan > 0) {
+                    throw new ValidationException("L'utente con matricola " + oldMatricola + "ha dei prestiti attivi,impossibile modificare");
+                }
+                userRepository.deleteById(existing.getMatricola());
+                User saved = userRepository.save(newUser);
+                events.enqueue(Arrays.asList(new DomainEvent.UserDeleted(oldMatricola),
+                        new DomainEvent.UserAdded(saved)));
+                return saved;
+
+            } else {
+                // SECONDO SCENARIO : LA MATRICOLA NON CAMBIA 
+
+                // Aggiorno i campi sull'oggetto esistente
+                existing.setFirstName(firstName);
+                existing.setLastName(lastName);
+                existing.setEmail(email);
+
+                User saved = userRepository.save(existing);
+                events.enqueue(Collections.singletonList(new DomainEvent.UserUpdated(saved)));
+                return saved;
+            }
+        }, LoanService.userKey(oldMatricola), LoanService.userKey(newMatricola), LoanService.emailKey(email));
     }
 
     /**
@@ -205,14 +295,19 @@ public class UserService {
     public void deleteUser(String matricola) {
         validateMatricola(matricola);
 
-        if (!userRepository.existsById(matricola)) {
-            throw new NotFoundException("Utente con matricola " + matricola + "\nnon trovato");
-        }
-        long currentlyLoan = loanService.countActiveLoansForUser(matricola);
-        if (currentlyLoan > 0) {
-            throw new ValidationException("L'utente con matricola " + matricola + "ha dei prestiti attivi,impossibile rimuovere");
-        }
-        userRepository.deleteById(matricola);
+        // con il lock dell'utente nessun prestito può iniziare tra il controllo e la cancellazione
+        loanService.withLocks(() -> {
+            if (!userRepository.existsById(matricola)) {
+                throw new NotFoundException("Utente con matricola " + matricola + "\nnon trovato");
+            }
+            long currentlyLoan = loanService.countActiveLoansForUser(matricola);
+            if (currentlyLoan > 0) {
+                throw new ValidationException("L'utente con matricola " + matricola + "ha dei prestiti attivi,impossibile rimuovere");
+            }
+            userRepository.deleteById(matricola);
+            events.enqueue(Collections.singletonList(new DomainEvent.UserDeleted(matricola)));
+            return null;
+        }, LoanService.userKey(matricola));
     }
 
     /**
@@ -293,12 +388,9 @@ public class UserService {
      * @return true se l'email è già in uso da terzi, false altrimenti.
      */
     private boolean emailInUse(String email, String currentMatricola) {
-        String target = email.trim();
-        for (User user : userRepository.findAll()) {
-            if (user.getEmail() != null && user.getEmail().trim().equalsIgnoreCase(target)) {
-                if (currentMatricola == null || !user.getMatricola().equals(currentMatricola)) {
-                    return true;
-                }
+        for (User user : userRepository.findByEmailIgnoreCase(email)) {
+            if (currentMatricola == null || !user.getMatricola().equals(currentMatricola)) {
+                return true;
             }
         }
         return false;
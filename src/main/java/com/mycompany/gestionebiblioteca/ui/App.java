@@ -1,13 +1,20 @@
 package com.mycompany.gestionebiblioteca.ui;
 
 import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.LoanHistorySegment;
+import com.mycompany.gestionebiblioteca.persistence.LoanJournal;
+import com.mycompany.gestionebiblioteca.persistence.SnapshotConverter;
+import com.mycompany.gestionebiblioteca.persistence.SnapshotFormat;
+import com.mycompany.gestionebiblioteca.persistence.WriteBehindPersister;
 import com.mycompany.gestionebiblioteca.repository.*;
 import com.mycompany.gestionebiblioteca.service.*;
 import com.mycompany.gestionebiblioteca.ui.controllers.*;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import javafx.application.Application;
 import static javafx.application.Application.launch;
 import javafx.fxml.FXMLLoader;
@@ -29,6 +36,41 @@ import javafx.stage.Stage;
  */
 public class App extends Application {
 
+    /**
+     * @brief Numero di record del journal dei prestiti dopo il quale lo snapshot viene riscritto.
+     */
+    private static final int LOANS_COMPACTION_THRESHOLD = 500;
+
+    /**
+     * @brief Ritardo massimo (ms) della scrittura differita di libri e utenti.
+     */
+    private static final long WRITE_BEHIND_INTERVAL_MILLIS = 2000;
+
+    /**
+     * @brief Numero di modifiche in attesa che forza la scrittura di libri e utenti.
+     */
+    private static final int WRITE_BEHIND_BATCH_SIZE = 1000;
+
+    /**
+     * @brief Numero di versioni precedenti dei file dati conservate come backup (a ogni riscrittura completa).
+     */
+    private static final int BACKUP_GENERATIONS = 1;
+
+    /**
+     * @brief Motore di scrittura differita, chiuso (flush + fsync) alla chiusura dell'applicazione.
+     */
+    private WriteBehindPersister persister;
+
+    /**
+     * @brief Gestore dei file a slot di libri e utenti, chiuso alla chiusura dell'applicazione.
+     */
+    private FileManager recordFileManager;
+
+    /**
+     * @brief Bus degli eventi di dominio dei service, chiuso alla chiusura dell'applicazione.
+     */
+    private EventBus eventBus;
+
     /**
      * @brief Metodo di avvio dell'applicazione JavaFX.
      *
@@ -36,7 +78,7 @@ public class App extends Application {
      * inizializza i repository basati su file (User, Book, Loan); 
      * crea i servizi iniettando (Dependency Injection) i repository necessari; 
      * carica i file FXML e inietta i servizi nei controller;
-     * configura il TabPane e i listener per il refresh automatico dei dati al cambio scheda; 
+     * configura il TabPane e i listener per il caricamento dei dati al cambio scheda; 
      * applica gli stili visivi (CSS).
      *
      * @param primaryStage Lo stage principale fornito dalla piattaforma JavaFX.
@@ -45,23 +87,52 @@ public class App extends Application {
     @Override
     public void start(Stage primaryStage) throws IOException {
         //SETUP REPOSITORY
-        FileManager fileManager = new FileManager();
+        // ogni riscrittura completa di un file conserva la versione precedente come ".bak1":
+        // per i prestiti è la compattazione del journal, per libri e utenti la riscrittura del file a slot
+        FileManager fileManager = new FileManager(SnapshotFormat.TEXT, BACKUP_GENERATIONS);
+        // libri e utenti usano file a slot: una modifica riscrive solo il proprio record
+        recordFileManager = new FileManager(SnapshotFormat.SLOTTED, BACKUP_GENERATIONS);
+        persister = new WriteBehindPersister(WRITE_BEHIND_INTERVAL_MILLIS, WRITE_BEHIND_BATCH_SIZE);
 
+        // I repository in memoria sono thread-safe (Concurrent*): le schede leggono i dati in background
+        // I prestiti usano il journal: ogni prestito/restituzione è un append, non una riscrittura del file
+        // In memoria restano solo i prestiti attivi: quelli restituiti passano allo storico su file
         Path loansFile = Paths.get("loans.txt");
-        LoanRepository loanRepository = new FileBackedLoanRepository(
-                new InMemoryLoanRepository(), fileManager, loansFile);
+        FileBackedLoanRepository loanRepository = new FileBackedLoanRepository(
+                new ConcurrentLoanRepository(), fileManager, loansFile,
+                new LoanJournal(LoanJournal.defaultPathFor(loansFile)), LOANS_COMPACTION_THRESHOLD, null,
+                new LoanHistorySegment(LoanHistorySegment.defaultPathFor(loansFile)));
 
-        Path booksFile = Paths.get("books.txt");
-        BookRepository bookRepository = new FileBackedBookRepository(
-                new InMemoryBookRepository(), fileManager, booksFile);
+        // Libri e utenti vengono riscritti in differita: una raffica di modifiche produce una sola scrittura
+        // I file a slot hanno un nome proprio: books.txt e users.txt servono solo a creare i file
+        // a slot al primo avvio e poi vengono rinominati in ".converted", così nessuno li scambia
+        // per i dati correnti (per tornare al testo: SnapshotConverter)
+        Path booksFile = Paths.get("books.slots");
+        Path booksTextFile = Paths.get("books.txt");
+        if (!Files.exists(booksFile) && Files.exists(booksTextFile)) {
+            SnapshotConverter.convertBooks(booksTextFile, booksFile, SnapshotFormat.SLOTTED);
+            retireConvertedFile(booksTextFile);
+        }
+        FileBackedBookRepository bookRepository = new FileBackedBookRepository(
+                new ConcurrentBookRepository(), recordFileManager, booksFile, persister);
 
-        Path usersFile = Paths.get("users.txt");
-        UserRepository userRepository = new FileBackedUserRepository(
-                new InMemoryUserRepository(), fileManager, usersFile);
+        Path usersFile = Paths.get("users.slots");
+        Path usersTextFile = Paths.get("users.txt");
+        if (!Files.exists(usersFile) && Files.exists(usersTextFile)) {
+            SnapshotConverter.convertUsers(usersTextFile, usersFile, SnapshotFormat.SLOTTED);
+            retireConvertedFile(usersTextFile);
+        }
+        FileBackedUserRepository userRepository = new FileBackedUserRepository(
+                new ConcurrentUserRepository(), recordFileManager, usersFile, persister);
 
         // SETUP SERVICE 
         // LoanService ha bisogno di User e Book repository
-        LoanService loanService = new LoanService(loanRepository, bookRepository, userRepository);
+        // nessun TransactionManager: riscriverebbe per intero prestiti e libri a ogni prestito
+        // i tre service pubblicano gli eventi di dominio (LoanRegistered, BookUpdated, ...) sullo stesso bus
+        eventBus = new EventBus();
+        LoanService loanService = new LoanService(loanRepository, bookRepository, userRepository, null, eventBus);
+        // un crash tra la scrittura del prestito e quella del libro lascia le copie disponibili da ricalcolare
+        loanService.reconcileAvailableCopies();
 
         // UserService ha bisogno di LoanService per i controlli di cancellazione 
         // Se l'utente ha libri in prestito non può essere eliminato
@@ -98,24 +169,28 @@ public class App extends Application {
         usersTab.setClosable(false);
         loansTab.setClosable(false);
 
-        //Quando seleziono la scheda Utenti, aggiorno la tabella utenti
+        // Le tabelle seguono le modifiche pubblicate dai service: alla selezione di una scheda
+        // i dati vengono ricaricati solo se il primo caricamento non è mai stato completato
         usersTab.setOnSelectionChanged(event -> {
             if (usersTab.isSelected()) {
-                userController.refreshUsers();
+                userController.ensureLoaded();
             }
         });
 
-        //Quando seleziono la scheda Libri, aggiorno la tabella libri
         booksTab.setOnSelectionChanged(event -> {
             if (booksTab.isSelected()) {
-                bookController.refreshBooks();
+                bookController.ensureLoaded();
+            } else {
+                // un caricamento non ancora concluso è ormai superato
+                bookController.cancelLoading();
             }
         });
 
-        // Quando seleziono la scheda Prestiti, aggiorno tutto (Utenti, Libri, Prestiti)
         loansTab.setOnSelectionChanged(event -> {
             if (loansTab.isSelected()) {
-                loanController.refreshAllData();
+                loanController.ensureLoaded();
+            } else {
+                loanController.cancelLoading();
             }
         });
 
@@ -134,6 +209,48 @@ public class App extends Application {
         primaryStage.show();
     }
 
+    /**
+     * @brief Metodo di chiusura dell'applicazione JavaFX.
+     *
+     * Scrive su disco le modifiche ancora in attesa e sincronizza i file
+     * prima dell'uscita.
+     */
+    @Override
+    public void stop() {
+        if (eventBus != null) {
+            eventBus.close();
+        }
+        try {
+            if (persister != null) {
+                persister.close();
+            }
+        } finally {
+            // i file a slot vanno chiusi anche se il flush finale è fallito
+            if (recordFileManager != null) {
+                try {
+                    recordFileManager.close();
+                } catch (IOException e) {
+                    System.err.println("Errore durante la chiusura dei file dati: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Rinomina un file di testo già convertito nel formato a slot.
+     *
+     * Dopo la conversione il file di testo non viene più aggiornato: resta
+     * come copia dei dati al momento della conversione, con il suffisso
+     * ".converted".
+     *
+     * @param textFile Il file di testo convertito.
+     * @throws IOException In caso di errori durante la rinomina.
+     */
+    private static void retireConvertedFile(Path textFile) throws IOException {
+        Files.move(textFile, textFile.resolveSibling(textFile.getFileName() + ".converted"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
     /**
      * @brief Carica un foglio di stile CSS in modo sicuro.
      *
@@ -0,0 +1,181 @@
+/**
+ * @file BackgroundLoader.java
+ * @brief Caricamento dei dati delle schede fuori dal thread JavaFX.
+ */
+package com.mycompany.gestionebiblioteca.ui.controllers;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+
+/**
+ *
+ * @author Carmine
+ */
+
+/**
+ * @class BackgroundLoader
+ * @brief Service JavaFX che esegue un caricamento in background e ne pubblica il risultato.
+ *
+ * Lettura e ordinamento dei dati avvengono su un thread di lavoro, così
+ * l'interfaccia non si blocca con archivi grandi. Il risultato (o l'errore)
+ * viene consegnato al controller sul thread JavaFX, tramite gli eventi del
+ * Service (che passano da Platform.runLater).
+ *
+ * Ogni chiamata a load() annulla il caricamento ancora in corso: il suo
+ * risultato, ormai superato, non viene pubblicato. Lo stesso vale per
+ * cancel(), usato quando l'utente lascia la scheda. Le modifiche che
+ * arrivano durante un caricamento invece non lo riavviano (una serie di
+ * modifiche ravvicinate non lo lascerebbe mai finire): markStale() lo segna
+ * come superato e, una volta pubblicato il risultato, viene ripetuto una
+ * sola volta. I progressi sono
+ * esposti da progressProperty() e runningProperty() per le barre di
+ * avanzamento.
+ *
+ * @param <T> Tipo dei dati caricati.
+ */
+public class BackgroundLoader<T> extends Service<T> {
+
+    /**
+     * @brief Operazione di caricamento eseguita in background.
+     *
+     * @param <T> Tipo dei dati caricati.
+     */
+    @FunctionalInterface
+    public interface Job<T> {
+
+        /**
+         * @brief Carica i dati.
+         *
+         * @param progress Destinatario dell'avanzamento.
+         * @return I dati caricati.
+         * @throws Exception In caso di errore (viene mostrato dal controller).
+         */
+        T load(Progress progress) throws Exception;
+    }
+
+    /**
+     * @brief Avanzamento di un caricamento.
+     */
+    @FunctionalInterface
+    public interface Progress {
+
+        /**
+         * @brief Comunica l'avanzamento e interrompe il caricamento se è stato annullato.
+         *
+         * @param done Passi completati.
+         * @param total Passi totali.
+         * @throws CancellationException Se il caricamento è stato annullato.
+         */
+        void update(long done, long total);
+    }
+
+    /**
+     * @brief Thread di lavoro condivisi dai caricamenti e dalle ricerche (daemon: non impediscono la chiusura).
+     */
+    static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "caricamento-dati-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @brief Operazione di caricamento.
+     */
+    private final Job<T> job;
+
+    /**
+     * @brief true se i dati del caricamento in corso potrebbero precedere una modifica (solo thread JavaFX).
+     */
+    private boolean stale;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param job Operazione di caricamento (eseguita in background).
+     * @param onLoaded Riceve i dati sul thread JavaFX.
+     * @param onError Riceve l'errore sul thread JavaFX.
+     * @throws IllegalArgumentException Se un parametro è null.
+     */
+    public BackgroundLoader(Job<T> job, Consumer<? super T> onLoaded, Consumer<? super Throwable> onError) {
+        if (job == null || onLoaded == null || onError == null) {
+            throw new IllegalArgumentException("job, onLoaded e onError non devono essere null");
+        }
+        this.job = job;
+        setExecutor(EXECUTOR);
+        setOnSucceeded(event -> {
+            onLoaded.accept(getValue());
+            if (stale) {
+                stale = false;
+                restart();
+            }
+        });
+        setOnFailed(event -> {
+            stale = false;
+            onError.accept(getException());
+        });
+        setOnCancelled(event -> stale = false);
+    }
+
+    /**
+     * @brief Segnala una modifica dei dati durante un caricamento.
+     *
+     * Se un caricamento è in corso non viene interrotto: al termine ne viene
+     * eseguito un altro, uno solo per quante modifiche arrivino nel frattempo.
+     * Va chiamato sul thread JavaFX.
+     *
+     * @return true se un caricamento è in corso (la modifica sarà coperta dal
+     *         nuovo caricamento), false altrimenti.
+     */
+    public boolean markStale() {
+        if (!isRunning()) {
+            return false;
+        }
+        stale = true;
+        return true;
+    }
+
+    /**
+     * @brief Avvia un nuovo caricamento, annullando quello eventualmente in corso.
+     *
+     * Può essere chiamato da qualunque thread.
+     */
+    public void load() {
+        if (Platform.isFxApplicationThread()) {
+            restart();
+        } else {
+            Platform.runLater(this::restart);
+        }
+    }
+
+    /**
+     * @brief Crea il Task di un caricamento.
+     *
+     * @return Il Task.
+     */
+    @Override
+    protected Task<T> createTask() {
+        return new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+                return job.load((done, total) -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    updateProgress(done, total);
+                });
+            }
+        };
+    }
+}
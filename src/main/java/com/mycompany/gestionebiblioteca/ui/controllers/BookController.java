@@ -11,6 +11,8 @@ import com.mycompany.gestionebiblioteca.model.Book;
 import com.mycompany.gestionebiblioteca.service.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 import javafx.beans.property.SimpleStringProperty;
@@ -19,6 +21,7 @@ import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
@@ -76,24 +79,55 @@ public class BookController {
     @FXML
     private TextField searchField;
 
+    /**
+     * @brief Indicatore visibile durante il caricamento del catalogo.
+     */
+    @FXML
+    private ProgressIndicator loadingIndicator;
+
     /**
      * @brief Lista osservabile per il binding dei dati alla tabella
      */
     private final ObservableList<Book> booksData = FXCollections.observableArrayList();
 
+    /**
+     * @brief Applica a booksData le modifiche del catalogo (ordinato per titolo, come il service).
+     */
+    private final KeyedListSync<String, Book> booksSync = new KeyedListSync<>(booksData, Book::getIsbn,
+            Comparator.comparing(Book::getTitle, Comparator.nullsLast(String::compareToIgnoreCase)));
+
+    /**
+     * @brief true se la tabella mostra i risultati di una ricerca invece dell'intero catalogo.
+     */
+    private boolean showingSearchResults;
+
+    /**
+     * @brief true dopo il primo caricamento completo del catalogo.
+     */
+    private boolean loaded;
+
     private BookService bookService;
 
+    /**
+     * @brief Caricamento in background del catalogo ordinato per titolo.
+     */
+    private final BackgroundLoader<List<Book>> booksLoader = new BackgroundLoader<>(
+            progress -> bookService.getAllBooksOrderedByTitle(), this::showBooks,
+            error -> showError("Errore durante il caricamento dei libri: " + error.getMessage()));
+
     /**
      * @brief Inietta il BookService nel controller.
      *
      * Questo metodo viene chiamato da App.java per fornire al controller
      * l'istanza del servizio necessaria per operare sui dati. Appena il
-     * servizio è settato, viene effettuato un refresh della tabella.
+     * servizio è settato, viene effettuato un refresh della tabella; da quel
+     * momento la tabella segue le modifiche pubblicate dal servizio.
      *
      * @param bookService L'istanza di BookService.
      */
     public void setBookService(BookService bookService) {
         this.bookService = bookService;
+        bookService.changes().subscribe(KeyedListSync.onFxThread(this::onBooksChanged));
         refreshBooks();
     }
 
@@ -118,6 +152,8 @@ public class BookController {
 
         bookTable.setItems(booksData);
 
+        loadingIndicator.visibleProperty().bind(booksLoader.runningProperty());
+
         bookTable.getSelectionModel().selectedItemProperty().addListener(
                 (obs, oldVal, newVal) -> {
                     if (newVal != null) {
@@ -158,7 +194,6 @@ public class BookController {
 
         try {
             bookService.addBook(isbn, title, authors, year, totalCopies);
-            refreshBooks();
             clearForm();
         } catch (ValidationException e) {
             showError(e.getMessage());
@@ -207,7 +242,6 @@ public class BookController {
 
         try {
             bookService.updateBook(oldIsbn, isbn, title, authors, year, totalCopies);
-            refreshBooks();
             clearForm();
         } catch (ValidationException | NotFoundException e) {
             showError(e.getMessage());
@@ -244,7 +278,6 @@ public class BookController {
             if (buttonType == ButtonType.OK) {
                 try {
                     bookService.deleteBook(selected.getIsbn());
-                    refreshBooks();
                     clearForm();
                 } catch (NotFoundException | ValidationException e) {
                     showError(e.getMessage());
@@ -298,11 +331,14 @@ public class BookController {
             return;
         }
 
+        // la ricerca sostituisce un eventuale caricamento completo ancora in corso
+        booksLoader.cancel();
+
         // Se la stringa contiene solo cifre: ricerca per ISBN
         if (query.matches("\\d+")) {
             // Se l'ISBN supera le 13 cifre, blocco tutto e mostro una lista vuota
             if (query.length() > 13) {
-                booksData.clear();
+                showSearchResults(Collections.<Book>emptyList());
                 return;
             }
         }
@@ -331,10 +367,8 @@ public class BookController {
 
         if (filteredResults.isEmpty()) {
             showInfo("Nessun libro trovato per: " + query);
-            booksData.clear();
-        } else {
-            booksData.setAll(filteredResults);
         }
+        showSearchResults(filteredResults);
     }
 
     /**
@@ -350,14 +384,75 @@ public class BookController {
 
     /**
      * @brief Recupera tutti i libri dal servizio e aggiorna la TableView.
+     *
+     * Il catalogo viene letto e ordinato in background: il metodo ritorna
+     * subito e un caricamento ancora in corso viene annullato.
      */
     public void refreshBooks() {
         if (bookService == null) {
             return;
         }
-        List<Book> books = bookService.getAllBooksOrderedByTitle();
-        booksData.setAll(books);
-        bookTable.refresh();
+        booksLoader.load();
+    }
+
+    /**
+     * @brief Carica il catalogo solo se non è mai stato caricato (ad esempio alla selezione della scheda).
+     *
+     * Dopo il primo caricamento la tabella è già aggiornata dalle modifiche
+     * pubblicate dal servizio.
+     */
+    public void ensureLoaded() {
+        if (!loaded) {
+            refreshBooks();
+        }
+    }
+
+    /**
+     * @brief Annulla il caricamento in corso (ad esempio quando l'utente lascia la scheda).
+     */
+    public void cancelLoading() {
+        booksLoader.cancel();
+    }
+
+    /**
+     * @brief Mostra i libri caricati (sul thread JavaFX).
+     *
+     * @param books I libri ordinati per titolo.
+     */
+    private void showBooks(List<Book> books) {
+        showingSearchResults = false;
+        loaded = true;
+        booksSync.reset(books);
+    }
+
+    /**
+     * @brief Mostra i risultati di una ricerca.
+     *
+     * @param books I libri trovati, ordinati per titolo.
+     */
+    private void showSearchResults(List<Book> books) {
+        showingSearchResults = true;
+        booksSync.reset(books);
+    }
+
+    /**
+     * @brief Applica alla tabella le modifiche del catalogo (sul thread JavaFX).
+     *
+     * Viene aggiornata solo la riga del libro modificato. Se è in corso un
+     * caricamento completo, il caricamento viene ripetuto una volta finito: i
+     * dati che sta leggendo potrebbero precedere la modifica.
+     *
+     * @param changes Le modifiche di un'operazione.
+     */
+    private void onBooksChanged(List<EntityChange<String, Book>> changes) {
+        if (booksLoader.markStale()) {
+            return;
+        }
+        if (showingSearchResults) {
+            booksSync.applyToPresent(changes);
+        } else {
+            booksSync.apply(changes);
+        }
     }
 
     /**
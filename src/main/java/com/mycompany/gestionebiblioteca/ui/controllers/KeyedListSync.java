@@ -0,0 +1,341 @@
+/**
+ * @file KeyedListSync.java
+ * @brief Applicazione delle modifiche dei service a una lista ordinata di una TableView.
+ */
+package com.mycompany.gestionebiblioteca.ui.controllers;
+
+import com.mycompany.gestionebiblioteca.service.EntityChange;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+
+/**
+ *
+ * @author Carmine
+ */
+
+/**
+ * @class KeyedListSync
+ * @brief Mantiene ordinata una ObservableList applicando solo le modifiche necessarie.
+ *
+ * Le tabelle venivano aggiornate con setAll() e TableView.refresh() a ogni
+ * operazione: tutte le celle venivano ricostruite e scorrimento e selezione
+ * andavano persi anche se era cambiata una sola riga. Questa classe riceve
+ * invece le modifiche dei ChangeFeed dei service e le traduce in modifiche
+ * minime della lista:
+ * - **UPDATED**: se l'elemento resta nella stessa posizione dell'ordinamento
+ *   viene sostituito con set(); altrimenti viene spostato. La posizione non è
+ *   memorizzata (andrebbe riscritta per tutte le righe successive a ogni
+ *   inserimento o rimozione): viene cercata quando serve con una ricerca
+ *   binaria dell'elemento attuale, che una mappa chiave → elemento tiene a
+ *   disposizione.
+ * - **ADDED**: inserimento nella posizione trovata con una ricerca binaria.
+ * - **REMOVED**: rimozione della sola riga.
+ *
+ * Molte modifiche insieme (ad esempio un'importazione) producono invece una
+ * sola setAll() della lista ricalcolata, per non notificare la tabella una
+ * riga alla volta.
+ *
+ * L'ordinamento dovrebbe distinguere elementi con chiavi diverse: gli
+ * elementi equivalenti vengono scorsi uno a uno. Se un elemento è stato
+ * modificato sul posto e non è più nella sua posizione, viene cercato con una
+ * scansione della lista.
+ *
+ * I metodi vanno chiamati dal thread JavaFX (vedi onFxThread()).
+ *
+ * @param <K> Tipo della chiave degli elementi.
+ * @param <T> Tipo degli elementi.
+ */
+public final class KeyedListSync<K, T> {
+
+    /**
+     * @brief Numero di modifiche oltre il quale la lista viene ricostruita con una sola setAll().
+     */
+    static final int REBUILD_THRESHOLD = 32;
+
+    private final ObservableList<T> items;
+
+    private final Function<? super T, ? extends K> keyOf;
+
+    private final Comparator<? super T> order;
+
+    /**
+     * @brief Elemento presente nella lista, per chiave.
+     */
+    private final Map<K, T> present = new HashMap<>();
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param items La lista da mantenere (inizialmente vuota o già ordinata).
+     * @param keyOf Restituisce la chiave di un elemento.
+     * @param order Ordinamento della lista.
+     * @throws IllegalArgumentException Se un parametro è null.
+     */
+    public KeyedListSync(ObservableList<T> items, Function<? super T, ? extends K> keyOf, Comparator<? super T> order) {
+        if (items == null || keyOf == null || order == null) {
+            throw new IllegalArgumentException("items, keyOf e order non devono essere null");
+        }
+        this.items = items;
+        this.keyOf = keyOf;
+        this.order = order;
+        indexAll();
+    }
+
+    /**
+     * @brief Restituisce la lista mantenuta.
+     *
+     * @return La lista.
+     */
+    public ObservableList<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @brief Restituisce l'elemento con una chiave.
+     *
+     * @param key La chiave.
+     * @return L'elemento, o null se non è nella lista.
+     */
+    public T get(K key) {
+        return present.get(key);
+    }
+
+    /**
+     * @brief Sostituisce tutto il contenuto (ad esempio dopo un caricamento completo).
+     *
+     * @param sorted I nuovi elementi, già nell'ordine della lista.
+     */
+    public void reset(List<? extends T> sorted) {
+        items.setAll(sorted);
+        indexAll();
+    }
+
+    /**
+     * @brief Applica le modifiche di un'operazione.
+     *
+     * @param changes Le modifiche, in ordine.
+     */
+    public void apply(List<? extends EntityChange<? extends K, ? extends T>> changes) {
+        if (changes.size() > REBUILD_THRESHOLD) {
+            rebuild(changes);
+            return;
+        }
+        for (EntityChange<? extends K, ? extends T> change : changes) {
+            if (change.getKind() == EntityChange.Kind.REMOVED) {
+                remove(change.getKey());
+            } else {
+                put(change.getEntity());
+            }
+        }
+    }
+
+    /**
+     * @brief Applica solo aggiornamenti e rimozioni degli elementi già presenti.
+     *
+     * Serve quando la lista mostra i risultati di una ricerca: un elemento
+     * nuovo non viene aggiunto, perché potrebbe non soddisfare la ricerca.
+     *
+     * @param changes Le modifiche, in ordine.
+     */
+    public void applyToPresent(List<? extends EntityChange<? extends K, ? extends T>> changes) {
+        for (EntityChange<? extends K, ? extends T> change : changes) {
+            if (change.getKind() == EntityChange.Kind.REMOVED) {
+                remove(change.getKey());
+            } else if (present.containsKey(change.getKey())) {
+                put(change.getEntity());
+            }
+        }
+    }
+
+    /**
+     * @brief Inserisce un elemento o sostituisce quello con la stessa chiave.
+     *
+     * @param item L'elemento.
+     */
+    public void put(T item) {
+        int i = indexOf(keyOf.apply(item));
+        if (i < 0) {
+            insert(item);
+            return;
+        }
+        boolean afterPrevious = i == 0 || order.compare(items.get(i - 1), item) <= 0;
+        boolean beforeNext = i == items.size() - 1 || order.compare(item, items.get(i + 1)) <= 0;
+        if (afterPrevious && beforeNext) {
+            // l'ordinamento non cambia: una sola riga da ridisegnare
+            items.set(i, item);
+            present.put(keyOf.apply(item), item);
+        } else {
+            removeAt(i);
+            insert(item);
+        }
+    }
+
+    /**
+     * @brief Sostituisce gli elementi per cui la funzione restituisce un oggetto diverso.
+     *
+     * Serve per le modifiche che cambiano solo alcune colonne di più righe
+     * (ad esempio il titolo di un libro in tutti i suoi prestiti): vengono
+     * sostituite solo le righe effettivamente cambiate.
+     *
+     * @param update Restituisce l'elemento aggiornato, o lo stesso oggetto se non cambia.
+     */
+    public void replaceAll(UnaryOperator<T> update) {
+        List<T> replaced = new ArrayList<>();
+        for (T item : items) {
+            T next = update.apply(item);
+            if (next != item) {
+                replaced.add(next);
+            }
+        }
+        for (T item : replaced) {
+            put(item);
+        }
+    }
+
+    /**
+     * @brief Rimuove l'elemento con una chiave, se presente.
+     *
+     * @param key La chiave.
+     */
+    public void remove(K key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * @brief Cerca la posizione dell'elemento con una chiave.
+     *
+     * @param key La chiave.
+     * @return La posizione, o -1 se l'elemento non è nella lista.
+     */
+    private int indexOf(K key) {
+        T item = present.get(key);
+        if (item == null) {
+            return -1;
+        }
+        for (int i = lowerBound(item); i < items.size() && order.compare(items.get(i), item) == 0; i++) {
+            if (items.get(i) == item) {
+                return i;
+            }
+        }
+        // elemento modificato sul posto: l'ordinamento non lo ritrova più
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @brief Restituisce la prima posizione il cui elemento non precede quello dato.
+     *
+     * @param item L'elemento.
+     * @return La posizione (fra 0 e size()).
+     */
+    private int lowerBound(T item) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(items.get(mid), item) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @brief Inserisce un elemento nella sua posizione (dopo gli elementi equivalenti).
+     *
+     * @param item L'elemento.
+     */
+    private void insert(T item) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(items.get(mid), item) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        items.add(low, item);
+        present.put(keyOf.apply(item), item);
+    }
+
+    /**
+     * @brief Rimuove l'elemento in una posizione.
+     *
+     * @param index La posizione.
+     */
+    private void removeAt(int index) {
+        present.remove(keyOf.apply(items.remove(index)));
+    }
+
+    /**
+     * @brief Ricostruisce la mappa degli elementi presenti dopo una sostituzione completa.
+     */
+    private void indexAll() {
+        present.clear();
+        for (T item : items) {
+            present.put(keyOf.apply(item), item);
+        }
+    }
+
+    /**
+     * @brief Applica molte modifiche con una sola setAll().
+     *
+     * @param changes Le modifiche, in ordine.
+     */
+    private void rebuild(List<? extends EntityChange<? extends K, ? extends T>> changes) {
+        Map<K, T> byKey = new LinkedHashMap<>(items.size() * 2);
+        for (T item : items) {
+            byKey.put(keyOf.apply(item), item);
+        }
+        for (EntityChange<? extends K, ? extends T> change : changes) {
+            if (change.getKind() == EntityChange.Kind.REMOVED) {
+                byKey.remove(change.getKey());
+            } else {
+                byKey.put(change.getKey(), change.getEntity());
+            }
+        }
+        List<T> sorted = new ArrayList<>(byKey.values());
+        sorted.sort(order);
+        reset(sorted);
+    }
+
+    /**
+     * @brief Adatta un iscritto di un ChangeFeed perché venga eseguito sul thread JavaFX.
+     *
+     * Le operazioni dei service possono essere eseguite anche fuori dal thread
+     * JavaFX: in quel caso le modifiche vengono passate con Platform.runLater.
+     *
+     * @param subscriber L'iscritto.
+     * @param <C> Tipo delle modifiche.
+     * @return L'iscritto da registrare sul ChangeFeed.
+     */
+    static <C> Consumer<C> onFxThread(Consumer<C> subscriber) {
+        return changes -> {
+            if (Platform.isFxApplicationThread()) {
+                subscriber.accept(changes);
+            } else {
+                Platform.runLater(() -> subscriber.accept(changes));
+            }
+        };
+    }
+}
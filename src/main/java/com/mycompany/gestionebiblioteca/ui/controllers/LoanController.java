@@ -13,12 +13,20 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.DatePicker;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.cell.PropertyValueFactory;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.scene.layout.Pane;
 import java.time.format.DateTimeFormatter;
@@ -47,6 +55,108 @@ public class LoanController {
     @FXML
     private Pane loanRootElement;
 
+    /**
+     * @brief Barra di avanzamento del caricamento dei dati (visibile solo durante il caricamento).
+     */
+    @FXML
+    private ProgressBar loadingProgress;
+
+    /**
+     * @brief Verifica locale della ricerca utenti, coerente con UserService.searchUsers:
+     * 10 cifre cercano la matricola esatta, altrimenti il cognome (case-insensitive).
+     */
+    private static final SearchPipeline.Matcher<User> USER_MATCHER = new SearchPipeline.Matcher<User>() {
+        @Override
+        public boolean matches(User user, String query) {
+            if (isMatricola(query)) {
+                return query.equals(user.getMatricola());
+            }
+            return user.getLastName() != null && user.getLastName().toLowerCase().contains(query.toLowerCase());
+        }
+
+        @Override
+        public boolean canNarrow(String previous, String next) {
+            // passare dal cognome alla matricola esatta cambia il tipo di ricerca: serve la query completa
+            return isMatricola(previous) == isMatricola(next) && SearchPipeline.Matcher.super.canNarrow(previous, next);
+        }
+    };
+
+    /**
+     * @brief Verifica locale della ricerca libri, coerente con BookService.searchByTitle.
+     */
+    private static final SearchPipeline.Matcher<Book> BOOK_MATCHER = (book, query)
+            -> book.getTitle() != null && book.getTitle().toLowerCase().contains(query.toLowerCase());
+
+    /**
+     * @brief Ricerca utenti durante la digitazione (in background, con attesa).
+     */
+    private final SearchPipeline<User> userSearch = new SearchPipeline<>(SearchPipeline.DEFAULT_DELAY_MILLIS,
+            keyword -> userService.searchUsers(keyword), USER_MATCHER,
+            this::showUserResults,
+            error -> showError("Errore durante la ricerca degli utenti: " + error.getMessage()));
+
+    /**
+     * @brief Ricerca libri durante la digitazione (in background, con attesa).
+     */
+    private final SearchPipeline<Book> bookSearch = new SearchPipeline<>(SearchPipeline.DEFAULT_DELAY_MILLIS,
+            keyword -> bookService.searchByTitle(keyword), BOOK_MATCHER,
+            this::showBookResults,
+            error -> showError("Errore durante la ricerca dei libri: " + error.getMessage()));
+
+    /**
+     * @brief Utenti selezionabili, aggiornati dalle modifiche di UserService.
+     */
+    private final KeyedListSync<String, User> usersSync = new KeyedListSync<>(
+            FXCollections.<User>observableArrayList(), User::getMatricola,
+            Comparator.comparing(User::getLastName, Comparator.nullsLast(String::compareToIgnoreCase))
+                    .thenComparing(User::getFirstName, Comparator.nullsLast(String::compareToIgnoreCase)));
+
+    /**
+     * @brief Libri selezionabili, aggiornati dalle modifiche di BookService (anche quelle dei prestiti).
+     */
+    private final KeyedListSync<String, Book> booksSync = new KeyedListSync<>(
+            FXCollections.<Book>observableArrayList(), Book::getIsbn,
+            Comparator.comparing(Book::getTitle, Comparator.nullsLast(String::compareToIgnoreCase)));
+
+    /**
+     * @brief Righe dei prestiti attivi ordinate per scadenza, aggiornate dalle modifiche di LoanService.
+     */
+    private final KeyedListSync<LoanId, LoanRow> loansSync = new KeyedListSync<>(
+            FXCollections.<LoanRow>observableArrayList(), row -> row.getLoan().getId(),
+            Comparator.comparing(LoanRow::getDueDate).thenComparing(row -> row.getLoan().getId()));
+
+    /**
+     * @brief Righe dei prestiti di ogni utente (matricola → ID), per aggiornare solo quelle.
+     */
+    private final Map<String, Set<LoanId>> loanRowsByUser = new HashMap<>();
+
+    /**
+     * @brief Righe dei prestiti di ogni libro (ISBN → ID), per aggiornare solo quelle.
+     */
+    private final Map<String, Set<LoanId>> loanRowsByIsbn = new HashMap<>();
+
+    /**
+     * @brief true se la tabella utenti mostra i risultati di una ricerca.
+     */
+    private boolean showingUserResults;
+
+    /**
+     * @brief true se la tabella libri mostra i risultati di una ricerca.
+     */
+    private boolean showingBookResults;
+
+    /**
+     * @brief true dopo il primo caricamento completo dei dati.
+     */
+    private boolean loaded;
+
+    /**
+     * @brief Caricamento in background di utenti, libri e prestiti attivi.
+     */
+    private final BackgroundLoader<LoanTabData> dataLoader = new BackgroundLoader<>(
+            this::loadAllData, this::showAllData,
+            error -> showError("Errore durante il caricamento dei dati: " + error.getMessage()));
+
     //Tabella Utenti
     @FXML
     private TableView<User> userSelectionTable;
@@ -78,28 +188,29 @@ public class LoanController {
 
     //Tabella prestiti attivi
     @FXML
-    private TableView<Loan> activeLoansTable;
+    private TableView<LoanRow> activeLoansTable;
     @FXML
-    private TableColumn<Loan, String> loanMatricolaCol;
+    private TableColumn<LoanRow, String> loanMatricolaCol;
     @FXML
-    private TableColumn<Loan, String> loanIsbnCol;
+    private TableColumn<LoanRow, String> loanIsbnCol;
     @FXML
-    private TableColumn<Loan, LocalDate> loanDueDateCol;
+    private TableColumn<LoanRow, LocalDate> loanDueDateCol;
 
     // Colonne per la tabella dei prestiti attivi 
     @FXML
-    private TableColumn<Loan, String> loanUserNameCol;
+    private TableColumn<LoanRow, String> loanUserNameCol;
     @FXML
-    private TableColumn<Loan, String> loanUserSurnameCol;
+    private TableColumn<LoanRow, String> loanUserSurnameCol;
     @FXML
-    private TableColumn<Loan, String> loanBookTitleCol;
+    private TableColumn<LoanRow, String> loanBookTitleCol;
     @FXML
-    private TableColumn<Loan, String> loanBookAuthorCol;
+    private TableColumn<LoanRow, String> loanBookAuthorCol;
 
     /**
      * @brief Inietta i servizi necessari (Dependency Injection). Metodo
      * essenziale chiamato da App.java. Appena i servizi sono disponibili, viene
-     * fatto un refresh completo dei dati.
+     * fatto un refresh completo dei dati; da quel momento le tabelle seguono le
+     * modifiche pubblicate dai servizi.
      *
      * @param loanService Servizio prestiti.
      * @param userService Servizio utenti.
@@ -110,6 +221,10 @@ public class LoanController {
         this.userService = userService;
         this.bookService = bookService;
 
+        userService.changes().subscribe(KeyedListSync.onFxThread(this::onUsersChanged));
+        bookService.changes().subscribe(KeyedListSync.onFxThread(this::onBooksChanged));
+        loanService.changes().subscribe(KeyedListSync.onFxThread(this::onLoansChanged));
+
         // Refresh dei dati appena i service vengono inizializzati
         refreshAllData();
     }
@@ -133,6 +248,10 @@ public class LoanController {
         setupBookTable();
         setupLoanTable();
 
+        userSelectionTable.setItems(usersSync.getItems());
+        bookSelectionTable.setItems(booksSync.getItems());
+        activeLoansTable.setItems(loansSync.getItems());
+
         // Imposto date di default per i DatePicker dei prestiti (oggi e tra 7 giorni)
         loanDatePicker.setValue(LocalDate.now());
         dueDatePicker.setValue(LocalDate.now().plusDays(7));
@@ -140,13 +259,17 @@ public class LoanController {
         // Listener per la ricerca dinamica
         searchUserField.textProperty().addListener((obs, old, val) -> filterUsers(val));
         searchBookField.textProperty().addListener((obs, old, val) -> filterBooks(val));
+
+        loadingProgress.progressProperty().bind(dataLoader.progressProperty());
+        loadingProgress.visibleProperty().bind(dataLoader.runningProperty());
+        loadingProgress.managedProperty().bind(loadingProgress.visibleProperty());
     }
 
     /**
      * @brief Configura la tabella dei prestiti attivi con colonne calcolate.
      * Oltre ai dati del prestito come Matricola e ISBN, configura colonne che
-     * mostrano il nome dell'utente e il titolo del libro recuperandoli
-     * dinamicamente dai service tramite i metodi getter.
+     * mostrano il nome dell'utente e il titolo del libro, letti dalle righe
+     * LoanRow (join di prestiti, utenti e libri, aggiornato riga per riga).
      */
     private void setupLoanTable() {
 
@@ -158,7 +281,7 @@ public class LoanController {
         DateTimeFormatter italianFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
         loanDueDateCol.setCellFactory(column -> {
-            return new TableCell<Loan, LocalDate>() {
+            return new TableCell<LoanRow, LocalDate>() {
                 @Override
                 protected void updateItem(LocalDate item, boolean empty) {
                     super.updateItem(item, empty);
@@ -173,41 +296,24 @@ public class LoanController {
             };
         });
 
-        loanUserNameCol.setCellValueFactory(cellData -> {
-            String matricola = cellData.getValue().getUserMatricola();
-            return userService.getUserByMatricola(matricola)
-                    .map(user -> new SimpleStringProperty(user.getFirstName()))
-                    .orElse(new SimpleStringProperty(""));
-        });
-
-        loanUserSurnameCol.setCellValueFactory(cellData -> {
-            String matricola = cellData.getValue().getUserMatricola();
-            return userService.getUserByMatricola(matricola)
-                    .map(user -> new SimpleStringProperty(user.getLastName()))
-                    .orElse(new SimpleStringProperty(""));
-        });
-
-        loanBookTitleCol.setCellValueFactory(cellData -> {
-            String isbn = cellData.getValue().getBookIsbn();
-            return bookService.getBookByIsbn(isbn)
-                    .map(book -> new SimpleStringProperty(book.getTitle()))
-                    .orElse(new SimpleStringProperty("Libro Rimosso"));
-        });
-
-        loanBookAuthorCol.setCellValueFactory(cellData -> {
-            String isbn = cellData.getValue().getBookIsbn();
-            return bookService.getBookByIsbn(isbn)
-                    .map(book -> new SimpleStringProperty(book.getAuthorsAsString()))
-                    .orElse(new SimpleStringProperty(""));
-        });
+        // le righe contengono già nome, cognome, titolo e autori: nessuna ricerca durante il disegno
+        loanUserNameCol.setCellValueFactory(cellData
+                -> new SimpleStringProperty(cellData.getValue().getUserFirstName()));
+        loanUserSurnameCol.setCellValueFactory(cellData
+                -> new SimpleStringProperty(cellData.getValue().getUserLastName()));
+        loanBookTitleCol.setCellValueFactory(cellData
+                -> new SimpleStringProperty(cellData.getValue().getBookTitle()));
+        loanBookAuthorCol.setCellValueFactory(cellData
+                -> new SimpleStringProperty(cellData.getValue().getBookAuthors()));
     }
 
     /**
      * @brief Gestisce l'evento di registrazione di un nuovo prestito: Verifica
      * che un utente e un libro siano selezionati nelle tabelle, recupera le
      * date dai datePicker, invoca "loanService.registerLoan()" per la logica di
-     * business, in caso di successo, aggiorna tutte le tabelle decrementando le
-     * copie disponibili.
+     * business, in caso di successo, le tabelle vengono aggiornate dalle
+     * modifiche pubblicate dal servizio (nuova riga del prestito e copie
+     * disponibili del libro).
      */
     @FXML
     private void onRegisterLoan() {
@@ -237,7 +343,6 @@ public class LoanController {
             );
 
             showInfo("Successo", "Prestito registrato per " + selectedUser.getFirstName() + " " + selectedUser.getLastName());
-            refreshAllData(); // Ricarica tutto
         } catch (ValidationException e) {
             showError(e.getMessage());
         } catch (Exception e) {
@@ -254,12 +359,13 @@ public class LoanController {
     @FXML
     private void onReturnLoan() {
 
-        Loan selectedLoan = activeLoansTable.getSelectionModel().getSelectedItem();
+        LoanRow selectedRow = activeLoansTable.getSelectionModel().getSelectedItem();
 
-        if (selectedLoan == null) {
+        if (selectedRow == null) {
             showError("Seleziona un prestito dalla tabella in basso per restituirlo");
             return;
         }
+        Loan selectedLoan = selectedRow.getLoan();
 
         // La data di restituzione effettiva coincide con la data odierna
         LocalDate actualReturnDate = LocalDate.now();
@@ -287,8 +393,6 @@ public class LoanController {
             loanService.registerReturn(selectedLoan, actualReturnDate);
             showInfo("Successo", "Libro restituito correttamente in data: "
                     + actualReturnDate.format(italianFormatter));
-
-            refreshAllData();
         } catch (Exception e) {
             showError("Errore durante la restituzione: " + e.getMessage());
         }
@@ -322,63 +426,326 @@ public class LoanController {
      * Fondamentale per mantenere la consistenza visuale: se registro un
      * prestito, la tabella Libri deve aggiornarsi per mostrare una copia
      * disponibile in meno.
+     *
+     * Lettura e ordinamento avvengono in background (BackgroundLoader): il
+     * metodo ritorna subito e le tabelle vengono aggiornate al termine. Un
+     * caricamento ancora in corso viene annullato.
      */
     public void refreshAllData() {
         if (userService == null || bookService == null || loanService == null) {
             return;
         }
-        // Ricarico Utenti
-        List<User> users = userService.getAllUsersOrderedByLastNameAndFirstName();
-        userSelectionTable.setItems(FXCollections.observableArrayList(users));
-        userSelectionTable.refresh();
+        dataLoader.load();
+    }
 
-        // Ricarico Libri
-        List<Book> books = bookService.getAllBooksOrderedByTitle();
-        bookSelectionTable.setItems(FXCollections.observableArrayList(books));
-        bookSelectionTable.refresh();
+    /**
+     * @brief Carica i dati solo se non sono mai stati caricati (ad esempio alla selezione della scheda).
+     *
+     * Dopo il primo caricamento le tabelle sono già aggiornate dalle modifiche
+     * pubblicate dai servizi.
+     */
+    public void ensureLoaded() {
+        if (!loaded) {
+            refreshAllData();
+        }
+    }
 
-        // Ricarico Prestiti Attivi
+    /**
+     * @brief Annulla il caricamento in corso (ad esempio quando l'utente lascia la scheda).
+     */
+    public void cancelLoading() {
+        dataLoader.cancel();
+        userSearch.cancel();
+        bookSearch.cancel();
+    }
+
+    /**
+     * @brief Legge i dati delle tre tabelle (eseguito fuori dal thread JavaFX).
+     *
+     * @param progress Destinatario dell'avanzamento.
+     * @return I dati letti.
+     */
+    private LoanTabData loadAllData(BackgroundLoader.Progress progress) {
+        progress.update(0, 3);
+        List<User> users = userService.getAllUsersOrderedByLastNameAndFirstName();
+        progress.update(1, 3);
+        List<Book> books = bookService.getAllBooksOrderedByTitle();
+        progress.update(2, 3);
         List<Loan> loans = loanService.getActiveLoansOrderedByDueDate();
-        activeLoansTable.setItems(FXCollections.observableArrayList(loans));
-        activeLoansTable.refresh();
+        // join in blocco, una volta per aggiornamento: il disegno delle celle non consulta i servizi
+        List<LoanRow> rows = LoanRow.join(loans, users, books);
+        progress.update(3, 3);
+        return new LoanTabData(users, books, rows);
     }
 
     /**
-     * @brief Aggiorna solo la tabella dei prestiti.
+     * @brief Mostra i dati caricati (sul thread JavaFX).
+     *
+     * Le tabelle filtrate dalla barra di ricerca ripetono la ricerca sui dati
+     * aggiornati (i risultati precedenti non sono più validi per il raffinamento).
+     *
+     * @param data I dati caricati.
      */
-    public void refreshLoans() {
-        if (loanService == null) {
+    private void showAllData(LoanTabData data) {
+        loaded = true;
+        userSearch.invalidate();
+        bookSearch.invalidate();
+        if (isBlank(searchUserField.getText())) {
+            showingUserResults = false;
+            usersSync.reset(data.users);
+        } else {
+            userSearch.submit(searchUserField.getText());
+        }
+        if (isBlank(searchBookField.getText())) {
+            showingBookResults = false;
+            booksSync.reset(data.books);
+        } else {
+            bookSearch.submit(searchBookField.getText());
+        }
+        resetLoanRows(data.loanRows);
+    }
+
+    /**
+     * @brief Applica le modifiche degli utenti (sul thread JavaFX).
+     *
+     * Aggiorna la riga dell'utente e, se nome o cognome cambiano, le sole righe
+     * dei suoi prestiti (trovate con loanRowsByUser). Se è in corso un caricamento completo, il caricamento
+     * viene ripetuto una volta finito: i dati che sta leggendo potrebbero
+     * precedere la modifica.
+     *
+     * @param changes Le modifiche di un'operazione.
+     */
+    private void onUsersChanged(List<EntityChange<String, User>> changes) {
+        if (dataLoader.markStale()) {
+            return;
+        }
+        userSearch.invalidate();
+        if (showingUserResults) {
+            usersSync.applyToPresent(changes);
+        } else {
+            usersSync.apply(changes);
+        }
+        for (EntityChange<String, User> change : changes) {
+            User user = change.getEntity();
+            updateLoanRows(loanRowsByUser.get(change.getKey()), row -> row.withUser(user));
+        }
+    }
+
+    /**
+     * @brief Applica le modifiche dei libri (sul thread JavaFX).
+     *
+     * Un prestito o una restituzione cambiano solo le copie disponibili: viene
+     * sostituita la sola riga del libro. Le righe dei prestiti del libro
+     * (trovate con loanRowsByIsbn) cambiano solo se cambiano titolo o autori.
+     *
+     * @param changes Le modifiche di un'operazione.
+     */
+    private void onBooksChanged(List<EntityChange<String, Book>> changes) {
+        if (dataLoader.markStale()) {
+            return;
+        }
+        bookSearch.invalidate();
+        if (showingBookResults) {
+            booksSync.applyToPresent(changes);
+        } else {
+            booksSync.apply(changes);
+        }
+        for (EntityChange<String, Book> change : changes) {
+            Book book = change.getEntity();
+            updateLoanRows(loanRowsByIsbn.get(change.getKey()), row -> row.withBook(book));
+        }
+    }
+
+    /**
+     * @brief Applica le modifiche dei prestiti (sul thread JavaFX).
+     *
+     * Un nuovo prestito aggiunge la sua riga (con una ricerca di utente e
+     * libro), una restituzione la rimuove: il prestito non è più attivo.
+     *
+     * @param changes Le modifiche di un'operazione.
+     */
+    private void onLoansChanged(List<EntityChange<LoanId, Loan>> changes) {
+        if (dataLoader.markStale()) {
+            return;
+        }
+        for (EntityChange<LoanId, Loan> change : changes) {
+            Loan loan = change.getEntity();
+            if (loan == null || !loan.isActive()) {
+                removeLoanRow(change.getKey());
+            } else {
+                putLoanRow(LoanRow.of(loan,
+                        userService.getUserByMatricola(loan.getUserMatricola()).orElse(null),
+                        bookService.getBookByIsbn(loan.getBookIsbn()).orElse(null)));
+            }
+        }
+    }
+
+    /**
+     * @brief Sostituisce tutte le righe dei prestiti e ricostruisce gli indici per utente e libro.
+     *
+     * @param rows Le righe, già ordinate per scadenza.
+     */
+    private void resetLoanRows(List<LoanRow> rows) {
+        loansSync.reset(rows);
+        loanRowsByUser.clear();
+        loanRowsByIsbn.clear();
+        for (LoanRow row : rows) {
+            indexLoanRow(row);
+        }
+    }
+
+    /**
+     * @brief Inserisce o sostituisce la riga di un prestito.
+     *
+     * @param row La riga.
+     */
+    private void putLoanRow(LoanRow row) {
+        loansSync.put(row);
+        indexLoanRow(row);
+    }
+
+    /**
+     * @brief Rimuove la riga di un prestito, se presente.
+     *
+     * @param id L'ID del prestito.
+     */
+    private void removeLoanRow(LoanId id) {
+        LoanRow row = loansSync.get(id);
+        if (row == null) {
             return;
         }
-        List<Loan> activeLoans = loanService.getActiveLoansOrderedByDueDate();
-        activeLoansTable.getItems().setAll(activeLoans);
-        activeLoansTable.refresh();
+        loansSync.remove(id);
+        unindex(loanRowsByUser, row.getUserMatricola(), id);
+        unindex(loanRowsByIsbn, row.getLoan().getBookIsbn(), id);
+    }
+
+    /**
+     * @brief Registra la riga di un prestito negli indici per utente e libro.
+     *
+     * @param row La riga.
+     */
+    private void indexLoanRow(LoanRow row) {
+        LoanId id = row.getLoan().getId();
+        loanRowsByUser.computeIfAbsent(row.getUserMatricola(), key -> new LinkedHashSet<>()).add(id);
+        loanRowsByIsbn.computeIfAbsent(row.getLoan().getBookIsbn(), key -> new LinkedHashSet<>()).add(id);
+    }
+
+    /**
+     * @brief Rimuove un ID da un indice, eliminando le voci rimaste vuote.
+     *
+     * @param index L'indice.
+     * @param key La chiave (matricola o ISBN).
+     * @param id L'ID da rimuovere.
+     */
+    private static void unindex(Map<String, Set<LoanId>> index, String key, LoanId id) {
+        Set<LoanId> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @brief Sostituisce le righe indicate per cui la funzione restituisce un oggetto diverso.
+     *
+     * @param ids Gli ID delle righe (può essere null).
+     * @param update Restituisce la riga aggiornata, o la stessa riga se non cambia.
+     */
+    private void updateLoanRows(Set<LoanId> ids, UnaryOperator<LoanRow> update) {
+        if (ids == null) {
+            return;
+        }
+        for (LoanId id : new ArrayList<>(ids)) {
+            LoanRow row = loansSync.get(id);
+            LoanRow next = row == null ? null : update.apply(row);
+            if (next != row) {
+                loansSync.put(next);
+            }
+        }
+    }
+
+    /**
+     * @brief Aggiorna la tabella dei prestiti.
+     *
+     * Le righe uniscono prestiti, utenti e libri, quindi vengono ricaricati
+     * tutti i dati (in background, come refreshAllData).
+     */
+    public void refreshLoans() {
+        refreshAllData();
     }
 
     /**
      * @brief Filtra la tabella utenti in base alla barra di ricerca.
+     * La ricerca parte quando l'utente smette di scrivere e viene eseguita in background.
      * @param keyword Stringa di ricerca (cognome o matricola).
      */
     private void filterUsers(String keyword) {
-        if (keyword == null || keyword.isEmpty()) {
+        if (userService == null) {
+            return;
+        }
+        if (isBlank(keyword)) {
+            userSearch.cancel();
             refreshAllData();
         } else {
-            userSelectionTable.setItems(FXCollections.observableArrayList(userService.searchUsers(keyword)));
+            userSearch.submit(keyword);
         }
     }
 
     /**
      * @brief Filtra la tabella libri in base alla barra di ricerca.
+     * La ricerca parte quando l'utente smette di scrivere e viene eseguita in background.
      * @param keyword Titolo del libro o ISBN.
      */
     private void filterBooks(String keyword) {
-        if (keyword == null || keyword.isEmpty()) {
+        if (bookService == null) {
+            return;
+        }
+        if (isBlank(keyword)) {
+            bookSearch.cancel();
             refreshAllData();
         } else {
-            bookSelectionTable.setItems(FXCollections.observableArrayList(bookService.searchByTitle(keyword)));
+            bookSearch.submit(keyword);
         }
     }
 
+    /**
+     * @brief Mostra i risultati della ricerca utenti.
+     * @param users Gli utenti trovati.
+     */
+    private void showUserResults(List<User> users) {
+        showingUserResults = true;
+        usersSync.reset(users);
+    }
+
+    /**
+     * @brief Mostra i risultati della ricerca libri.
+     * @param books I libri trovati.
+     */
+    private void showBookResults(List<Book> books) {
+        showingBookResults = true;
+        booksSync.reset(books);
+    }
+
+    /**
+     * @brief Verifica se un testo è vuoto o composto solo da spazi.
+     * @param text Il testo (può essere null).
+     * @return true se il testo è vuoto.
+     */
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+
+    /**
+     * @brief Verifica se una query ha la forma di una matricola (10 cifre), come in UserService.
+     * @param query La query.
+     * @return true se è una matricola.
+     */
+    private static boolean isMatricola(String query) {
+        return query.matches("\\d{10}");
+    }
+
     /**
      * @brief Metodo ausiliario per visualizzare messaggi di errore critici. (ad
      * esempio impossibile registrare prestito, se l'utente ha già 3 prestiti
@@ -400,4 +767,22 @@ public class LoanController {
         alert.setTitle(title);
         alert.showAndWait();
     }
+
+    /**
+     * @brief Dati delle tre tabelle letti da un caricamento.
+     */
+    private static final class LoanTabData {
+
+        private final List<User> users;
+
+        private final List<Book> books;
+
+        private final List<LoanRow> loanRows;
+
+        LoanTabData(List<User> users, List<Book> books, List<LoanRow> loanRows) {
+            this.users = users;
+            this.books = books;
+            this.loanRows = loanRows;
+        }
+    }
 }
@@ -0,0 +1,223 @@
+/**
+ * @file LoanRow.java
+ * @brief Riga della tabella dei prestiti attivi, con i dati di utente e libro già uniti.
+ */
+package com.mycompany.gestionebiblioteca.ui.controllers;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ *
+ * @author Carmine
+ */
+
+/**
+ * @class LoanRow
+ * @brief Vista denormalizzata di un prestito per la TableView dei prestiti attivi.
+ *
+ * Le colonne Nome, Cognome, Libro e Autori mostravano dati di utente e libro
+ * cercandoli nei servizi a ogni disegno di ogni cella. Le righe vengono invece
+ * costruite una volta per aggiornamento, con un join in blocco fra prestiti,
+ * utenti e libri (join()), e restano valide fino al successivo aggiornamento:
+ * il disegno della tabella non esegue ricerche. Le modifiche pubblicate dai
+ * service producono una nuova riga (of(), withUser(), withBook()) solo per i
+ * prestiti interessati.
+ *
+ * La classe è immutabile (il prestito originale serve per la restituzione).
+ */
+public final class LoanRow {
+
+    /**
+     * @brief Titolo mostrato per un libro non più presente nel catalogo.
+     */
+    static final String MISSING_BOOK_TITLE = "Libro Rimosso";
+
+    private final Loan loan;
+
+    private final String userFirstName;
+
+    private final String userLastName;
+
+    private final String bookTitle;
+
+    private final String bookAuthors;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param loan Il prestito.
+     * @param user L'utente del prestito (null se non trovato).
+     * @param book Il libro del prestito (null se non trovato).
+     */
+    private LoanRow(Loan loan, User user, Book book) {
+        this(loan, user != null ? user.getFirstName() : "", user != null ? user.getLastName() : "",
+                book != null ? book.getTitle() : MISSING_BOOK_TITLE, book != null ? book.getAuthorsAsString() : "");
+    }
+
+    /**
+     * @brief Costruttore con i valori già calcolati.
+     *
+     * @param loan Il prestito.
+     * @param userFirstName Nome dell'utente.
+     * @param userLastName Cognome dell'utente.
+     * @param bookTitle Titolo del libro.
+     * @param bookAuthors Autori del libro.
+     */
+    private LoanRow(Loan loan, String userFirstName, String userLastName, String bookTitle, String bookAuthors) {
+        this.loan = loan;
+        this.userFirstName = userFirstName;
+        this.userLastName = userLastName;
+        this.bookTitle = bookTitle;
+        this.bookAuthors = bookAuthors;
+    }
+
+    /**
+     * @brief Crea la riga di un singolo prestito.
+     *
+     * @param loan Il prestito.
+     * @param user L'utente del prestito (null se non trovato).
+     * @param book Il libro del prestito (null se non trovato).
+     * @return La riga.
+     * @throws IllegalArgumentException Se il prestito è null.
+     */
+    public static LoanRow of(Loan loan, User user, Book book) {
+        if (loan == null) {
+            throw new IllegalArgumentException("loan non deve essere null");
+        }
+        return new LoanRow(loan, user, book);
+    }
+
+    /**
+     * @brief Restituisce la riga con i dati aggiornati dell'utente.
+     *
+     * @param user L'utente (null se è stato rimosso).
+     * @return Questa riga se nome e cognome non cambiano, altrimenti una nuova riga.
+     */
+    public LoanRow withUser(User user) {
+        String firstName = user != null ? user.getFirstName() : "";
+        String lastName = user != null ? user.getLastName() : "";
+        if (Objects.equals(firstName, userFirstName) && Objects.equals(lastName, userLastName)) {
+            return this;
+        }
+        return new LoanRow(loan, firstName, lastName, bookTitle, bookAuthors);
+    }
+
+    /**
+     * @brief Restituisce la riga con i dati aggiornati del libro.
+     *
+     * @param book Il libro (null se è stato rimosso).
+     * @return Questa riga se titolo e autori non cambiano, altrimenti una nuova riga.
+     */
+    public LoanRow withBook(Book book) {
+        String title = book != null ? book.getTitle() : MISSING_BOOK_TITLE;
+        String authors = book != null ? book.getAuthorsAsString() : "";
+        if (Objects.equals(title, bookTitle) && Objects.equals(authors, bookAuthors)) {
+            return this;
+        }
+        return new LoanRow(loan, userFirstName, userLastName, title, authors);
+    }
+
+    /**
+     * @brief Unisce prestiti, utenti e libri in righe della tabella.
+     *
+     * Utenti e libri vengono indicizzati una volta; il costo è lineare nel
+     * numero totale di elementi.
+     *
+     * @param loans I prestiti, nell'ordine in cui mostrarli.
+     * @param users Gli utenti.
+     * @param books I libri.
+     * @return Le righe, nello stesso ordine dei prestiti.
+     * @throws IllegalArgumentException Se un parametro è null.
+     */
+    public static List<LoanRow> join(List<Loan> loans, Collection<User> users, Collection<Book> books) {
+        if (loans == null || users == null || books == null) {
+            throw new IllegalArgumentException("loans, users e books non devono essere null");
+        }
+        Map<String, User> usersByMatricola = new HashMap<>(users.size() * 2);
+        for (User user : users) {
+            usersByMatricola.put(user.getMatricola(), user);
+        }
+        Map<String, Book> booksByIsbn = new HashMap<>(books.size() * 2);
+        for (Book book : books) {
+            booksByIsbn.put(book.getIsbn(), book);
+        }
+        List<LoanRow> rows = new ArrayList<>(loans.size());
+        for (Loan loan : loans) {
+            rows.add(new LoanRow(loan, usersByMatricola.get(loan.getUserMatricola()),
+                    booksByIsbn.get(loan.getBookIsbn())));
+        }
+        return rows;
+    }
+
+    /**
+     * @brief Restituisce il prestito della riga.
+     *
+     * @return Il prestito.
+     */
+    public Loan getLoan() {
+        return loan;
+    }
+
+    /**
+     * @brief Restituisce la matricola dell'utente.
+     *
+     * @return La matricola.
+     */
+    public String getUserMatricola() {
+        return loan.getUserMatricola();
+    }
+
+    /**
+     * @brief Restituisce il nome dell'utente ("" se l'utente non esiste più).
+     *
+     * @return Il nome.
+     */
+    public String getUserFirstName() {
+        return userFirstName;
+    }
+
+    /**
+     * @brief Restituisce il cognome dell'utente ("" se l'utente non esiste più).
+     *
+     * @return Il cognome.
+     */
+    public String getUserLastName() {
+        return userLastName;
+    }
+
+    /**
+     * @brief Restituisce il titolo del libro ("Libro Rimosso" se il libro non esiste più).
+     *
+     * @return Il titolo.
+     */
+    public String getBookTitle() {
+        return bookTitle;
+    }
+
+    /**
+     * @brief Restituisce gli autori del libro separati da virgola.
+     *
+     * @return Gli autori.
+     */
+    public String getBookAuthors() {
+        return bookAuthors;
+    }
+
+    /**
+     * @brief Restituisce la data di scadenza del prestito.
+     *
+     * @return La data di scadenza.
+     */
+    public LocalDate getDueDate() {
+        return loan.getDueDate();
+    }
+}
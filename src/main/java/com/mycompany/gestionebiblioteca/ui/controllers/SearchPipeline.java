@@ -0,0 +1,236 @@
+/**
+ * @file SearchPipeline.java
+ * @brief Ricerca durante la digitazione, con attesa, esecuzione in background e raffinamento.
+ */
+package com.mycompany.gestionebiblioteca.ui.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+/**
+ *
+ * @author Carmine
+ */
+
+/**
+ * @class SearchPipeline
+ * @brief Esegue le ricerche di un campo di testo senza bloccare il thread JavaFX.
+ *
+ * - **Attesa (debounce)**: la ricerca parte solo quando l'utente smette di
+ *   scrivere per DEFAULT_DELAY_MILLIS, non a ogni tasto.
+ * - **Background**: la query viene eseguita sui thread di BackgroundLoader e
+ *   il risultato viene pubblicato sul thread JavaFX con Platform.runLater.
+ * - **Ricerche superate**: una ricerca avviata dopo rende obsolete le
+ *   precedenti, i cui risultati vengono scartati anche se arrivano dopo.
+ * - **Raffinamento incrementale**: se la nuova query restringe la precedente
+ *   (ad esempio "ros" → "ross"), i risultati vengono filtrati dall'insieme
+ *   precedente con il Matcher, senza interrogare di nuovo i servizi.
+ *
+ * I metodi vanno chiamati dal thread JavaFX. Quando i dati cambiano il
+ * controller deve chiamare invalidate(), altrimenti un raffinamento
+ * potrebbe partire da risultati non più attuali.
+ *
+ * @param <T> Tipo dei risultati.
+ */
+public class SearchPipeline<T> {
+
+    /**
+     * @brief Attesa predefinita dopo l'ultimo tasto, in millisecondi.
+     */
+    public static final long DEFAULT_DELAY_MILLIS = 250;
+
+    /**
+     * @brief Verifica locale dei risultati, usata per il raffinamento incrementale.
+     *
+     * matches deve dare gli stessi risultati della query originale; canNarrow
+     * stabilisce quando i risultati di next sono sicuramente un sottoinsieme di
+     * quelli di previous (per default: next contiene previous, senza distinguere
+     * maiuscole e minuscole).
+     *
+     * @param <T> Tipo dei risultati.
+     */
+    @FunctionalInterface
+    public interface Matcher<T> {
+
+        /**
+         * @brief Verifica se un elemento soddisfa una query.
+         *
+         * @param item L'elemento.
+         * @param query La query (senza spazi esterni).
+         * @return true se l'elemento fa parte dei risultati della query.
+         */
+        boolean matches(T item, String query);
+
+        /**
+         * @brief Verifica se i risultati di una query si ottengono filtrando quelli della precedente.
+         *
+         * @param previous La query precedente.
+         * @param next La nuova query.
+         * @return true se il raffinamento è corretto.
+         */
+        default boolean canNarrow(String previous, String next) {
+            return next.toLowerCase(Locale.ROOT).contains(previous.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * @brief Esegue la query completa (fuori dal thread JavaFX).
+     */
+    private final Function<String, List<T>> query;
+
+    /**
+     * @brief Verifica locale per il raffinamento (null: nessun raffinamento).
+     */
+    private final Matcher<T> matcher;
+
+    /**
+     * @brief Riceve i risultati sul thread JavaFX.
+     */
+    private final Consumer<? super List<T>> onResults;
+
+    /**
+     * @brief Riceve gli errori sul thread JavaFX.
+     */
+    private final Consumer<? super Throwable> onError;
+
+    /**
+     * @brief Attesa dopo l'ultimo tasto.
+     */
+    private final PauseTransition debounce;
+
+    /**
+     * @brief Testo da cercare allo scadere dell'attesa.
+     */
+    private String pendingQuery = "";
+
+    /**
+     * @brief Numero dell'ultima ricerca avviata: i risultati con numero diverso sono superati.
+     */
+    private long generation;
+
+    /**
+     * @brief Ricerca in esecuzione.
+     */
+    private Future<?> running;
+
+    /**
+     * @brief Ultima query pubblicata (null se non riutilizzabile).
+     */
+    private String lastQuery;
+
+    /**
+     * @brief Risultati dell'ultima query pubblicata.
+     */
+    private List<T> lastResults;
+
+    /**
+     * @brief Costruttore.
+     *
+     * @param delayMillis Attesa dopo l'ultimo tasto, in millisecondi.
+     * @param query Esegue la query completa (in background).
+     * @param matcher Verifica locale per il raffinamento (null per disattivarlo).
+     * @param onResults Riceve i risultati sul thread JavaFX.
+     * @param onError Riceve gli errori sul thread JavaFX.
+     * @throws IllegalArgumentException Se query, onResults o onError sono null.
+     */
+    public SearchPipeline(long delayMillis, Function<String, List<T>> query, Matcher<T> matcher,
+            Consumer<? super List<T>> onResults, Consumer<? super Throwable> onError) {
+        if (query == null || onResults == null || onError == null) {
+            throw new IllegalArgumentException("query, onResults e onError non devono essere null");
+        }
+        this.query = query;
+        this.matcher = matcher;
+        this.onResults = onResults;
+        this.onError = onError;
+        this.debounce = new PauseTransition(Duration.millis(delayMillis));
+        this.debounce.setOnFinished(event -> execute(pendingQuery));
+    }
+
+    /**
+     * @brief Registra il nuovo testo e riavvia l'attesa.
+     *
+     * @param text Il testo del campo di ricerca (gli spazi esterni vengono ignorati).
+     */
+    public void submit(String text) {
+        pendingQuery = text == null ? "" : text.trim();
+        debounce.playFromStart();
+    }
+
+    /**
+     * @brief Annulla la ricerca in attesa o in esecuzione (i suoi risultati non verranno pubblicati).
+     */
+    public void cancel() {
+        debounce.stop();
+        generation++;
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    /**
+     * @brief Dimentica i risultati precedenti, ad esempio dopo una modifica ai dati.
+     */
+    public void invalidate() {
+        lastQuery = null;
+        lastResults = null;
+    }
+
+    /**
+     * @brief Avvia la ricerca in background, raffinando i risultati precedenti quando possibile.
+     *
+     * @param text La query.
+     */
+    private void execute(String text) {
+        cancel();
+        long current = generation;
+        List<T> base = matcher != null && lastQuery != null && matcher.canNarrow(lastQuery, text)
+                ? lastResults : null;
+        running = BackgroundLoader.EXECUTOR.submit(() -> {
+            try {
+                List<T> results;
+                if (base != null) {
+                    results = new ArrayList<>();
+                    for (T item : base) {
+                        if (matcher.matches(item, text)) {
+                            results.add(item);
+                        }
+                    }
+                } else {
+                    results = query.apply(text);
+                }
+                Platform.runLater(() -> publish(current, text, results));
+            } catch (RuntimeException e) {
+                Platform.runLater(() -> {
+                    if (current == generation) {
+                        onError.accept(e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @brief Pubblica i risultati se la ricerca non è stata superata.
+     *
+     * @param searchGeneration Numero della ricerca.
+     * @param text La query.
+     * @param results I risultati.
+     */
+    private void publish(long searchGeneration, String text, List<T> results) {
+        if (searchGeneration != generation) {
+            return;
+        }
+        running = null;
+        lastQuery = text;
+        lastResults = results;
+        onResults.accept(results);
+    }
+}
@@ -3,8 +3,11 @@ package com.mycompany.gestionebiblioteca.ui.controllers;
 import com.mycompany.gestionebiblioteca.exceptions.NotFoundException;
 import com.mycompany.gestionebiblioteca.exceptions.ValidationException;
 import com.mycompany.gestionebiblioteca.model.User;
+import com.mycompany.gestionebiblioteca.service.EntityChange;
 import com.mycompany.gestionebiblioteca.service.UserService;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -56,19 +59,45 @@ public class UserController {
      */
     private final ObservableList<User> usersData = FXCollections.observableArrayList();
 
+    /**
+     * @brief Applica a usersData le modifiche degli utenti (ordinati per cognome e nome, come il service).
+     */
+    private final KeyedListSync<String, User> usersSync = new KeyedListSync<>(usersData, User::getMatricola,
+            Comparator.comparing(User::getLastName, Comparator.nullsLast(String::compareToIgnoreCase))
+                    .thenComparing(User::getFirstName, Comparator.nullsLast(String::compareToIgnoreCase)));
+
+    /**
+     * @brief true se la tabella mostra i risultati di una ricerca invece di tutti gli utenti.
+     */
+    private boolean showingSearchResults;
+
+    /**
+     * @brief true dopo il primo caricamento completo degli utenti.
+     */
+    private boolean loaded;
+
     /**
      * @brief Riferimento al servizio di business per gli utenti.
      */
     private UserService userService;
 
+    /**
+     * @brief Ricerca durante la digitazione (in background, con attesa e raffinamento incrementale).
+     */
+    private final SearchPipeline<User> userSearch = new SearchPipeline<>(SearchPipeline.DEFAULT_DELAY_MILLIS,
+            this::searchUsers, UserController::matchesUser, this::showSearchResults,
+            error -> showError("Errore durante la ricerca degli utenti: " + error.getMessage()));
+
     /**
      * @brief Inietta il servizio UserService e carica i dati iniziali.
      * Metodo chiamato da App.java. 
-     * Appena il servizio è disponibile, viene popolata la tabella con l'elenco completo degli utenti.
+     * Appena il servizio è disponibile, viene popolata la tabella con l'elenco completo degli utenti;
+     * da quel momento la tabella segue le modifiche pubblicate dal servizio.
      * @param userService L'istanza del servizio utenti.
      */
     public void setUserService(UserService userService) {
         this.userService = userService;
+        userService.changes().subscribe(KeyedListSync.onFxThread(this::onUsersChanged));
         refreshUsers();
     }
 
@@ -87,10 +116,16 @@ public class UserController {
 
         userTable.setItems(usersData);
 
-        // Listener per reset automatico della ricerca se il campo viene pulito (cleanForm)
+        // Ricerca durante la digitazione; reset automatico se il campo viene pulito (cleanForm)
         searchField.textProperty().addListener((observable, oldValue, newValue) -> {
+            if (userService == null) {
+                return;
+            }
             if (newValue == null || newValue.trim().isEmpty()) {
+                userSearch.cancel();
                 refreshUsers();
+            } else {
+                userSearch.submit(newValue);
             }
         });
 
@@ -131,38 +166,19 @@ public class UserController {
         // Se l'input contiene solo numeri
         if (query.matches("\\d+")) {
             if (query.length() > 10) {
-                usersData.clear();
+                showSearchResults(Collections.<User>emptyList());
                 showInfo("Nessun risultato: La matricola non può superare le 10 cifre.");
                 return;
             }
         }
-        // Scarichiamo la lista completa e filtriamo qui nel controller
-        List<User> allUsers = userService.getAllUsersOrderedByLastNameAndFirstName();
-        List<User> filteredResults = new ArrayList<>();
-        String lowerQuery = query.trim().toLowerCase();
-
-        for (User user : allUsers) {
-            // Check Matricola Parziale (es. cerco "06127" trova "06127...")
-            boolean matchMatricola = user.getMatricola() != null && user.getMatricola().contains(query);
-
-            // Check Cognome (Case Insensitive)
-            boolean matchLastName = user.getLastName() != null && user.getLastName().toLowerCase().contains(lowerQuery);
-
-            // Check Nome (Case Insensitive)
-            boolean matchFirstName = user.getFirstName() != null && user.getFirstName().toLowerCase().contains(lowerQuery);
-
-            // Se uno qualsiasi dei criteri combacia
-            if (matchMatricola || matchLastName || matchFirstName) {
-                filteredResults.add(user);
-            }
-        }
+        // la ricerca esplicita sostituisce quella durante la digitazione
+        userSearch.cancel();
+        List<User> filteredResults = searchUsers(query);
 
         if (filteredResults.isEmpty()) {
             showInfo("Nessun utente trovato per: " + query);
-            usersData.clear();
-        } else {
-            usersData.setAll(filteredResults);
         }
+        showSearchResults(filteredResults);
     }
 
     /**
@@ -183,7 +199,6 @@ public class UserController {
 
         try {
             userService.addUser(matricola, firstName, lastName, email);
-            refreshUsers();
             clearForm();
             showInfo("Utente aggiunto con successo!");
         } catch (ValidationException e) {
@@ -221,7 +236,6 @@ public class UserController {
 
         try {
             userService.updateUser(oldMatricola, newMatricola, firstName, lastName, email);
-            refreshUsers();
         } catch (ValidationException | NotFoundException e) {
             showError(e.getMessage());
         } catch (RuntimeException e) {
@@ -257,7 +271,6 @@ public class UserController {
             if (buttonType == ButtonType.OK) {
                 try {
                     userService.deleteUser(selected.getMatricola());
-                    refreshUsers();
                     clearForm();
                 } catch (NotFoundException e) {
                     showError(e.getMessage());
@@ -283,14 +296,92 @@ public class UserController {
         clearForm();
     }
 
+    /**
+     * @brief Scarica la lista completa e la filtra con matchesUser.
+     * @param query La query (senza spazi esterni).
+     * @return Gli utenti corrispondenti, ordinati per cognome e nome.
+     */
+    private List<User> searchUsers(String query) {
+        List<User> filteredResults = new ArrayList<>();
+        for (User user : userService.getAllUsersOrderedByLastNameAndFirstName()) {
+            if (matchesUser(user, query)) {
+                filteredResults.add(user);
+            }
+        }
+        return filteredResults;
+    }
+
+    /**
+     * @brief Verifica se un utente corrisponde alla ricerca.
+     * @param user L'utente.
+     * @param query La query (senza spazi esterni).
+     * @return true se matricola (parziale), cognome o nome contengono la query.
+     */
+    private static boolean matchesUser(User user, String query) {
+        String lowerQuery = query.toLowerCase();
+
+        // Check Matricola Parziale (es. cerco "06127" trova "06127...")
+        boolean matchMatricola = user.getMatricola() != null && user.getMatricola().contains(query);
+
+        // Check Cognome (Case Insensitive)
+        boolean matchLastName = user.getLastName() != null && user.getLastName().toLowerCase().contains(lowerQuery);
+
+        // Check Nome (Case Insensitive)
+        boolean matchFirstName = user.getFirstName() != null && user.getFirstName().toLowerCase().contains(lowerQuery);
+
+        // Se uno qualsiasi dei criteri combacia
+        return matchMatricola || matchLastName || matchFirstName;
+    }
+
     /**
      * @brief Ricarica la lista completa degli utenti dal servizio.
+     *
+     * I risultati delle ricerche precedenti non vengono più riutilizzati.
      */
     public void refreshUsers() {
+        userSearch.invalidate();
         if (userService != null) {
             List<User> allUsers = userService.getAllUsersOrderedByLastNameAndFirstName();
-            usersData.setAll(allUsers);
-            userTable.refresh();
+            showingSearchResults = false;
+            loaded = true;
+            usersSync.reset(allUsers);
+        }
+    }
+
+    /**
+     * @brief Carica gli utenti solo se non sono mai stati caricati (ad esempio alla selezione della scheda).
+     *
+     * Dopo il primo caricamento la tabella è già aggiornata dalle modifiche
+     * pubblicate dal servizio.
+     */
+    public void ensureLoaded() {
+        if (!loaded) {
+            refreshUsers();
+        }
+    }
+
+    /**
+     * @brief Mostra i risultati di una ricerca.
+     * @param users Gli utenti trovati, ordinati per cognome e nome.
+     */
+    private void showSearchResults(List<User> users) {
+        showingSearchResults = true;
+        usersSync.reset(users);
+    }
+
+    /**
+     * @brief Applica alla tabella le modifiche degli utenti (sul thread JavaFX).
+     *
+     * Viene aggiornata solo la riga dell'utente modificato; con una ricerca
+     * attiva vengono aggiornati o rimossi solo gli utenti già mostrati.
+     * @param changes Le modifiche di un'operazione.
+     */
+    private void onUsersChanged(List<EntityChange<String, User>> changes) {
+        userSearch.invalidate();
+        if (showingSearchResults) {
+            usersSync.applyToPresent(changes);
+        } else {
+            usersSync.apply(changes);
         }
     }
 
@@ -0,0 +1,53 @@
+/*
+ * Test di unità per la classe {@link LoanId}.
+ *
+ * Verificano che la forma compatta (numerica) conservi gli zeri iniziali,
+ * che la forma testuale sia quella storica "MATRICOLA:ISBN:YYYY-MM-DD" e
+ * che codici non numerici restino chiavi valide.
+ */
+package com.mycompany.gestionebiblioteca.model;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Giovanni
+ */
+class LoanIdTest {
+
+    /*
+     * La forma testuale si rilegge nello stesso identificativo, zeri iniziali compresi.
+     */
+    @Test
+    void textFormShouldRoundTrip() {
+        LoanId id = new LoanId("0612700001", "0781234567890", LocalDate.of(2024, 3, 1));
+
+        assertEquals("0612700001:0781234567890:2024-03-01", id.toString());
+        assertEquals(id, LoanId.parse(id.toString()));
+        assertEquals(id.hashCode(), LoanId.parse(id.toString()).hashCode());
+        assertEquals("0612700001", id.getUserMatricola());
+    }
+
+    /*
+     * L'identificativo di un prestito coincide con quello costruito dai suoi campi.
+     */
+    @Test
+    void loanIdShouldMatchItsFields() {
+        Loan loan = new Loan("user1", "9781234567890", LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
+
+        assertEquals(new LoanId("user1", "9781234567890", LocalDate.of(2024, 3, 1)), loan.getId());
+        assertNotEquals(new LoanId("user1", "9781234567890", LocalDate.of(2024, 3, 2)), loan.getId());
+        assertSame(loan.getId(), loan.getId());
+    }
+
+    /*
+     * Un testo senza i tre campi non è un identificativo valido.
+     */
+    @Test
+    void parseShouldRejectMalformedText() {
+        assertThrows(IllegalArgumentException.class, () -> LoanId.parse("0612700001:2024-03-01"));
+        assertThrows(IllegalArgumentException.class, () -> LoanId.parse("0612700001:9781234567890:ieri"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Test di unità per la classe {@link AtomicFileWriter}.
+ *
+ * Verificano che un salvataggio interrotto non tocchi il file esistente,
+ * che non restino file temporanei e che i backup ruotino correttamente.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import com.mycompany.gestionebiblioteca.model.User;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author valerialupo
+ */
+class AtomicFileWriterTest {
+
+    private static List<String> read(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    private static void write(Path file, String content, int backups) throws IOException {
+        AtomicFileWriter.write(file, temp -> Files.write(temp, Collections.singletonList(content),
+                StandardCharsets.UTF_8), backups);
+    }
+
+    /*
+     * Se la scrittura fallisce a metà il file precedente resta intatto e il
+     * temporaneo viene cancellato.
+     */
+    @Test
+    void failedWriteShouldLeaveTheTargetUntouched(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("users.txt");
+        write(file, "v1", 0);
+
+        assertThrows(IOException.class, () -> AtomicFileWriter.write(file, temp -> {
+            Files.write(temp, Collections.singletonList("mezzo"), StandardCharsets.UTF_8);
+            throw new IOException("disco pieno");
+        }, 0));
+
+        assertEquals(Collections.singletonList("v1"), read(file));
+        assertFalse(Files.exists(AtomicFileWriter.tempFileFor(file)));
+    }
+
+    /*
+     * Ogni salvataggio sposta indietro di una generazione i backup e
+     * conserva solo il numero di generazioni richiesto.
+     */
+    @Test
+    void backupsShouldRotateAndKeepTheConfiguredGenerations(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("books.txt");
+        write(file, "v1", 2);
+        assertFalse(Files.exists(AtomicFileWriter.backupFileFor(file, 1)));
+
+        write(file, "v2", 2);
+        write(file, "v3", 2);
+        write(file, "v4", 2);
+
+        assertEquals(Collections.singletonList("v4"), read(file));
+        assertEquals(Collections.singletonList("v3"), read(AtomicFileWriter.backupFileFor(file, 1)));
+        assertEquals(Collections.singletonList("v2"), read(AtomicFileWriter.backupFileFor(file, 2)));
+        assertFalse(Files.exists(AtomicFileWriter.backupFileFor(file, 3)));
+    }
+
+    /*
+     * I salvataggi di FileManager passano dal temporaneo e producono i backup configurati.
+     */
+    @Test
+    void fileManagerSavesShouldBeAtomicAndKeepBackups(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("users.txt");
+        FileManager fileManager = new FileManager(SnapshotFormat.TEXT, 1);
+        fileManager.saveUsers(file, Arrays.asList(new User("0612700001", "Mario", "Rossi", "m.rossi@studenti.unisa.it")));
+        fileManager.saveUsers(file, Collections.<User>emptyList());
+
+        assertTrue(fileManager.loadUsers(file).isEmpty());
+        assertEquals(1, fileManager.loadUsers(AtomicFileWriter.backupFileFor(file, 1)).size());
+        assertFalse(Files.exists(AtomicFileWriter.tempFileFor(file)));
+    }
+}
@@ -17,10 +17,14 @@
 package com.mycompany.gestionebiblioteca.persistence;
 
 import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
@@ -188,4 +192,126 @@ class FileManagerTest {
                 () -> fileManager.saveBooks(booksFile, Arrays.asList(invalidBook)));
     }
 
+    /*
+    * verifica che loadBooks lanci un'eccezione se un campo numerico non è valido
+     */
+    @Test
+    void loadBooksShouldThrowOnInvalidNumber(@TempDir Path tempDir) throws IOException {
+        Path booksFile = tempDir.resolve("books.txt");
+        Files.write(booksFile, Arrays.asList("9781234567890|Titolo|Autore|anno|5|3"), StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> fileManager.loadBooks(booksFile));
+    }
+
+    /*
+    * verifica che forEachBook consegni i libri uno alla volta, nell'ordine del file,
+    * con autori rifilati e titolo vuoto convertito in null
+     */
+    @Test
+    void forEachBookShouldStreamBooksInFileOrder(@TempDir Path tempDir) throws IOException {
+        Path booksFile = tempDir.resolve("books.txt");
+        List<String> lines = Arrays.asList(
+                "ISBN|Titolo|Autori|Anno|CopieTotali|CopieDisponibili",
+                "9781234567890||Eco ; ;Rossi|1980|5|3",
+                "9781234567891|Clean Code||2008|10|7"
+        );
+        Files.write(booksFile, lines, StandardCharsets.UTF_8);
+
+        List<Book> books = new ArrayList<>();
+        fileManager.forEachBook(booksFile, books::add);
+
+        assertEquals(2, books.size());
+        assertNull(books.get(0).getTitle());
+        assertEquals(Arrays.asList("Eco", "Rossi"), books.get(0).getAuthors());
+        assertTrue(books.get(1).getAuthors().isEmpty());
+        assertEquals(2008, books.get(1).getYear());
+    }
+
+    /*
+    * verifica che utenti e prestiti salvati vengano riletti identici
+     */
+    @Test
+    void usersAndLoansShouldRoundTrip(@TempDir Path tempDir) throws IOException {
+        Path usersFile = tempDir.resolve("users.txt");
+        Path loansFile = tempDir.resolve("loans.txt");
+        User user = new User("0612700001", "Mario", "", "mario@studenti.unisa.it");
+        Loan active = new Loan("0612700001", "9781234567890",
+                LocalDate.of(2024, 1, 10), LocalDate.of(2024, 2, 10), null);
+        Loan returned = new Loan("0612700001", "9781234567891",
+                LocalDate.of(2024, 1, 10), LocalDate.of(2024, 2, 10), LocalDate.of(2024, 1, 20));
+
+        fileManager.saveUsers(usersFile, Arrays.asList(user));
+        fileManager.saveLoans(loansFile, Arrays.asList(active, returned));
+
+        List<User> users = fileManager.loadUsers(usersFile);
+        assertEquals(1, users.size());
+        assertEquals("0612700001", users.get(0).getMatricola());
+        assertNull(users.get(0).getLastName());
+
+        List<Loan> loans = fileManager.loadLoans(loansFile);
+        assertEquals(2, loans.size());
+        assertNull(loans.get(0).getReturnDate());
+        assertEquals(LocalDate.of(2024, 2, 10), loans.get(0).getDueDate());
+        assertEquals(LocalDate.of(2024, 1, 20), loans.get(1).getReturnDate());
+    }
+
+    /*
+    * verifica che loadLoans lanci un'eccezione se una data non è valida
+     */
+    @Test
+    void loadLoansShouldThrowOnInvalidDate(@TempDir Path tempDir) throws IOException {
+        Path loansFile = tempDir.resolve("loans.txt");
+        Files.write(loansFile, Arrays.asList("0612700001|9781234567890|2024-02-30|2024-03-10|null"),
+                StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> fileManager.loadLoans(loansFile));
+    }
+
+    /*
+    * verifica che uno snapshot binario venga riconosciuto automaticamente
+    * e che codici numerici con zeri iniziali e codici non numerici
+    * vengano ricostruiti identici
+     */
+    @Test
+    void binarySnapshotShouldRoundTripAndBeAutoDetected(@TempDir Path tempDir) throws IOException {
+        Path usersFile = tempDir.resolve("users.bin");
+        Path loansFile = tempDir.resolve("loans.bin");
+        FileManager binaryManager = new FileManager(SnapshotFormat.BINARY);
+        List<User> users = Arrays.asList(
+                new User("0612700001", "Mario", "Rossi", "mario@studenti.unisa.it"),
+                new User("user1", null, "Bianchi", null));
+        Loan loan = new Loan("0612700001", "9781234567890",
+                LocalDate.of(2024, 1, 10), LocalDate.of(2024, 2, 10), null);
+
+        binaryManager.saveUsers(usersFile, users);
+        binaryManager.saveLoans(loansFile, Arrays.asList(loan));
+
+        // un FileManager testuale legge comunque lo snapshot binario
+        List<User> loadedUsers = fileManager.loadUsers(usersFile);
+        assertEquals(2, loadedUsers.size());
+        assertEquals("0612700001", loadedUsers.get(0).getMatricola());
+        assertEquals("user1", loadedUsers.get(1).getMatricola());
+        assertNull(loadedUsers.get(1).getFirstName());
+
+        List<Loan> loadedLoans = fileManager.loadLoans(loansFile);
+        assertEquals(1, loadedLoans.size());
+        assertEquals("9781234567890", loadedLoans.get(0).getBookIsbn());
+        assertEquals(LocalDate.of(2024, 2, 10), loadedLoans.get(0).getDueDate());
+        assertNull(loadedLoans.get(0).getReturnDate());
+    }
+
+    /*
+    * verifica che uno snapshot binario troncato venga rifiutato
+     */
+    @Test
+    void loadBooksShouldRejectTruncatedBinarySnapshot(@TempDir Path tempDir) throws IOException {
+        Path booksFile = tempDir.resolve("books.bin");
+        new FileManager(SnapshotFormat.BINARY).saveBooks(booksFile, Arrays.asList(
+                new Book("9781234567890", "Titolo", Arrays.asList("Autore"), 2000, 1, 1)));
+        byte[] content = Files.readAllBytes(booksFile);
+        Files.write(booksFile, Arrays.copyOf(content, content.length - 3));
+
+        assertThrows(IOException.class, () -> fileManager.loadBooks(booksFile));
+    }
+
 }
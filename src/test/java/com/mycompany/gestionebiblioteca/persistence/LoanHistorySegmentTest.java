@@ -0,0 +1,136 @@
+/*
+ * Test di unità per la classe {@link LoanHistorySegment}.
+ *
+ * Verificano che le ricerche rispettino l'ordine dei record (l'ultimo
+ * vince, le cancellazioni tolgono il prestito), che una riga incompleta
+ * in coda al file venga ignorata e tolta prima della scrittura successiva,
+ * e che conteggio e compattazione seguano i record validi.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author valerialupo
+ */
+class LoanHistorySegmentTest {
+
+    private static Loan returnedLoan(String matricola, String isbn, int day) {
+        return new Loan(matricola, isbn, LocalDate.of(2024, 3, day), LocalDate.of(2024, 3, day + 14),
+                LocalDate.of(2024, 3, day + 7));
+    }
+
+    /*
+     * Un record ripetuto sostituisce il precedente e una cancellazione lo toglie.
+     */
+    @Test
+    void findShouldApplyRecordsInOrder(@TempDir Path dir) throws IOException {
+        LoanHistorySegment segment = new LoanHistorySegment(dir.resolve("loans.txt.history"));
+        Loan first = returnedLoan("1234567890", "9781234567890", 1);
+        Loan second = returnedLoan("1234567890", "9781234567891", 2);
+        segment.append(Arrays.asList(first, second, returnedLoan("1234567891", "9781234567890", 3)));
+        first.setReturnDate(LocalDate.of(2024, 3, 4));
+        segment.append(Collections.singletonList(first));
+        segment.appendDelete(Collections.singletonList(LoanId.parse("1234567890:9781234567891:2024-03-02")));
+
+        List<Loan> found = segment.find(loan -> loan.getUserMatricola().equals("1234567890"));
+
+        assertEquals(1, found.size());
+        assertEquals(LocalDate.of(2024, 3, 4), found.get(0).getReturnDate());
+        assertTrue(segment.findById(LoanId.parse("1234567891:9781234567890:2024-03-03")).isPresent());
+    }
+
+    /*
+     * Una riga non terminata (scrittura interrotta) non viene letta.
+     */
+    @Test
+    void truncatedTailShouldBeIgnored(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("loans.txt.history");
+        LoanHistorySegment segment = new LoanHistorySegment(file);
+        segment.append(Collections.singletonList(returnedLoan("1234567890", "9781234567890", 1)));
+        Files.write(file, "S|1234567891|97812".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertEquals(1, segment.find(loan -> true).size());
+    }
+
+    /*
+     * Dopo un riavvio il frammento in coda viene tolto prima di archiviare altri
+     * prestiti: il record successivo non finisce attaccato e lo storico resta leggibile.
+     */
+    @Test
+    void truncatedTailShouldBeRemovedBeforeNextAppend(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("loans.txt.history");
+        new LoanHistorySegment(file).append(Collections.singletonList(returnedLoan("1234567890", "9781234567890", 1)));
+        Files.write(file, "S|1234567891|97812".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        new LoanHistorySegment(file).append(Collections.singletonList(returnedLoan("1234567892", "9781234567890", 2)));
+
+        LoanHistorySegment restarted = new LoanHistorySegment(file);
+        assertEquals(2, restarted.find(loan -> true).size());
+        assertEquals(2, restarted.count());
+    }
+
+    /*
+     * Conteggio e contains() seguono sostituzioni e cancellazioni; quando i record
+     * superati sono più di quelli validi il file viene riscritto con i soli validi.
+     */
+    @Test
+    void supersededRecordsShouldBeCompacted(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("loans.txt.history");
+        LoanHistorySegment segment = new LoanHistorySegment(file, 2);
+        Loan first = returnedLoan("1234567890", "9781234567890", 1);
+        Loan second = returnedLoan("1234567891", "9781234567890", 2);
+        segment.append(Arrays.asList(first, second, returnedLoan("1234567892", "9781234567890", 3)));
+        first.setReturnDate(LocalDate.of(2024, 3, 4));
+        segment.append(Collections.singletonList(first));
+        assertEquals(4, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+
+        segment.appendDelete(Arrays.asList(second.getId(), LoanId.parse("1234567899:9781234567890:2024-03-09")));
+
+        assertEquals(2, segment.count());
+        assertFalse(segment.contains(second.getId()));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("S|1234567892|"));
+        assertTrue(lines.get(1).endsWith("|2024-03-04"));
+        assertEquals(LocalDate.of(2024, 3, 4), new LoanHistorySegment(file).findById(first.getId()).get().getReturnDate());
+    }
+
+    /*
+     * I contatori vengono salvati accanto al segmento: dopo un riavvio il conteggio
+     * segue anche i record scritti dopo l'ultimo salvataggio e, se il file dei
+     * contatori manca, viene ricostruito dal segmento.
+     */
+    @Test
+    void countersShouldSurviveRestart(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("loans.txt.history");
+        LoanHistorySegment segment = new LoanHistorySegment(file, 2);
+        Loan first = returnedLoan("1234567890", "9781234567890", 1);
+        segment.append(Arrays.asList(first, returnedLoan("1234567891", "9781234567890", 2)));
+        assertTrue(Files.exists(dir.resolve("loans.txt.history.counters")));
+
+        LoanHistorySegment restarted = new LoanHistorySegment(file, 2);
+        first.setReturnDate(LocalDate.of(2024, 3, 4));
+        restarted.append(Collections.singletonList(first));
+        assertEquals(2, restarted.count());
+        assertFalse(restarted.contains(LoanId.parse("1234567890:9781234567890:2024-03-20")));
+        assertTrue(restarted.contains(first.getId()));
+
+        Files.delete(dir.resolve("loans.txt.history.counters"));
+        assertEquals(2, new LoanHistorySegment(file, 2).count());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Test di unità per la classe {@link RecordReader}.
+ *
+ * I test verificano che il lettore in streaming:
+ * 1) salti righe vuote e header (solo sulla prima riga)
+ * 2) suddivida correttamente i campi, compresi quelli vuoti
+ * 3) converta interi e date direttamente dalla riga
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author valerialupo
+ */
+class RecordReaderTest {
+
+    private static RecordReader readerOf(String content, String header) {
+        return new RecordReader(new BufferedReader(new StringReader(content)), header);
+    }
+
+    /*
+    * verifica che righe vuote e header vengano saltati e che un header
+    * ripetuto dopo la prima riga sia trattato come un record
+    */
+    @Test
+    void nextShouldSkipBlankLinesAndLeadingHeaderOnly() throws IOException {
+        RecordReader reader = readerOf("A|B\n\n   \n  x|y  \nA|B\n", "A|B");
+
+        assertTrue(reader.next());
+        assertEquals("x", reader.field(0));
+        assertEquals("y", reader.field(1));
+        assertEquals(4, reader.lineNumber());
+
+        assertTrue(reader.next());
+        assertEquals("A", reader.field(0));
+        assertFalse(reader.next());
+    }
+
+    /*
+    * verifica che i campi vuoti, anche in coda, vengano conservati
+    */
+    @Test
+    void fieldsShouldKeepEmptyValues() throws IOException {
+        RecordReader reader = readerOf("a||c|\n", null);
+
+        assertTrue(reader.next());
+        assertEquals(4, reader.fieldCount());
+        assertTrue(reader.isEmpty(1));
+        assertEquals("c", reader.field(2));
+        assertEquals("", reader.field(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> reader.field(4));
+    }
+
+    /*
+    * verifica la conversione dei campi numerici, compresi i casi limite
+    */
+    @Test
+    void intFieldShouldParseLikeIntegerParseInt() throws IOException {
+        RecordReader reader = readerOf("42|-7|+3|2147483647|-2147483648|2147483648|1a|\n", null);
+
+        assertTrue(reader.next());
+        assertEquals(42, reader.intField(0));
+        assertEquals(-7, reader.intField(1));
+        assertEquals(3, reader.intField(2));
+        assertEquals(Integer.MAX_VALUE, reader.intField(3));
+        assertEquals(Integer.MIN_VALUE, reader.intField(4));
+        assertThrows(NumberFormatException.class, () -> reader.intField(5));
+        assertThrows(NumberFormatException.class, () -> reader.intField(6));
+        assertThrows(NumberFormatException.class, () -> reader.intField(7));
+    }
+
+    /*
+    * verifica la conversione delle date e il rifiuto di date inesistenti
+    */
+    @Test
+    void dateFieldShouldParseIsoDates() throws IOException {
+        RecordReader reader = readerOf("2024-01-31|2024-02-30|31/01/2024| NULL \n", null);
+
+        assertTrue(reader.next());
+        assertEquals(LocalDate.of(2024, 1, 31), reader.dateField(0));
+        assertThrows(DateTimeParseException.class, () -> reader.dateField(1));
+        assertThrows(DateTimeParseException.class, () -> reader.dateField(2));
+        assertTrue(reader.fieldEqualsIgnoreCase(3, "null"));
+    }
+}
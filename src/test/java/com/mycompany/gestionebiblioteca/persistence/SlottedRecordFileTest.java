@@ -0,0 +1,109 @@
+/*
+ * Test di unità per la classe {@link SlottedRecordFile}.
+ *
+ * Verificano che gli aggiornamenti sul posto sopravvivano alla riapertura
+ * del file, che uno slot scritto a metà faccia tornare alla versione
+ * precedente del record e che gli slot liberati vengano riusati.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author valerialupo
+ */
+class SlottedRecordFileTest {
+
+    private static final byte KIND = BinarySnapshotCodec.BOOKS;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> read(Path file) throws IOException {
+        List<String> records = new ArrayList<>();
+        SlottedRecordFile.forEach(file, KIND, record -> records.add(new String(record, StandardCharsets.UTF_8)));
+        return records;
+    }
+
+    private static Path writeInitial(Path dir) throws IOException {
+        Path file = dir.resolve("books.dat");
+        Map<String, byte[]> records = new LinkedHashMap<>();
+        records.put("a", bytes("alfa"));
+        records.put("b", bytes("beta"));
+        SlottedRecordFile.write(file, KIND, records, 0);
+        return file;
+    }
+
+    /*
+     * Aggiornamenti, inserimenti e cancellazioni sul posto si rileggono dopo la chiusura.
+     */
+    @Test
+    void updatesShouldSurviveReopening(@TempDir Path dir) throws IOException {
+        Path file = writeInitial(dir);
+        try (SlottedRecordFile store = SlottedRecordFile.open(file, KIND)) {
+            assertEquals(2, store.size());
+            store.put("a", bytes("alfa2"));
+            store.put("c", bytes("gamma"));
+            store.remove("b");
+            store.force();
+        }
+
+        assertEquals(Arrays.asList("alfa2", "gamma"), read(file));
+        try (SlottedRecordFile store = SlottedRecordFile.open(file, KIND)) {
+            assertEquals(2, store.size());
+        }
+    }
+
+    /*
+     * Se lo slot appena scritto è corrotto (scrittura interrotta) resta valido il gemello precedente.
+     */
+    @Test
+    void tornSlotShouldFallBackToThePreviousVersion(@TempDir Path dir) throws IOException {
+        Path file = writeInitial(dir);
+        long before;
+        try (SlottedRecordFile store = SlottedRecordFile.open(file, KIND)) {
+            before = Files.size(file);
+            store.put("a", bytes("alfa2"));
+        }
+        // il primo aggiornamento del record "a" (posizione 0) va nel secondo gemello
+        int slotSize = (int) ((before - SlottedRecordFile.HEADER_SIZE) / 4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7f}), SlottedRecordFile.HEADER_SIZE + slotSize + 20);
+        }
+
+        assertEquals(Arrays.asList("alfa", "beta"), read(file));
+    }
+
+    /*
+     * Un record cancellato libera la posizione, che il record successivo riusa senza far crescere il file.
+     */
+    @Test
+    void freedSlotsShouldBeReused(@TempDir Path dir) throws IOException {
+        Path file = writeInitial(dir);
+        long size = Files.size(file);
+        try (SlottedRecordFile store = SlottedRecordFile.open(file, KIND)) {
+            store.remove("a");
+            store.put("c", bytes("gamma"));
+            assertTrue(store.fits("d", bytes("delta")));
+        }
+
+        assertEquals(size, Files.size(file));
+        assertEquals(2, read(file).size());
+    }
+}
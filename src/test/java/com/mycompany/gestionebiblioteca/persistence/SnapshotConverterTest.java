@@ -0,0 +1,64 @@
+/*
+ * Test di unità per la classe {@link SnapshotConverter}.
+ *
+ * I test verificano che la conversione testo -> binario -> testo
+ * restituisca esattamente il file di partenza.
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author valerialupo
+ */
+class SnapshotConverterTest {
+
+    /*
+    * verifica che i libri convertiti in binario e riconvertiti in testo
+    * producano lo stesso file
+    */
+    @Test
+    void booksShouldSurviveRoundTrip(@TempDir Path tempDir) throws IOException {
+        Path text = tempDir.resolve("books.txt");
+        Path binary = tempDir.resolve("books.bin");
+        Path back = tempDir.resolve("books-back.txt");
+        List<String> lines = Arrays.asList(
+                "ISBN|Titolo|Autori|Anno|CopieTotali|CopieDisponibili",
+                "9781234567890|Il nome della rosa|Umberto Eco|1980|5|3",
+                "0000000000001||Anonimo;Àlter Ègo|2008|10|7");
+        Files.write(text, lines, StandardCharsets.UTF_8);
+
+        assertEquals(2, SnapshotConverter.convertBooks(text, binary, SnapshotFormat.BINARY));
+        assertTrue(new String(Files.readAllBytes(binary), StandardCharsets.ISO_8859_1).startsWith("GBS"));
+        assertEquals(2, SnapshotConverter.convertBooks(binary, back, SnapshotFormat.TEXT));
+
+        assertEquals(lines, Files.readAllLines(back, StandardCharsets.UTF_8));
+    }
+
+    /*
+    * verifica che i prestiti possano essere convertiti sullo stesso file
+    */
+    @Test
+    void loansShouldConvertInPlace(@TempDir Path tempDir) throws IOException {
+        Path loans = tempDir.resolve("loans.txt");
+        List<String> lines = Arrays.asList(
+                "Matricola|ISBN|DataPrestito|DataRestituzionePrevista|DataRestituzioneEffettiva",
+                "0612700001|9781234567890|2024-01-10|2024-02-10|null",
+                "user1|isbn-x|2024-01-10|2024-02-10|2024-01-20");
+        Files.write(loans, lines, StandardCharsets.UTF_8);
+
+        SnapshotConverter.convertLoans(loans, loans, SnapshotFormat.BINARY);
+        SnapshotConverter.convertLoans(loans, loans, SnapshotFormat.TEXT);
+
+        assertEquals(lines, Files.readAllLines(loans, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Test di unità per la classe {@link WriteBehindPersister}.
+ *
+ * I test verificano che il motore di scrittura differita:
+ * 1) accorpi più segnalazioni per lo stesso file in una sola scrittura
+ * 2) scriva subito quando si raggiunge la dimensione massima del batch
+ * 3) scriva le modifiche in attesa su flush() e close()
+ * 4) riporti al chiamante gli errori delle scritture in background
+ * 5) venga usato correttamente dai repository su file
+ */
+package com.mycompany.gestionebiblioteca.persistence;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.repository.BookRepository;
+import com.mycompany.gestionebiblioteca.repository.FileBackedBookRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryBookRepository;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author valerialupo
+ */
+class WriteBehindPersisterTest {
+
+    /*
+    * verifica che molte segnalazioni per lo stesso file producano una sola scrittura
+    */
+    @Test
+    void markDirtyShouldCoalesceWritesForSameFile(@TempDir Path tempDir) {
+        AtomicInteger writes = new AtomicInteger();
+        WriteBehindPersister persister = new WriteBehindPersister(60_000, 10_000);
+        Path file = tempDir.resolve("books.txt");
+
+        for (int i = 0; i < 500; i++) {
+            persister.markDirty(file, writes::incrementAndGet);
+        }
+        persister.flush();
+
+        assertEquals(1, writes.get());
+        persister.close();
+    }
+
+    /*
+    * verifica che al raggiungimento del batch la scrittura parta senza attendere l'intervallo
+    */
+    @Test
+    void fullBatchShouldTriggerImmediateWrite(@TempDir Path tempDir) throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        WriteBehindPersister persister = new WriteBehindPersister(60_000, 3);
+        Path file = tempDir.resolve("users.txt");
+
+        for (int i = 0; i < 3; i++) {
+            persister.markDirty(file, written::countDown);
+        }
+
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        persister.close();
+    }
+
+    /*
+    * verifica che gli errori di scrittura vengano riportati al flush successivo
+    */
+    @Test
+    void flushShouldReportBackgroundFailures(@TempDir Path tempDir) {
+        WriteBehindPersister persister = new WriteBehindPersister(60_000, 10_000);
+        persister.markDirty(tempDir.resolve("loans.txt"), () -> {
+            throw new IOException("disco pieno");
+        });
+
+        assertThrows(UncheckedIOException.class, persister::flush);
+    }
+
+    /*
+    * verifica che dopo close() non sia più possibile segnalare modifiche
+    */
+    @Test
+    void markDirtyAfterCloseShouldThrow(@TempDir Path tempDir) {
+        WriteBehindPersister persister = new WriteBehindPersister(1000, 10);
+        persister.close();
+
+        assertThrows(IllegalStateException.class,
+                () -> persister.markDirty(tempDir.resolve("books.txt"), () -> { }));
+    }
+
+    /*
+    * verifica che una modifica segnalata durante il flush finale di close() venga
+    * rifiutata invece di andare persa
+    */
+    @Test
+    void markDirtyDuringCloseShouldThrow(@TempDir Path tempDir) throws InterruptedException {
+        WriteBehindPersister persister = new WriteBehindPersister(60_000, 10_000);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        persister.markDirty(tempDir.resolve("books.txt"), () -> {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread closer = new Thread(persister::close);
+        closer.start();
+
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class,
+                () -> persister.markDirty(tempDir.resolve("users.txt"), () -> { }));
+        release.countDown();
+        closer.join(5000);
+        assertFalse(closer.isAlive());
+    }
+
+    /*
+    * verifica che un repository su file con persister scriva il file solo al flush,
+    * con lo stato completo di tutte le modifiche accumulate
+    */
+    @Test
+    void fileBackedRepositoryShouldWriteBehind(@TempDir Path tempDir) throws IOException {
+        Path booksFile = tempDir.resolve("books.txt");
+        FileManager fileManager = new FileManager();
+        WriteBehindPersister persister = new WriteBehindPersister(60_000, 10_000);
+        BookRepository repository = new FileBackedBookRepository(
+                new InMemoryBookRepository(), fileManager, booksFile, persister);
+
+        for (int i = 0; i < 50; i++) {
+            repository.save(new Book(String.format("97800000000%02d", i), "Titolo " + i,
+                    Arrays.asList("Autore"), 2000, 1, 1));
+        }
+        assertTrue(fileManager.loadBooks(booksFile).isEmpty());
+
+        persister.close();
+
+        assertEquals(50, fileManager.loadBooks(booksFile).size());
+    }
+}
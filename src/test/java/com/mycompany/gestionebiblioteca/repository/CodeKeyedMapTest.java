@@ -0,0 +1,109 @@
+/*
+ * Test di unità per le classi {@link CodeKeyedMap}, {@link LongObjectMap} e
+ * {@link LongIntMap}.
+ *
+ * Verificano che la mappa si comporti come una Map<String, V> sia per i
+ * codici canonici (memorizzati come long) sia per quelli fuori formato,
+ * anche dopo molti inserimenti e cancellazioni.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import com.mycompany.gestionebiblioteca.model.NumericCode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Giovanni
+ */
+class CodeKeyedMapTest {
+
+    /*
+     * I codici canonici e quelli fuori formato convivono; gli zeri iniziali
+     * distinguono codici con lo stesso valore numerico.
+     */
+    @Test
+    void canonicalAndOtherCodesShouldBehaveLikeAMap() {
+        CodeKeyedMap<String> map = new CodeKeyedMap<>(NumericCode.MATRICOLA_DIGITS);
+        map.put("0612700001", "mario");
+        map.put("user1", "prova");
+        map.put("612700001", "nove cifre");
+
+        assertEquals("mario", map.get("0612700001"));
+        assertEquals("prova", map.get("user1"));
+        assertEquals("nove cifre", map.get("612700001"));
+        assertNull(map.get("0612700002"));
+        assertNull(map.get(null));
+        assertEquals(3, map.size());
+        assertEquals(3, new ArrayList<>(map.values()).size());
+
+        assertEquals("mario", map.put("0612700001", "luigi"));
+        assertEquals("luigi", map.remove("0612700001"));
+        assertFalse(map.containsKey("0612700001"));
+        assertEquals("x", map.computeIfAbsent("0612700003", code -> "x"));
+        assertEquals("x", map.computeIfAbsent("0612700003", code -> "y"));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.values().iterator().hasNext());
+    }
+
+    /*
+     * Una sequenza casuale di inserimenti e cancellazioni dà lo stesso
+     * risultato di una HashMap (verifica crescita e ricompattazione).
+     */
+    @Test
+    void randomOperationsShouldMatchHashMap() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long key = 9780000000000L + random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        List<Long> values = new ArrayList<>();
+        map.valueIterator().forEachRemaining(values::add);
+        assertEquals(expected.size(), values.size());
+        assertTrue(values.containsAll(expected.values()));
+    }
+
+    /*
+     * La variante con valori int si comporta come una HashMap<Long, Integer>,
+     * con MISSING al posto di null.
+     */
+    @Test
+    void longIntMapShouldMatchHashMap() {
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long key = 9780000000000L + random.nextInt(3000);
+            Integer previous = random.nextInt(3) == 0 ? expected.remove(key) : expected.put(key, i);
+            int actual = expected.containsKey(key) ? map.put(key, i) : map.remove(key);
+            assertEquals(previous == null ? LongIntMap.MISSING : previous, actual);
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+        assertFalse(map.containsKey(1L));
+        assertThrows(IllegalArgumentException.class, () -> map.put(1L, -1));
+        map.clear();
+        assertEquals(0, map.size());
+    }
+}
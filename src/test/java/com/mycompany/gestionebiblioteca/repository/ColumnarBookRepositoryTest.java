@@ -0,0 +1,140 @@
+/*
+ * Test di unità per la classe {@link ColumnarBookRepository}.
+ *
+ * Verificano che il repository a colonne si comporti come
+ * InMemoryBookRepository (ricerche, ordinamenti, cancellazioni) e che i
+ * libri restituiti siano copie indipendenti dalle colonne.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Giovanni
+ */
+class ColumnarBookRepositoryTest {
+
+    private ColumnarBookRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ColumnarBookRepository();
+        repository.save(new Book("9781234567890", "Clean Code", Arrays.asList("Robert Martin"), 2008, 2, 1));
+        repository.save(new Book("9781234567891", "Clean Architecture", Arrays.asList("Robert Martin"), 2017, 1, 1));
+        repository.save(new Book("9781234567892", "Refactoring", Arrays.asList("Martin Fowler", "Kent Beck"), 1999, 1, 0));
+        repository.save(new Book("isbn-test", "Algoritmi", Collections.<String>emptyList(), 2001, 1, 1));
+    }
+
+    private static List<String> titles(List<Book> books) {
+        List<String> result = new ArrayList<>();
+        for (Book book : books) {
+            result.add(book.getTitle());
+        }
+        return result;
+    }
+
+    /*
+     * Le ricerche e gli ordinamenti danno gli stessi risultati del repository in memoria.
+     */
+    @Test
+    void searchesShouldMatchInMemoryRepository() {
+        assertEquals(Arrays.asList("Clean Architecture", "Clean Code"), titles(repository.findByTitleContaining("CLEAN")));
+        assertEquals(Arrays.asList("Refactoring", "Clean Architecture", "Clean Code"),
+                titles(repository.findByAuthorContaining("martin")));
+        assertEquals(1, repository.findByAuthorContaining("beck").size());
+        assertTrue(repository.findByAuthorContaining("knuth").isEmpty());
+        assertEquals(1, repository.findByTitleAndAuthorsAndYear("refactoring",
+                Arrays.asList("kent beck", "MARTIN FOWLER"), 1999).size());
+        assertEquals(Arrays.asList("Algoritmi", "Clean Architecture", "Clean Code", "Refactoring"),
+                titles(repository.findAllOrderByTitle()));
+
+        Book book = repository.findById("9781234567892").get();
+        assertEquals(Arrays.asList("Martin Fowler", "Kent Beck"), book.getAuthors());
+        assertEquals(1999, book.getYear());
+        assertEquals(0, book.getAvailableCopies());
+        assertEquals("isbn-test", repository.findById("isbn-test").get().getIsbn());
+    }
+
+    /*
+     * Un libro letto è una copia: le modifiche contano solo dopo save.
+     */
+    @Test
+    void changesShouldBecomeVisibleOnlyAfterSave() {
+        Book book = repository.findById("9781234567890").get();
+        book.setAvailableCopies(0);
+        book.setTitle("Codice pulito");
+        assertEquals(1, repository.findById("9781234567890").get().getAvailableCopies());
+
+        repository.save(book);
+        assertEquals(0, repository.findById("9781234567890").get().getAvailableCopies());
+        assertEquals("Codice pulito", repository.findAllOrderByTitle().get(2).getTitle());
+        assertEquals(4, repository.count());
+    }
+
+    /*
+     * La cancellazione sposta l'ultima riga senza perdere né confondere i libri.
+     */
+    @Test
+    void deletesShouldKeepTheRemainingRowsConsistent() {
+        repository.deleteById("9781234567890");
+        repository.deleteById("unknown");
+
+        assertEquals(3, repository.count());
+        assertFalse(repository.existsById("9781234567890"));
+        assertEquals("Algoritmi", repository.findById("isbn-test").get().getTitle());
+        assertEquals("Refactoring", repository.findById("9781234567892").get().getTitle());
+        assertEquals(Arrays.asList("Algoritmi", "Clean Architecture", "Refactoring"),
+                titles(repository.findAllOrderByTitle()));
+
+        repository.deleteAll();
+        assertEquals(0, repository.count());
+        assertTrue(repository.findAll().isEmpty());
+        for (int i = 0; i < 40; i++) {
+            repository.save(new Book(String.format("97800000000%02d", i), "Libro " + i,
+                    Arrays.asList("Autore"), 2000, 1, 1));
+        }
+        assertEquals(40, repository.findByAuthorContaining("autore").size());
+    }
+
+    /*
+     * L'indice delle opere segue modifiche, cancellazioni e spostamenti di riga.
+     */
+    @Test
+    void workIndexShouldFollowUpdatesAndDeletes() {
+        repository.save(new Book("9781234567893", "Clean Code", Arrays.asList("Robert Martin"), 2008, 1, 1));
+        assertEquals(2, repository.findByTitleAndAuthorsAndYear("clean code", Arrays.asList("robert martin"), 2008).size());
+
+        Book book = repository.findById("9781234567890").get();
+        book.setTitle("Codice pulito");
+        repository.save(book);
+        assertEquals("9781234567893", repository.findByTitleAndAuthorsAndYear("Clean Code",
+                Arrays.asList("Robert Martin"), 2008).get(0).getIsbn());
+        assertEquals(1, repository.findByTitleAndAuthorsAndYear("Codice pulito",
+                Arrays.asList("Robert Martin"), 2008).size());
+
+        // la riga rimossa viene occupata dall'ultima (9781234567893)
+        repository.deleteById("9781234567891");
+        assertEquals("9781234567893", repository.findByTitleAndAuthorsAndYear("Clean Code",
+                Arrays.asList("Robert Martin"), 2008).get(0).getIsbn());
+        assertTrue(repository.findByTitleAndAuthorsAndYear("Clean Architecture",
+                Arrays.asList("Robert Martin"), 2017).isEmpty());
+        assertTrue(repository.findByTitleAndAuthorsAndYear("Algoritmi",
+                Collections.<String>emptyList(), 2001).isEmpty());
+
+        repository.deleteById("isbn-test");
+        repository.save(new Book("isbn-test", "Algoritmi", Arrays.asList("Cormen"), 2001, 1, 1));
+        assertEquals("isbn-test", repository.findByTitleAndAuthorsAndYear("algoritmi",
+                Arrays.asList("cormen"), 2001).get(0).getIsbn());
+
+        repository.deleteAll();
+        assertTrue(repository.findByTitleAndAuthorsAndYear("Clean Code", Arrays.asList("Robert Martin"), 2008).isEmpty());
+    }
+}
@@ -0,0 +1,78 @@
+package com.mycompany.gestionebiblioteca.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentBookRepositoryTest {
+
+    private ConcurrentBookRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ConcurrentBookRepository();
+    }
+
+    @Test
+    void searchesShouldBehaveLikeInMemoryRepository() {
+        repository.save(new Book("9781234567890", "Clean Code", Arrays.asList("Robert Martin"), 2008, 1, 1));
+        repository.save(new Book("9781234567891", "Clean Architecture", Arrays.asList("Robert Martin"), 2017, 1, 1));
+        repository.save(new Book("9781234567892", "Refactoring", Arrays.asList("Martin Fowler"), 1999, 1, 1));
+
+        List<Book> clean = repository.findByTitleContaining("CLEAN");
+        assertEquals(2, clean.size());
+        assertEquals("Clean Architecture", clean.get(0).getTitle());
+        assertEquals(3, repository.findByAuthorContaining("martin").size());
+
+        repository.deleteById("9781234567892");
+        assertTrue(repository.findByTitleContaining("refac").isEmpty());
+        assertEquals("Clean Architecture", repository.findAllOrderByTitle().get(0).getTitle());
+    }
+
+    @Test
+    void batchOperationsShouldKeepIndexesInSync() {
+        repository.saveAll(Arrays.asList(
+                new Book("9781234567890", "Clean Code", Arrays.asList("Robert Martin"), 2008, 1, 1),
+                new Book("9781234567891", "Clean Architecture", Arrays.asList("Robert Martin"), 2017, 1, 1)));
+        assertEquals(2, repository.findByTitleContaining("clean").size());
+
+        repository.deleteAllById(Arrays.asList("9781234567890", null, "0000000000000"));
+        assertEquals(1, repository.count());
+        assertEquals(1, repository.findByAuthorContaining("martin").size());
+        assertTrue(repository.findByTitleAndAuthorsAndYear("Clean Code", Arrays.asList("Robert Martin"), 2008).isEmpty());
+    }
+
+    @Test
+    void concurrentSavesShouldAllBeVisible() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 250;
+            futures.add(executor.submit(() -> {
+                for (int i = offset; i < offset + 250; i++) {
+                    repository.save(new Book(String.format("978000000%04d", i), "Titolo " + i,
+                            Arrays.asList("Autore"), 2000, 1, 1));
+                    repository.findByTitleContaining("titolo");
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(1000, repository.count());
+        assertEquals(1000, repository.findAll().size());
+        assertEquals(1000, repository.findByAuthorContaining("aut").size());
+    }
+}
@@ -0,0 +1,100 @@
+package com.mycompany.gestionebiblioteca.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentLoanRepositoryTest {
+
+    private ConcurrentLoanRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ConcurrentLoanRepository();
+    }
+
+    private Loan createLoan(String matricola, String isbn, int dueDay, LocalDate returnDate) {
+        return new Loan(matricola, isbn, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, dueDay), returnDate);
+    }
+
+    @Test
+    void queriesShouldBehaveLikeInMemoryRepository() {
+        Loan first = createLoan("user1", "9781234567890", 20, null);
+        Loan second = createLoan("user1", "9781234567891", 10, null);
+        Loan returned = createLoan("user2", "9781234567890", 5, LocalDate.of(2024, 3, 4));
+        repository.save(first);
+        repository.save(second);
+        repository.save(returned);
+
+        List<Loan> active = repository.findActiveLoansOrderByDueDate();
+        assertEquals(2, active.size());
+        assertEquals(second, active.get(0));
+        assertEquals(first, active.get(1));
+        assertEquals(2, repository.findActiveLoansByUser("user1").size());
+        assertEquals(2, repository.findByBookIsbn("9781234567890").size());
+
+        first.setReturnDate(LocalDate.of(2024, 3, 6));
+        repository.save(first);
+        repository.deleteById(LoanId.parse("user2:9781234567890:2024-03-01"));
+
+        assertEquals(1, repository.findActiveLoansByUser("user1").size());
+        assertEquals(1, repository.findByBookIsbn("9781234567890").size());
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    void concurrentWritersShouldNotLoseUpdatesAndReadersShouldSeeConsistentSnapshots() throws Exception {
+        int writers = 4;
+        int loansPerWriter = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        AtomicBoolean inconsistent = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+
+        // lettore: ogni snapshot dei prestiti attivi deve contenere solo prestiti attivi, ordinati per scadenza
+        Future<?> reader = executor.submit(() -> {
+            while (!done.get()) {
+                List<Loan> active = repository.findActiveLoansOrderByDueDate();
+                for (int i = 0; i < active.size(); i++) {
+                    Loan loan = active.get(i);
+                    if (loan == null || (i > 0 && active.get(i - 1).getDueDate().isAfter(loan.getDueDate()))) {
+                        inconsistent.set(true);
+                    }
+                }
+            }
+        });
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String matricola = "user" + w;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < loansPerWriter; i++) {
+                    repository.save(createLoan(matricola, String.format("978000000%04d", i), 1 + i % 28, null));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        done.set(true);
+        reader.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertFalse(inconsistent.get());
+        assertEquals(writers * loansPerWriter, repository.count());
+        assertEquals(writers * loansPerWriter, repository.findActiveLoansOrderByDueDate().size());
+        assertEquals(loansPerWriter, repository.findActiveLoansByUser("user0").size());
+    }
+}
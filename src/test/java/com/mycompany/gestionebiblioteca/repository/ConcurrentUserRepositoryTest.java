@@ -0,0 +1,53 @@
+package com.mycompany.gestionebiblioteca.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.mycompany.gestionebiblioteca.model.User;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentUserRepositoryTest {
+
+    private ConcurrentUserRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ConcurrentUserRepository();
+    }
+
+    @Test
+    void operationsShouldBehaveLikeInMemoryRepository() {
+        repository.save(new User("user1", "Mario", "Rossi", "mario@example.com"));
+        repository.save(new User("user2", "Anna", "Rossini", "anna@example.com"));
+        repository.save(new User("user3", "Luca", "Bianchi", "luca@example.com"));
+
+        List<User> rossi = repository.findByLastNameContaining(" ross ");
+        assertEquals(2, rossi.size());
+        assertEquals("user1", rossi.get(0).getMatricola());
+        assertEquals("user3", repository.findAllOrderByLastNameAndFirstName().get(0).getMatricola());
+
+        repository.deleteById("user1");
+        assertFalse(repository.existsById("user1"));
+        assertEquals(2, repository.count());
+        assertThrows(IllegalArgumentException.class, () -> repository.save(null));
+    }
+
+    @Test
+    void findByEmailIgnoreCaseShouldUseUpdatedEmails() {
+        User user = new User("user1", "Mario", "Rossi", "mario@example.com");
+        repository.save(user);
+        assertEquals(1, repository.findByEmailIgnoreCase("MARIO@example.com").size());
+
+        user.setEmail("m.rossi@example.com");
+        repository.save(user);
+        assertTrue(repository.findByEmailIgnoreCase("mario@example.com").isEmpty());
+        assertEquals("user1", repository.findByEmailIgnoreCase("m.rossi@example.com").get(0).getMatricola());
+
+        repository.deleteAll();
+        assertTrue(repository.findByEmailIgnoreCase("m.rossi@example.com").isEmpty());
+    }
+}
@@ -18,11 +18,13 @@ package com.mycompany.gestionebiblioteca.repository;
 import com.mycompany.gestionebiblioteca.exceptions.NotFoundException;
 import com.mycompany.gestionebiblioteca.model.Book;
 import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.SnapshotFormat;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -89,4 +91,72 @@ public class FileBackedBookRepositoryTest {
         assertEquals(Arrays.asList("Author1"), first.getAuthors());
     }
     
+    
+    /*
+    * verifica che saveAll e deleteAllById scrivano il file una sola volta
+    * per blocco, qualunque sia il numero di libri coinvolti
+    */
+    @Test
+    void batchOperationsShouldWriteTheFileOncePerBatch(@TempDir Path tempDir) throws IOException {
+        Path booksFile = tempDir.resolve("books.txt");
+        int[] writes = new int[1];
+        FileManager countingFileManager = new FileManager() {
+            @Override
+            public void saveBooks(Path file, Collection<Book> books) throws IOException {
+                writes[0]++;
+                super.saveBooks(file, books);
+            }
+        };
+        FileBackedBookRepository repository = new FileBackedBookRepository(new InMemoryBookRepository(),
+                countingFileManager, booksFile);
+        writes[0] = 0;
+
+        repository.saveAll(Arrays.asList(
+                new Book("9781234567890", "Title1", Arrays.asList("Author1"), 2020, 1, 1),
+                new Book("9781234567891", "Title2", Arrays.asList("Author2"), 2021, 1, 1),
+                new Book("9781234567892", "Title3", Arrays.asList("Author3"), 2022, 1, 1)));
+        assertEquals(1, writes[0]);
+        assertEquals(4, Files.readAllLines(booksFile, StandardCharsets.UTF_8).size());
+
+        repository.deleteAllById(Arrays.asList("9781234567890", "9781234567892"));
+        assertEquals(2, writes[0]);
+        assertEquals(2, Files.readAllLines(booksFile, StandardCharsets.UTF_8).size());
+    }
+    
+
+    /*
+    * con il formato SLOTTED una modifica riscrive solo il record del libro:
+    * il file non viene riscritto per intero e la sua dimensione non cambia
+    */
+    @Test
+    void slottedFormatShouldUpdateOnlyTheChangedBooks(@TempDir Path tempDir) throws IOException {
+        Path booksFile = tempDir.resolve("books.dat");
+        int[] fullWrites = new int[1];
+        FileManager countingFileManager = new FileManager(SnapshotFormat.SLOTTED, 0) {
+            @Override
+            public void saveBooks(Path file, Collection<Book> books) throws IOException {
+                fullWrites[0]++;
+                super.saveBooks(file, books);
+            }
+        };
+        FileBackedBookRepository repository = new FileBackedBookRepository(new InMemoryBookRepository(),
+                countingFileManager, booksFile);
+
+        repository.saveAll(Arrays.asList(
+                new Book("9781234567890", "Title1", Arrays.asList("Author1"), 2020, 1, 1),
+                new Book("9781234567891", "Title2", Arrays.asList("Author2"), 2021, 1, 1)));
+        long size = Files.size(booksFile);
+        fullWrites[0] = 0;
+
+        repository.save(new Book("9781234567890", "Title1", Arrays.asList("Author1"), 2020, 1, 0));
+        repository.deleteById("9781234567891");
+        assertEquals(0, fullWrites[0]);
+        assertEquals(size, Files.size(booksFile));
+
+        countingFileManager.close();
+        List<Book> reloaded = new FileManager().loadBooks(booksFile);
+        assertEquals(1, reloaded.size());
+        assertEquals(0, reloaded.get(0).getAvailableCopies());
+    }
+
 }
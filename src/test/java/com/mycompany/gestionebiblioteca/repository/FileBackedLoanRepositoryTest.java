@@ -15,12 +15,24 @@
 package com.mycompany.gestionebiblioteca.repository;
 
 import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
+import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.LoanHistorySegment;
+import com.mycompany.gestionebiblioteca.persistence.LoanJournal;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  *
@@ -58,8 +70,8 @@ class FileBackedLoanRepositoryTest {
      *
     * Questo garantisce l'univocità del prestito nel repository
     */
-    private String idFor(Loan loan) {
-        return loan.getUserMatricola() + ":" + loan.getBookIsbn() + ":" + loan.getLoanDate();
+    private LoanId idFor(Loan loan) {
+        return new LoanId(loan.getUserMatricola(), loan.getBookIsbn(), loan.getLoanDate());
     }
 
     
@@ -101,7 +113,7 @@ class FileBackedLoanRepositoryTest {
     @Test
     void existsByIdAndCountShouldReflectStoredLoans() {
         assertEquals(0, repository.count());
-        assertFalse(repository.existsById("some:id"));
+        assertFalse(repository.existsById(LoanId.parse("0000000000:0000000000000:2000-01-01")));
 
         Loan loan1 = createLoan("1234567890", "9781234567890",
                 LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
@@ -113,7 +125,7 @@ class FileBackedLoanRepositoryTest {
         assertEquals(2, repository.count());
         assertTrue(repository.existsById(idFor(loan1)));
         assertTrue(repository.existsById(idFor(loan2)));
-        assertFalse(repository.existsById("unknown:id"));
+        assertFalse(repository.existsById(LoanId.parse("9999999999:9999999999999:2000-01-01")));
     }
 
     
@@ -127,7 +139,7 @@ class FileBackedLoanRepositoryTest {
         Loan loan = createLoan("1234567890", "9781234567890",
                 LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
         repository.save(loan);
-        String id = idFor(loan);
+        LoanId id = idFor(loan);
         assertTrue(repository.existsById(id));
 
         repository.deleteById(id);
@@ -278,4 +290,242 @@ class FileBackedLoanRepositoryTest {
         assertTrue(result.isEmpty());
     }
     
+
+    
+    /*
+    * crea un repository file-backed in modalità journal sui file della directory indicata
+    */
+    private FileBackedLoanRepository journaledRepository(Path dir, int threshold) {
+        Path loansFile = dir.resolve("loans.txt");
+        return new FileBackedLoanRepository(new InMemoryLoanRepository(), new FileManager(), loansFile,
+                new LoanJournal(LoanJournal.defaultPathFor(loansFile)), threshold);
+    }
+    
+    
+    /*
+    * verifica che in modalità journal un salvataggio venga aggiunto al journal
+    * senza riscrivere il file dei prestiti
+    */
+    @Test
+    void journaledSaveShouldAppendToJournalWithoutRewritingSnapshot(@TempDir Path tempDir) throws IOException {
+        FileBackedLoanRepository journaled = journaledRepository(tempDir, 100);
+        Path loansFile = tempDir.resolve("loans.txt");
+        List<String> snapshotBefore = Files.readAllLines(loansFile, StandardCharsets.UTF_8);
+
+        journaled.save(createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null));
+
+        assertEquals(snapshotBefore, Files.readAllLines(loansFile, StandardCharsets.UTF_8));
+        List<String> journalLines = Files.readAllLines(tempDir.resolve("loans.txt.journal"), StandardCharsets.UTF_8);
+        assertEquals(1, journalLines.size());
+        assertEquals("S|1234567890|9781234567890|2024-03-01|2024-03-15|null", journalLines.get(0));
+    }
+    
+    
+    /*
+    * verifica che un salvataggio in blocco che supera la soglia del journal
+    * venga scritto direttamente come snapshot, lasciando il journal vuoto
+    */
+    @Test
+    void journaledSaveAllOverThresholdShouldCompactInsteadOfAppending(@TempDir Path tempDir) throws IOException {
+        FileBackedLoanRepository journaled = journaledRepository(tempDir, 3);
+        List<Loan> batch = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            batch.add(createLoan("123456789" + i, "9781234567890",
+                    LocalDate.of(2024, 3, i), LocalDate.of(2024, 3, 15), null));
+        }
+
+        assertEquals(5, journaled.saveAll(batch).size());
+
+        assertEquals(6, Files.readAllLines(tempDir.resolve("loans.txt"), StandardCharsets.UTF_8).size());
+        Path journalFile = tempDir.resolve("loans.txt.journal");
+        assertTrue(!Files.exists(journalFile) || Files.size(journalFile) == 0);
+        assertEquals(5, journaledRepository(tempDir, 3).count());
+    }
+    
+    
+    /*
+    * verifica che salvataggi e cancellazioni in blocco sotto la soglia finiscano
+    * nel journal come un record per prestito e vengano rieseguiti all'avvio
+    */
+    @Test
+    void journaledBatchesShouldAppendOneRecordPerLoan(@TempDir Path tempDir) throws IOException {
+        FileBackedLoanRepository journaled = journaledRepository(tempDir, 100);
+        List<Loan> batch = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            batch.add(createLoan("123456789" + i, "9781234567890",
+                    LocalDate.of(2024, 3, i), LocalDate.of(2024, 3, 15), null));
+        }
+
+        journaled.saveAll(batch);
+        journaled.deleteAllById(Arrays.asList(idFor(batch.get(0)), idFor(batch.get(1))));
+
+        List<String> journalLines = Files.readAllLines(tempDir.resolve("loans.txt.journal"), StandardCharsets.UTF_8);
+        assertEquals(5, journalLines.size());
+        assertTrue(journalLines.get(2).startsWith("S|1234567893|"));
+        assertTrue(journalLines.get(3).startsWith("D|1234567891:"));
+        assertEquals(1, journaledRepository(tempDir, 100).count());
+    }
+    
+    
+    /*
+    * verifica che all'avvio il journal venga rieseguito sopra lo snapshot
+    * (salvataggi, aggiornamenti e cancellazioni) e poi compattato
+    */
+    @Test
+    void journalShouldBeReplayedAndCompactedOnStartup(@TempDir Path tempDir) throws IOException {
+        FileBackedLoanRepository journaled = journaledRepository(tempDir, 100);
+        Loan kept = createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
+        Loan removed = createLoan("1234567891", "9781234567891",
+                LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 16), null);
+        journaled.save(kept);
+        journaled.save(removed);
+        kept.setReturnDate(LocalDate.of(2024, 3, 10));
+        journaled.save(kept);
+        journaled.deleteById(idFor(removed));
+
+        FileBackedLoanRepository reloaded = journaledRepository(tempDir, 100);
+
+        assertEquals(1, reloaded.count());
+        assertEquals(LocalDate.of(2024, 3, 10), reloaded.findById(idFor(kept)).get().getReturnDate());
+        assertFalse(Files.exists(tempDir.resolve("loans.txt.journal")));
+        assertEquals(1, new FileManager().loadLoans(tempDir.resolve("loans.txt")).size());
+    }
+    
+    
+    /*
+    * verifica che al raggiungimento della soglia il journal venga ripiegato nello snapshot
+    */
+    @Test
+    void journalShouldBeCompactedWhenThresholdIsReached(@TempDir Path tempDir) throws IOException {
+        FileBackedLoanRepository journaled = journaledRepository(tempDir, 2);
+
+        journaled.save(createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null));
+        assertTrue(Files.exists(tempDir.resolve("loans.txt.journal")));
+        journaled.save(createLoan("1234567891", "9781234567891",
+                LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 16), null));
+
+        assertFalse(Files.exists(tempDir.resolve("loans.txt.journal")));
+        assertEquals(2, new FileManager().loadLoans(tempDir.resolve("loans.txt")).size());
+    }
+    
+    
+    /*
+    * verifica che un record incompleto in coda al journal (scrittura interrotta) venga ignorato
+    */
+    @Test
+    void truncatedJournalTailShouldBeIgnored(@TempDir Path tempDir) throws IOException {
+        journaledRepository(tempDir, 100).save(createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null));
+        Files.write(tempDir.resolve("loans.txt.journal"), "S|1234567891|97812".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        FileBackedLoanRepository reloaded = journaledRepository(tempDir, 100);
+
+        assertEquals(1, reloaded.count());
+    }
+    
+    /*
+    * verifica che un journal con il solo record incompleto venga ripulito:
+    * il prestito successivo non finisce attaccato al frammento e il riavvio riesce
+    */
+    @Test
+    void truncatedJournalTailShouldBeRemovedBeforeNextAppend(@TempDir Path tempDir) throws IOException {
+        Path journalFile = tempDir.resolve("loans.txt.journal");
+        Files.write(journalFile, "S|1234567891|97812".getBytes(StandardCharsets.UTF_8));
+
+        FileBackedLoanRepository reloaded = journaledRepository(tempDir, 100);
+        assertEquals(0, reloaded.count());
+        reloaded.save(createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null));
+
+        FileBackedLoanRepository restarted = journaledRepository(tempDir, 100);
+        assertEquals(1, restarted.count());
+        assertEquals("1234567890", restarted.findAll().get(0).getUserMatricola());
+    }
+    
+
+    private FileBackedLoanRepository tieredRepository(Path dir, InMemoryLoanRepository activeTier) {
+        Path loansFile = dir.resolve("loans.txt");
+        return new FileBackedLoanRepository(activeTier, new FileManager(), loansFile,
+                new LoanJournal(LoanJournal.defaultPathFor(loansFile)), 100, null,
+                new LoanHistorySegment(LoanHistorySegment.defaultPathFor(loansFile)));
+    }
+    
+    
+    /*
+    * verifica che con lo storico un prestito restituito esca dalla memoria
+    * ma resti visibile nelle ricerche per utente e per libro
+    */
+    @Test
+    void returnedLoansShouldMoveToHistoryAndStaySearchable(@TempDir Path tempDir) {
+        InMemoryLoanRepository activeTier = new InMemoryLoanRepository();
+        FileBackedLoanRepository tiered = tieredRepository(tempDir, activeTier);
+        Loan returned = createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
+        Loan active = createLoan("1234567890", "9781234567891",
+                LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 16), null);
+        tiered.save(returned);
+        tiered.save(active);
+
+        returned.setReturnDate(LocalDate.of(2024, 3, 10));
+        tiered.save(returned);
+
+        assertEquals(1, activeTier.count());
+        assertEquals(2, tiered.findByUserMatricola("1234567890").size());
+        assertEquals(1, tiered.findByBookIsbn("9781234567890").size());
+        assertEquals(1, tiered.findActiveLoansOrderByDueDate().size());
+        assertEquals(LocalDate.of(2024, 3, 10), tiered.findById(idFor(returned)).get().getReturnDate());
+        assertEquals(2, tiered.count());
+
+        tiered.deleteById(idFor(returned));
+        assertFalse(tiered.existsById(idFor(returned)));
+    }
+    
+    
+    /*
+    * verifica che all'avvio i prestiti restituiti presenti nel file dei prestiti
+    * vengano spostati nello storico e non caricati in memoria
+    */
+    @Test
+    void startupShouldLoadOnlyActiveLoans(@TempDir Path tempDir) throws IOException {
+        journaledRepository(tempDir, 100).saveAll(Arrays.asList(
+                createLoan("1234567890", "9781234567890",
+                        LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), LocalDate.of(2024, 3, 5)),
+                createLoan("1234567891", "9781234567891",
+                        LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 16), null)));
+
+        InMemoryLoanRepository activeTier = new InMemoryLoanRepository();
+        FileBackedLoanRepository tiered = tieredRepository(tempDir, activeTier);
+
+        assertEquals(1, activeTier.count());
+        assertEquals(1, new FileManager().loadLoans(tempDir.resolve("loans.txt")).size());
+        assertEquals(1, tiered.findByUserMatricola("1234567890").size());
+        assertEquals(2, tieredRepository(tempDir, new InMemoryLoanRepository()).findAll().size());
+    }
+    
+    
+    /*
+    * verifica che un prestito riaperto con lo stesso identificativo di uno
+    * archiviato lo sostituisca, così il conteggio non lo vede due volte
+    */
+    @Test
+    void reopenedLoanShouldReplaceArchivedOne(@TempDir Path tempDir) {
+        InMemoryLoanRepository activeTier = new InMemoryLoanRepository();
+        FileBackedLoanRepository tiered = tieredRepository(tempDir, activeTier);
+        tiered.save(createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), LocalDate.of(2024, 3, 1)));
+        assertEquals(0, activeTier.count());
+
+        Loan reopened = createLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
+        tiered.save(reopened);
+
+        assertEquals(1, tiered.count());
+        assertEquals(1, tiered.findAll().size());
+        assertEquals(1, tieredRepository(tempDir, new InMemoryLoanRepository()).count());
+    }
+    
 }
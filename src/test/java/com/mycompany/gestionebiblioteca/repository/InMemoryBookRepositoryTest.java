@@ -155,4 +155,22 @@ class InMemoryBookRepositoryTest {
         assertEquals("B Title", result.get(1).getTitle());
         assertEquals("C Title", result.get(2).getTitle());
     }
+
+    @Test
+    void searchShouldReflectUpdatedTitleAndAuthorsAfterSave() {
+        Book book = createBook("9781234567890", "Old Title", "Old Author");
+        repository.save(book);
+
+        book.setTitle("New Title");
+        book.setAuthors(Arrays.asList("New Author"));
+        repository.save(book);
+
+        assertTrue(repository.findByTitleContaining("old").isEmpty());
+        assertEquals(1, repository.findByTitleContaining("new t").size());
+        assertTrue(repository.findByAuthorContaining("old").isEmpty());
+        assertEquals(1, repository.findByAuthorContaining("w aut").size());
+
+        repository.deleteById("9781234567890");
+        assertTrue(repository.findByTitleContaining("new").isEmpty());
+    }
 }
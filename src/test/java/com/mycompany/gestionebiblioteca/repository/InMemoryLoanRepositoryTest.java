@@ -12,6 +12,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -32,8 +33,8 @@ class InMemoryLoanRepositoryTest {
         return new Loan(matricola, isbn, loanDate, dueDate, returnDate);
     }
 
-    private String idFor(Loan loan) {
-        return loan.getUserMatricola() + ":" + loan.getBookIsbn() + ":" + loan.getLoanDate();
+    private LoanId idFor(Loan loan) {
+        return new LoanId(loan.getUserMatricola(), loan.getBookIsbn(), loan.getLoanDate());
     }
 
     @Test
@@ -56,7 +57,7 @@ class InMemoryLoanRepositoryTest {
     @Test
     void existsByIdAndCountShouldReflectStoredLoans() {
         assertEquals(0, repository.count());
-        assertFalse(repository.existsById("some:id"));
+        assertFalse(repository.existsById(LoanId.parse("0000000000:0000000000000:2000-01-01")));
 
         Loan loan1 = createLoan("1234567890", "9781234567890",
                 LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
@@ -68,7 +69,7 @@ class InMemoryLoanRepositoryTest {
         assertEquals(2, repository.count());
         assertTrue(repository.existsById(idFor(loan1)));
         assertTrue(repository.existsById(idFor(loan2)));
-        assertFalse(repository.existsById("unknown:id"));
+        assertFalse(repository.existsById(LoanId.parse("9999999999:9999999999999:2000-01-01")));
     }
 
     @Test
@@ -76,7 +77,7 @@ class InMemoryLoanRepositoryTest {
         Loan loan = createLoan("1234567890", "9781234567890",
                 LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null);
         repository.save(loan);
-        String id = idFor(loan);
+        LoanId id = idFor(loan);
         assertTrue(repository.existsById(id));
 
         repository.deleteById(id);
@@ -182,6 +183,30 @@ class InMemoryLoanRepositoryTest {
         assertEquals(active1, result.get(1));
     }
 
+    @Test
+    void findActiveLoansByIsbnShouldFollowSavesAndReturns() {
+        Loan first = createLoan("user2", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 10), null);
+        Loan second = createLoan("user1", "9781234567890",
+                LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 10), null);
+        Loan otherBook = createLoan("user1", "9781234567891",
+                LocalDate.of(2024, 3, 3), LocalDate.of(2024, 3, 8), null);
+
+        repository.save(first);
+        repository.save(second);
+        repository.save(otherBook);
+        List<Loan> result = repository.findActiveLoansByIsbn("9781234567890");
+        assertEquals(2, result.size());
+        assertEquals(second, result.get(0));
+        assertEquals(first, result.get(1));
+
+        second.setReturnDate(LocalDate.of(2024, 3, 5));
+        repository.save(second);
+        repository.deleteById(idFor(first));
+        assertTrue(repository.findActiveLoansByIsbn("9781234567890").isEmpty());
+        assertEquals(1, repository.findActiveLoansByIsbn("9781234567891").size());
+    }
+
     @Test
     void findActiveLoansByUserWithBlankMatricolaShouldReturnEmptyList() {
         repository.save(createLoan("user1", "9781234567890",
@@ -192,4 +217,56 @@ class InMemoryLoanRepositoryTest {
         assertNotNull(result);
         assertTrue(result.isEmpty());
     }
+
+    @Test
+    void savingReturnedLoanShouldRemoveItFromActiveIndexes() {
+        Loan loan = createLoan("user1", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 10), null);
+        repository.save(loan);
+
+        loan.setReturnDate(LocalDate.of(2024, 3, 5));
+        repository.save(loan);
+
+        assertTrue(repository.findActiveLoansOrderByDueDate().isEmpty());
+        assertTrue(repository.findActiveLoansByUser("user1").isEmpty());
+        assertEquals(1, repository.findByUserMatricola("user1").size());
+        assertEquals(1, repository.findByBookIsbn("9781234567890").size());
+    }
+
+    @Test
+    void savingNewDueDateShouldReorderActiveLoans() {
+        Loan first = createLoan("user1", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 10), null);
+        Loan second = createLoan("user2", "9781234567891",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 20), null);
+        repository.save(first);
+        repository.save(second);
+
+        first.setDueDate(LocalDate.of(2024, 3, 30));
+        repository.save(first);
+
+        List<Loan> result = repository.findActiveLoansOrderByDueDate();
+        assertEquals(2, result.size());
+        assertEquals(second, result.get(0));
+        assertEquals(first, result.get(1));
+    }
+
+    @Test
+    void deleteShouldRemoveLoanFromAllIndexes() {
+        Loan loan = createLoan("user1", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 10), null);
+        repository.save(loan);
+
+        repository.deleteById(idFor(loan));
+
+        assertTrue(repository.findByUserMatricola("user1").isEmpty());
+        assertTrue(repository.findByBookIsbn("9781234567890").isEmpty());
+        assertTrue(repository.findActiveLoansByUser("user1").isEmpty());
+        assertTrue(repository.findActiveLoansOrderByDueDate().isEmpty());
+
+        repository.save(loan);
+        repository.deleteAll();
+        assertTrue(repository.findActiveLoansOrderByDueDate().isEmpty());
+        assertTrue(repository.findByUserMatricola("user1").isEmpty());
+    }
 }
@@ -128,4 +128,28 @@ class InMemoryUserRepositoryTest {
         assertEquals("Luca", result.get(1).getFirstName());
         assertEquals("Paolo", result.get(2).getFirstName());
     }
+
+    @Test
+    void findByEmailIgnoreCaseShouldFollowSavesUpdatesAndDeletes() {
+        User mario = createUser("1234567890", "Mario", "Rossi", "Mario@Example.com");
+        repository.save(mario);
+        repository.save(createUser("1234567891", "Luigi", "Bianchi", "luigi@example.com"));
+
+        List<User> found = repository.findByEmailIgnoreCase("  mario@EXAMPLE.com ");
+        assertEquals(1, found.size());
+        assertEquals("1234567890", found.get(0).getMatricola());
+
+        mario.setEmail("mario.rossi@example.com");
+        repository.save(mario);
+        assertTrue(repository.findByEmailIgnoreCase("mario@example.com").isEmpty());
+        assertEquals(1, repository.findByEmailIgnoreCase("mario.rossi@example.com").size());
+
+        repository.deleteById("1234567890");
+        assertTrue(repository.findByEmailIgnoreCase("mario.rossi@example.com").isEmpty());
+        assertTrue(repository.findByEmailIgnoreCase(null).isEmpty());
+        assertTrue(repository.findByEmailIgnoreCase(" ").isEmpty());
+
+        repository.deleteAll();
+        assertTrue(repository.findByEmailIgnoreCase("luigi@example.com").isEmpty());
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * Test di unità per la classe {@link TransactionManager}.
+ *
+ * Verificano che una transazione scriva insieme tutti i file modificati,
+ * che un errore ripristini lo stato in memoria senza toccare i file e che
+ * recover() completi un commit interrotto.
+ */
+package com.mycompany.gestionebiblioteca.repository;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.persistence.AtomicFileWriter;
+import com.mycompany.gestionebiblioteca.persistence.FileManager;
+import com.mycompany.gestionebiblioteca.persistence.SnapshotFormat;
+import com.mycompany.gestionebiblioteca.persistence.LoanJournal;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author valerialupo
+ */
+public class TransactionManagerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 10);
+
+    private final FileManager fileManager = new FileManager();
+
+    private FileBackedBookRepository books(Path dir) {
+        return new FileBackedBookRepository(new InMemoryBookRepository(), fileManager, dir.resolve("books.txt"));
+    }
+
+    private FileBackedLoanRepository loans(Path dir) {
+        Path loansFile = dir.resolve("loans.txt");
+        return new FileBackedLoanRepository(new InMemoryLoanRepository(), fileManager, loansFile,
+                new LoanJournal(LoanJournal.defaultPathFor(loansFile)), 100);
+    }
+
+    /*
+     * Un prestito e il decremento delle copie vengono scritti insieme:
+     * dopo il commit entrambi i file contengono le modifiche, il journal
+     * è vuoto e non restano file temporanei né il file di commit.
+     */
+    @Test
+    void commitShouldWriteEveryModifiedFileAndCleanUp(@TempDir Path dir) throws IOException {
+        FileBackedBookRepository bookRepository = books(dir);
+        bookRepository.save(new Book("9781234567890", "Titolo", Arrays.asList("Autore"), 2020, 2, 2));
+        FileBackedLoanRepository loanRepository = loans(dir);
+        Path commitFile = dir.resolve("transaction.commit");
+        TransactionManager transactions = new TransactionManager(commitFile, loanRepository, bookRepository);
+
+        transactions.inTransaction(() -> {
+            Book book = bookRepository.findById("9781234567890").get();
+            book.setAvailableCopies(1);
+            bookRepository.save(book);
+            return loanRepository.save(new Loan("0612700001", "9781234567890", TODAY, TODAY.plusDays(30), null));
+        });
+
+        assertEquals(1, books(dir).findById("9781234567890").get().getAvailableCopies());
+        assertEquals(1, loans(dir).count());
+        assertFalse(Files.exists(commitFile));
+        assertFalse(Files.exists(TransactionManager.tempFileFor(dir.resolve("books.txt"))));
+        assertFalse(Files.exists(TransactionManager.tempFileFor(dir.resolve("loans.txt"))));
+        Path journal = LoanJournal.defaultPathFor(dir.resolve("loans.txt"));
+        assertTrue(!Files.exists(journal) || Files.size(journal) == 0);
+    }
+
+    /*
+     * Con i backup attivi il commit conserva la versione precedente del file
+     * definitivo, non del temporaneo della transazione.
+     */
+    @Test
+    void commitShouldBackUpThePreviousVersionOfEachFile(@TempDir Path dir) throws IOException {
+        FileManager backedUp = new FileManager(SnapshotFormat.TEXT, 1);
+        Path booksFile = dir.resolve("books.txt");
+        FileBackedBookRepository bookRepository = new FileBackedBookRepository(new InMemoryBookRepository(), backedUp, booksFile);
+        bookRepository.save(new Book("9781234567890", "Titolo", Arrays.asList("Autore"), 2020, 2, 2));
+        byte[] previous = Files.readAllBytes(booksFile);
+        TransactionManager transactions = new TransactionManager(dir.resolve("transaction.commit"), bookRepository);
+
+        transactions.inTransaction(() -> {
+            Book book = bookRepository.findById("9781234567890").get();
+            book.setAvailableCopies(1);
+            return bookRepository.save(book);
+        });
+
+        assertArrayEquals(previous, Files.readAllBytes(AtomicFileWriter.backupFileFor(booksFile, 1)));
+        assertFalse(Files.exists(AtomicFileWriter.backupFileFor(TransactionManager.tempFileFor(booksFile), 1)));
+        assertEquals(1, books(dir).findById("9781234567890").get().getAvailableCopies());
+    }
+
+    /*
+     * Se l'operazione fallisce i repository modificati tornano allo stato dei
+     * file, che non vengono riscritti.
+     */
+    @Test
+    void failureShouldRollBackMemoryAndLeaveFilesUntouched(@TempDir Path dir) throws IOException {
+        FileBackedBookRepository bookRepository = books(dir);
+        bookRepository.save(new Book("9781234567890", "Titolo", Arrays.asList("Autore"), 2020, 2, 2));
+        FileBackedLoanRepository loanRepository = loans(dir);
+        byte[] booksBefore = Files.readAllBytes(dir.resolve("books.txt"));
+        byte[] loansBefore = Files.readAllBytes(dir.resolve("loans.txt"));
+        TransactionManager transactions = new TransactionManager(dir.resolve("transaction.commit"),
+                loanRepository, bookRepository);
+
+        assertThrows(IllegalStateException.class, () -> transactions.inTransaction(() -> {
+            loanRepository.save(new Loan("0612700001", "9781234567890", TODAY, TODAY.plusDays(30), null));
+            Book book = bookRepository.findById("9781234567890").get();
+            book.setAvailableCopies(1);
+            bookRepository.save(book);
+            throw new IllegalStateException("errore simulato");
+        }));
+
+        assertEquals(2, bookRepository.findById("9781234567890").get().getAvailableCopies());
+        assertEquals(0, loanRepository.count());
+        assertArrayEquals(booksBefore, Files.readAllBytes(dir.resolve("books.txt")));
+        assertArrayEquals(loansBefore, Files.readAllBytes(dir.resolve("loans.txt")));
+
+        // fuori dalla transazione i repository tornano a scrivere subito
+        loanRepository.save(new Loan("0612700001", "9781234567890", TODAY, TODAY.plusDays(30), null));
+        assertEquals(1, loans(dir).count());
+    }
+
+    /*
+     * Una transazione annidata sullo stesso thread fa parte di quella esterna.
+     */
+    @Test
+    void nestedTransactionShouldJoinTheOuterOne(@TempDir Path dir) throws IOException {
+        FileBackedBookRepository bookRepository = books(dir);
+        byte[] booksBefore = Files.readAllBytes(dir.resolve("books.txt"));
+        TransactionManager transactions = new TransactionManager(dir.resolve("transaction.commit"), bookRepository);
+
+        assertThrows(IllegalStateException.class, () -> transactions.inTransaction(() -> {
+            transactions.inTransaction(() ->
+                    bookRepository.save(new Book("9781234567890", "Titolo", Arrays.asList("Autore"), 2020, 1, 1)));
+            throw new IllegalStateException("errore simulato");
+        }));
+
+        assertEquals(0, bookRepository.count());
+        assertArrayEquals(booksBefore, Files.readAllBytes(dir.resolve("books.txt")));
+    }
+
+    /*
+     * Un commit confermato (file di commit presente) ma interrotto prima dei
+     * rename viene completato da recover().
+     */
+    @Test
+    void recoverShouldCompleteAConfirmedCommit(@TempDir Path dir) throws IOException {
+        Path booksFile = dir.resolve("books.txt");
+        Path loansFile = dir.resolve("loans.txt");
+        Files.write(booksFile, Collections.singletonList("vecchio"), StandardCharsets.UTF_8);
+        Files.write(TransactionManager.tempFileFor(booksFile), Collections.singletonList("nuovo"), StandardCharsets.UTF_8);
+        // il rename dei prestiti era già avvenuto prima del crash
+        Files.write(loansFile, Collections.singletonList("nuovo"), StandardCharsets.UTF_8);
+        Path commitFile = dir.resolve("transaction.commit");
+        Files.write(commitFile, Arrays.asList(
+                TransactionManager.tempFileFor(booksFile).toAbsolutePath() + "\t" + booksFile.toAbsolutePath(),
+                TransactionManager.tempFileFor(loansFile).toAbsolutePath() + "\t" + loansFile.toAbsolutePath()),
+                StandardCharsets.UTF_8);
+
+        TransactionManager.recover(commitFile);
+
+        assertEquals(Collections.singletonList("nuovo"), Files.readAllLines(booksFile, StandardCharsets.UTF_8));
+        assertEquals(Collections.singletonList("nuovo"), Files.readAllLines(loansFile, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(TransactionManager.tempFileFor(booksFile)));
+        assertFalse(Files.exists(commitFile));
+    }
+}
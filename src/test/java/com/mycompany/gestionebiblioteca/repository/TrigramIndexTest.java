@@ -0,0 +1,55 @@
+package com.mycompany.gestionebiblioteca.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TrigramIndexTest {
+
+    private TrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TrigramIndex();
+        index.put("1", Collections.singletonList("Il Nome della Rosa"));
+        index.put("2", Collections.singletonList("Il Pendolo di Foucault"));
+        index.put("3", Arrays.asList("Brian Kernighan", "Dennis Ritchie"));
+    }
+
+    @Test
+    void searchShouldMatchSubstringsIgnoringCase() {
+        assertEquals(new HashSet<>(Arrays.asList("1")), index.search("ROSA"));
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), index.search("il "));
+        assertEquals(new HashSet<>(Arrays.asList("3")), index.search("ritch"));
+    }
+
+    @Test
+    void searchShouldVerifyCandidatesContainingAllTrigrams() {
+        // "della" e "rosa" sono presenti nel testo, ma non la sequenza "rosa della"
+        assertTrue(index.search("rosa della").isEmpty());
+    }
+
+    @Test
+    void shortKeywordsShouldFallBackToScan() {
+        assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), index.search("i"));
+        assertEquals(new HashSet<>(Arrays.asList("2")), index.search("pe"));
+    }
+
+    @Test
+    void putAndRemoveShouldReplaceIndexedText() {
+        index.put("1", Collections.singletonList("Baudolino"));
+        index.remove("2");
+
+        assertTrue(index.search("rosa").isEmpty());
+        assertTrue(index.search("pendolo").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("1")), index.search("dolin"));
+
+        index.clear();
+        assertTrue(index.search("b").isEmpty());
+    }
+}
@@ -0,0 +1,52 @@
+package com.mycompany.gestionebiblioteca.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WorkKeyIndexTest {
+
+    private WorkKeyIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new WorkKeyIndex();
+        index.put("1", "The C Programming Language", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 1978);
+        index.put("2", "The C Programming Language", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 1988);
+    }
+
+    @Test
+    void findShouldIgnoreCaseSpacesAndAuthorOrder() {
+        assertEquals(new HashSet<>(Arrays.asList("1")),
+                index.find(" the c programming LANGUAGE ", Arrays.asList("dennis ritchie ", "BRIAN KERNIGHAN"), 1978));
+        assertTrue(index.find("The C Programming Language", Collections.singletonList("Brian Kernighan"), 1978).isEmpty());
+        assertTrue(index.find("The C Programming Language", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 2000).isEmpty());
+    }
+
+    @Test
+    void putShouldReplacePreviousKeyAndRemoveShouldForgetIt() {
+        index.put("1", "Il linguaggio C", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 1978);
+        assertTrue(index.find("The C Programming Language", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 1978).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("1")),
+                index.find("il linguaggio c", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 1978));
+
+        index.remove("1");
+        assertTrue(index.find("Il linguaggio C", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 1978).isEmpty());
+
+        index.clear();
+        assertTrue(index.find("The C Programming Language", Arrays.asList("Brian Kernighan", "Dennis Ritchie"), 1988).isEmpty());
+    }
+
+    @Test
+    void booksWithoutTitleOrAuthorsShouldNotBeIndexed() {
+        index.put("3", null, Collections.singletonList("Anonimo"), 2000);
+        index.put("4", "Senza autori", Collections.<String>emptyList(), 2000);
+        assertTrue(index.find(null, Collections.singletonList("Anonimo"), 2000).isEmpty());
+        assertTrue(index.find("Senza autori", Collections.<String>emptyList(), 2000).isEmpty());
+    }
+}
@@ -22,8 +22,14 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 /**
@@ -137,6 +143,34 @@ class BookServiceTest {
                 () -> service.addBook("9781234567890", "Other", autori, 2021, 3));
     }
 
+    @Test
+    void addBookWithSameWorkShouldThrowOnlyForTheSameYear(@TempDir Path tempDir) {
+        FileManager fileManager = new FileManager();
+        BookRepository bookRepository = new FileBackedBookRepository(new InMemoryBookRepository(),
+                fileManager, tempDir.resolve("books.txt"));
+        UserRepository userRepository = new FileBackedUserRepository(new InMemoryUserRepository(),
+                fileManager, tempDir.resolve("users.txt"));
+        LoanRepository loanRepository = new FileBackedLoanRepository(new InMemoryLoanRepository(),
+                fileManager, tempDir.resolve("loans.txt"));
+        LoanService loanService = new LoanService(loanRepository, bookRepository, userRepository);
+        BookService service = new BookService(bookRepository, loanService);
+
+        List<String> autori = new ArrayList<>();
+        autori.add("Umberto Eco");
+        autori.add("Altro Autore");
+        service.addBook("9781234567890", "Il nome della rosa", autori, 1980, 2);
+
+        List<String> stessiAutori = new ArrayList<>();
+        stessiAutori.add(" altro autore ");
+        stessiAutori.add("UMBERTO ECO");
+        assertThrows(ValidationException.class,
+                () -> service.addBook("9781234567891", "IL NOME DELLA ROSA ", stessiAutori, 1980, 1));
+
+        // nuova edizione: anno diverso
+        service.addBook("9781234567892", "Il nome della rosa", stessiAutori, 2012, 1);
+        assertEquals(2, bookRepository.count());
+    }
+
     @Test
     void addBookWithInvalidTotalCopiesShouldThrowValidationException(@TempDir Path tempDir) {
         Path booksFile = tempDir.resolve("books.txt");
@@ -352,4 +386,150 @@ class BookServiceTest {
         assertEquals("Advanced Java", allOrdered.get(0).getTitle());
         assertEquals("Java Basics", allOrdered.get(1).getTitle());
     }
+
+    @Test
+    void importBooksShouldSkipDuplicatesAndInvalidRows(@TempDir Path tempDir) throws IOException {
+        Path booksFile = tempDir.resolve("books.txt");
+        FileManager fileManager = new FileManager();
+        BookRepository bookRepository = new FileBackedBookRepository(new InMemoryBookRepository(),
+                fileManager, booksFile);
+        UserRepository userRepository = new FileBackedUserRepository(new InMemoryUserRepository(),
+                fileManager, tempDir.resolve("users.txt"));
+        LoanRepository loanRepository = new FileBackedLoanRepository(new InMemoryLoanRepository(),
+                fileManager, tempDir.resolve("loans.txt"));
+        LoanService loanService = new LoanService(loanRepository, bookRepository, userRepository);
+        BookService service = new BookService(bookRepository, loanService);
+        List<String> eco = new ArrayList<>();
+        eco.add("Umberto Eco");
+        service.addBook("9780000000001", "Il nome della rosa", eco, 1980, 2);
+
+        Path catalogue = tempDir.resolve("catalogo.txt");
+        Files.write(catalogue, Arrays.asList(
+                "ISBN|Titolo|Autori|Anno|Copie",
+                "9780000000002|Il pendolo di Foucault|Umberto Eco|1988|3",
+                "9780000000003|IL NOME DELLA ROSA|umberto eco|1980|1",
+                "9780000000004|Linguaggio C|Brian Kernighan;Dennis Ritchie|1978|2",
+                "9780000000005|linguaggio c|Dennis Ritchie; Brian Kernighan|1978|1",
+                "9780000000002|Altro|Autore|2000|1",
+                "97800|Titolo|Autore|2000|1",
+                "9780000000006|Titolo|Autore|anno|1",
+                "9780000000007|Titolo|Autore|2000|0"), StandardCharsets.UTF_8);
+
+        ImportReport report = service.importBooks(catalogue);
+
+        assertEquals(8, report.getTotalRows());
+        assertEquals(2, report.getImportedCount());
+        assertEquals(6, report.getErrors().size());
+        assertEquals(3, bookRepository.count());
+        Book imported = bookRepository.findById("9780000000004").get();
+        assertEquals(2, imported.getAuthors().size());
+        assertEquals(2, imported.getAvailableCopies());
+        assertEquals(4, Files.readAllLines(booksFile, StandardCharsets.UTF_8).size());
+    }
+
+    /*
+     * Le modifiche del catalogo vengono pubblicate sul flusso dei libri:
+     * un cambio di ISBN è una rimozione seguita da un inserimento.
+     */
+    @Test
+    void catalogueChangesShouldBePublished() {
+        BookRepository bookRepository = new InMemoryBookRepository();
+        LoanService loanService = new LoanService(new InMemoryLoanRepository(), bookRepository, new InMemoryUserRepository());
+        BookService service = new BookService(bookRepository, loanService);
+        List<EntityChange<String, Book>> changes = new ArrayList<>();
+        service.changes().subscribe(changes::addAll);
+
+        service.addBook("9780000000001", "Il nome della rosa", Arrays.asList("Umberto Eco"), 1980, 2);
+        service.updateBook("9780000000001", "9780000000001", "Il nome della rosa", Arrays.asList("Umberto Eco"), 1980, 3);
+        service.updateBook("9780000000001", "9780000000002", "Il nome della rosa", Arrays.asList("Umberto Eco"), 1980, 3);
+        service.deleteBook("9780000000002");
+        assertThrows(NotFoundException.class, () -> service.deleteBook("9780000000002"));
+
+        assertEquals(5, changes.size());
+        assertEquals(EntityChange.Kind.ADDED, changes.get(0).getKind());
+        assertEquals(EntityChange.Kind.UPDATED, changes.get(1).getKind());
+        assertEquals(3, changes.get(1).getEntity().getTotalCopies());
+        assertEquals(EntityChange.Kind.REMOVED, changes.get(2).getKind());
+        assertEquals("9780000000001", changes.get(2).getKey());
+        assertEquals(EntityChange.Kind.ADDED, changes.get(3).getKind());
+        assertEquals("9780000000002", changes.get(3).getKey());
+        assertEquals(EntityChange.Kind.REMOVED, changes.get(4).getKind());
+    }
+
+    /*
+     * L'eliminazione di un libro aspetta i lock di prestiti e restituzioni dello stesso ISBN:
+     * il controllo "non in prestito" non può intrecciarsi con un prestito in corso.
+     */
+    @Test
+    void deleteBookShouldWaitForLoansOfTheSameBook() throws Exception {
+        BookRepository bookRepository = new InMemoryBookRepository();
+        LoanService loanService = new LoanService(new InMemoryLoanRepository(), bookRepository, new InMemoryUserRepository());
+        BookService service = new BookService(bookRepository, loanService);
+        service.addBook("9780000000001", "Il nome della rosa", Arrays.asList("Umberto Eco"), 1980, 1);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> holder = executor.submit(() -> loanService.withLocks(() -> {
+                locked.countDown();
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, LoanService.bookKey("9780000000001")));
+            assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+            Future<?> delete = executor.submit(() -> service.deleteBook("9780000000001"));
+            Thread.sleep(100);
+            assertFalse(delete.isDone());
+            assertTrue(bookRepository.existsById("9780000000001"));
+
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+            delete.get(5, TimeUnit.SECONDS);
+            assertFalse(bookRepository.existsById("9780000000001"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * L'inserimento di un libro aspetta il lock del suo ISBN: il controllo
+     * "ISBN già presente" e il salvataggio non possono intrecciarsi con un
+     * altro inserimento dello stesso libro.
+     */
+    @Test
+    void addBookShouldWaitForTheIsbnLock() throws Exception {
+        BookRepository bookRepository = new InMemoryBookRepository();
+        LoanService loanService = new LoanService(new InMemoryLoanRepository(), bookRepository, new InMemoryUserRepository());
+        BookService service = new BookService(bookRepository, loanService);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> holder = executor.submit(() -> loanService.withLocks(() -> {
+                locked.countDown();
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, LoanService.bookKey("9780000000001")));
+            assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+            Future<?> add = executor.submit(() -> service.addBook("9780000000001", "Il nome della rosa",
+                    Arrays.asList("Umberto Eco"), 1980, 1));
+            Thread.sleep(100);
+            assertFalse(add.isDone());
+            assertFalse(bookRepository.existsById("9780000000001"));
+
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+            add.get(5, TimeUnit.SECONDS);
+            assertTrue(bookRepository.existsById("9780000000001"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
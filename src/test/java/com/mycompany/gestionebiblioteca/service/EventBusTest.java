@@ -0,0 +1,184 @@
+/*
+ * Test di unità per la classe {@link EventBus}.
+ *
+ * Verificano il filtro per tipo degli iscritti sincroni, la consegna ordinata
+ * con coda limitata e scarto degli eventi in eccesso degli iscritti asincroni,
+ * la consegna dopo il rilascio dei lock e gli eventi pubblicati dai service
+ * dopo le operazioni riuscite.
+ */
+package com.mycompany.gestionebiblioteca.service;
+
+import com.mycompany.gestionebiblioteca.exceptions.ValidationException;
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.repository.BookRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryBookRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryLoanRepository;
+import com.mycompany.gestionebiblioteca.repository.InMemoryUserRepository;
+import com.mycompany.gestionebiblioteca.repository.UserRepository;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author david
+ */
+class EventBusTest {
+
+    private static Book book(String isbn) {
+        return new Book(isbn, "Titolo", Arrays.asList("Autore"), 2020, 1, 1);
+    }
+
+    /*
+     * Un iscritto riceve solo il tipo richiesto; l'errore di un iscritto non blocca gli altri.
+     */
+    @Test
+    void syncSubscribersShouldReceiveOnlyTheirType() {
+        EventBus bus = new EventBus();
+        List<DomainEvent> all = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        bus.subscribe(DomainEvent.class, event -> {
+            throw new IllegalStateException("iscritto difettoso");
+        });
+        bus.subscribe(DomainEvent.class, all::add);
+        EventBus.Subscription subscription = bus.subscribe(DomainEvent.BookDeleted.class,
+                event -> deleted.add(event.getIsbn()));
+
+        bus.publish(new DomainEvent.BookAdded(book("9780000000001")));
+        bus.publish(new DomainEvent.BookDeleted("9780000000001"));
+        subscription.cancel();
+        bus.publish(new DomainEvent.BookDeleted("9780000000002"));
+
+        assertEquals(3, all.size());
+        assertEquals(Collections.singletonList("9780000000001"), deleted);
+        assertThrows(IllegalArgumentException.class, () -> bus.publish(null));
+    }
+
+    /*
+     * Un iscritto asincrono riceve gli eventi in ordine sul proprio thread; a coda piena chi pubblica non attende.
+     */
+    @Test
+    void asyncSubscribersShouldDropEventsInsteadOfBlockingPublishers() throws InterruptedException {
+        EventBus bus = new EventBus();
+        List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        List<String> dropped = new ArrayList<>();
+        List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        bus.subscribeAsync(DomainEvent.BookDeleted.class, event -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(event.getIsbn());
+            threads.add(Thread.currentThread().getName());
+            done.countDown();
+        }, 2, event -> dropped.add(event.getIsbn()));
+
+        List<String> published = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            String isbn = String.format("97800000000%02d", i);
+            published.add(isbn);
+            bus.publish(new DomainEvent.BookDeleted(isbn));
+            if (i == 0) {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+        }
+        // la coda è piena e l'iscritto è fermo: close non deve attenderlo
+        assertTimeoutPreemptively(Duration.ofSeconds(5), bus::close);
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(published.subList(0, 3), received);
+        assertEquals(published.subList(3, 6), dropped);
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+        assertThrows(IllegalArgumentException.class,
+                () -> bus.subscribeAsync(DomainEvent.class, event -> { }, 0));
+    }
+
+    /*
+     * Gli eventi vengono consegnati dopo il rilascio dei lock: un iscritto può usare il service da un altro thread.
+     */
+    @Test
+    void subscribersShouldBeAbleToCallServicesFromAnotherThread() {
+        EventBus bus = new EventBus();
+        BookRepository bookRepository = new InMemoryBookRepository();
+        UserRepository userRepository = new InMemoryUserRepository();
+        LoanService loanService = new LoanService(new InMemoryLoanRepository(), bookRepository, userRepository, null, bus);
+        new UserService(userRepository, loanService).addUser("0612700001", "Mario", "Rossi", "m.rossi@studenti.unisa.it");
+        new BookService(bookRepository, loanService).addBook("9780000000001", "Il nome della rosa",
+                Arrays.asList("Umberto Eco"), 1980, 1);
+        List<DomainEvent> events = new ArrayList<>();
+        List<EntityChange<String, Book>> bookChanges = new ArrayList<>();
+        bus.subscribe(DomainEvent.class, events::add);
+        new BookService(bookRepository, loanService).changes().subscribe(bookChanges::addAll);
+        bus.subscribe(DomainEvent.LoanRegistered.class, event -> {
+            // con i lock ancora acquisiti questo thread resterebbe bloccato
+            Thread returner = new Thread(() -> loanService.registerReturn(event.getLoan(), LocalDate.of(2024, 3, 10)));
+            returner.start();
+            try {
+                returner.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> loanService.registerLoan("0612700001", "9780000000001",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15)));
+
+        assertEquals(4, events.size());
+        assertTrue(events.get(0) instanceof DomainEvent.LoanRegistered);
+        assertTrue(events.get(1) instanceof DomainEvent.BookUpdated);
+        assertTrue(events.get(2) instanceof DomainEvent.LoanReturned);
+        assertTrue(events.get(3) instanceof DomainEvent.BookUpdated);
+        assertEquals(2, bookChanges.size());
+        assertEquals(1, bookRepository.findById("9780000000001").get().getAvailableCopies());
+    }
+
+    /*
+     * Prestito e restituzione pubblicano eventi tipizzati; un'operazione rifiutata non pubblica nulla.
+     */
+    @Test
+    void servicesShouldPublishTypedEventsAfterSuccessfulOperations() {
+        EventBus bus = new EventBus();
+        BookRepository bookRepository = new InMemoryBookRepository();
+        UserRepository userRepository = new InMemoryUserRepository();
+        LoanService loanService = new LoanService(new InMemoryLoanRepository(), bookRepository, userRepository, null, bus);
+        UserService userService = new UserService(userRepository, loanService);
+        BookService bookService = new BookService(bookRepository, loanService);
+        List<DomainEvent> events = new ArrayList<>();
+        bus.subscribe(DomainEvent.class, events::add);
+        // i repository in memoria condividono le istanze: la disponibilità va letta alla consegna
+        List<Integer> availableCopies = new ArrayList<>();
+        bus.subscribe(DomainEvent.BookUpdated.class, event -> availableCopies.add(event.getBook().getAvailableCopies()));
+
+        userService.addUser("0612700001", "Mario", "Rossi", "m.rossi@studenti.unisa.it");
+        bookService.addBook("9780000000001", "Il nome della rosa", Arrays.asList("Umberto Eco"), 1980, 1);
+        Loan loan = loanService.registerLoan("0612700001", "9780000000001",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15));
+        assertThrows(ValidationException.class, () -> userService.deleteUser("0612700001"));
+        loanService.registerReturn(loan, LocalDate.of(2024, 3, 10));
+        userService.deleteUser("0612700001");
+
+        assertEquals(7, events.size());
+        assertTrue(events.get(0) instanceof DomainEvent.UserAdded);
+        assertTrue(events.get(1) instanceof DomainEvent.BookAdded);
+        assertSame(loan, ((DomainEvent.LoanRegistered) events.get(2)).getLoan());
+        assertTrue(events.get(3) instanceof DomainEvent.BookUpdated);
+        assertFalse(((DomainEvent.LoanReturned) events.get(4)).getLoan().isActive());
+        assertTrue(events.get(5) instanceof DomainEvent.BookUpdated);
+        assertEquals(Arrays.asList(0, 1), availableCopies);
+        assertEquals("0612700001", ((DomainEvent.UserDeleted) events.get(6)).getMatricola());
+    }
+}
@@ -10,9 +10,20 @@ import com.mycompany.gestionebiblioteca.exceptions.ValidationException;
 import com.mycompany.gestionebiblioteca.exceptions.NotFoundException;
 import com.mycompany.gestionebiblioteca.model.Book;
 import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.LoanId;
 import com.mycompany.gestionebiblioteca.model.User;
+import com.mycompany.gestionebiblioteca.repository.ConcurrentBookRepository;
+import com.mycompany.gestionebiblioteca.repository.ConcurrentLoanRepository;
+import com.mycompany.gestionebiblioteca.repository.ConcurrentUserRepository;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -143,6 +154,47 @@ class LoanServiceTest {
                 () -> loanService.registerReturn(loan, LocalDate.of(2024, 3, 11)));
     }
 
+    @Test
+    void registerReturnsShouldCloseAllLoansAndRestoreCopiesPerBook() {
+        createUser("1234567890");
+        createUser("1234567891");
+        createBook("9781234567890", 5, 5);
+        createBook("9781234567891", 5, 5);
+        Loan first = loanService.registerLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15));
+        Loan second = loanService.registerLoan("1234567891", "9781234567890",
+                LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 16));
+        Loan third = loanService.registerLoan("1234567891", "9781234567891",
+                LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 16));
+
+        List<Loan> returned = loanService.registerReturns(java.util.Arrays.asList(first, second, third),
+                LocalDate.of(2024, 3, 10));
+
+        assertEquals(3, returned.size());
+        assertTrue(loanRepository.findActiveLoansOrderByDueDate().isEmpty());
+        assertEquals(5, bookRepository.findById("9781234567890").get().getAvailableCopies());
+        assertEquals(5, bookRepository.findById("9781234567891").get().getAvailableCopies());
+    }
+
+    @Test
+    void registerReturnsShouldChangeNothingIfOneLoanIsInvalid() {
+        createUser("1234567890");
+        createBook("9781234567890", 5, 5);
+        Loan closed = loanService.registerLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 15));
+        loanService.registerReturn(closed, LocalDate.of(2024, 2, 10));
+        Loan active = loanService.registerLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15));
+
+        assertThrows(ValidationException.class,
+                () -> loanService.registerReturns(java.util.Arrays.asList(active, closed), LocalDate.of(2024, 3, 10)));
+        assertThrows(ValidationException.class,
+                () -> loanService.registerReturns(java.util.Arrays.asList(active, active), LocalDate.of(2024, 3, 10)));
+
+        assertTrue(active.isActive());
+        assertEquals(4, bookRepository.findById("9781234567890").get().getAvailableCopies());
+    }
+
     @Test
     void getActiveLoansOrderedByDueDateShouldReturnOnlyActiveSorted() {
         createUser("0612709530");
@@ -176,4 +228,155 @@ class LoanServiceTest {
         assertEquals(loan2.getBookIsbn(), active.get(0).getBookIsbn());
         assertEquals(loan1.getBookIsbn(), active.get(1).getBookIsbn());
 }
-}
\ No newline at end of file
+
+    /*
+    * esegue in parallelo le operazioni indicate, facendole partire insieme,
+    * e restituisce quante sono terminate senza eccezioni
+    */
+    private int runConcurrently(List<Callable<?>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Callable<?> task : tasks) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    task.call();
+                    return true;
+                } catch (ValidationException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int succeeded = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(30, TimeUnit.SECONDS)) {
+                succeeded++;
+            }
+        }
+        executor.shutdown();
+        return succeeded;
+    }
+
+    /*
+    * verifica che richieste concorrenti per l'ultima copia abbiano un solo successo
+    */
+    @Test
+    void concurrentLoansOfLastCopyShouldSucceedOnlyOnce() throws Exception {
+        loanRepository = new ConcurrentLoanRepository();
+        bookRepository = new ConcurrentBookRepository();
+        userRepository = new ConcurrentUserRepository();
+        loanService = new LoanService(loanRepository, bookRepository, userRepository);
+        createBook("9781234567890", 1, 1);
+
+        List<Callable<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String matricola = String.format("12345678%02d", i);
+            createUser(matricola);
+            tasks.add(() -> loanService.registerLoan(matricola, "9781234567890",
+                    LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15)));
+        }
+
+        assertEquals(1, runConcurrently(tasks));
+        assertEquals(1, loanRepository.count());
+        assertEquals(0, bookRepository.findById("9781234567890").get().getAvailableCopies());
+    }
+
+    /*
+    * verifica che richieste concorrenti dello stesso utente rispettino il limite di 3 prestiti
+    */
+    @Test
+    void concurrentLoansOfSameUserShouldRespectLimit() throws Exception {
+        loanRepository = new ConcurrentLoanRepository();
+        bookRepository = new ConcurrentBookRepository();
+        userRepository = new ConcurrentUserRepository();
+        loanService = new LoanService(loanRepository, bookRepository, userRepository);
+        createUser("1234567890");
+
+        List<Callable<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String isbn = String.format("97812345678%02d", i);
+            createBook(isbn, 5, 5);
+            tasks.add(() -> loanService.registerLoan("1234567890", isbn,
+                    LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15)));
+        }
+
+        assertEquals(3, runConcurrently(tasks));
+        assertEquals(3, loanRepository.findActiveLoansByUser("1234567890").size());
+    }
+
+    /*
+    * verifica che restituzioni concorrenti dello stesso prestito incrementino le copie una sola volta
+    */
+    @Test
+    void concurrentReturnsOfSameLoanShouldSucceedOnlyOnce() throws Exception {
+        createUser("1234567890");
+        createBook("9781234567890", 1, 1);
+        Loan loan = loanService.registerLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15));
+
+        List<Callable<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(() -> loanService.registerReturn(loan, LocalDate.of(2024, 3, 10)));
+        }
+
+        assertEquals(1, runConcurrently(tasks));
+        assertEquals(1, bookRepository.findById("9781234567890").get().getAvailableCopies());
+    }
+
+    /*
+    * verifica che prestito e restituzione pubblichino il prestito e la nuova disponibilità del libro,
+    * e che un prestito rifiutato non pubblichi nulla
+    */
+    @Test
+    void loansAndReturnsShouldPublishLoanAndBookChanges() {
+        createUser("1234567890");
+        createBook("9781234567890", 1, 1);
+        List<EntityChange<LoanId, Loan>> loanChanges = new ArrayList<>();
+        List<EntityChange<String, Book>> bookChanges = new ArrayList<>();
+        loanService.changes().subscribe(loanChanges::addAll);
+        new BookService(bookRepository, loanService).changes().subscribe(bookChanges::addAll);
+
+        Loan loan = loanService.registerLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15));
+
+        assertEquals(1, loanChanges.size());
+        assertEquals(EntityChange.Kind.ADDED, loanChanges.get(0).getKind());
+        assertEquals(loan.getId(), loanChanges.get(0).getKey());
+        assertEquals(1, bookChanges.size());
+        assertEquals(EntityChange.Kind.UPDATED, bookChanges.get(0).getKind());
+        assertEquals(0, bookChanges.get(0).getEntity().getAvailableCopies());
+
+        assertThrows(ValidationException.class, () -> loanService.registerLoan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 2), LocalDate.of(2024, 3, 16)));
+        assertEquals(1, loanChanges.size());
+        assertEquals(1, bookChanges.size());
+
+        loanService.registerReturn(loan, LocalDate.of(2024, 3, 10));
+
+        assertEquals(EntityChange.Kind.UPDATED, loanChanges.get(1).getKind());
+        assertFalse(loanChanges.get(1).getEntity().isActive());
+        assertEquals(1, bookChanges.get(1).getEntity().getAvailableCopies());
+    }
+
+    /*
+    * verifica che le copie disponibili lasciate disallineate (crash tra la scrittura del prestito
+    * e quella del libro) vengano ricalcolate dai prestiti attivi
+    */
+    @Test
+    void reconcileAvailableCopiesShouldFollowActiveLoans() {
+        createUser("1234567890");
+        createBook("9781234567890", 2, 2);
+        createBook("9781234567891", 3, 3);
+        loanRepository.save(new Loan("1234567890", "9781234567890",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 15), null));
+        bookRepository.findById("9781234567891").get().setAvailableCopies(1);
+
+        assertEquals(2, loanService.reconcileAvailableCopies());
+
+        assertEquals(1, bookRepository.findById("9781234567890").get().getAvailableCopies());
+        assertEquals(3, bookRepository.findById("9781234567891").get().getAvailableCopies());
+        assertEquals(0, loanService.reconcileAvailableCopies());
+    }
+}
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.Test;
@@ -331,4 +333,70 @@ class UserServiceTest {
         assertEquals("Bianchi", allOrdered.get(0).getLastName());
         assertEquals("Rossi", allOrdered.get(1).getLastName());
     }
+
+    @Test
+    void importUsersShouldSaveValidRowsOnceAndReportInvalidOnes(@TempDir Path tempDir) throws IOException {
+        Path usersFile = tempDir.resolve("users.txt");
+        FileManager fileManager = new FileManager();
+        UserRepository userRepository = new FileBackedUserRepository(new InMemoryUserRepository(),
+                fileManager, usersFile);
+        BookRepository bookRepository = new FileBackedBookRepository(new InMemoryBookRepository(),
+                fileManager, tempDir.resolve("books.txt"));
+        LoanRepository loanRepository = new FileBackedLoanRepository(new InMemoryLoanRepository(),
+                fileManager, tempDir.resolve("loans.txt"));
+        LoanService loanService = new LoanService(loanRepository, bookRepository, userRepository);
+        UserService userService = new UserService(userRepository, loanService);
+        userService.addUser("0000000001", "Anna", "Bianchi", "anna@studenti.unisa.it");
+
+        Path roster = tempDir.resolve("iscritti.txt");
+        Files.write(roster, Arrays.asList(
+                "Matricola|Nome|Cognome|Email",
+                "0612700001|Mario|Rossi|mario@studenti.unisa.it",
+                "06127|Luca|Verdi|luca@studenti.unisa.it",
+                "0612700002|Paolo|Neri|MARIO@studenti.unisa.it",
+                "",
+                "0000000001|Anna|Bianchi|anna2@studenti.unisa.it",
+                "0612700003|Sara|Gialli",
+                "0612700004|Giulia|Russo|giulia@gmail.com",
+                "0612700005|Chiara|Conti|chiara@studenti.unisa.it"), StandardCharsets.UTF_8);
+
+        ImportReport report = userService.importUsers(roster);
+
+        assertEquals(7, report.getTotalRows());
+        assertEquals(2, report.getImportedCount());
+        assertEquals(5, report.getErrors().size());
+        assertEquals(3, report.getErrors().get(0).getLine());
+        assertEquals(4, report.getErrors().get(1).getLine());
+        assertEquals(6, report.getErrors().get(2).getLine());
+        assertEquals(7, report.getErrors().get(3).getLine());
+        assertEquals(8, report.getErrors().get(4).getLine());
+        assertTrue(userRepository.existsById("0612700001"));
+        assertTrue(userRepository.existsById("0612700005"));
+        assertFalse(userRepository.existsById("0612700002"));
+
+        List<String> lines = Files.readAllLines(usersFile, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+    }
+
+    /*
+     * Una modifica dei dati pubblica l'utente aggiornato, un'eliminazione la sua matricola.
+     */
+    @Test
+    void userChangesShouldBePublished() {
+        UserRepository userRepository = new InMemoryUserRepository();
+        LoanService loanService = new LoanService(new InMemoryLoanRepository(), new InMemoryBookRepository(), userRepository);
+        UserService service = new UserService(userRepository, loanService);
+        List<EntityChange<String, User>> changes = new ArrayList<>();
+        service.changes().subscribe(changes::addAll);
+
+        service.addUser("0612700001", "Mario", "Rossi", "m.rossi@studenti.unisa.it");
+        service.updateUser("0612700001", "0612700001", "Mario", "Bianchi", "m.rossi@studenti.unisa.it");
+        service.deleteUser("0612700001");
+
+        assertEquals(3, changes.size());
+        assertEquals(EntityChange.Kind.ADDED, changes.get(0).getKind());
+        assertEquals("Bianchi", changes.get(1).getEntity().getLastName());
+        assertEquals(EntityChange.Kind.REMOVED, changes.get(2).getKind());
+        assertEquals("0612700001", changes.get(2).getKey());
+    }
 }
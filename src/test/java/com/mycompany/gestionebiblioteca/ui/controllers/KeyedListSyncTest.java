@@ -0,0 +1,141 @@
+/*
+ * Test di unità per la classe {@link KeyedListSync}.
+ *
+ * Verificano che le modifiche dei service diventino modifiche minime della
+ * lista osservabile (una sostituzione per un aggiornamento, un inserimento
+ * ordinato per un'aggiunta) e che molte modifiche producano una sola setAll.
+ */
+package com.mycompany.gestionebiblioteca.ui.controllers;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.service.EntityChange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Carmine
+ */
+class KeyedListSyncTest {
+
+    private ObservableList<Book> items;
+
+    private KeyedListSync<String, Book> sync;
+
+    /**
+     * Numero di notifiche ricevute dalla lista.
+     */
+    private int notifications;
+
+    @BeforeEach
+    void setUp() {
+        items = FXCollections.observableArrayList();
+        sync = new KeyedListSync<>(items, Book::getIsbn, Comparator.comparing(Book::getTitle, String::compareToIgnoreCase));
+        sync.reset(Arrays.asList(book("9780000000001", "Algoritmi"), book("9780000000002", "Basi di dati"),
+                book("9780000000003", "Compilatori")));
+        items.addListener((ListChangeListener<Book>) change -> notifications++);
+    }
+
+    private static Book book(String isbn, String title) {
+        return new Book(isbn, title, Arrays.asList("Autore"), 2000, 1, 1);
+    }
+
+    private static List<String> titles(List<Book> books) {
+        List<String> result = new ArrayList<>();
+        for (Book book : books) {
+            result.add(book.getTitle());
+        }
+        return result;
+    }
+
+    /*
+     * Un aggiornamento che non cambia l'ordinamento sostituisce solo la sua riga.
+     */
+    @Test
+    void updateShouldReplaceOnlyItsRow() {
+        Book updated = new Book("9780000000002", "Basi di dati", Arrays.asList("Autore"), 2000, 1, 0);
+        List<ListChangeListener.Change<? extends Book>> changes = new ArrayList<>();
+        items.addListener((ListChangeListener<Book>) changes::add);
+
+        sync.apply(Collections.singletonList(EntityChange.updated("9780000000002", updated)));
+
+        assertEquals(1, notifications);
+        ListChangeListener.Change<? extends Book> change = changes.get(0);
+        assertTrue(change.next());
+        assertTrue(change.wasReplaced());
+        assertEquals(1, change.getFrom());
+        assertEquals(2, change.getTo());
+        assertSame(updated, items.get(1));
+    }
+
+    /*
+     * Aggiunte, rimozioni e cambi di titolo mantengono la lista ordinata.
+     */
+    @Test
+    void changesShouldKeepTheListSorted() {
+        sync.apply(Arrays.asList(
+                EntityChange.added("9780000000004", book("9780000000004", "Architetture")),
+                EntityChange.<String, Book>removed("9780000000003"),
+                EntityChange.updated("9780000000001", book("9780000000001", "Reti"))));
+
+        assertEquals(Arrays.asList("Architetture", "Basi di dati", "Reti"), titles(items));
+        assertEquals("Reti", sync.get("9780000000001").getTitle());
+        assertNull(sync.get("9780000000003"));
+
+        sync.applyToPresent(Arrays.asList(
+                EntityChange.added("9780000000005", book("9780000000005", "Grafica")),
+                EntityChange.updated("9780000000002", book("9780000000002", "Database"))));
+        assertEquals(Arrays.asList("Architetture", "Database", "Reti"), titles(items));
+    }
+
+    /*
+     * Elementi con lo stesso titolo ed elementi modificati sul posto vengono comunque ritrovati.
+     */
+    @Test
+    void equivalentAndMutatedItemsShouldStillBeFound() {
+        Book copy = book("9780000000004", "Basi di dati");
+        sync.put(copy);
+        assertEquals(Arrays.asList("Algoritmi", "Basi di dati", "Basi di dati", "Compilatori"), titles(items));
+
+        sync.remove("9780000000002");
+        assertSame(copy, items.get(1));
+
+        // il repository in memoria modifica la stessa istanza già in lista
+        Book first = sync.get("9780000000001");
+        first.setTitle("Zoologia");
+        sync.put(first);
+        assertEquals(Arrays.asList("Basi di dati", "Compilatori", "Zoologia"), titles(items));
+        sync.remove("9780000000001");
+        assertEquals(Arrays.asList("Basi di dati", "Compilatori"), titles(items));
+    }
+
+    /*
+     * Oltre la soglia le modifiche vengono applicate con una sola notifica.
+     */
+    @Test
+    void largeBatchesShouldBeAppliedWithOneNotification() {
+        List<EntityChange<String, Book>> changes = new ArrayList<>();
+        for (int i = 0; i <= KeyedListSync.REBUILD_THRESHOLD; i++) {
+            String isbn = String.format("97810000000%02d", i);
+            changes.add(EntityChange.added(isbn, book(isbn, String.format("Volume %02d", KeyedListSync.REBUILD_THRESHOLD - i))));
+        }
+        changes.add(EntityChange.<String, Book>removed("9780000000001"));
+
+        sync.apply(changes);
+
+        assertEquals(1, notifications);
+        assertEquals(KeyedListSync.REBUILD_THRESHOLD + 3, items.size());
+        assertEquals("Basi di dati", items.get(0).getTitle());
+        assertEquals("Volume 00", items.get(2).getTitle());
+        assertEquals(KeyedListSync.REBUILD_THRESHOLD + 2, items.indexOf(sync.get("9781000000000")));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Test di unità per la classe {@link LoanRow}.
+ *
+ * Verificano che il join in blocco unisca a ogni prestito i dati di utente
+ * e libro, mantenendo l'ordine dei prestiti e gestendo i dati mancanti.
+ */
+package com.mycompany.gestionebiblioteca.ui.controllers;
+
+import com.mycompany.gestionebiblioteca.model.Book;
+import com.mycompany.gestionebiblioteca.model.Loan;
+import com.mycompany.gestionebiblioteca.model.User;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Carmine
+ */
+class LoanRowTest {
+
+    /*
+     * Ogni riga contiene nome, cognome, titolo e autori senza ulteriori ricerche.
+     */
+    @Test
+    void joinShouldDenormalizeUsersAndBooks() {
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        Loan first = new Loan("0612700002", "9781234567891", today, today.plusDays(3), null);
+        Loan second = new Loan("0612700001", "9781234567890", today, today.plusDays(7), null);
+        List<User> users = Arrays.asList(
+                new User("0612700001", "Mario", "Rossi", "m.rossi@studenti.unisa.it"),
+                new User("0612700002", "Anna", "Bianchi", "a.bianchi@studenti.unisa.it"));
+        List<Book> books = Arrays.asList(
+                new Book("9781234567890", "Clean Code", Arrays.asList("Robert Martin"), 2008, 1, 0),
+                new Book("9781234567891", "Refactoring", Arrays.asList("Martin Fowler", "Kent Beck"), 1999, 1, 0));
+
+        List<LoanRow> rows = LoanRow.join(Arrays.asList(first, second), users, books);
+
+        assertEquals(2, rows.size());
+        assertSame(first, rows.get(0).getLoan());
+        assertEquals("Anna", rows.get(0).getUserFirstName());
+        assertEquals("Bianchi", rows.get(0).getUserLastName());
+        assertEquals("Refactoring", rows.get(0).getBookTitle());
+        assertEquals("Martin Fowler, Kent Beck", rows.get(0).getBookAuthors());
+        assertEquals(today.plusDays(3), rows.get(0).getDueDate());
+        assertEquals("0612700001", rows.get(1).getUserMatricola());
+        assertEquals("Clean Code", rows.get(1).getBookTitle());
+    }
+
+    /*
+     * Utenti e libri non più presenti producono i valori di ripiego della tabella.
+     */
+    @Test
+    void joinShouldTolerateMissingUsersAndBooks() {
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        Loan loan = new Loan("0612700009", "9780000000000", today, today.plusDays(7), null);
+
+        LoanRow row = LoanRow.join(Collections.singletonList(loan),
+                Collections.<User>emptyList(), Collections.<Book>emptyList()).get(0);
+
+        assertEquals("", row.getUserFirstName());
+        assertEquals("", row.getUserLastName());
+        assertEquals(LoanRow.MISSING_BOOK_TITLE, row.getBookTitle());
+        assertEquals("", row.getBookAuthors());
+        assertThrows(IllegalArgumentException.class, () -> LoanRow.join(null, Collections.<User>emptyList(),
+                Collections.<Book>emptyList()));
+    }
+
+    /*
+     * Una riga cambia solo se cambiano i dati mostrati di utente o libro.
+     */
+    @Test
+    void withUserAndWithBookShouldReplaceOnlyChangedRows() {
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        Loan loan = new Loan("0612700001", "9781234567890", today, today.plusDays(7), null);
+        User user = new User("0612700001", "Mario", "Rossi", "m.rossi@studenti.unisa.it");
+        Book book = new Book("9781234567890", "Clean Code", Arrays.asList("Robert Martin"), 2008, 2, 1);
+        LoanRow row = LoanRow.of(loan, user, book);
+
+        book.setAvailableCopies(0);
+        assertSame(row, row.withBook(book));
+        assertSame(row, row.withUser(user));
+
+        book.setTitle("Codice pulito");
+        LoanRow renamed = row.withBook(book);
+        assertNotSame(row, renamed);
+        assertEquals("Codice pulito", renamed.getBookTitle());
+        assertEquals("Rossi", renamed.getUserLastName());
+        assertEquals(LoanRow.MISSING_BOOK_TITLE, renamed.withBook(null).getBookTitle());
+        assertEquals("", renamed.withUser(null).getUserFirstName());
+    }
+}